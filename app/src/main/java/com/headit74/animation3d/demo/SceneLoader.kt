@@ -10,7 +10,9 @@ import org.andresoviedo.android_3d_model_engine.collision.CollisionDetection
 import org.andresoviedo.android_3d_model_engine.model.Camera
 import org.andresoviedo.android_3d_model_engine.model.Object3DData
 import org.andresoviedo.android_3d_model_engine.services.LoaderTask
+import org.andresoviedo.android_3d_model_engine.services.MeshSimplifier
 import org.andresoviedo.android_3d_model_engine.services.Object3DBuilder
+import org.andresoviedo.android_3d_model_engine.services.cache.DerivedGeometryCache
 import org.andresoviedo.android_3d_model_engine.services.collada.ColladaLoaderTask
 import org.andresoviedo.android_3d_model_engine.services.stl.STLLoaderTask
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoaderTask
@@ -18,6 +20,7 @@ import org.andresoviedo.util.android.ContentUtils
 import org.andresoviedo.util.io.IOUtils
 import java.io.IOException
 import java.util.*
+import kotlin.concurrent.thread
 
 /**
  * This class loads a 3D scena as an example of what can be done with the app
@@ -38,6 +41,16 @@ open class SceneLoader(
     var objects: List<Object3DData> = ArrayList()
         private set
 
+    /**
+     * Parts of the model being loaded. They are replaced by the model when it's loaded
+     */
+    private val chunks: MutableList<Object3DData> = ArrayList()
+
+    /**
+     * Wireframes, normals, bounding boxes and skeletons of the objects
+     */
+    val derivedGeometry = DerivedGeometryCache()
+
     /**
      * Show axis or not
      */
@@ -205,7 +218,10 @@ open class SceneLoader(
         val uri = parent.paramUri
         Log.i("Object3DBuilder", "Loading model $uri. async and parallel..")
         if (uri.toString().toLowerCase().endsWith(".obj") || parent.paramType == 0) {
-            WavefrontLoaderTask(parent, uri, this).execute()
+            val task = WavefrontLoaderTask(parent, uri, this)
+            // large models are drawn while they are parsed, so the user doesn't wait for the whole file
+            task.setStreaming(ContentUtils.getLength(uri) >= STREAMING_MIN_BYTES)
+            task.execute()
         } else if (uri.toString().toLowerCase().endsWith(".stl") || parent.paramType == 1) {
             Log.i("Object3DBuilder", "Loading STL object from: $uri")
             STLLoaderTask(parent, uri, this).execute()
@@ -270,6 +286,19 @@ open class SceneLoader(
         requestRender()
     }
 
+    @Synchronized
+    private fun removeObjects(objs: Collection<Object3DData>) {
+        val newList: MutableList<Object3DData> =
+            ArrayList(objects)
+        newList.removeAll(objs)
+        objects = newList
+        for (obj in objs) {
+            derivedGeometry.remove(obj)
+            parent.gLView?.modelRenderer?.bufferObjects?.release(obj)
+        }
+        requestRender()
+    }
+
     private fun requestRender() {
         // request render only if GL view is already initialized
         if (parent.gLView != null) {
@@ -391,6 +420,19 @@ open class SceneLoader(
         ContentUtils.setThreadActivity(parent)
     }
 
+    override fun onLoadChunk(chunk: Object3DData) {
+        // draw it while the rest of the model is loading
+        synchronized(chunks) { chunks.add(chunk) }
+        addObject(chunk)
+    }
+
+    private fun removeChunks() {
+        synchronized(chunks) {
+            removeObjects(chunks)
+            chunks.clear()
+        }
+    }
+
     override fun onLoadComplete(datas: List<Object3DData>) {
         // TODO: move texture load to LoaderTask
         for (data in datas) {
@@ -408,6 +450,9 @@ open class SceneLoader(
             }
         }
 
+        // the model replaces the parts drawn while loading
+        removeChunks()
+
         // TODO: move error alert to LoaderTask
         val allErrors: MutableList<String> =
             ArrayList()
@@ -415,6 +460,17 @@ open class SceneLoader(
             addObject(data)
             allErrors.addAll(data.errors)
         }
+
+        // the levels of detail are built once the model is drawn
+        thread(isDaemon = true, name = "MeshSimplifier") {
+            for (data in datas) {
+                try {
+                    data.levelsOfDetail = MeshSimplifier.buildLevelsOfDetail(data)
+                } catch (ex: Exception) {
+                    Log.e("SceneLoader", "Problem building the levels of detail of " + data.id, ex)
+                }
+            }
+        }
         if (!allErrors.isEmpty()) {
             makeToastText(allErrors.toString(), Toast.LENGTH_LONG)
         }
@@ -426,6 +482,7 @@ open class SceneLoader(
 
     override fun onLoadError(ex: Exception) {
         Log.e("SceneLoader", ex.message, ex)
+        removeChunks()
         makeToastText(
             "There was a problem building the model: " + ex.message,
             Toast.LENGTH_LONG
@@ -497,6 +554,11 @@ open class SceneLoader(
          * Default model color: yellow
          */
         private val DEFAULT_COLOR = floatArrayOf(1.0f, 1.0f, 0f, 1.0f)
+
+        /**
+         * Minimum size of the OBJ files that are drawn while they are parsed
+         */
+        private const val STREAMING_MIN_BYTES = 16L * 1024 * 1024
     }
 
 }
\ No newline at end of file
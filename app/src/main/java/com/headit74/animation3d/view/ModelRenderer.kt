@@ -5,11 +5,17 @@ import android.opengl.GLSurfaceView
 import android.opengl.Matrix
 import android.util.Log
 import org.andresoviedo.android_3d_model_engine.animation.Animator
+import org.andresoviedo.android_3d_model_engine.drawer.BufferObjectManager
 import org.andresoviedo.android_3d_model_engine.drawer.DrawerFactory
+import org.andresoviedo.android_3d_model_engine.drawer.FrustumCuller
+import org.andresoviedo.android_3d_model_engine.drawer.GLES20Backend
+import org.andresoviedo.android_3d_model_engine.drawer.GLStateCache
+import org.andresoviedo.android_3d_model_engine.drawer.RenderQueue
 import org.andresoviedo.android_3d_model_engine.model.AnimatedModel
 import org.andresoviedo.android_3d_model_engine.model.Object3D
 import org.andresoviedo.android_3d_model_engine.model.Object3DData
 import org.andresoviedo.android_3d_model_engine.services.Object3DBuilder
+import org.andresoviedo.android_3d_model_engine.services.cache.DerivedGeometryCache
 import org.andresoviedo.util.android.GLUtil
 import java.io.ByteArrayInputStream
 import java.util.*
@@ -33,29 +39,52 @@ class ModelRenderer(// 3D window (parent component)
      */
     private val drawer: DrawerFactory
 
+    /**
+     * OpenGL calls, skipping the ones not changing the state
+     */
+    private val gl = GLStateCache(GLES20Backend())
+
+    /**
+     * GL calls skipped in the last frame
+     */
+    var savedGLCalls = 0
+        private set
+    private var frameCount = 0
+
+    /**
+     * Draws of the frame, sorted to change the GL state as few times as possible
+     */
+    private val renderQueue = RenderQueue()
+
+    /**
+     * Times the program and the texture changed in the last frame
+     */
+    var programSwitches = 0
+        private set
+    var textureSwitches = 0
+        private set
+
+    /**
+     * Geometry of the models uploaded to the GPU
+     */
+    val bufferObjects: BufferObjectManager
+        get() = drawer.bufferObjects
+
+    /**
+     * Models and parts out of the view, which are not drawn
+     */
+    val culler: FrustumCuller
+        get() = drawer.culler
+
     /**
      * 3D Axis (to show if needed)
      */
     private val axis = Object3DBuilder.buildAxis().setId("axis")
 
-    // The wireframe associated shape (it should be made of lines only)
-    private val wireframes: MutableMap<Object3DData?, Object3DData?> =
-        HashMap()
-
     // The loaded textures
     private val textures: MutableMap<Any, Int> =
         HashMap()
 
-    // The corresponding opengl bounding boxes and drawer
-    private val boundingBoxes: MutableMap<Object3DData?, Object3DData?> =
-        HashMap()
-
-    // The corresponding opengl bounding boxes
-    private val normals: MutableMap<Object3DData?, Object3DData> =
-        HashMap()
-    private val skeleton: MutableMap<Object3DData, Object3DData?> =
-        HashMap()
-
     // 3D matrices to project our 3D world
     private val viewMatrix = FloatArray(16)
     private val modelViewMatrix = FloatArray(16)
@@ -101,9 +130,13 @@ class ModelRenderer(// 3D window (parent component)
         unused: GL10,
         config: EGLConfig
     ) {
+        // the buffers and the state of the previous context are gone
+        drawer.bufferObjects.reset()
+        gl.reset()
+
         // Set the background frame color
         val backgroundColor = main.modelActivity.backgroundColor
-        GLES20.glClearColor(
+        gl.clearColor(
             backgroundColor[0],
             backgroundColor[1],
             backgroundColor[2],
@@ -112,13 +145,13 @@ class ModelRenderer(// 3D window (parent component)
 
         // Use culling to remove back faces.
         // Don't remove back faces so we can see them
-        // GLES20.glEnable(GLES20.GL_CULL_FACE);
+        // gl.enable(GLES20.GL_CULL_FACE);
 
         // Enable depth testing for hidden-surface elimination.
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST)
+        gl.enable(GLES20.GL_DEPTH_TEST)
 
         // Enable not drawing out of view port
-        GLES20.glEnable(GLES20.GL_SCISSOR_TEST)
+        gl.enable(GLES20.GL_SCISSOR_TEST)
     }
 
     override fun onSurfaceChanged(unused: GL10, width: Int, height: Int) {
@@ -126,7 +159,7 @@ class ModelRenderer(// 3D window (parent component)
         this.height = height
 
         // Adjust the viewport based on geometry changes, such as screen rotation
-        GLES20.glViewport(0, 0, width, height)
+        gl.viewport(0, 0, width, height)
 
         // the projection matrix is the 3D virtual space (cube) that we want to project
         val ratio = width.toFloat() / height
@@ -171,24 +204,39 @@ class ModelRenderer(// 3D window (parent component)
             return
         }
         try {
-            GLES20.glViewport(0, 0, width, height)
-            GLES20.glScissor(0, 0, width, height)
+            // free the geometry of the removed models
+            drawer.bufferObjects.deleteReleased()
+
+            savedGLCalls = gl.savedCount
+            gl.resetSavedCount()
+            if (++frameCount % 100 == 0) {
+                Log.v(
+                    "ModelRenderer", "GL calls saved per frame: $savedGLCalls. " +
+                            "Program switches: $programSwitches. Texture switches: $textureSwitches. " +
+                            "Primitives drawn: ${culler.drawnPrimitives}. Culled: ${culler.culledPrimitives} " +
+                            "(${culler.culledObjects} models, ${culler.culledParts} parts)"
+                )
+            }
+            culler.resetCounters()
+
+            gl.viewport(0, 0, width, height)
+            gl.scissor(0, 0, width, height)
 
             // Draw background color
-            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT or GLES20.GL_DEPTH_BUFFER_BIT)
+            gl.clear(GLES20.GL_COLOR_BUFFER_BIT or GLES20.GL_DEPTH_BUFFER_BIT)
             val scene = main.modelActivity.scene
                 ?: // scene not ready
                 return
             var colorMask: FloatArray? = null
             if (scene.isBlendingEnabled) {
                 // Enable blending for combining colors when there is transparency
-                GLES20.glEnable(GLES20.GL_BLEND)
-                GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA)
+                gl.enable(GLES20.GL_BLEND)
+                gl.blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA)
                 if (scene.isBlendingForced) {
                     colorMask = BLENDING_FORCED_MASK_COLOR
                 }
             } else {
-                GLES20.glDisable(GLES20.GL_BLEND)
+                gl.disable(GLES20.GL_BLEND)
             }
 
             // animate scene
@@ -366,8 +414,8 @@ class ModelRenderer(// 3D window (parent component)
             if (scene.isVRGlasses) {
 
                 // draw left eye image
-                GLES20.glViewport(0, 0, width / 2, height)
-                GLES20.glScissor(0, 0, width / 2, height)
+                gl.viewport(0, 0, width / 2, height)
+                gl.scissor(0, 0, width / 2, height)
                 this.onDrawFrame(
                     viewMatrixLeft,
                     projectionMatrixLeft,
@@ -378,8 +426,8 @@ class ModelRenderer(// 3D window (parent component)
                 )
 
                 // draw right eye image
-                GLES20.glViewport(width / 2, 0, width / 2, height)
-                GLES20.glScissor(width / 2, 0, width / 2, height)
+                gl.viewport(width / 2, 0, width / 2, height)
+                gl.scissor(width / 2, 0, width / 2, height)
                 this.onDrawFrame(
                     viewMatrixRight,
                     projectionMatrixRight,
@@ -405,6 +453,9 @@ class ModelRenderer(// 3D window (parent component)
     ) {
         val scene = main.modelActivity.scene
 
+        // models out of the view of this camera are not drawn
+        culler.setViewProjection(viewProjectionMatrix)
+
         // draw light
         if (scene!!.isDrawLighting) {
             val lightBulbDrawer = drawer.pointDrawer
@@ -462,14 +513,15 @@ class ModelRenderer(// 3D window (parent component)
             return
         }
 
-        // draw all available objects
+        // queue all available objects, so they are drawn sorted by program, texture and depth
+        renderQueue.begin(far, scene.isBlendingEnabled)
         val objects = scene.objects
         for (i in objects.indices) {
             var objData: Object3DData? = null
             try {
                 objData = objects[i]
-                if (!objData.isVisible) continue
-                var drawerObject: Object3D? = drawer.getDrawer(
+                if (!objData.isVisible || !culler.isVisible(objData)) continue
+                var drawerObject: Object3D = drawer.getDrawer(
                     objData, scene.isDrawTextures, scene.isDrawLighting,
                     scene.isDoAnimation, scene.isDrawColors
                 )
@@ -478,7 +530,11 @@ class ModelRenderer(// 3D window (parent component)
                     Log.v("ModelRenderer", "Drawing model: " + objData.id)
                     infoLogged[objData] = true
                 }
-                val changed = objData.isChanged
+                // wireframes, normals, bounding boxes and skeletons are built in background
+                val derivedGeometry = scene.derivedGeometry
+
+                // the geometry derived from the model is at the same distance
+                val depth = RenderQueue.getDepth(objData, viewMatrix)
 
                 // load model texture
                 var textureId = textures[objData.textureData]
@@ -489,7 +545,7 @@ class ModelRenderer(// 3D window (parent component)
                     )
                     val textureIs =
                         ByteArrayInputStream(objData.textureData)
-                    textureId = GLUtil.loadTexture(textureIs)
+                    textureId = GLUtil.loadTexture(gl, textureIs)
                     textureIs.close()
                     textures[objData.textureData] = textureId
                     Log.i("GLUtil", "Loaded texture ok. id: $textureId")
@@ -500,105 +556,90 @@ class ModelRenderer(// 3D window (parent component)
 
                 // draw points
                 if (objData.drawMode == GLES20.GL_POINTS) {
-                    val basicDrawer = drawer.pointDrawer
-                    basicDrawer.draw(
-                        objData,
-                        projectionMatrix,
-                        viewMatrix,
-                        GLES20.GL_POINTS,
-                        lightPosInWorldSpace,
-                        cameraPosInWorldSpace
+                    renderQueue.add(
+                        drawer.pointDrawer, objData, objData.drawMode, objData.drawSize,
+                        GLES20.GL_POINTS, lightPosInWorldSpace, null, depth
                     )
                 } else if (scene.isDrawWireframe && objData.drawMode != GLES20.GL_POINTS && objData.drawMode != GLES20.GL_LINES && objData.drawMode != GLES20.GL_LINE_STRIP && objData.drawMode != GLES20.GL_LINE_LOOP
                 ) {
                     // Log.d("ModelRenderer","Drawing wireframe model...");
                     try {
                         // Only draw wireframes for objects having faces (triangles)
-                        var wireframe = wireframes[objData]
-                        if (wireframe == null || changed) {
-                            Log.i("ModelRenderer", "Generating wireframe model...")
-                            wireframe = Object3DBuilder.buildWireframe(objData)
-                            wireframes[objData] = wireframe
+                        val wireframe =
+                            derivedGeometry.get(objData, DerivedGeometryCache.Kind.WIREFRAME)
+                        if (wireframe != null) {
+                            animator.update(wireframe, scene.isShowBindPose)
+                            // the attributes of the model may be released, so the lines may have less of them
+                            drawerObject = drawer.getDrawer(
+                                wireframe, scene.isDrawTextures, scene.isDrawLighting,
+                                scene.isDoAnimation, scene.isDrawColors
+                            ) ?: continue
+                            renderQueue.add(
+                                drawerObject, wireframe, wireframe.drawMode, wireframe.drawSize,
+                                textureId, lightPosInWorldSpace, colorMask, depth
+                            )
                         }
-                        drawerObject?.draw(
-                            wireframe, projectionMatrix, viewMatrix, wireframe!!.drawMode,
-                            wireframe.drawSize, textureId, lightPosInWorldSpace,
-                            colorMask, cameraPosInWorldSpace
-                        )
-                        animator.update(wireframe, scene.isShowBindPose)
                     } catch (e: Error) {
                         Log.e("ModelRenderer", e.message, e)
                     }
                 } else if (scene.isDrawPoints || objData.faces == null || !objData.faces
                         .loaded()
                 ) {
-                    drawerObject?.draw(
-                        objData, projectionMatrix, viewMatrix
-                        , GLES20.GL_POINTS, objData.drawSize,
-                        textureId, lightPosInWorldSpace, colorMask, cameraPosInWorldSpace
+                    renderQueue.add(
+                        drawerObject, objData, GLES20.GL_POINTS, objData.drawSize,
+                        textureId, lightPosInWorldSpace, colorMask, depth
                     )
                 } else if (scene.isDrawSkeleton && objData is AnimatedModel && objData
                         .animation != null
                 ) {
-                    var skeleton = skeleton[objData]
-                    if (skeleton == null) {
-                        skeleton = Object3DBuilder.buildSkeleton(objData as AnimatedModel?)
-                        this.skeleton[objData] = skeleton
+                    val skeleton =
+                        derivedGeometry.get(objData, DerivedGeometryCache.Kind.SKELETON)
+                    if (skeleton != null) {
+                        animator.update(skeleton, scene.isShowBindPose)
+                        drawerObject = drawer.getDrawer(
+                            skeleton, false, scene.isDrawLighting, scene
+                                .isDoAnimation, scene.isDrawColors
+                        )
+                        renderQueue.add(
+                            drawerObject, skeleton, skeleton.drawMode, skeleton.drawSize,
+                            -1, lightPosInWorldSpace, colorMask, depth
+                        )
                     }
-                    animator.update(skeleton, scene.isShowBindPose)
-                    drawerObject = drawer.getDrawer(
-                        skeleton, false, scene.isDrawLighting, scene
-                            .isDoAnimation, scene.isDrawColors
-                    )
-                    drawerObject.draw(
-                        skeleton,
-                        projectionMatrix,
-                        viewMatrix,
-                        -1,
-                        lightPosInWorldSpace,
-                        colorMask,
-                        cameraPosInWorldSpace
-                    )
                 } else {
-                    drawerObject?.draw(
-                        objData, projectionMatrix, viewMatrix,
-                        textureId, lightPosInWorldSpace, colorMask, cameraPosInWorldSpace
+                    // far away objects are drawn with less triangles
+                    val levelOfDetail = objData.getLevelOfDetail(viewMatrix, projectionMatrix)
+                    renderQueue.add(
+                        drawerObject, levelOfDetail, levelOfDetail.drawMode, levelOfDetail.drawSize,
+                        textureId, lightPosInWorldSpace, colorMask, depth
                     )
                 }
 
                 // Draw bounding box
                 if (scene.isDrawBoundingBox || scene.selectedObject === objData) {
-                    var boundingBoxData = boundingBoxes[objData]
-                    if (boundingBoxData == null || changed) {
-                        boundingBoxData = Object3DBuilder.buildBoundingBox(objData)
-                        boundingBoxes[objData] = boundingBoxData
+                    val boundingBoxData =
+                        derivedGeometry.get(objData, DerivedGeometryCache.Kind.BOUNDING_BOX)
+                    if (boundingBoxData != null) {
+                        renderQueue.add(
+                            drawer.boundingBoxDrawer, boundingBoxData, boundingBoxData.drawMode,
+                            boundingBoxData.drawSize, -1, lightPosInWorldSpace, colorMask, depth
+                        )
                     }
-                    val boundingBoxDrawer = drawer.boundingBoxDrawer
-                    boundingBoxDrawer.draw(
-                        boundingBoxData, projectionMatrix, viewMatrix, -1,
-                        lightPosInWorldSpace, colorMask, cameraPosInWorldSpace
-                    )
                 }
 
                 // Draw normals
                 if (scene.isDrawNormals) {
-                    var normalData = normals[objData]
-                    if (normalData == null || changed) {
-                        normalData = Object3DBuilder.buildFaceNormals(objData)
-                        if (normalData != null) {
-                            // it can be null if object isnt made of triangles
-                            normals[objData] = normalData
-                        }
-                    }
+                    // it can be null if object isnt made of triangles
+                    val normalData =
+                        derivedGeometry.get(objData, DerivedGeometryCache.Kind.FACE_NORMALS)
                     if (normalData != null) {
                         val normalsDrawer = drawer.getDrawer(
                             normalData, false, false, scene.isDoAnimation,
                             false
                         )
                         animator.update(normalData, scene.isShowBindPose)
-                        normalsDrawer.draw(
-                            normalData, projectionMatrix, viewMatrix, -1, null,
-                            lightPosInWorldSpace, cameraPosInWorldSpace
+                        renderQueue.add(
+                            normalsDrawer, normalData, normalData.drawMode, normalData.drawSize,
+                            -1, null, lightPosInWorldSpace, depth
                         )
                     }
                 }
@@ -613,6 +654,9 @@ class ModelRenderer(// 3D window (parent component)
                 )
             }
         }
+        renderQueue.submit(projectionMatrix, viewMatrix, cameraPosInWorldSpace)
+        programSwitches = renderQueue.programSwitches
+        textureSwitches = renderQueue.textureSwitches
     }
 
     fun getModelViewMatrix(): FloatArray {
@@ -648,6 +692,6 @@ class ModelRenderer(// 3D window (parent component)
      */
     init {
         // This component will draw the actual models using OpenGL
-        drawer = DrawerFactory(main.context)
+        drawer = DrawerFactory(main.context, gl)
     }
 }
\ No newline at end of file
@@ -47,6 +47,13 @@ public class JointTransform {
 		this.rotation = rotation;
 	}
 
+	/**
+	 * @return the transform matrix, if this transform was built from a matrix. <code>null</code> otherwise
+	 */
+	public float[] getMatrix() {
+		return matrix;
+	}
+
 	public float[] getPosition() {
 		return position;
 	}
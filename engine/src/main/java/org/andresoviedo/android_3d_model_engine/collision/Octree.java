@@ -53,12 +53,15 @@ public class Octree {
     static Octree build(Object3DData object){
         Log.i("Octree", "Building octree for "+object.getId());
         final Octree ret = new Octree(object.getBoundingBox());
-        if (object.getDrawOrder() == null) {
+        // same vertices the drawer uses
+        final FloatBuffer buffer = (object.getVertexArrayBuffer() != null ? object.getVertexArrayBuffer()
+                : object.getVertexBuffer()).asReadOnlyBuffer();
+        final float[] modelMatrix = object.getModelMatrix();
+        if (object.getDrawOrder() == null || object.isDrawUsingArrays()) {
             // vertex array contains vertex in sequence
-            final FloatBuffer buffer = object.getVertexArrayBuffer().asReadOnlyBuffer();
-            final List<float[]> triangles = new ArrayList<>(buffer.capacity() / 3 * 4);
-            final float[] modelMatrix = object.getModelMatrix();
-            for (int i = 0; i < buffer.capacity(); i += 9) {
+            buffer.position(0);
+            final List<float[]> triangles = new ArrayList<>(buffer.capacity() / 9);
+            for (int i = 0; i + 9 <= buffer.capacity(); i += 9) {
                 float[] triangle = new float[]{buffer.get(), buffer.get(), buffer.get(), 1,
                         buffer.get(), buffer.get(), buffer.get(), 1,
                         buffer.get(), buffer.get(), buffer.get(), 1
@@ -70,16 +73,17 @@ public class Octree {
             }
             ret.pending.addAll(triangles);
         } else {
-            // faces are built
+            // faces are built. each index points to a vertex (x,y,z)
             final IntBuffer drawOrder = object.getDrawOrder().asReadOnlyBuffer();
-            final FloatBuffer buffer = object.getVertexBuffer().asReadOnlyBuffer();
-            final List<float[]> triangles = new ArrayList<>(drawOrder.capacity() / 3 * 4);
-            final float[] modelMatrix = object.getModelMatrix();
-            for (int i = 0; i < drawOrder.capacity(); i += 3) {
+            final List<float[]> triangles = new ArrayList<>(drawOrder.capacity() / 3);
+            for (int i = 0; i + 3 <= drawOrder.capacity(); i += 3) {
+                final int v0 = drawOrder.get(i) * 3;
+                final int v1 = drawOrder.get(i + 1) * 3;
+                final int v2 = drawOrder.get(i + 2) * 3;
                 float[] triangle = new float[]{
-                        buffer.get(drawOrder.get(i)), buffer.get(drawOrder.get(i)+1), buffer.get(drawOrder.get(i)+2), 1,
-                        buffer.get(drawOrder.get(i+1)), buffer.get(drawOrder.get(i+1)+1), buffer.get(drawOrder.get(i+1)+2), 1,
-                        buffer.get(drawOrder.get(i+2)), buffer.get(drawOrder.get(i+2)+1), buffer.get(drawOrder.get(i+2)+2), 1,
+                        buffer.get(v0), buffer.get(v0 + 1), buffer.get(v0 + 2), 1,
+                        buffer.get(v1), buffer.get(v1 + 1), buffer.get(v1 + 2), 1,
+                        buffer.get(v2), buffer.get(v2 + 1), buffer.get(v2 + 2), 1,
                 };
                 Matrix.multiplyMV(triangle, 0, modelMatrix, 0, triangle, 0);
                 Matrix.multiplyMV(triangle, 4, modelMatrix, 0, triangle, 4);
@@ -0,0 +1,265 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.VertexLayout;
+import org.andresoviedo.android_3d_model_engine.services.VertexInterleaver;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the geometry of the models in the GPU, so the vertices are not copied by the driver on every draw.
+ *
+ * The interleaved vertices (see {@link VertexLayout}) and the indices of a model are uploaded to buffer objects
+ * (VBO/IBO) the first time it's drawn, and uploaded again only when the geometry changes (see
+ * {@link Object3DData#getVersion()}). Buffers shared by several models (i.e. the levels of detail) are uploaded once.
+ * Models without a vertex layout are drawn from the client side buffers, as before.
+ *
+ * All the methods must be called from the GL thread, except {@link #release(Object3DData)}.
+ *
+ * @author andresoviedo
+ */
+public final class BufferObjectManager {
+
+    /**
+     * A buffer in the GPU
+     */
+    private static final class Resident {
+        private final int name;
+        private int bytes;
+        private int refs;
+
+        private Resident(int name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The buffers used by a model
+     */
+    private static final class Residency {
+        private int version;
+        private boolean compact;
+        private Buffer vertices;
+        private Buffer indices;
+    }
+
+    private final GLBackend gl;
+    private final Map<Buffer, Resident> buffers = new IdentityHashMap<>();
+    private final Map<Object3DData, Residency> objects = new IdentityHashMap<>();
+    /**
+     * models removed from the scene, to be released in the GL thread
+     */
+    private final List<Object3DData> released = new ArrayList<>();
+
+    private long residentBytes;
+    private int uploads;
+
+    public BufferObjectManager(GLBackend gl) {
+        this.gl = gl;
+    }
+
+    /**
+     * Upload the geometry of the model, if it's not yet in the GPU or if it has changed
+     *
+     * @param obj the model to be drawn
+     */
+    public void prepare(Object3DData obj) {
+        Residency residency = objects.get(obj);
+        VertexLayout layout = obj.getVertexLayout();
+        if (layout == null && residency != null && residency.vertices != null) {
+            // geometry changed: interleave it again
+            VertexInterleaver.interleave(obj, residency.compact);
+            layout = obj.getVertexLayout();
+        }
+        final Buffer vertices = layout != null ? layout.getBuffer() : null;
+        final Buffer indices = vertices != null ? getIndices(obj) : null;
+        if (residency == null) {
+            if (vertices == null) {
+                return;
+            }
+            residency = new Residency();
+            residency.version = obj.getVersion();
+            objects.put(obj, residency);
+        } else if (residency.version == obj.getVersion() && residency.vertices == vertices
+                && residency.indices == indices) {
+            return;
+        }
+
+        final boolean changed = residency.version != obj.getVersion();
+        residency.vertices = update(residency.vertices, vertices, GLES20.GL_ARRAY_BUFFER, changed);
+        residency.indices = update(residency.indices, indices, GLES20.GL_ELEMENT_ARRAY_BUFFER, changed);
+        residency.version = obj.getVersion();
+        residency.compact = layout != null && layout.isCompact();
+        if (vertices == null) {
+            objects.remove(obj);
+        }
+    }
+
+    /**
+     * @return the indices drawn for the model, or <code>null</code> if it's drawn using arrays
+     */
+    static Buffer getIndices(Object3DData obj) {
+        if (obj.isDrawUsingArrays()) {
+            return null;
+        }
+        final ShortBuffer shorts = obj.getDrawOrderAsShort();
+        return shorts != null ? shorts : obj.getDrawOrder();
+    }
+
+    /**
+     * @param data the vertices or the indices of a model
+     * @return the name of the buffer object, or 0 if the data is not in the GPU
+     */
+    public int getName(Buffer data) {
+        final Resident resident = data != null ? buffers.get(data) : null;
+        return resident != null ? resident.name : 0;
+    }
+
+    private Buffer update(Buffer old, Buffer data, int target, boolean changed) {
+        if (data == old) {
+            if (data != null && changed) {
+                upload(buffers.get(data), target, data);
+            }
+            return data;
+        }
+        if (data != null) {
+            Resident resident = buffers.get(data);
+            if (resident == null) {
+                resident = new Resident(gl.genBuffer());
+                buffers.put(data, resident);
+                upload(resident, target, data);
+            }
+            resident.refs++;
+        }
+        if (old != null) {
+            unref(old);
+        }
+        return data;
+    }
+
+    private void upload(Resident resident, int target, Buffer data) {
+        final int bytes = data.capacity() * getElementSize(data);
+        data.position(0);
+        gl.bindBuffer(target, resident.name);
+        gl.bufferData(target, bytes, data, GLES20.GL_STATIC_DRAW);
+        gl.bindBuffer(target, 0);
+        residentBytes += bytes - resident.bytes;
+        resident.bytes = bytes;
+        uploads++;
+    }
+
+    private static int getElementSize(Buffer data) {
+        if (data instanceof ShortBuffer) {
+            return 2;
+        } else if (data instanceof IntBuffer) {
+            return 4;
+        }
+        return 1;
+    }
+
+    private void unref(Buffer data) {
+        final Resident resident = buffers.get(data);
+        if (--resident.refs == 0) {
+            gl.deleteBuffer(resident.name);
+            buffers.remove(data);
+            residentBytes -= resident.bytes;
+        }
+    }
+
+    /**
+     * Free the buffers of a model removed from the scene, including its partitions and levels of detail.
+     * This can be called from any thread: the buffers are deleted on the next {@link #deleteReleased()}
+     *
+     * @param obj the model
+     */
+    public void release(Object3DData obj) {
+        synchronized (released) {
+            released.add(obj);
+        }
+    }
+
+    /**
+     * Delete the buffers of the released models. To be called on every frame
+     */
+    public void deleteReleased() {
+        final List<Object3DData> toDelete;
+        synchronized (released) {
+            if (released.isEmpty()) {
+                return;
+            }
+            toDelete = new ArrayList<>(released);
+            released.clear();
+        }
+        for (int i = 0; i < toDelete.size(); i++) {
+            delete(toDelete.get(i));
+        }
+        Log.i("BufferObjectManager", "Released " + toDelete.size() + " models. Resident: " + residentBytes
+                + " bytes in " + buffers.size() + " buffers");
+    }
+
+    private void delete(Object3DData obj) {
+        final Residency residency = objects.remove(obj);
+        if (residency != null) {
+            if (residency.vertices != null) {
+                unref(residency.vertices);
+            }
+            if (residency.indices != null) {
+                unref(residency.indices);
+            }
+        }
+        deleteAll(obj.getPartitions());
+        deleteAll(obj.getLevelsOfDetail());
+    }
+
+    private void deleteAll(List<Object3DData> objs) {
+        if (objs == null) {
+            return;
+        }
+        for (int i = 0; i < objs.size(); i++) {
+            delete(objs.get(i));
+        }
+    }
+
+    /**
+     * Forget all the buffers, because the GL context was lost (and the buffers with it).
+     * Models are uploaded again the next time they are drawn
+     */
+    public void reset() {
+        buffers.clear();
+        objects.clear();
+        synchronized (released) {
+            released.clear();
+        }
+        residentBytes = 0;
+    }
+
+    /**
+     * @return the bytes uploaded to the GPU
+     */
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * @return number of buffer objects in the GPU
+     */
+    public int getBufferCount() {
+        return buffers.size();
+    }
+
+    /**
+     * @return number of times a buffer has been uploaded
+     */
+    public int getUploadCount() {
+        return uploads;
+    }
+}
@@ -9,6 +9,7 @@ import org.andresoviedo.android_3d_model_engine.R;
 import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
 import org.andresoviedo.android_3d_model_engine.model.Object3D;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.VertexLayout;
 import org.andresoviedo.util.io.IOUtils;
 
 import java.io.IOException;
@@ -22,16 +23,45 @@ public class DrawerFactory {
      * shader code loaded from raw resources
      * resources are cached on activity thread
      */
-    private Map<String, String> shadersCode = new HashMap<>();
+    private final Map<String, String> shadersCode;
     /**
      * list of opengl drawers
      */
     private Map<String, DrawerImpl> drawers = new HashMap<>();
+    /**
+     * opengl calls of all the drawers
+     */
+    private final GLBackend gl;
+    /**
+     * geometry uploaded to the GPU, shared by all the drawers
+     */
+    private final BufferObjectManager bufferObjects;
+    /**
+     * skips the models and parts out of the view, shared by all the drawers
+     */
+    private final FrustumCuller culler = new FrustumCuller();
 
     private final String[] shaderIdTemp = new String[3];
 
     public DrawerFactory(Context context) throws IllegalAccessException, IOException {
+        this(context, new GLStateCache(new GLES20Backend()));
+    }
+
+    public DrawerFactory(Context context, GLBackend gl) throws IllegalAccessException, IOException {
+        this(gl, loadShaders(context));
+    }
+
+    /**
+     * @param shadersCode the code of the shaders, by resource name
+     */
+    DrawerFactory(GLBackend gl, Map<String, String> shadersCode) {
+        this.gl = gl;
+        this.bufferObjects = new BufferObjectManager(gl);
+        this.shadersCode = shadersCode;
+    }
 
+    private static Map<String, String> loadShaders(Context context) throws IllegalAccessException, IOException {
+        Map<String, String> shadersCode = new HashMap<>();
         Log.i("DrawerFactory", "Discovering shaders...");
         Field[] fields = R.raw.class.getFields();
         for (int count = 0; count < fields.length; count++) {
@@ -43,15 +73,21 @@ public class DrawerFactory {
             shadersCode.put(shaderId, shaderCode);
         }
         Log.i("DrawerFactory", "Shaders loaded: " + shadersCode.size());
+        return shadersCode;
     }
 
     public Object3D getDrawer(Object3DData obj, boolean usingTextures, boolean usingLights, boolean usingAnimation, boolean drawColors) {
 
         // double check features
         boolean isAnimated = usingAnimation && obj instanceof AnimatedModel && (((AnimatedModel) obj).getAnimation() != null);
-        boolean isUsingLights = usingLights && (obj.getNormals() != null || obj.getVertexNormalsArrayBuffer() != null);
-        boolean isTextured = usingTextures && obj.getTextureData() != null && obj.getTextureCoordsArrayBuffer() != null;
-        boolean isColoured = drawColors && obj != null && obj.getVertexColorsArrayBuffer() != null;
+        // the float buffers of the interleaved attributes may be released
+        VertexLayout layout = getVertexLayout(obj);
+        boolean isUsingLights = usingLights && obj != null && (obj.getNormals() != null
+                || obj.getVertexNormalsArrayBuffer() != null || layout != null && layout.getNormals() != null);
+        boolean isTextured = usingTextures && obj != null && obj.getTextureData() != null
+                && (obj.getTextureCoordsArrayBuffer() != null || layout != null && layout.getTextureCoords() != null);
+        boolean isColoured = drawColors && obj != null && (obj.getVertexColorsArrayBuffer() != null
+                || layout != null && layout.getColors() != null);
 
         final String[] shaderId = getShaderId(isAnimated, isUsingLights, isTextured, isColoured);
 
@@ -76,7 +112,7 @@ public class DrawerFactory {
         Log.v("DrawerFactory", "---------- Fragment shader ----------\n");
         Log.v("DrawerFactory", fragmentShaderCode);
         Log.v("DrawerFactory", "-------------------------------------\n");
-        drawer = DrawerImpl.getInstance(shaderId[0], vertexShaderCode, fragmentShaderCode);
+        drawer = DrawerImpl.getInstance(shaderId[0], vertexShaderCode, fragmentShaderCode, gl, bufferObjects, culler);
 
         // cache drawer
         drawers.put(shaderId[0], drawer);
@@ -85,6 +121,21 @@ public class DrawerFactory {
         return drawer;
     }
 
+    /**
+     * @return the interleaved vertices of the model, or of its first partition
+     */
+    private static VertexLayout getVertexLayout(Object3DData obj) {
+        if (obj == null) {
+            // the drawers of the points, bounding boxes and normals are shared by all the models
+            return null;
+        }
+        VertexLayout ret = obj.getVertexLayout();
+        if (ret == null && obj.getPartitions() != null && !obj.getPartitions().isEmpty()) {
+            ret = obj.getPartitions().get(0).getVertexLayout();
+        }
+        return ret;
+    }
+
     @NonNull
     private String[] getShaderId(boolean isAnimated, boolean isUsingLights, boolean isTextured, boolean
             isColoured) {
@@ -184,6 +235,18 @@ public class DrawerFactory {
         return shaderIdTemp;
     }
 
+    public GLBackend getGLBackend() {
+        return gl;
+    }
+
+    public BufferObjectManager getBufferObjects() {
+        return bufferObjects;
+    }
+
+    public FrustumCuller getCuller() {
+        return culler;
+    }
+
     public Object3D getBoundingBoxDrawer() {
         return getDrawer(null, false, false, false, false);
     }
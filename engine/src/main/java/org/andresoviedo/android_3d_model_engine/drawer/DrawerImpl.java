@@ -4,11 +4,12 @@ import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.os.SystemClock;
 import android.util.Log;
-import android.util.SparseArray;
 
 import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
 import org.andresoviedo.android_3d_model_engine.model.Object3D;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+import org.andresoviedo.android_3d_model_engine.model.VertexLayout;
 import org.andresoviedo.util.android.GLUtil;
 
 import java.nio.Buffer;
@@ -28,6 +29,10 @@ class DrawerImpl implements Object3D {
     private final static int VERTEX_STRIDE = COORDS_PER_VERTEX * 4; // 4 bytes per
     private final static float[] DEFAULT_COLOR = {1.0f, 1.0f, 1.0f, 1.0f};
     private final static float[] NO_COLOR_MASK = {1.0f, 1.0f, 1.0f, 1.0f};
+    /**
+     * size of the joint transforms array in the animation shaders
+     */
+    private final static int MAX_JOINTS = 60;
 
     // specification
     private final String id;
@@ -35,6 +40,7 @@ class DrawerImpl implements Object3D {
 
     // opengl program
     private final int mProgram;
+    private final ProgramLocations locations;
 
     // temporary variables
     private final float[] mMatrix = new float[16];
@@ -46,12 +52,27 @@ class DrawerImpl implements Object3D {
     private long counter = -1;
     private double shift = -1d;
 
-    // does the device support drawElements for GL_UNSIGNED_INT or not?
-    private boolean drawUsingUnsignedInt = true;
+    // joint transforms uploaded at once
+    private float[] jointTransforms = new float[0];
 
-    private final SparseArray<String> cache1 = new SparseArray<>();
+    // opengl calls
+    private final GLBackend gl;
 
-    public static DrawerImpl getInstance(String id, String vertexShaderCode, String fragmentShaderCode) {
+    // geometry in the GPU
+    private final BufferObjectManager bufferObjects;
+    private int boundVertexBuffer;
+    private int boundIndexBuffer;
+
+    // parts out of the view are not drawn (optional)
+    private final FrustumCuller culler;
+
+    public static DrawerImpl getInstance(String id, String vertexShaderCode, String fragmentShaderCode,
+                                         GLBackend gl, BufferObjectManager bufferObjects) {
+        return getInstance(id, vertexShaderCode, fragmentShaderCode, gl, bufferObjects, null);
+    }
+
+    public static DrawerImpl getInstance(String id, String vertexShaderCode, String fragmentShaderCode,
+                                         GLBackend gl, BufferObjectManager bufferObjects, FrustumCuller culler) {
         Set<String> shaderFeatures = new HashSet<>();
         testShaderFeature(shaderFeatures, vertexShaderCode, "a_Position");
         testShaderFeature(shaderFeatures, vertexShaderCode, "u_MVMatrix");
@@ -62,7 +83,7 @@ class DrawerImpl implements Object3D {
         testShaderFeature(shaderFeatures, vertexShaderCode, "u_MVMatrix");
         testShaderFeature(shaderFeatures, vertexShaderCode, "in_jointIndices");
         testShaderFeature(shaderFeatures, vertexShaderCode, "in_weights");
-        return new DrawerImpl(id, vertexShaderCode, fragmentShaderCode, shaderFeatures);
+        return new DrawerImpl(id, vertexShaderCode, fragmentShaderCode, shaderFeatures, gl, bufferObjects, culler);
     }
 
     private static void testShaderFeature(Set<String> outputFeatures, String shaderCode, String feature) {
@@ -71,21 +92,33 @@ class DrawerImpl implements Object3D {
         }
     }
 
-    private DrawerImpl(String id, String vertexShaderCode, String fragmentShaderCode, Set<String> features) {
+    private DrawerImpl(String id, String vertexShaderCode, String fragmentShaderCode, Set<String> features,
+                       GLBackend gl, BufferObjectManager bufferObjects, FrustumCuller culler) {
 
         this.id = id;
         this.features = features;
+        this.gl = gl;
+        this.bufferObjects = bufferObjects;
+        this.culler = culler;
         Log.i("Object3DImpl2", "Compiling 3D Drawer... " + id);
 
         // load shaders
-        int vertexShader = GLUtil.loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-        int fragmentShader = GLUtil.loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+        int vertexShader = GLUtil.loadShader(gl, GLES20.GL_VERTEX_SHADER, vertexShaderCode);
+        int fragmentShader = GLUtil.loadShader(gl, GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
 
         // compile program
-        mProgram = GLUtil.createAndLinkProgram(vertexShader, fragmentShader, features.toArray(new String[features.size()]));
+        mProgram = GLUtil.createAndLinkProgram(gl, vertexShader, fragmentShader, features.toArray(new String[features.size()]));
+        locations = new ProgramLocations(gl, mProgram);
         Log.i("Object3DImpl2", "Compiled 3D Drawer (" + id + ") with id " + mProgram);
     }
 
+    /**
+     * @return the name of the program, used to sort the draws by program
+     */
+    int getProgram() {
+        return mProgram;
+    }
+
     @Override
     public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int textureId, float[] lightPosInWorldSpace, float[] cameraPos) {
         this.draw(obj, pMatrix, vMatrix, obj.getDrawMode(), obj.getDrawSize(), textureId, lightPosInWorldSpace, null, cameraPos);
@@ -103,8 +136,23 @@ class DrawerImpl implements Object3D {
 
         // Log.d("Object3DImpl", "Drawing '" + obj.getId() + "' using shader '" + id + "'...");
 
+        // big models are drawn in parts, so they can be drawn with 16 bit indices
+        List<Object3DData> partitions = obj.getPartitions();
+        if (partitions != null) {
+            for (int i = 0; i < partitions.size(); i++) {
+                draw(partitions.get(i), pMatrix, vMatrix, drawMode, drawSize, textureId, lightPosInWorldSpace,
+                        colorMask, cameraPos);
+            }
+            return;
+        }
+
+        // the partition (or the whole model) is out of the view
+        if (culler != null && !culler.beginObject(obj)) {
+            return;
+        }
+
         // Add program to OpenGL environment
-        GLES20.glUseProgram(mProgram);
+        gl.useProgram(mProgram);
 
         float[] mMatrix = getMMatrix(obj);
         float[] mvMatrix = getMvMatrix(mMatrix, vMatrix);
@@ -112,24 +160,24 @@ class DrawerImpl implements Object3D {
 
         setMvpMatrix(mvpMatrix);
 
-        int mPositionHandle = setPosition(obj);
+        bindBuffers(obj);
+
+        // attributes read by this draw
+        int attributes = 1 << setPosition(obj);
 
-        int mNormalHandle = -1;
         if (supportsNormals()) {
-            mNormalHandle = setNormals(obj);
+            attributes |= 1 << setNormals(obj);
         }
 
-        int mColorHandle = -1;
         if (supportsColors()) {
-            mColorHandle = setColors(obj);
+            attributes |= 1 << setColors(obj);
         } else {
             setColor(obj);
         }
         setColorMask(colorMask);
 
-        int mTextureHandle = -1;
         if (textureId != -1 && supportsTextures()) {
-            mTextureHandle = setTexture(obj, textureId);
+            attributes |= 1 << setTexture(obj, textureId);
         }
 
         // light rendering needs the model matrix
@@ -144,43 +192,110 @@ class DrawerImpl implements Object3D {
         }
 
         // joint transformation for animated model
-        int in_weightsHandle = -1;
-        int in_jointIndicesHandle = -1;
         if (supportsJoints() && obj instanceof AnimatedModel) {
-            in_weightsHandle = setWeights((AnimatedModel) obj);
-            in_jointIndicesHandle = setJoints((AnimatedModel) obj);
+            attributes |= 1 << setWeights((AnimatedModel) obj);
+            attributes |= 1 << setJoints((AnimatedModel) obj);
             setJointTransforms((AnimatedModel) obj);
         }
 
+        // attributes stay enabled between draws, so only the changes are sent
+        setVertexAttribArrays(attributes);
+
         // draw mesh
         drawShape(obj, drawMode, drawSize);
 
-        // Disable vertex array
-        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        unbindBuffers();
+        GLUtil.checkGlError(gl, "draw");
+    }
 
-        if (mColorHandle != -1) {
-            GLES20.glDisableVertexAttribArray(mColorHandle);
+    /**
+     * Enable the attributes read by the draw and disable the rest, which may point to buffers of other models
+     *
+     * @param attributes bit mask of the attribute locations
+     */
+    private void setVertexAttribArrays(int attributes) {
+        for (int i = 0; i < GLStateCache.MAX_VERTEX_ATTRIBS; i++) {
+            if ((attributes & (1 << i)) != 0) {
+                gl.enableVertexAttribArray(i);
+            } else {
+                gl.disableVertexAttribArray(i);
+            }
         }
+    }
 
-        if (mNormalHandle != -1) {
-            GLES20.glDisableVertexAttribArray(mNormalHandle);
+    /**
+     * Bind the buffer objects of the model, uploading them if needed
+     */
+    private void bindBuffers(Object3DData obj) {
+        bufferObjects.prepare(obj);
+        VertexLayout layout = obj.getVertexLayout();
+        boundVertexBuffer = layout != null ? bufferObjects.getName(layout.getBuffer()) : 0;
+        boundIndexBuffer = bufferObjects.getName(BufferObjectManager.getIndices(obj));
+        if (boundVertexBuffer != 0) {
+            gl.bindBuffer(GLES20.GL_ARRAY_BUFFER, boundVertexBuffer);
         }
-
-        // Disable vertex array
-        if (mTextureHandle != -1) {
-            GLES20.glDisableVertexAttribArray(mTextureHandle);
+        if (boundIndexBuffer != 0) {
+            gl.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, boundIndexBuffer);
         }
+    }
 
-        if (in_weightsHandle != -1) {
-            GLES20.glDisableVertexAttribArray(in_weightsHandle);
-            GLES20.glDisableVertexAttribArray(in_jointIndicesHandle);
+    /**
+     * Unbind the buffer objects, so the client side buffers can be used again
+     */
+    private void unbindBuffers() {
+        if (boundVertexBuffer != 0) {
+            gl.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+            boundVertexBuffer = 0;
+        }
+        if (boundIndexBuffer != 0) {
+            gl.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+            boundIndexBuffer = 0;
         }
     }
 
     private float[] getMMatrix(Object3DData obj) {
+        // compact positions are relative to the bounding box
+        VertexLayout layout = obj.getVertexLayout();
+        if (layout != null && layout.getPositionMatrix() != null) {
+            Matrix.multiplyMM(mMatrix, 0, obj.getModelMatrix(), 0, layout.getPositionMatrix(), 0);
+            return mMatrix;
+        }
         return obj.getModelMatrix();
     }
 
+    /**
+     * Set the attribute from the interleaved buffer, or from its buffer object if it's bound
+     *
+     * @return whether the attribute was set
+     */
+    private boolean setLayoutAttribute(int handle, VertexLayout layout, VertexLayout.Attribute attribute) {
+        if (attribute == null) {
+            return false;
+        }
+        if (boundVertexBuffer != 0) {
+            gl.vertexAttribPointer(handle, attribute.getSize(), attribute.getType(), attribute.isNormalized(),
+                    layout.getStride(), attribute.getOffset());
+        } else {
+            layout.getBuffer().position(attribute.getOffset());
+            gl.vertexAttribPointer(handle, attribute.getSize(), attribute.getType(), attribute.isNormalized(),
+                    layout.getStride(), layout.getBuffer());
+        }
+        return true;
+    }
+
+    /**
+     * Set the attribute from a client side buffer of floats
+     */
+    private void setFloatAttribute(int handle, int size, int stride, FloatBuffer buffer) {
+        // client side buffers are read as offsets while a buffer object is bound
+        if (boundVertexBuffer != 0) {
+            gl.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+            boundVertexBuffer = 0;
+        }
+        buffer.position(0);
+        gl.vertexAttribPointer(handle, size, GLES20.GL_FLOAT, false, stride, buffer);
+    }
+
     private float[] getMvMatrix(float[] mMatrix, float[] vMatrix) {
         Matrix.multiplyMM(mvMatrix, 0, vMatrix, 0, mMatrix, 0);
         return mvMatrix;
@@ -193,13 +308,8 @@ class DrawerImpl implements Object3D {
 
     private void setMvpMatrix(float[] mvpMatrix) {
 
-        // get handle to shape's transformation matrix
-        int mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "u_MVPMatrix");
-        GLUtil.checkGlError("glGetUniformLocation");
-
         // Apply the projection and view transformation
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
-        GLUtil.checkGlError("glUniformMatrix4fv");
+        gl.uniformMatrix4fv(locations.mvpMatrix, 1, false, mvpMatrix, 0);
     }
 
     private boolean supportsColors() {
@@ -208,49 +318,34 @@ class DrawerImpl implements Object3D {
 
     private void setColor(Object3DData obj) {
 
-        // get handle to fragment shader's vColor member
-        int mColorHandle = GLES20.glGetUniformLocation(mProgram, "vColor");
-        GLUtil.checkGlError("glGetUniformLocation");
-
         // Set color for drawing the triangle
         float[] color = obj.getColor() != null ? obj.getColor() : DEFAULT_COLOR;
-        GLES20.glUniform4fv(mColorHandle, 1, color, 0);
-        GLUtil.checkGlError("glUniform4fv");
+        gl.uniform4fv(locations.color, 1, color, 0);
     }
 
     private int setColors(Object3DData obj) {
 
-        // get handle to fragment shader's vColor member
-        int mColorHandle = GLES20.glGetAttribLocation(mProgram, "a_Color");
-        GLUtil.checkGlError("glGetAttribLocation");
-
         // Pass in the color information
-        GLES20.glEnableVertexAttribArray(mColorHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
-
-        obj.getVertexColorsArrayBuffer().position(0);
-        GLES20.glVertexAttribPointer(mColorHandle, 4, GLES20.GL_FLOAT, false, 0, obj.getVertexColorsArrayBuffer());
-        GLUtil.checkGlError("glVertexAttribPointer");
+        int mColorHandle = locations.colors;
+        VertexLayout layout = obj.getVertexLayout();
+        if (layout == null || !setLayoutAttribute(mColorHandle, layout, layout.getColors())) {
+            setFloatAttribute(mColorHandle, 4, 0, obj.getVertexColorsArrayBuffer());
+        }
 
         return mColorHandle;
     }
 
     private int setPosition(Object3DData obj) {
 
-        // get handle to vertex shader's a_Position member
-        int mPositionHandle = GLES20.glGetAttribLocation(mProgram, "a_Position");
-        GLUtil.checkGlError("glGetAttribLocation");
+        // vertex shader's a_Position member
+        int mPositionHandle = locations.position;
 
-        // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
-
-        FloatBuffer vertexBuffer = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
-                : obj.getVertexBuffer();
-        vertexBuffer.position(0);
-        GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX, GLES20.GL_FLOAT, false, VERTEX_STRIDE,
-                vertexBuffer);
-        GLUtil.checkGlError("glVertexAttribPointer");
+        VertexLayout layout = obj.getVertexLayout();
+        if (layout == null || !setLayoutAttribute(mPositionHandle, layout, layout.getPositions())) {
+            FloatBuffer vertexBuffer = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
+                    : obj.getVertexBuffer();
+            setFloatAttribute(mPositionHandle, COORDS_PER_VERTEX, VERTEX_STRIDE, vertexBuffer);
+        }
 
         return mPositionHandle;
     }
@@ -260,16 +355,14 @@ class DrawerImpl implements Object3D {
     }
 
     private int setNormals(Object3DData obj) {
-        int mNormalHandle = GLES20.glGetAttribLocation(mProgram, "a_Normal");
-        GLUtil.checkGlError("glGetAttribLocation");
-
-        GLES20.glEnableVertexAttribArray(mNormalHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
+        int mNormalHandle = locations.normal;
 
         // Pass in the normal information
-        FloatBuffer buffer = obj.getVertexNormalsArrayBuffer() != null ? obj.getVertexNormalsArrayBuffer() : obj.getNormals();
-        buffer.position(0);
-        GLES20.glVertexAttribPointer(mNormalHandle, 3, GLES20.GL_FLOAT, false, 0, buffer);
+        VertexLayout layout = obj.getVertexLayout();
+        if (layout == null || !setLayoutAttribute(mNormalHandle, layout, layout.getNormals())) {
+            FloatBuffer buffer = obj.getVertexNormalsArrayBuffer() != null ? obj.getVertexNormalsArrayBuffer() : obj.getNormals();
+            setFloatAttribute(mNormalHandle, 3, 0, buffer);
+        }
 
         return mNormalHandle;
     }
@@ -279,15 +372,13 @@ class DrawerImpl implements Object3D {
     }
 
     private void setLightPos(float[] lightPosInEyeSpace) {
-        int mLightPosHandle = GLES20.glGetUniformLocation(mProgram, "u_LightPos");
         // Pass in the light position in eye space.
-        GLES20.glUniform3f(mLightPosHandle, lightPosInEyeSpace[0], lightPosInEyeSpace[1], lightPosInEyeSpace[2]);
+        gl.uniform3f(locations.lightPos, lightPosInEyeSpace[0], lightPosInEyeSpace[1], lightPosInEyeSpace[2]);
     }
 
     private void setCameraPos(float[] cameraPosInWorldSpace) {
-        int mLightPosHandle = GLES20.glGetUniformLocation(mProgram, "u_cameraPos");
         // Pass in the light position in eye space.
-        GLES20.glUniform3fv(mLightPosHandle, 0, cameraPosInWorldSpace, 0);
+        gl.uniform3fv(locations.cameraPos, 0, cameraPosInWorldSpace, 0);
     }
 
     private boolean supportsMMatrix() {
@@ -295,12 +386,8 @@ class DrawerImpl implements Object3D {
     }
 
     private void setMMatrix(float[] modelMatrix) {
-        int mMVMatrixHandle = GLES20.glGetUniformLocation(mProgram, "u_MVMatrix");
-        GLUtil.checkGlError("glGetUniformLocation");
-
         // Pass in the modelview matrix.
-        GLES20.glUniformMatrix4fv(mMVMatrixHandle, 1, false, modelMatrix, 0);
-        GLUtil.checkGlError("glUniformMatrix4fv");
+        gl.uniformMatrix4fv(locations.mvMatrix, 1, false, modelMatrix, 0);
     }
 
     private boolean supportsTextures() {
@@ -308,42 +395,28 @@ class DrawerImpl implements Object3D {
     }
 
     private void setColorMask(float[] colorMask) {
-        int vColorMaskHandle = GLES20.glGetUniformLocation(mProgram, "vColorMask");
-        GLUtil.checkGlError("glGetUniformLocation");
-
         float[] color = colorMask != null ? colorMask : NO_COLOR_MASK;
-        GLES20.glUniform4fv(vColorMaskHandle, 1, color, 0);
-        GLUtil.checkGlError("glUniform4fv");
+        gl.uniform4fv(locations.colorMask, 1, color, 0);
     }
 
     private int setTexture(Object3DData obj, int textureId) {
-        int mTextureUniformHandle = GLES20.glGetUniformLocation(mProgram, "u_Texture");
-        GLUtil.checkGlError("glGetUniformLocation");
-
         // Set the active texture unit to texture unit 0.
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLUtil.checkGlError("glActiveTexture");
+        gl.activeTexture(GLES20.GL_TEXTURE0);
 
         // Bind to the texture in OpenGL
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-        GLUtil.checkGlError("glBindTexture");
+        gl.bindTexture(GLES20.GL_TEXTURE_2D, textureId);
 
         // Tell the texture uniform sampler to use this texture in the shader by binding to texture unit 0.
-        GLES20.glUniform1i(mTextureUniformHandle, 0);
-        GLUtil.checkGlError("glUniform1i");
+        gl.uniform1i(locations.texture, 0);
 
-        int mTextureCoordinateHandle = GLES20.glGetAttribLocation(mProgram, "a_TexCoordinate");
-        GLUtil.checkGlError("glGetAttribLocation");
-
-        // Enable a handle to the triangle vertices
-        GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
+        int mTextureCoordinateHandle = locations.textureCoordinate;
 
         // Prepare the triangle coordinate data
-        obj.getTextureCoordsArrayBuffer().position(0);
-        GLES20.glVertexAttribPointer(mTextureCoordinateHandle, 2, GLES20.GL_FLOAT, false, 0,
-                obj.getTextureCoordsArrayBuffer());
-        GLUtil.checkGlError("glVertexAttribPointer");
+        VertexLayout layout = obj.getVertexLayout();
+        if (layout == null
+                || !setLayoutAttribute(mTextureCoordinateHandle, layout, layout.getTextureCoords())) {
+            setFloatAttribute(mTextureCoordinateHandle, 2, 0, obj.getTextureCoordsArrayBuffer());
+        }
 
         return mTextureCoordinateHandle;
     }
@@ -353,44 +426,34 @@ class DrawerImpl implements Object3D {
     }
 
     private int setWeights(AnimatedModel animatedModel) {
-        int in_weightsHandle = GLES20.glGetAttribLocation(mProgram, "in_weights");
-        GLUtil.checkGlError("glGetAttribLocation");
-        GLES20.glEnableVertexAttribArray(in_weightsHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
-        animatedModel.getVertexWeights().position(0);
-        GLES20.glVertexAttribPointer(in_weightsHandle, 3, GLES20.GL_FLOAT, false, 0, animatedModel.getVertexWeights());
+        int in_weightsHandle = locations.weights;
+        VertexLayout layout = animatedModel.getVertexLayout();
+        if (layout == null || !setLayoutAttribute(in_weightsHandle, layout, layout.getWeights())) {
+            setFloatAttribute(in_weightsHandle, 3, 0, animatedModel.getVertexWeights());
+        }
         return in_weightsHandle;
     }
 
     private int setJoints(AnimatedModel animatedModel) {
-        int in_jointIndicesHandle = GLES20.glGetAttribLocation(mProgram, "in_jointIndices");
-        GLUtil.checkGlError("glGetAttribLocation");
-        GLES20.glEnableVertexAttribArray(in_jointIndicesHandle);
-        GLUtil.checkGlError("glEnableVertexAttribArray");
-        animatedModel.getJointIds().position(0);
-        GLES20.glVertexAttribPointer(in_jointIndicesHandle, 3, GLES20.GL_FLOAT, false, 0, animatedModel.getJointIds());
-        GLUtil.checkGlError("glVertexAttribPointer");
+        int in_jointIndicesHandle = locations.jointIndices;
+        VertexLayout layout = animatedModel.getVertexLayout();
+        if (layout == null || !setLayoutAttribute(in_jointIndicesHandle, layout, layout.getJointIds())) {
+            setFloatAttribute(in_jointIndicesHandle, 3, 0, animatedModel.getJointIds());
+        }
         return in_jointIndicesHandle;
     }
 
     private void setJointTransforms(AnimatedModel animatedModel) {
         float[][] jointTransformsArray = animatedModel.getJointTransforms();
-        // get handle to fragment shader's vColor member
-
-        // TODO: optimize this (memory allocation)
-        for (int i = 0; i < jointTransformsArray.length; i++) {
-            float[] jointTransform = jointTransformsArray[i];
-            // Log.v("DrawerImpl","jointTransform: "+ Arrays.toString(jointTransform));
-            String jointTransformHandleName = cache1.get(i);
-            if (jointTransformHandleName == null) {
-                jointTransformHandleName = "jointTransforms[" + i + "]";
-                cache1.put(i, jointTransformHandleName);
-            }
-            int jointTransformsHandle = GLES20.glGetUniformLocation(mProgram, jointTransformHandleName);
-            GLUtil.checkGlError("glGetUniformLocation");
-            GLES20.glUniformMatrix4fv(jointTransformsHandle, 1, false, jointTransform, 0);
-            //handles.add(jointTransformsHandle);
+        int count = Math.min(jointTransformsArray.length, MAX_JOINTS);
+        if (jointTransforms.length < count * 16) {
+            jointTransforms = new float[count * 16];
         }
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(jointTransformsArray[i], 0, jointTransforms, i * 16, 16);
+        }
+        // the elements of the array are consecutive, so they are all set with a single call
+        gl.uniformMatrix4fv(locations.jointTransforms, count, false, jointTransforms, 0);
     }
 
     private void drawShape(Object3DData obj, int drawMode, int drawSize) {
@@ -399,17 +462,25 @@ class DrawerImpl implements Object3D {
         vertexBuffer.position(0);
         List<int[]> drawModeList = obj.getDrawModeList();
 
-        Buffer drawOrderBuffer = obj.getDrawOrder();
-        int drawBufferType = GLES20.GL_UNSIGNED_INT;
-        if (!drawUsingUnsignedInt) {
-            drawOrderBuffer = obj.getDrawOrderAsShort();
-            drawBufferType = GLES20.GL_UNSIGNED_SHORT;
+        // 16 bit indices are supported by all devices and they are faster to read
+        Buffer drawOrderBuffer = obj.getDrawOrderAsShort();
+        int drawBufferType = GLES20.GL_UNSIGNED_SHORT;
+        if (drawOrderBuffer == null) {
+            drawOrderBuffer = obj.getDrawOrder();
+            drawBufferType = GLES20.GL_UNSIGNED_INT;
         }
 
         if (obj.isDrawUsingArrays()) {
             drawOrderBuffer = null;
         }
 
+        // the colors of the materials are set per range, unless the shader has its own color per vertex
+        List<Submesh> submeshes = obj.getSubmeshes();
+        if (submeshes != null && drawModeList == null && drawSize <= 0 && !supportsColors()) {
+            drawSubmeshes(obj, submeshes, drawMode, drawOrderBuffer, drawBufferType);
+            return;
+        }
+
         if (drawModeList != null) {
             if (drawOrderBuffer == null) {
                 // Log.v(obj.getId(), "Drawing single polygons using arrays...");
@@ -418,15 +489,18 @@ class DrawerImpl implements Object3D {
                     int drawModePolygon = polygon[0];
                     int vertexPos = polygon[1];
                     int drawSizePolygon = polygon[2];
+                    if (culler != null && !culler.isVisible(obj, drawModeList, j, drawModePolygon, drawSizePolygon)) {
+                        continue;
+                    }
                     if (drawMode == GLES20.GL_LINE_LOOP && polygon[2] > 3) {
                         // is this wireframe?
                         // Log.v("Object3DImpl","Drawing wireframe for '" + obj.getId() + "' (" + drawSizePolygon + ")...");
                         for (int i = 0; i < polygon[2] - 2; i++) {
                             // Log.v("Object3DImpl","Drawing wireframe triangle '" + i + "' for '" + obj.getId() + "'...");
-                            GLES20.glDrawArrays(drawMode, polygon[1] + i, 3);
+                            drawArrays(drawMode, polygon[1] + i, 3);
                         }
                     } else {
-                        GLES20.glDrawArrays(drawMode, polygon[1], polygon[2]);
+                        drawArrays(drawMode, polygon[1], polygon[2]);
                     }
                 }
             } else {
@@ -436,11 +510,10 @@ class DrawerImpl implements Object3D {
                     int drawModePolygon = drawPart[0];
                     int vertexPos = drawPart[1];
                     int drawSizePolygon = drawPart[2];
-                    drawOrderBuffer.position(vertexPos);
-                    GLES20.glDrawElements(drawModePolygon, drawSizePolygon, drawBufferType, drawOrderBuffer);
-                    if (drawUsingUnsignedInt && GLUtil.checkGlError("glDrawElements")) {
-                        drawUsingUnsignedInt = false;
+                    if (culler != null && !culler.isVisible(obj, drawModeList, i, drawModePolygon, drawSizePolygon)) {
+                        continue;
                     }
+                    drawElements(drawModePolygon, drawSizePolygon, drawBufferType, drawOrderBuffer, vertexPos);
                 }
             }
         } else {
@@ -448,20 +521,11 @@ class DrawerImpl implements Object3D {
                 if (drawSize <= 0) {
                     // String mode = drawMode == GLES20.GL_POINTS ? "Points" : drawMode == GLES20.GL_LINES? "Lines": "Triangles?";
                     // Log.v(obj.getId(),"Drawing all elements with mode '"+drawMode+"'...");
-                    drawOrderBuffer.position(0);
-                    GLES20.glDrawElements(drawMode, drawOrderBuffer.capacity(), drawBufferType,
-                            drawOrderBuffer);
-                    if (drawUsingUnsignedInt && GLUtil.checkGlError("glDrawElements")) {
-                        drawUsingUnsignedInt = false;
-                    }
+                    drawElements(drawMode, drawOrderBuffer.capacity(), drawBufferType, drawOrderBuffer, 0);
                 } else {
                     //Log.d(obj.getId(),"Drawing single elements of size '"+drawSize+"'...");
                     for (int i = 0; i < drawOrderBuffer.capacity(); i += drawSize) {
-                        drawOrderBuffer.position(i);
-                        GLES20.glDrawElements(drawMode, drawSize, drawBufferType, drawOrderBuffer);
-                    }
-                    if (drawUsingUnsignedInt && GLUtil.checkGlError("glDrawElements")) {
-                        drawUsingUnsignedInt = false;
+                        drawElements(drawMode, drawSize, drawBufferType, drawOrderBuffer, i);
                     }
                 }
             } else {
@@ -478,14 +542,56 @@ class DrawerImpl implements Object3D {
                         drawCount = (int) ((Math.sin(rotation - this.shift + Math.PI / 2 * 3) + 1) / 2f * drawCount);
                     }
                     // Log.d(obj.getId(),"Drawing all triangles using arrays... counter("+drawCount+")");
-                    GLES20.glDrawArrays(drawMode, 0, drawCount);
+                    drawArrays(drawMode, 0, drawCount);
                 } else {
                     //Log.d(obj.getId(),"Drawing single triangles using arrays...");
                     for (int i = 0; i < vertexBuffer.capacity() / COORDS_PER_VERTEX; i += drawSize) {
-                        GLES20.glDrawArrays(drawMode, i, drawSize);
+                        drawArrays(drawMode, i, drawSize);
                     }
                 }
             }
         }
     }
+
+    private void drawSubmeshes(Object3DData obj, List<Submesh> submeshes, int drawMode, Buffer drawOrderBuffer,
+                               int drawBufferType) {
+        int mColorHandle = locations.color;
+
+        float[] defaultColor = obj.getColor() != null ? obj.getColor() : DEFAULT_COLOR;
+        for (int i = 0; i < submeshes.size(); i++) {
+            Submesh submesh = submeshes.get(i);
+            if (culler != null && !culler.isVisible(obj, submeshes, i, drawMode, submesh.getCount())) {
+                continue;
+            }
+            gl.uniform4fv(mColorHandle, 1, submesh.getColor() != null ? submesh.getColor() : defaultColor, 0);
+            if (drawOrderBuffer == null) {
+                drawArrays(drawMode, submesh.getStart(), submesh.getCount());
+            } else {
+                drawElements(drawMode, submesh.getCount(), drawBufferType, drawOrderBuffer, submesh.getStart());
+            }
+        }
+    }
+
+    private void drawArrays(int drawMode, int first, int count) {
+        if (culler != null) {
+            culler.countDrawn(drawMode, count);
+        }
+        gl.drawArrays(drawMode, first, count);
+    }
+
+    /**
+     * Draw the indices from the bound buffer object or, if there is none, from the client side buffer
+     */
+    private void drawElements(int drawMode, int count, int type, Buffer drawOrderBuffer, int first) {
+        if (culler != null) {
+            culler.countDrawn(drawMode, count);
+        }
+        if (boundIndexBuffer != 0) {
+            int offset = first * (type == GLES20.GL_UNSIGNED_SHORT ? 2 : 4);
+            gl.drawElements(drawMode, count, type, offset);
+        } else {
+            drawOrderBuffer.position(first);
+            gl.drawElements(drawMode, count, type, drawOrderBuffer);
+        }
+    }
 }
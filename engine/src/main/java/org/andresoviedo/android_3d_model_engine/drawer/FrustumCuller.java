@@ -0,0 +1,286 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Frustum;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Skips the models, and the parts of the models, out of the view of the camera. Whole models are tested with their
+ * bounds in object space before they are queued, and the parts (partitions, submeshes and polygons of the draw mode
+ * list) with their own bounds when they are drawn.
+ *
+ * Animated models are never culled, because the joints move the vertices out of the bounds.
+ *
+ * @author andresoviedo
+ */
+public final class FrustumCuller {
+
+    /**
+     * Bounds in object space of the parts of a model, built when they are first tested
+     */
+    private static final class PartBounds {
+        private final int version;
+        private final Object parts;
+        // xMin, yMin, zMin, xMax, yMax, zMax of the model, followed by the ones of every part
+        private final float[] bounds;
+
+        private PartBounds(int version, Object parts, float[] bounds) {
+            this.version = version;
+            this.parts = parts;
+            this.bounds = bounds;
+        }
+    }
+
+    private final Frustum worldFrustum = new Frustum();
+    private final Frustum objectFrustum = new Frustum();
+    private final Map<Object3DData, PartBounds> partBounds = new WeakHashMap<>();
+
+    private boolean enabled = true;
+    private boolean ready;
+
+    // stats
+    private int culledObjects;
+    private int culledParts;
+    private int culledPrimitives;
+    private int drawnPrimitives;
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Set the camera. Called for every view drawn (i.e. for every eye)
+     *
+     * @param viewProjectionMatrix the view-projection matrix
+     */
+    public void setViewProjection(float[] viewProjectionMatrix) {
+        worldFrustum.set(viewProjectionMatrix);
+        ready = true;
+    }
+
+    /**
+     * Test the whole model against the frustum. The bounds are tested in object space, so they still fit the model
+     * when it's rotated
+     *
+     * @return <code>false</code> if the model is out of the view, so it's not drawn at all
+     */
+    public boolean isVisible(Object3DData obj) {
+        if (!isCullable(obj)) {
+            return true;
+        }
+        final float[] bounds = getBounds(obj, null);
+        if (bounds == null) {
+            return true;
+        }
+        objectFrustum.set(worldFrustum, obj.getModelMatrix());
+        if (intersects(bounds, 0)) {
+            return true;
+        }
+        culledObjects++;
+        culledPrimitives += getPrimitives(obj.getDrawMode(), getCount(obj));
+        return false;
+    }
+
+    /**
+     * Prepare the tests of the parts of the model, which are done in object space
+     *
+     * @return <code>false</code> if the model is out of the view
+     */
+    boolean beginObject(Object3DData obj) {
+        if (!isCullable(obj)) {
+            return true;
+        }
+        final float[] bounds = getBounds(obj, null);
+        if (bounds == null) {
+            return true;
+        }
+        objectFrustum.set(worldFrustum, obj.getModelMatrix());
+        if (intersects(bounds, 0)) {
+            return true;
+        }
+        culledParts++;
+        culledPrimitives += getPrimitives(obj.getDrawMode(), getCount(obj));
+        return false;
+    }
+
+    /**
+     * @param obj   the model, after {@link #beginObject(Object3DData)}
+     * @param parts the submeshes or the draw mode list of the model
+     * @param part  the index of the part
+     * @return <code>false</code> if the part is out of the view
+     */
+    boolean isVisible(Object3DData obj, List<?> parts, int part, int drawMode, int count) {
+        if (!isCullable(obj)) {
+            return true;
+        }
+        final float[] bounds = getBounds(obj, parts);
+        if (bounds == null || intersects(bounds, (part + 1) * 6)) {
+            return true;
+        }
+        culledParts++;
+        culledPrimitives += getPrimitives(drawMode, count);
+        return false;
+    }
+
+    void countDrawn(int drawMode, int count) {
+        drawnPrimitives += getPrimitives(drawMode, count);
+    }
+
+    private boolean isCullable(Object3DData obj) {
+        return enabled && ready && !(obj instanceof AnimatedModel);
+    }
+
+    private boolean intersects(float[] bounds, int offset) {
+        return objectFrustum.intersects(bounds[offset], bounds[offset + 1], bounds[offset + 2], bounds[offset + 3],
+                bounds[offset + 4], bounds[offset + 5]);
+    }
+
+    private float[] getBounds(Object3DData obj, List<?> parts) {
+        PartBounds ret = partBounds.get(obj);
+        if (ret == null || ret.version != obj.getVersion() || (parts != null && ret.parts != parts)) {
+            final float[] bounds = buildBounds(obj, parts);
+            if (bounds == null) {
+                return null;
+            }
+            ret = new PartBounds(obj.getVersion(), parts, bounds);
+            partBounds.put(obj, ret);
+        }
+        return ret.bounds;
+    }
+
+    private static float[] buildBounds(Object3DData obj, List<?> parts) {
+        final FloatBuffer positions = getPositions(obj);
+        if (positions == null) {
+            return null;
+        }
+        final IntBuffer indices = obj.isDrawUsingArrays() ? null : obj.getDrawOrder();
+        final float[] ret = new float[6 + (parts != null ? parts.size() * 6 : 0)];
+        addBounds(ret, 0, positions, null, 0, positions.capacity() / 3);
+        if (parts != null) {
+            for (int i = 0; i < parts.size(); i++) {
+                final Object part = parts.get(i);
+                final int start, count;
+                if (part instanceof Submesh) {
+                    start = ((Submesh) part).getStart();
+                    count = ((Submesh) part).getCount();
+                } else {
+                    start = ((int[]) part)[1];
+                    count = ((int[]) part)[2];
+                }
+                addBounds(ret, (i + 1) * 6, positions, indices, start, count);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Set the bounds of the range of vertices, or of the vertices referenced by the range of indices
+     */
+    private static void addBounds(float[] bounds, int offset, FloatBuffer positions, IntBuffer indices, int start,
+                                  int count) {
+        float xMin = Float.MAX_VALUE, yMin = Float.MAX_VALUE, zMin = Float.MAX_VALUE;
+        float xMax = -Float.MAX_VALUE, yMax = -Float.MAX_VALUE, zMax = -Float.MAX_VALUE;
+        for (int i = start; i < start + count; i++) {
+            final int vertex = indices != null ? indices.get(i) : i;
+            final float x = positions.get(vertex * 3), y = positions.get(vertex * 3 + 1),
+                    z = positions.get(vertex * 3 + 2);
+            xMin = Math.min(xMin, x);
+            yMin = Math.min(yMin, y);
+            zMin = Math.min(zMin, z);
+            xMax = Math.max(xMax, x);
+            yMax = Math.max(yMax, y);
+            zMax = Math.max(zMax, z);
+        }
+        bounds[offset] = xMin;
+        bounds[offset + 1] = yMin;
+        bounds[offset + 2] = zMin;
+        bounds[offset + 3] = xMax;
+        bounds[offset + 4] = yMax;
+        bounds[offset + 5] = zMax;
+    }
+
+    private static FloatBuffer getPositions(Object3DData obj) {
+        return obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer() : obj.getVertexBuffer();
+    }
+
+    private static int getCount(Object3DData obj) {
+        final Buffer indices = obj.getDrawOrder();
+        if (!obj.isDrawUsingArrays() && indices != null) {
+            return indices.capacity();
+        }
+        final FloatBuffer positions = getPositions(obj);
+        return positions != null ? positions.capacity() / 3 : 0;
+    }
+
+    /**
+     * @return number of points, lines or triangles drawn with the vertices
+     */
+    static int getPrimitives(int drawMode, int count) {
+        switch (drawMode) {
+            case GLES20.GL_TRIANGLES:
+                return count / 3;
+            case GLES20.GL_TRIANGLE_STRIP:
+            case GLES20.GL_TRIANGLE_FAN:
+                return Math.max(0, count - 2);
+            case GLES20.GL_LINES:
+                return count / 2;
+            case GLES20.GL_LINE_STRIP:
+                return Math.max(0, count - 1);
+            default:
+                // points and line loops
+                return count;
+        }
+    }
+
+    /**
+     * Clear the stats. Called at the start of every frame
+     */
+    public void resetCounters() {
+        culledObjects = 0;
+        culledParts = 0;
+        culledPrimitives = 0;
+        drawnPrimitives = 0;
+    }
+
+    /**
+     * @return models not drawn in the frame because they were out of the view
+     */
+    public int getCulledObjects() {
+        return culledObjects;
+    }
+
+    /**
+     * @return partitions, submeshes or polygons not drawn in the frame because they were out of the view
+     */
+    public int getCulledParts() {
+        return culledParts;
+    }
+
+    /**
+     * @return points, lines or triangles not drawn in the frame because they were out of the view
+     */
+    public int getCulledPrimitives() {
+        return culledPrimitives;
+    }
+
+    /**
+     * @return points, lines or triangles drawn in the frame
+     */
+    public int getDrawnPrimitives() {
+        return drawnPrimitives;
+    }
+}
@@ -0,0 +1,128 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES 2.0 calls used by the engine, so they can be run, recorded or skipped without a GL context.
+ * Methods are named like the <code>GLES20</code> functions without the <code>gl</code> prefix, and the functions
+ * filling arrays return the single value instead.
+ *
+ * @author andresoviedo
+ * @see GLES20Backend
+ * @see NoOpGLBackend
+ * @see RecordingGLBackend
+ */
+public interface GLBackend {
+
+    // shaders and programs
+
+    int createShader(int type);
+
+    void shaderSource(int shader, String source);
+
+    void compileShader(int shader);
+
+    int getShaderi(int shader, int pname);
+
+    String getShaderInfoLog(int shader);
+
+    void deleteShader(int shader);
+
+    int createProgram();
+
+    void attachShader(int program, int shader);
+
+    void bindAttribLocation(int program, int index, String name);
+
+    void linkProgram(int program);
+
+    int getProgrami(int program, int pname);
+
+    String getProgramInfoLog(int program);
+
+    void deleteProgram(int program);
+
+    void useProgram(int program);
+
+    int getUniformLocation(int program, String name);
+
+    int getAttribLocation(int program, String name);
+
+    // uniforms
+
+    void uniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    void uniform4fv(int location, int count, float[] value, int offset);
+
+    void uniform3fv(int location, int count, float[] value, int offset);
+
+    void uniform3f(int location, float x, float y, float z);
+
+    void uniform1i(int location, int x);
+
+    // vertex attributes
+
+    void enableVertexAttribArray(int index);
+
+    void disableVertexAttribArray(int index);
+
+    void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data);
+
+    void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+
+    // buffer objects
+
+    /**
+     * @return the name of a new buffer object
+     */
+    int genBuffer();
+
+    void deleteBuffer(int buffer);
+
+    void bindBuffer(int target, int buffer);
+
+    void bufferData(int target, int size, Buffer data, int usage);
+
+    // textures
+
+    /**
+     * @return the name of a new texture
+     */
+    int genTexture();
+
+    void activeTexture(int texture);
+
+    void bindTexture(int target, int texture);
+
+    void texParameteri(int target, int pname, int param);
+
+    void texImage2D(int target, int level, Bitmap bitmap);
+
+    // drawing
+
+    void drawArrays(int mode, int first, int count);
+
+    void drawElements(int mode, int count, int type, Buffer indices);
+
+    void drawElements(int mode, int count, int type, int offset);
+
+    // frame state
+
+    void clearColor(float red, float green, float blue, float alpha);
+
+    void clear(int mask);
+
+    void viewport(int x, int y, int width, int height);
+
+    void scissor(int x, int y, int width, int height);
+
+    void enable(int cap);
+
+    void disable(int cap);
+
+    void blendFunc(int sfactor, int dfactor);
+
+    int getError();
+}
@@ -0,0 +1,247 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import java.nio.Buffer;
+
+/**
+ * Backend running the calls in the current OpenGL ES 2.0 context
+ *
+ * @author andresoviedo
+ */
+public class GLES20Backend implements GLBackend {
+
+    private final int[] values = new int[1];
+
+    @Override
+    public int createShader(int type) {
+        return GLES20.glCreateShader(type);
+    }
+
+    @Override
+    public void shaderSource(int shader, String source) {
+        GLES20.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void compileShader(int shader) {
+        GLES20.glCompileShader(shader);
+    }
+
+    @Override
+    public int getShaderi(int shader, int pname) {
+        GLES20.glGetShaderiv(shader, pname, values, 0);
+        return values[0];
+    }
+
+    @Override
+    public String getShaderInfoLog(int shader) {
+        return GLES20.glGetShaderInfoLog(shader);
+    }
+
+    @Override
+    public void deleteShader(int shader) {
+        GLES20.glDeleteShader(shader);
+    }
+
+    @Override
+    public int createProgram() {
+        return GLES20.glCreateProgram();
+    }
+
+    @Override
+    public void attachShader(int program, int shader) {
+        GLES20.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void bindAttribLocation(int program, int index, String name) {
+        GLES20.glBindAttribLocation(program, index, name);
+    }
+
+    @Override
+    public void linkProgram(int program) {
+        GLES20.glLinkProgram(program);
+    }
+
+    @Override
+    public int getProgrami(int program, int pname) {
+        GLES20.glGetProgramiv(program, pname, values, 0);
+        return values[0];
+    }
+
+    @Override
+    public String getProgramInfoLog(int program) {
+        return GLES20.glGetProgramInfoLog(program);
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+        GLES20.glDeleteProgram(program);
+    }
+
+    @Override
+    public void useProgram(int program) {
+        GLES20.glUseProgram(program);
+    }
+
+    @Override
+    public int getUniformLocation(int program, String name) {
+        return GLES20.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public int getAttribLocation(int program, String name) {
+        return GLES20.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void uniform4fv(int location, int count, float[] value, int offset) {
+        GLES20.glUniform4fv(location, count, value, offset);
+    }
+
+    @Override
+    public void uniform3fv(int location, int count, float[] value, int offset) {
+        GLES20.glUniform3fv(location, count, value, offset);
+    }
+
+    @Override
+    public void uniform3f(int location, float x, float y, float z) {
+        GLES20.glUniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void uniform1i(int location, int x) {
+        GLES20.glUniform1i(location, x);
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        GLES20.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+        GLES20.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride, data);
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public int genBuffer() {
+        GLES20.glGenBuffers(1, values, 0);
+        return values[0];
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        values[0] = buffer;
+        GLES20.glDeleteBuffers(1, values, 0);
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+        GLES20.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void bufferData(int target, int size, Buffer data, int usage) {
+        GLES20.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public int genTexture() {
+        GLES20.glGenTextures(1, values, 0);
+        return values[0];
+    }
+
+    @Override
+    public void activeTexture(int texture) {
+        GLES20.glActiveTexture(texture);
+    }
+
+    @Override
+    public void bindTexture(int target, int texture) {
+        GLES20.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void texParameteri(int target, int pname, int param) {
+        GLES20.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap) {
+        GLUtils.texImage2D(target, level, bitmap, 0);
+    }
+
+    @Override
+    public void drawArrays(int mode, int first, int count) {
+        GLES20.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, Buffer indices) {
+        GLES20.glDrawElements(mode, count, type, indices);
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, int offset) {
+        GLES20.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void clearColor(float red, float green, float blue, float alpha) {
+        GLES20.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void clear(int mask) {
+        GLES20.glClear(mask);
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        GLES20.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void scissor(int x, int y, int width, int height) {
+        GLES20.glScissor(x, y, width, height);
+    }
+
+    @Override
+    public void enable(int cap) {
+        GLES20.glEnable(cap);
+    }
+
+    @Override
+    public void disable(int cap) {
+        GLES20.glDisable(cap);
+    }
+
+    @Override
+    public void blendFunc(int sfactor, int dfactor) {
+        GLES20.glBlendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public int getError() {
+        return GLES20.glGetError();
+    }
+}
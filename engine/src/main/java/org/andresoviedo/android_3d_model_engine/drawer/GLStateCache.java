@@ -0,0 +1,371 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+
+/**
+ * Backend that remembers the current program, texture bindings, buffer bindings and enabled vertex attributes, and
+ * skips the calls that wouldn't change them (i.e. consecutive draws with the same program and texture).
+ *
+ * It must get all the calls made to the context, and it must be reset when a new context is created.
+ *
+ * @author andresoviedo
+ */
+public class GLStateCache implements GLBackend {
+
+    /**
+     * Attributes tracked. The engine binds its attributes to the first locations, and OpenGL ES 2.0 supports at
+     * least 8
+     */
+    static final int MAX_VERTEX_ATTRIBS = 8;
+    private static final int MAX_TEXTURE_UNITS = 8;
+
+    private static final int UNKNOWN = -1;
+    private static final int DISABLED = 0;
+    private static final int ENABLED = 1;
+
+    private final GLBackend delegate;
+
+    private int program;
+    private int activeTexture;
+    private final int[] textures = new int[MAX_TEXTURE_UNITS];
+    /**
+     * array buffer and element array buffer
+     */
+    private final int[] buffers = new int[2];
+    private final int[] enabledAttributes = new int[MAX_VERTEX_ATTRIBS];
+
+    private int saved;
+
+    /**
+     * @param delegate the backend running the calls
+     */
+    public GLStateCache(GLBackend delegate) {
+        this.delegate = delegate;
+        invalidate();
+    }
+
+    /**
+     * Forget the state, because the context was changed by someone else. Every call is run again once
+     */
+    public void invalidate() {
+        program = UNKNOWN;
+        activeTexture = UNKNOWN;
+        Arrays.fill(textures, UNKNOWN);
+        Arrays.fill(buffers, UNKNOWN);
+        Arrays.fill(enabledAttributes, UNKNOWN);
+    }
+
+    /**
+     * Start with the initial state of a new context
+     */
+    public void reset() {
+        program = 0;
+        activeTexture = GLES20.GL_TEXTURE0;
+        Arrays.fill(textures, 0);
+        Arrays.fill(buffers, 0);
+        Arrays.fill(enabledAttributes, DISABLED);
+    }
+
+    /**
+     * @return number of calls skipped since the last {@link #resetSavedCount()}
+     */
+    public int getSavedCount() {
+        return saved;
+    }
+
+    public void resetSavedCount() {
+        saved = 0;
+    }
+
+    private static int getBufferSlot(int target) {
+        switch (target) {
+            case GLES20.GL_ARRAY_BUFFER:
+                return 0;
+            case GLES20.GL_ELEMENT_ARRAY_BUFFER:
+                return 1;
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    public int createShader(int type) {
+        return delegate.createShader(type);
+    }
+
+    @Override
+    public void shaderSource(int shader, String source) {
+        delegate.shaderSource(shader, source);
+    }
+
+    @Override
+    public void compileShader(int shader) {
+        delegate.compileShader(shader);
+    }
+
+    @Override
+    public int getShaderi(int shader, int pname) {
+        return delegate.getShaderi(shader, pname);
+    }
+
+    @Override
+    public String getShaderInfoLog(int shader) {
+        return delegate.getShaderInfoLog(shader);
+    }
+
+    @Override
+    public void deleteShader(int shader) {
+        delegate.deleteShader(shader);
+    }
+
+    @Override
+    public int createProgram() {
+        return delegate.createProgram();
+    }
+
+    @Override
+    public void attachShader(int program, int shader) {
+        delegate.attachShader(program, shader);
+    }
+
+    @Override
+    public void bindAttribLocation(int program, int index, String name) {
+        delegate.bindAttribLocation(program, index, name);
+    }
+
+    @Override
+    public void linkProgram(int program) {
+        delegate.linkProgram(program);
+    }
+
+    @Override
+    public int getProgrami(int program, int pname) {
+        return delegate.getProgrami(program, pname);
+    }
+
+    @Override
+    public String getProgramInfoLog(int program) {
+        return delegate.getProgramInfoLog(program);
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+        // a new program may get the same name
+        if (program == this.program) {
+            this.program = UNKNOWN;
+        }
+        delegate.deleteProgram(program);
+    }
+
+    @Override
+    public void useProgram(int program) {
+        if (program == this.program) {
+            saved++;
+            return;
+        }
+        this.program = program;
+        delegate.useProgram(program);
+    }
+
+    @Override
+    public int getUniformLocation(int program, String name) {
+        return delegate.getUniformLocation(program, name);
+    }
+
+    @Override
+    public int getAttribLocation(int program, String name) {
+        return delegate.getAttribLocation(program, name);
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        delegate.uniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void uniform4fv(int location, int count, float[] value, int offset) {
+        delegate.uniform4fv(location, count, value, offset);
+    }
+
+    @Override
+    public void uniform3fv(int location, int count, float[] value, int offset) {
+        delegate.uniform3fv(location, count, value, offset);
+    }
+
+    @Override
+    public void uniform3f(int location, float x, float y, float z) {
+        delegate.uniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void uniform1i(int location, int x) {
+        delegate.uniform1i(location, x);
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            if (enabledAttributes[index] == ENABLED) {
+                saved++;
+                return;
+            }
+            enabledAttributes[index] = ENABLED;
+        }
+        delegate.enableVertexAttribArray(index);
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            if (enabledAttributes[index] == DISABLED) {
+                saved++;
+                return;
+            }
+            enabledAttributes[index] = DISABLED;
+        }
+        delegate.disableVertexAttribArray(index);
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data) {
+        delegate.vertexAttribPointer(index, size, type, normalized, stride, data);
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        delegate.vertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public int genBuffer() {
+        return delegate.genBuffer();
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        // deleted buffers are unbound
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] == buffer) {
+                buffers[i] = 0;
+            }
+        }
+        delegate.deleteBuffer(buffer);
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+        final int slot = getBufferSlot(target);
+        if (slot != -1) {
+            if (buffer == buffers[slot]) {
+                saved++;
+                return;
+            }
+            buffers[slot] = buffer;
+        }
+        delegate.bindBuffer(target, buffer);
+    }
+
+    @Override
+    public void bufferData(int target, int size, Buffer data, int usage) {
+        delegate.bufferData(target, size, data, usage);
+    }
+
+    @Override
+    public int genTexture() {
+        return delegate.genTexture();
+    }
+
+    @Override
+    public void activeTexture(int texture) {
+        if (texture == activeTexture) {
+            saved++;
+            return;
+        }
+        activeTexture = texture;
+        delegate.activeTexture(texture);
+    }
+
+    @Override
+    public void bindTexture(int target, int texture) {
+        final int unit = activeTexture - GLES20.GL_TEXTURE0;
+        if (target != GLES20.GL_TEXTURE_2D || unit < 0 || unit >= MAX_TEXTURE_UNITS) {
+            delegate.bindTexture(target, texture);
+            return;
+        }
+        if (texture == textures[unit]) {
+            saved++;
+            return;
+        }
+        textures[unit] = texture;
+        delegate.bindTexture(target, texture);
+    }
+
+    @Override
+    public void texParameteri(int target, int pname, int param) {
+        delegate.texParameteri(target, pname, param);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap) {
+        delegate.texImage2D(target, level, bitmap);
+    }
+
+    @Override
+    public void drawArrays(int mode, int first, int count) {
+        delegate.drawArrays(mode, first, count);
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, Buffer indices) {
+        delegate.drawElements(mode, count, type, indices);
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, int offset) {
+        delegate.drawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void clearColor(float red, float green, float blue, float alpha) {
+        delegate.clearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void clear(int mask) {
+        delegate.clear(mask);
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        delegate.viewport(x, y, width, height);
+    }
+
+    @Override
+    public void scissor(int x, int y, int width, int height) {
+        delegate.scissor(x, y, width, height);
+    }
+
+    @Override
+    public void enable(int cap) {
+        delegate.enable(cap);
+    }
+
+    @Override
+    public void disable(int cap) {
+        delegate.disable(cap);
+    }
+
+    @Override
+    public void blendFunc(int sfactor, int dfactor) {
+        delegate.blendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public int getError() {
+        return delegate.getError();
+    }
+}
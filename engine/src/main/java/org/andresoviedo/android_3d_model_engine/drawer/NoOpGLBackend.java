@@ -0,0 +1,231 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Backend that doesn't draw anything. Objects get new names, shaders and programs are always compiled and linked and
+ * every uniform and attribute of a program has its own location (attributes get the bound ones), so the engine runs
+ * without a GL context (i.e. to measure the CPU cost of submitting a frame)
+ *
+ * @author andresoviedo
+ */
+public class NoOpGLBackend implements GLBackend {
+
+    private int names;
+    /**
+     * locations by program and name
+     */
+    private final Map<String, Integer> uniforms = new HashMap<>();
+    private final Map<String, Integer> attributes = new HashMap<>();
+
+    private int newName() {
+        return ++names;
+    }
+
+    private static int getLocation(Map<String, Integer> locations, int program, String name) {
+        final String key = program + ":" + name;
+        Integer ret = locations.get(key);
+        if (ret == null) {
+            ret = locations.size();
+            locations.put(key, ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public int createShader(int type) {
+        return newName();
+    }
+
+    @Override
+    public void shaderSource(int shader, String source) {
+    }
+
+    @Override
+    public void compileShader(int shader) {
+    }
+
+    @Override
+    public int getShaderi(int shader, int pname) {
+        return pname == GLES20.GL_COMPILE_STATUS ? GLES20.GL_TRUE : 0;
+    }
+
+    @Override
+    public String getShaderInfoLog(int shader) {
+        return "";
+    }
+
+    @Override
+    public void deleteShader(int shader) {
+    }
+
+    @Override
+    public int createProgram() {
+        return newName();
+    }
+
+    @Override
+    public void attachShader(int program, int shader) {
+    }
+
+    @Override
+    public void bindAttribLocation(int program, int index, String name) {
+        attributes.put(program + ":" + name, index);
+    }
+
+    @Override
+    public void linkProgram(int program) {
+    }
+
+    @Override
+    public int getProgrami(int program, int pname) {
+        return pname == GLES20.GL_LINK_STATUS ? GLES20.GL_TRUE : 0;
+    }
+
+    @Override
+    public String getProgramInfoLog(int program) {
+        return "";
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+    }
+
+    @Override
+    public void useProgram(int program) {
+    }
+
+    @Override
+    public int getUniformLocation(int program, String name) {
+        return getLocation(uniforms, program, name);
+    }
+
+    @Override
+    public int getAttribLocation(int program, String name) {
+        return getLocation(attributes, program, name);
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+    }
+
+    @Override
+    public void uniform4fv(int location, int count, float[] value, int offset) {
+    }
+
+    @Override
+    public void uniform3fv(int location, int count, float[] value, int offset) {
+    }
+
+    @Override
+    public void uniform3f(int location, float x, float y, float z) {
+    }
+
+    @Override
+    public void uniform1i(int location, int x) {
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data) {
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+    }
+
+    @Override
+    public int genBuffer() {
+        return newName();
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+    }
+
+    @Override
+    public void bufferData(int target, int size, Buffer data, int usage) {
+    }
+
+    @Override
+    public int genTexture() {
+        return newName();
+    }
+
+    @Override
+    public void activeTexture(int texture) {
+    }
+
+    @Override
+    public void bindTexture(int target, int texture) {
+    }
+
+    @Override
+    public void texParameteri(int target, int pname, int param) {
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap) {
+    }
+
+    @Override
+    public void drawArrays(int mode, int first, int count) {
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, Buffer indices) {
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, int offset) {
+    }
+
+    @Override
+    public void clearColor(float red, float green, float blue, float alpha) {
+    }
+
+    @Override
+    public void clear(int mask) {
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+    }
+
+    @Override
+    public void scissor(int x, int y, int width, int height) {
+    }
+
+    @Override
+    public void enable(int cap) {
+    }
+
+    @Override
+    public void disable(int cap) {
+    }
+
+    @Override
+    public void blendFunc(int sfactor, int dfactor) {
+    }
+
+    @Override
+    public int getError() {
+        return GLES20.GL_NO_ERROR;
+    }
+}
@@ -0,0 +1,49 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+/**
+ * Locations of the uniforms and attributes of a program, resolved once after linking it, so they are not looked up
+ * by name on every draw. Missing variables have location -1.
+ *
+ * @author andresoviedo
+ */
+final class ProgramLocations {
+
+    // uniforms
+    final int mvpMatrix;
+    final int mvMatrix;
+    final int color;
+    final int colorMask;
+    final int texture;
+    final int lightPos;
+    final int cameraPos;
+    /**
+     * first element of the array, the rest are set with the same call
+     */
+    final int jointTransforms;
+
+    // attributes
+    final int position;
+    final int normal;
+    final int colors;
+    final int textureCoordinate;
+    final int weights;
+    final int jointIndices;
+
+    ProgramLocations(GLBackend gl, int program) {
+        mvpMatrix = gl.getUniformLocation(program, "u_MVPMatrix");
+        mvMatrix = gl.getUniformLocation(program, "u_MVMatrix");
+        color = gl.getUniformLocation(program, "vColor");
+        colorMask = gl.getUniformLocation(program, "vColorMask");
+        texture = gl.getUniformLocation(program, "u_Texture");
+        lightPos = gl.getUniformLocation(program, "u_LightPos");
+        cameraPos = gl.getUniformLocation(program, "u_cameraPos");
+        jointTransforms = gl.getUniformLocation(program, "jointTransforms[0]");
+
+        position = gl.getAttribLocation(program, "a_Position");
+        normal = gl.getAttribLocation(program, "a_Normal");
+        colors = gl.getAttribLocation(program, "a_Color");
+        textureCoordinate = gl.getAttribLocation(program, "a_TexCoordinate");
+        weights = gl.getAttribLocation(program, "in_weights");
+        jointIndices = gl.getAttribLocation(program, "in_jointIndices");
+    }
+}
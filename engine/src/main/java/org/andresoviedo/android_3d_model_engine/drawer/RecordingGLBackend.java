@@ -0,0 +1,478 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Backend that counts the calls and captures them (with their scalar arguments) before passing them to another
+ * backend, so tests can assert on the calls submitted for a frame and benchmarks can count them.
+ *
+ * Call {@link #reset()} at the start of every frame to count the calls of a single frame.
+ *
+ * @author andresoviedo
+ */
+public class RecordingGLBackend implements GLBackend {
+
+    private final GLBackend delegate;
+    private final Map<String, int[]> counters = new HashMap<>();
+    private final List<String> calls = new ArrayList<>();
+    private boolean capturing = true;
+    private int total;
+
+    /**
+     * Record the calls without running them
+     */
+    public RecordingGLBackend() {
+        this(new NoOpGLBackend());
+    }
+
+    /**
+     * @param delegate the backend running the calls
+     */
+    public RecordingGLBackend(GLBackend delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param capturing whether to keep the calls, or only count them (cheaper, for benchmarks)
+     */
+    public void setCapturing(boolean capturing) {
+        this.capturing = capturing;
+    }
+
+    /**
+     * Forget the recorded calls
+     */
+    public void reset() {
+        for (int[] counter : counters.values()) {
+            counter[0] = 0;
+        }
+        calls.clear();
+        total = 0;
+    }
+
+    /**
+     * @param call name of the method (i.e. <code>drawElements</code>)
+     * @return times the method was called
+     */
+    public int getCount(String call) {
+        int[] counter = counters.get(call);
+        return counter != null ? counter[0] : 0;
+    }
+
+    /**
+     * @return number of calls
+     */
+    public int getTotalCount() {
+        return total;
+    }
+
+    /**
+     * @return number of draw calls
+     */
+    public int getDrawCount() {
+        return getCount("drawArrays") + getCount("drawElements");
+    }
+
+    /**
+     * @return the captured calls, like <code>drawArrays(4, 0, 36)</code>
+     */
+    public List<String> getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return whether to capture the call
+     */
+    private boolean record(String call) {
+        int[] counter = counters.get(call);
+        if (counter == null) {
+            counter = new int[1];
+            counters.put(call, counter);
+        }
+        counter[0]++;
+        total++;
+        return capturing;
+    }
+
+    private void capture(String call, String args) {
+        calls.add(call + "(" + args + ")");
+    }
+
+    @Override
+    public int createShader(int type) {
+        int ret = delegate.createShader(type);
+        if (record("createShader")) {
+            capture("createShader", String.valueOf(type));
+        }
+        return ret;
+    }
+
+    @Override
+    public void shaderSource(int shader, String source) {
+        delegate.shaderSource(shader, source);
+        if (record("shaderSource")) {
+            capture("shaderSource", String.valueOf(shader));
+        }
+    }
+
+    @Override
+    public void compileShader(int shader) {
+        delegate.compileShader(shader);
+        if (record("compileShader")) {
+            capture("compileShader", String.valueOf(shader));
+        }
+    }
+
+    @Override
+    public int getShaderi(int shader, int pname) {
+        int ret = delegate.getShaderi(shader, pname);
+        if (record("getShaderi")) {
+            capture("getShaderi", shader + ", " + pname);
+        }
+        return ret;
+    }
+
+    @Override
+    public String getShaderInfoLog(int shader) {
+        String ret = delegate.getShaderInfoLog(shader);
+        if (record("getShaderInfoLog")) {
+            capture("getShaderInfoLog", String.valueOf(shader));
+        }
+        return ret;
+    }
+
+    @Override
+    public void deleteShader(int shader) {
+        delegate.deleteShader(shader);
+        if (record("deleteShader")) {
+            capture("deleteShader", String.valueOf(shader));
+        }
+    }
+
+    @Override
+    public int createProgram() {
+        int ret = delegate.createProgram();
+        if (record("createProgram")) {
+            capture("createProgram", "");
+        }
+        return ret;
+    }
+
+    @Override
+    public void attachShader(int program, int shader) {
+        delegate.attachShader(program, shader);
+        if (record("attachShader")) {
+            capture("attachShader", program + ", " + shader);
+        }
+    }
+
+    @Override
+    public void bindAttribLocation(int program, int index, String name) {
+        delegate.bindAttribLocation(program, index, name);
+        if (record("bindAttribLocation")) {
+            capture("bindAttribLocation", program + ", " + index + ", " + name);
+        }
+    }
+
+    @Override
+    public void linkProgram(int program) {
+        delegate.linkProgram(program);
+        if (record("linkProgram")) {
+            capture("linkProgram", String.valueOf(program));
+        }
+    }
+
+    @Override
+    public int getProgrami(int program, int pname) {
+        int ret = delegate.getProgrami(program, pname);
+        if (record("getProgrami")) {
+            capture("getProgrami", program + ", " + pname);
+        }
+        return ret;
+    }
+
+    @Override
+    public String getProgramInfoLog(int program) {
+        String ret = delegate.getProgramInfoLog(program);
+        if (record("getProgramInfoLog")) {
+            capture("getProgramInfoLog", String.valueOf(program));
+        }
+        return ret;
+    }
+
+    @Override
+    public void deleteProgram(int program) {
+        delegate.deleteProgram(program);
+        if (record("deleteProgram")) {
+            capture("deleteProgram", String.valueOf(program));
+        }
+    }
+
+    @Override
+    public void useProgram(int program) {
+        delegate.useProgram(program);
+        if (record("useProgram")) {
+            capture("useProgram", String.valueOf(program));
+        }
+    }
+
+    @Override
+    public int getUniformLocation(int program, String name) {
+        int ret = delegate.getUniformLocation(program, name);
+        if (record("getUniformLocation")) {
+            capture("getUniformLocation", program + ", " + name);
+        }
+        return ret;
+    }
+
+    @Override
+    public int getAttribLocation(int program, String name) {
+        int ret = delegate.getAttribLocation(program, name);
+        if (record("getAttribLocation")) {
+            capture("getAttribLocation", program + ", " + name);
+        }
+        return ret;
+    }
+
+    @Override
+    public void uniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        delegate.uniformMatrix4fv(location, count, transpose, value, offset);
+        if (record("uniformMatrix4fv")) {
+            capture("uniformMatrix4fv", location + ", " + count + ", " + transpose + ", " + offset);
+        }
+    }
+
+    @Override
+    public void uniform4fv(int location, int count, float[] value, int offset) {
+        delegate.uniform4fv(location, count, value, offset);
+        if (record("uniform4fv")) {
+            capture("uniform4fv", location + ", " + count + ", " + offset);
+        }
+    }
+
+    @Override
+    public void uniform3fv(int location, int count, float[] value, int offset) {
+        delegate.uniform3fv(location, count, value, offset);
+        if (record("uniform3fv")) {
+            capture("uniform3fv", location + ", " + count + ", " + offset);
+        }
+    }
+
+    @Override
+    public void uniform3f(int location, float x, float y, float z) {
+        delegate.uniform3f(location, x, y, z);
+        if (record("uniform3f")) {
+            capture("uniform3f", location + ", " + x + ", " + y + ", " + z);
+        }
+    }
+
+    @Override
+    public void uniform1i(int location, int x) {
+        delegate.uniform1i(location, x);
+        if (record("uniform1i")) {
+            capture("uniform1i", location + ", " + x);
+        }
+    }
+
+    @Override
+    public void enableVertexAttribArray(int index) {
+        delegate.enableVertexAttribArray(index);
+        if (record("enableVertexAttribArray")) {
+            capture("enableVertexAttribArray", String.valueOf(index));
+        }
+    }
+
+    @Override
+    public void disableVertexAttribArray(int index) {
+        delegate.disableVertexAttribArray(index);
+        if (record("disableVertexAttribArray")) {
+            capture("disableVertexAttribArray", String.valueOf(index));
+        }
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data) {
+        delegate.vertexAttribPointer(index, size, type, normalized, stride, data);
+        if (record("vertexAttribPointer")) {
+            capture("vertexAttribPointer", index + ", " + size + ", " + type + ", " + normalized + ", " + stride);
+        }
+    }
+
+    @Override
+    public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        delegate.vertexAttribPointer(index, size, type, normalized, stride, offset);
+        if (record("vertexAttribPointer")) {
+            capture("vertexAttribPointer", index + ", " + size + ", " + type + ", " + normalized + ", " + stride
+                    + ", " + offset);
+        }
+    }
+
+    @Override
+    public int genBuffer() {
+        int ret = delegate.genBuffer();
+        if (record("genBuffer")) {
+            capture("genBuffer", "");
+        }
+        return ret;
+    }
+
+    @Override
+    public void deleteBuffer(int buffer) {
+        delegate.deleteBuffer(buffer);
+        if (record("deleteBuffer")) {
+            capture("deleteBuffer", String.valueOf(buffer));
+        }
+    }
+
+    @Override
+    public void bindBuffer(int target, int buffer) {
+        delegate.bindBuffer(target, buffer);
+        if (record("bindBuffer")) {
+            capture("bindBuffer", target + ", " + buffer);
+        }
+    }
+
+    @Override
+    public void bufferData(int target, int size, Buffer data, int usage) {
+        delegate.bufferData(target, size, data, usage);
+        if (record("bufferData")) {
+            capture("bufferData", target + ", " + size + ", " + usage);
+        }
+    }
+
+    @Override
+    public int genTexture() {
+        int ret = delegate.genTexture();
+        if (record("genTexture")) {
+            capture("genTexture", "");
+        }
+        return ret;
+    }
+
+    @Override
+    public void activeTexture(int texture) {
+        delegate.activeTexture(texture);
+        if (record("activeTexture")) {
+            capture("activeTexture", String.valueOf(texture));
+        }
+    }
+
+    @Override
+    public void bindTexture(int target, int texture) {
+        delegate.bindTexture(target, texture);
+        if (record("bindTexture")) {
+            capture("bindTexture", target + ", " + texture);
+        }
+    }
+
+    @Override
+    public void texParameteri(int target, int pname, int param) {
+        delegate.texParameteri(target, pname, param);
+        if (record("texParameteri")) {
+            capture("texParameteri", target + ", " + pname + ", " + param);
+        }
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap) {
+        delegate.texImage2D(target, level, bitmap);
+        if (record("texImage2D")) {
+            capture("texImage2D", target + ", " + level);
+        }
+    }
+
+    @Override
+    public void drawArrays(int mode, int first, int count) {
+        delegate.drawArrays(mode, first, count);
+        if (record("drawArrays")) {
+            capture("drawArrays", mode + ", " + first + ", " + count);
+        }
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, Buffer indices) {
+        delegate.drawElements(mode, count, type, indices);
+        if (record("drawElements")) {
+            capture("drawElements", mode + ", " + count + ", " + type);
+        }
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, int offset) {
+        delegate.drawElements(mode, count, type, offset);
+        if (record("drawElements")) {
+            capture("drawElements", mode + ", " + count + ", " + type + ", " + offset);
+        }
+    }
+
+    @Override
+    public void clearColor(float red, float green, float blue, float alpha) {
+        delegate.clearColor(red, green, blue, alpha);
+        if (record("clearColor")) {
+            capture("clearColor", red + ", " + green + ", " + blue + ", " + alpha);
+        }
+    }
+
+    @Override
+    public void clear(int mask) {
+        delegate.clear(mask);
+        if (record("clear")) {
+            capture("clear", String.valueOf(mask));
+        }
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+        delegate.viewport(x, y, width, height);
+        if (record("viewport")) {
+            capture("viewport", x + ", " + y + ", " + width + ", " + height);
+        }
+    }
+
+    @Override
+    public void scissor(int x, int y, int width, int height) {
+        delegate.scissor(x, y, width, height);
+        if (record("scissor")) {
+            capture("scissor", x + ", " + y + ", " + width + ", " + height);
+        }
+    }
+
+    @Override
+    public void enable(int cap) {
+        delegate.enable(cap);
+        if (record("enable")) {
+            capture("enable", String.valueOf(cap));
+        }
+    }
+
+    @Override
+    public void disable(int cap) {
+        delegate.disable(cap);
+        if (record("disable")) {
+            capture("disable", String.valueOf(cap));
+        }
+    }
+
+    @Override
+    public void blendFunc(int sfactor, int dfactor) {
+        delegate.blendFunc(sfactor, dfactor);
+        if (record("blendFunc")) {
+            capture("blendFunc", sfactor + ", " + dfactor);
+        }
+    }
+
+    @Override
+    public int getError() {
+        int ret = delegate.getError();
+        if (record("getError")) {
+            capture("getError", "");
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,237 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.BoundingBox;
+import org.andresoviedo.android_3d_model_engine.model.Object3D;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+
+import java.util.Arrays;
+
+/**
+ * Draws of a frame, sorted so the program and the texture change as few times as possible.
+ *
+ * Every draw gets a sort key packed in a long. Opaque draws are sorted by program, texture, material and depth, so
+ * the ones with the same state are drawn together and front-to-back (hidden pixels are discarded by the depth test).
+ * Blended draws must be drawn back-to-front, so they are sorted by depth first. The index of the draw is in the lowest
+ * bits, so all the keys are different and the order of the draws with the same key is kept.
+ *
+ * @author andresoviedo
+ */
+public final class RenderQueue {
+
+    private static final int INDEX_BITS = 16;
+    private static final int MATERIAL_BITS = 10;
+    private static final int TEXTURE_BITS = 10;
+    private static final int PROGRAM_BITS = 8;
+    private static final int DEPTH_BITS = 20;
+    private static final int MAX_DRAWS = 1 << INDEX_BITS;
+    private static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+
+    // the draws, by index
+    private Object3D[] drawers = new Object3D[64];
+    private Object3DData[] objects = new Object3DData[64];
+    private int[] drawModes = new int[64];
+    private int[] drawSizes = new int[64];
+    private int[] textureIds = new int[64];
+    private float[][] lightPositions = new float[64][];
+    private float[][] colorMasks = new float[64][];
+    private long[] keys = new long[64];
+    private long[] scratch = new long[64];
+    private final int[] counts = new int[8 * 256];
+    private int size;
+
+    private float maxDepth = 1;
+    private boolean blending;
+
+    // stats of the last frame
+    private int programSwitches;
+    private int textureSwitches;
+
+    /**
+     * Start a new frame
+     *
+     * @param maxDepth distance to the far plane, farther draws have the same depth
+     * @param blending whether the draws are blended, so they are sorted back-to-front
+     */
+    public void begin(float maxDepth, boolean blending) {
+        this.size = 0;
+        this.maxDepth = maxDepth;
+        this.blending = blending;
+    }
+
+    /**
+     * Add a draw to the frame. The arguments are the ones of
+     * {@link Object3D#draw(Object3DData, float[], float[], int, int, int, float[], float[], float[])}
+     *
+     * @param depth distance from the camera (see {@link #getDepth(Object3DData, float[])})
+     */
+    public void add(Object3D drawer, Object3DData obj, int drawMode, int drawSize, int textureId,
+                    float[] lightPosInWorldSpace, float[] colorMask, float depth) {
+        if (size == MAX_DRAWS) {
+            Log.w("RenderQueue", "Too many draws. Ignoring '" + obj.getId() + "'");
+            return;
+        }
+        if (size == keys.length) {
+            grow();
+        }
+        drawers[size] = drawer;
+        objects[size] = obj;
+        drawModes[size] = drawMode;
+        drawSizes[size] = drawSize;
+        textureIds[size] = textureId;
+        lightPositions[size] = lightPosInWorldSpace;
+        colorMasks[size] = colorMask;
+        keys[size] = getKey(getProgram(drawer), textureId, getMaterial(obj), depth, size);
+        size++;
+    }
+
+    private void grow() {
+        final int length = keys.length * 2;
+        drawers = Arrays.copyOf(drawers, length);
+        objects = Arrays.copyOf(objects, length);
+        drawModes = Arrays.copyOf(drawModes, length);
+        drawSizes = Arrays.copyOf(drawSizes, length);
+        textureIds = Arrays.copyOf(textureIds, length);
+        lightPositions = Arrays.copyOf(lightPositions, length);
+        colorMasks = Arrays.copyOf(colorMasks, length);
+        keys = Arrays.copyOf(keys, length);
+        scratch = new long[length];
+    }
+
+    long getKey(int program, int textureId, int material, float depth, int index) {
+        long quantizedDepth = (long) (Math.max(0, Math.min(1, depth / maxDepth)) * MAX_DEPTH);
+        long state = ((long) (program & ((1 << PROGRAM_BITS) - 1)) << (TEXTURE_BITS + MATERIAL_BITS))
+                | ((long) (textureId & ((1 << TEXTURE_BITS) - 1)) << MATERIAL_BITS)
+                | (material & ((1 << MATERIAL_BITS) - 1));
+        if (blending) {
+            // back-to-front
+            return ((MAX_DEPTH - quantizedDepth) << (PROGRAM_BITS + TEXTURE_BITS + MATERIAL_BITS + INDEX_BITS))
+                    | (state << INDEX_BITS) | index;
+        }
+        return (state << (DEPTH_BITS + INDEX_BITS)) | (quantizedDepth << INDEX_BITS) | index;
+    }
+
+    private static int getProgram(Object3D drawer) {
+        return drawer instanceof DrawerImpl ? ((DrawerImpl) drawer).getProgram() : 0;
+    }
+
+    /**
+     * @return an id of the color of the object, which is the only material uniform
+     */
+    private static int getMaterial(Object3DData obj) {
+        return obj.getColor() != null ? System.identityHashCode(obj.getColor()) : 0;
+    }
+
+    /**
+     * Sort and draw the frame
+     */
+    public void submit(float[] pMatrix, float[] vMatrix, float[] cameraPos) {
+        sort(keys, size);
+        programSwitches = 0;
+        textureSwitches = 0;
+        int program = -1;
+        int textureId = -1;
+        for (int i = 0; i < size; i++) {
+            final int index = (int) (keys[i] & (MAX_DRAWS - 1));
+            final Object3D drawer = drawers[index];
+            if (getProgram(drawer) != program) {
+                program = getProgram(drawer);
+                programSwitches++;
+            }
+            if (textureIds[index] != textureId && textureIds[index] != -1) {
+                textureId = textureIds[index];
+                textureSwitches++;
+            }
+            try {
+                drawer.draw(objects[index], pMatrix, vMatrix, drawModes[index], drawSizes[index], textureIds[index],
+                        lightPositions[index], colorMasks[index], cameraPos);
+            } catch (Exception ex) {
+                Log.e("RenderQueue", "There was a problem rendering the object '" + objects[index].getId() + "':"
+                        + ex.getMessage(), ex);
+            }
+        }
+        // don't keep the removed models
+        Arrays.fill(drawers, 0, size, null);
+        Arrays.fill(objects, 0, size, null);
+        Arrays.fill(lightPositions, 0, size, null);
+        Arrays.fill(colorMasks, 0, size, null);
+    }
+
+    /**
+     * Sort the keys as unsigned, with a least significant digit radix sort of 8 bits per pass. The passes where all
+     * the keys have the same digit are skipped.
+     */
+    void sort(long[] keys, int size) {
+        if (scratch.length < size) {
+            scratch = new long[keys.length];
+        }
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < size; i++) {
+            final long key = keys[i];
+            for (int pass = 0; pass < 8; pass++) {
+                counts[pass * 256 + (int) ((key >>> (pass * 8)) & 0xFF)]++;
+            }
+        }
+        long[] src = keys;
+        long[] dst = scratch;
+        for (int pass = 0; pass < 8; pass++) {
+            final int offset = pass * 256;
+            final int shift = pass * 8;
+            if (counts[offset + (int) ((src[0] >>> shift) & 0xFF)] == size) {
+                continue;
+            }
+            // start of every bucket
+            int start = 0;
+            for (int digit = 0; digit < 256; digit++) {
+                final int count = counts[offset + digit];
+                counts[offset + digit] = start;
+                start += count;
+            }
+            for (int i = 0; i < size; i++) {
+                final long key = src[i];
+                dst[counts[offset + (int) ((key >>> shift) & 0xFF)]++] = key;
+            }
+            final long[] temp = src;
+            src = dst;
+            dst = temp;
+        }
+        if (src != keys) {
+            System.arraycopy(src, 0, keys, 0, size);
+        }
+    }
+
+    /**
+     * @param obj        the object
+     * @param viewMatrix the view matrix (column-major)
+     * @return distance from the camera to the center of the bounding box, along the view direction
+     */
+    public static float getDepth(Object3DData obj, float[] viewMatrix) {
+        final BoundingBox box = obj.getBoundingBox();
+        final float[] min = box.getMin(), max = box.getMax();
+        final float x = (min[0] + max[0]) / 2, y = (min[1] + max[1]) / 2, z = (min[2] + max[2]) / 2;
+        // the camera looks to -z
+        return -(viewMatrix[2] * x + viewMatrix[6] * y + viewMatrix[10] * z + viewMatrix[14]);
+    }
+
+    /**
+     * @return number of draws in the frame
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return times the program changed in the last frame
+     */
+    public int getProgramSwitches() {
+        return programSwitches;
+    }
+
+    /**
+     * @return times the texture changed in the last frame
+     */
+    public int getTextureSwitches() {
+        return textureSwitches;
+    }
+}
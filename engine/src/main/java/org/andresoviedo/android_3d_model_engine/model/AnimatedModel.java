@@ -114,6 +114,10 @@ public class AnimatedModel extends Object3DData {
 	 *         animation pose.
 	 */
 	public float[][] getJointTransforms() {
+		// partitions are animated with the model
+		if (getParent() instanceof AnimatedModel) {
+			return ((AnimatedModel) getParent()).getJointTransforms();
+		}
 		return jointMatrices;
 	}
 
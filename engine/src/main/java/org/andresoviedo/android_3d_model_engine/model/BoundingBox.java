@@ -1,7 +1,5 @@
 package org.andresoviedo.android_3d_model_engine.model;
 
-import android.opengl.Matrix;
-
 import java.nio.FloatBuffer;
 
 /**
@@ -21,6 +19,14 @@ public final class BoundingBox {
     private final float[] max;
 
     public static BoundingBox create(String id, FloatBuffer vertexBuffer, float[] modelMatrix) {
+        return create(id, getBounds(vertexBuffer), modelMatrix);
+    }
+
+    /**
+     * @param vertexBuffer the vertices
+     * @return xMin, yMin, zMin, xMax, yMax, zMax of the vertices, in object space
+     */
+    public static float[] getBounds(FloatBuffer vertexBuffer) {
         float xMin = Float.MAX_VALUE, xMax = -Float.MAX_VALUE, yMin = Float.MAX_VALUE, yMax = -Float.MAX_VALUE, zMin =
                 Float.MAX_VALUE, zMax = -Float.MAX_VALUE;
         vertexBuffer = vertexBuffer.asReadOnlyBuffer();
@@ -48,11 +54,34 @@ public final class BoundingBox {
                 zMax = vertexz;
             }
         }
-        float[] min = new float[]{xMin, yMin, zMin, 1};
-        float[] max = new float[]{xMax, yMax, zMax, 1};
-        Matrix.multiplyMV(min,0,modelMatrix,0,min,0);
-        Matrix.multiplyMV(max,0,modelMatrix,0,max,0);
-        return new BoundingBox(id, min[0], max[0], min[1], max[1], min[2], max[2]);
+        return new float[]{xMin, yMin, zMin, xMax, yMax, zMax};
+    }
+
+    /**
+     * Transform the object space bounds. All the 8 corners are transformed, so the box still contains the object when
+     * it's rotated
+     *
+     * @param bounds      xMin, yMin, zMin, xMax, yMax, zMax in object space
+     * @param modelMatrix the model matrix (column-major)
+     */
+    public static BoundingBox create(String id, float[] bounds, float[] modelMatrix) {
+        float xMin = Float.MAX_VALUE, xMax = -Float.MAX_VALUE, yMin = Float.MAX_VALUE, yMax = -Float.MAX_VALUE, zMin =
+                Float.MAX_VALUE, zMax = -Float.MAX_VALUE;
+        for (int corner = 0; corner < 8; corner++) {
+            final float x = bounds[(corner & 1) != 0 ? 3 : 0];
+            final float y = bounds[(corner & 2) != 0 ? 4 : 1];
+            final float z = bounds[(corner & 4) != 0 ? 5 : 2];
+            final float tx = modelMatrix[0] * x + modelMatrix[4] * y + modelMatrix[8] * z + modelMatrix[12];
+            final float ty = modelMatrix[1] * x + modelMatrix[5] * y + modelMatrix[9] * z + modelMatrix[13];
+            final float tz = modelMatrix[2] * x + modelMatrix[6] * y + modelMatrix[10] * z + modelMatrix[14];
+            xMin = Math.min(xMin, tx);
+            xMax = Math.max(xMax, tx);
+            yMin = Math.min(yMin, ty);
+            yMax = Math.max(yMax, ty);
+            zMin = Math.min(zMin, tz);
+            zMax = Math.max(zMax, tz);
+        }
+        return new BoundingBox(id, xMin, xMax, yMin, yMax, zMin, zMax);
     }
 
     public BoundingBox(String id, float xMin, float xMax, float yMin, float yMax, float zMin, float zMax) {
@@ -0,0 +1,99 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+/**
+ * The 6 planes of the volume seen by the camera, extracted from a projection matrix (Gribb &amp; Hartmann). The planes
+ * are in the space the matrix transforms from: world space for the view-projection matrix, object space for the
+ * model-view-projection matrix. Their normals point inside the volume.
+ *
+ * @author andresoviedo
+ */
+public final class Frustum {
+
+    // a, b, c, d of the left, right, bottom, top, near and far planes
+    private final float[] planes = new float[6 * 4];
+
+    /**
+     * @param matrix the projection matrix (column-major), i.e. the view-projection matrix
+     * @return this frustum
+     */
+    public Frustum set(float[] matrix) {
+        for (int i = 0; i < 6; i++) {
+            // each plane is the last row of the matrix plus or minus one of the others
+            final int row = i / 2;
+            final float sign = i % 2 == 0 ? 1 : -1;
+            for (int j = 0; j < 4; j++) {
+                planes[i * 4 + j] = matrix[j * 4 + 3] + sign * matrix[j * 4 + row];
+            }
+        }
+        normalize();
+        return this;
+    }
+
+    /**
+     * Set the planes of another frustum in the space the model matrix transforms from, so the coordinates of a model
+     * can be tested without transforming them.
+     *
+     * @param frustum     the frustum, i.e. in world space
+     * @param modelMatrix the model matrix (column-major)
+     * @return this frustum
+     */
+    public Frustum set(Frustum frustum, float[] modelMatrix) {
+        for (int i = 0; i < 6; i++) {
+            final float a = frustum.planes[i * 4], b = frustum.planes[i * 4 + 1], c = frustum.planes[i * 4 + 2],
+                    d = frustum.planes[i * 4 + 3];
+            // the plane is a row vector, so it's multiplied by the matrix on the left
+            for (int j = 0; j < 4; j++) {
+                planes[i * 4 + j] = a * modelMatrix[j * 4] + b * modelMatrix[j * 4 + 1] + c * modelMatrix[j * 4 + 2]
+                        + d * modelMatrix[j * 4 + 3];
+            }
+        }
+        normalize();
+        return this;
+    }
+
+    private void normalize() {
+        for (int i = 0; i < 6; i++) {
+            final float length = (float) Math.sqrt(planes[i * 4] * planes[i * 4] + planes[i * 4 + 1] * planes[i * 4 + 1]
+                    + planes[i * 4 + 2] * planes[i * 4 + 2]);
+            if (length > 0) {
+                for (int j = 0; j < 4; j++) {
+                    planes[i * 4 + j] /= length;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the box is completely outside the frustum
+     */
+    public boolean intersects(BoundingBox box) {
+        return intersects(box.getxMin(), box.getyMin(), box.getzMin(), box.getxMax(), box.getyMax(), box.getzMax());
+    }
+
+    /**
+     * @return <code>false</code> if the box is completely outside the frustum. Boxes crossing a corner of the frustum
+     * may be reported as intersecting
+     */
+    public boolean intersects(float xMin, float yMin, float zMin, float xMax, float yMax, float zMax) {
+        for (int i = 0; i < 6; i++) {
+            final float a = planes[i * 4], b = planes[i * 4 + 1], c = planes[i * 4 + 2], d = planes[i * 4 + 3];
+            // the corner of the box farthest along the normal of the plane
+            if (a * (a > 0 ? xMax : xMin) + b * (b > 0 ? yMax : yMin) + c * (c > 0 ? zMax : zMin) + d < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>false</code> if the sphere is completely outside the frustum
+     */
+    public boolean intersects(float x, float y, float z, float radius) {
+        for (int i = 0; i < 6; i++) {
+            if (planes[i * 4] * x + planes[i * 4 + 1] * y + planes[i * 4 + 2] * z + planes[i * 4 + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -20,6 +20,7 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -60,8 +61,9 @@ public class Object3DData {
 	private FloatBuffer vertexBuffer = null;
 	private FloatBuffer vertexNormalsBuffer = null;
 	private IntBuffer drawOrderBuffer = null;
-	private ShortBuffer shortDrawOrderBuffer = null;  // in case system doesn't support ints
-	private ArrayList<Tuple3> texCoords;
+	private ShortBuffer shortDrawOrderBuffer = null;  // 16 bit indices, if all the vertices are addressable
+	private boolean shortDrawOrderChecked;
+	private FloatBuffer texCoords; // u,v,w per tex coord
 	private Faces faces;
 	private FaceMaterials faceMats;
 	private Materials materials;
@@ -73,11 +75,25 @@ public class Object3DData {
 	private FloatBuffer vertexNormalsArrayBuffer = null;
 	private FloatBuffer textureCoordsArrayBuffer = null;
 	private List<int[]> drawModeList = null;
+	private List<Submesh> submeshes = null;
 	private byte[] textureData = null;
 	private List<InputStream> textureStreams = null;
 
 	// derived data
 	private BoundingBox boundingBox;
+	// the bounds in object space, rescanned only when the geometry changes, and the matrix the box was built with
+	private float[] localBounds;
+	private int localBoundsVersion;
+	private final float[] boundingBoxMatrix = new float[16];
+	// simplified versions of the object, from the most detailed to the least. Built in background
+	private volatile List<Object3DData> levelsOfDetail;
+	// parts of the object addressable with 16 bit indices, drawn instead of the object. Built in background
+	private volatile List<Object3DData> partitions;
+	// the object this is a level of detail or a partition of
+	private Object3DData parent;
+	// the interleaved vertices, and the version of the geometry they were built from
+	private volatile VertexLayout vertexLayout;
+	private int vertexLayoutVersion;
 
 	// Transformation data
 	protected float[] position = new float[] { 0f, 0f, 0f };
@@ -95,6 +111,8 @@ public class Object3DData {
 
 	// whether the object has changed
 	private boolean changed;
+	// incremented every time the geometry changes, so derived geometry (i.e. wireframe) can be rebuilt
+	private int version;
 
 	// Async Loader
 	private WavefrontLoader.ModelDimensions modelDimensions;
@@ -129,7 +147,7 @@ public class Object3DData {
 		this.textureData = texData;
 	}
 
-	public Object3DData(FloatBuffer verts, FloatBuffer normals, ArrayList<Tuple3> texCoords, Faces faces,
+	public Object3DData(FloatBuffer verts, FloatBuffer normals, FloatBuffer texCoords, Faces faces,
 			FaceMaterials faceMats, Materials materials) {
 		super();
 		this.vertexBuffer = verts;
@@ -173,6 +191,7 @@ public class Object3DData {
 	public Object3DData setFaces(Faces faces) {
 		this.faces = faces;
 		this.drawOrderBuffer = faces.getIndexBuffer();
+		this.version++;
 		return this;
 	}
 
@@ -188,6 +207,26 @@ public class Object3DData {
 		return changed;
 	}
 
+	/**
+	 * Flag the object as changed. Call this after modifying the content of the buffers, so the derived geometry
+	 * is rebuilt. Replacing the buffers using the setters already increments the version
+	 *
+	 * @param changed whether the object has changed
+	 */
+	public void setChanged(boolean changed) {
+		this.changed = changed;
+		if (changed) {
+			this.version++;
+		}
+	}
+
+	/**
+	 * @return the version of the geometry of the object
+	 */
+	public int getVersion() {
+		return version;
+	}
+
 	public Object3DData setId(String id) {
 		this.id = id;
 		return this;
@@ -220,6 +259,7 @@ public class Object3DData {
 
 	public Object3DData setDrawMode(int drawMode) {
 		this.drawMode = drawMode;
+		this.version++;
 		return this;
 	}
 
@@ -341,7 +381,8 @@ public class Object3DData {
 	}
 
 	public float[] getModelMatrix(){
-		return newModelMatrix;
+		// parts are drawn where the object is
+		return parent != null ? parent.getModelMatrix() : newModelMatrix;
 	}
 
 	public IntBuffer getDrawOrder() {
@@ -349,21 +390,32 @@ public class Object3DData {
 	}
 
     /**
-     * In case OpenGL doesn't support using GL_UNSIGNED_INT for glDrawElements(), then use this buffer
-     * @return the draw buffer as short
+     * The draw buffer as 16 bit indices, to be drawn with GL_UNSIGNED_SHORT. Bigger objects are split in partitions
+     * (see {@link #getPartitions()})
+     * @return the draw buffer as (unsigned) short or <code>null</code> if there are indices greater than 65535
      */
 	public ShortBuffer getDrawOrderAsShort() {
-		if (shortDrawOrderBuffer == null && drawOrderBuffer != null){
-			shortDrawOrderBuffer = createNativeByteBuffer(drawOrderBuffer.capacity() * 2).asShortBuffer();
+		if (!shortDrawOrderChecked && drawOrderBuffer != null){
+			shortDrawOrderChecked = true;
+			ShortBuffer buffer = createNativeByteBuffer(drawOrderBuffer.capacity() * 2).asShortBuffer();
 			for (int i=0; i<drawOrderBuffer.capacity(); i++){
-			    shortDrawOrderBuffer.put((short)drawOrderBuffer.get(i));
+				int index = drawOrderBuffer.get(i);
+				if (index > 0xFFFF) {
+					return null;
+				}
+			    buffer.put(i, (short)index);
             }
+			shortDrawOrderBuffer = buffer;
 		}
 		return shortDrawOrderBuffer;
 	}
 
 	public Object3DData setDrawOrder(IntBuffer drawBuffer) {
 		this.drawOrderBuffer = drawBuffer;
+		this.shortDrawOrderBuffer = null;
+		this.shortDrawOrderChecked = false;
+		this.partitions = null;
+		this.version++;
 		return this;
 	}
 
@@ -408,7 +460,7 @@ public class Object3DData {
 		return vertexNormalsBuffer;
 	}
 
-	public ArrayList<Tuple3> getTexCoords() {
+	public FloatBuffer getTexCoords() {
 		return texCoords;
 	}
 
@@ -432,6 +484,7 @@ public class Object3DData {
 
 	public Object3DData setVertexBuffer(FloatBuffer vertexBuffer) {
 		this.vertexBuffer = vertexBuffer;
+		this.version++;
 		return this;
 	}
 
@@ -441,6 +494,7 @@ public class Object3DData {
 
 	public Object3DData setVertexNormalsBuffer(FloatBuffer vertexNormalsBuffer) {
 		this.vertexNormalsBuffer = vertexNormalsBuffer;
+		this.version++;
 		return this;
 	}
 
@@ -450,6 +504,7 @@ public class Object3DData {
 
 	public Object3DData setVertexArrayBuffer(FloatBuffer vertexArrayBuffer) {
 		this.vertexArrayBuffer = vertexArrayBuffer;
+		this.version++;
 		return this;
 	}
 
@@ -459,6 +514,7 @@ public class Object3DData {
 
 	public Object3DData setVertexNormalsArrayBuffer(FloatBuffer vertexNormalsArrayBuffer) {
 		this.vertexNormalsArrayBuffer = vertexNormalsArrayBuffer;
+		this.version++;
 		return this;
 	}
 
@@ -477,6 +533,17 @@ public class Object3DData {
 
 	public Object3DData setDrawModeList(List<int[]> drawModeList) {
 		this.drawModeList = drawModeList;
+		this.version++;
+		return this;
+	}
+
+	public List<Submesh> getSubmeshes() {
+		return submeshes;
+	}
+
+	public Object3DData setSubmeshes(List<Submesh> submeshes) {
+		this.submeshes = submeshes;
+		this.version++;
 		return this;
 	}
 
@@ -702,12 +769,98 @@ public class Object3DData {
 		if (vertexBuffer == null){
 			vertexBuffer = getVertexArrayBuffer();
 		}
-		if (boundingBox == null) {
-			boundingBox = BoundingBox.create(getId()+"_BoundingBox", vertexBuffer, getModelMatrix());
+		// the vertices are scanned again only when the geometry changes. When the object moves, the corners are moved
+		if (localBounds == null || localBoundsVersion != version) {
+			localBounds = BoundingBox.getBounds(vertexBuffer);
+			localBoundsVersion = version;
+			boundingBox = null;
+		}
+		final float[] modelMatrix = getModelMatrix();
+		if (boundingBox == null || !Arrays.equals(boundingBoxMatrix, modelMatrix)) {
+			boundingBox = BoundingBox.create(getId()+"_BoundingBox", localBounds, modelMatrix);
+			System.arraycopy(modelMatrix, 0, boundingBoxMatrix, 0, 16);
 		}
 		return boundingBox;
 	}
 
+	public List<Object3DData> getLevelsOfDetail() {
+		return levelsOfDetail;
+	}
+
+	public void setLevelsOfDetail(List<Object3DData> levelsOfDetail) {
+		this.levelsOfDetail = levelsOfDetail;
+	}
+
+	/**
+	 * Get the level of detail to draw, depending on the size of the object on the screen. The triangles drawn are
+	 * proportional to the projected area of the bounding box, so every triangle is still a few pixels big.
+	 *
+	 * @param viewMatrix       the view matrix
+	 * @param projectionMatrix the projection matrix
+	 * @return this object if it's close enough (or it has no levels of detail), the level of detail otherwise
+	 */
+	public Object3DData getLevelOfDetail(float[] viewMatrix, float[] projectionMatrix) {
+		List<Object3DData> levels = this.levelsOfDetail;
+		if (levels == null || levels.isEmpty() || getDrawOrder() == null) {
+			return this;
+		}
+		BoundingBox box = getBoundingBox();
+		float[] min = box.getMin(), max = box.getMax();
+		float dx = max[0] - min[0], dy = max[1] - min[1], dz = max[2] - min[2];
+		float radius = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) / 2;
+		// distance from the camera to the center of the bounding box (column-major view matrix)
+		float x = (min[0] + max[0]) / 2, y = (min[1] + max[1]) / 2, z = (min[2] + max[2]) / 2;
+		float viewX = viewMatrix[0] * x + viewMatrix[4] * y + viewMatrix[8] * z + viewMatrix[12];
+		float viewY = viewMatrix[1] * x + viewMatrix[5] * y + viewMatrix[9] * z + viewMatrix[13];
+		float viewZ = viewMatrix[2] * x + viewMatrix[6] * y + viewMatrix[10] * z + viewMatrix[14];
+		float distance = (float) Math.sqrt(viewX * viewX + viewY * viewY + viewZ * viewZ);
+		if (distance <= radius) {
+			return this;
+		}
+		// fraction of the height of the screen covered by the object
+		float screenFraction = radius * projectionMatrix[5] / distance;
+		float needed = Math.min(1, 4 * screenFraction * screenFraction);
+		Object3DData ret = this;
+		float triangles = getDrawOrder().capacity();
+		for (Object3DData level : levels) {
+			if (level.getDrawOrder().capacity() / triangles < needed) {
+				break;
+			}
+			ret = level;
+		}
+		return ret;
+	}
+
+	public List<Object3DData> getPartitions() {
+		return partitions;
+	}
+
+	public void setPartitions(List<Object3DData> partitions) {
+		this.partitions = partitions;
+	}
+
+	/**
+	 * @return the interleaved vertices, or <code>null</code> if they weren't built or the geometry changed, so the
+	 * separate buffers are drawn instead
+	 */
+	public VertexLayout getVertexLayout() {
+		VertexLayout ret = this.vertexLayout;
+		return ret != null && vertexLayoutVersion == version ? ret : null;
+	}
+
+	public void setVertexLayout(VertexLayout vertexLayout) {
+		this.vertexLayoutVersion = version;
+		this.vertexLayout = vertexLayout;
+	}
+
+	public Object3DData getParent() {
+		return parent;
+	}
+
+	public void setParent(Object3DData parent) {
+		this.parent = parent;
+	}
+
 	public void center(float[] newPosition) {
 		// calculate a scale factor
 		Tuple3 center = modelDimensions.getCenter();
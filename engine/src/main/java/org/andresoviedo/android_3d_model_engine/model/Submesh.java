@@ -0,0 +1,38 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+/**
+ * Range of the model drawn with the same material. The range is in vertices when the model is drawn using arrays or
+ * in indices of the draw order otherwise, so the material color is set once per range instead of once per vertex.
+ *
+ * @author andresoviedo
+ */
+
+public final class Submesh {
+
+    private final int start;
+    private final int count;
+    private final float[] color;
+
+    /**
+     * @param start first vertex (or index) of the range
+     * @param count number of vertices (or indices) of the range
+     * @param color diffuse color of the material or <code>null</code> to use the color of the model
+     */
+    public Submesh(int start, int count, float[] color) {
+        this.start = start;
+        this.count = count;
+        this.color = color;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public float[] getColor() {
+        return color;
+    }
+}
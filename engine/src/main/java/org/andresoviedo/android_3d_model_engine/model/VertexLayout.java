@@ -0,0 +1,131 @@
+package org.andresoviedo.android_3d_model_engine.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Vertex attributes of a model interleaved in a single buffer, so all the data of a vertex is fetched together.
+ * Attributes can be stored in less bits (i.e. normals as bytes), so they also use less memory and bandwidth.
+ *
+ * @author andresoviedo
+ */
+public final class VertexLayout {
+
+    /**
+     * Vertex attribute, as passed to <code>glVertexAttribPointer</code>
+     */
+    public static final class Attribute {
+
+        private final int size;
+        private final int type;
+        private final boolean normalized;
+        private final int offset;
+
+        /**
+         * @param size       number of components per vertex
+         * @param type       type of the components (i.e. <code>GL_SHORT</code>)
+         * @param normalized whether the integer values are mapped to [-1,1] (signed) or [0,1] (unsigned)
+         * @param offset     bytes from the start of the vertex
+         */
+        public Attribute(int size, int type, boolean normalized, int offset) {
+            this.size = size;
+            this.type = type;
+            this.normalized = normalized;
+            this.offset = offset;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        public boolean isNormalized() {
+            return normalized;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int stride;
+    private final boolean compact;
+    private final Attribute positions;
+    private final float[] positionMatrix;
+    private final Attribute normals;
+    private final Attribute textureCoords;
+    private final Attribute colors;
+    private final Attribute jointIds;
+    private final Attribute weights;
+
+    /**
+     * @param buffer         the interleaved vertices
+     * @param stride         bytes per vertex
+     * @param compact        whether the attributes are stored in less bits
+     * @param positions      the positions
+     * @param positionMatrix transformation from the stored positions to the model positions (column-major), or
+     *                       <code>null</code> if they are the same
+     * @param normals        the normals, or <code>null</code> if there are none
+     * @param textureCoords  the texture coordinates, or <code>null</code> if there are none
+     * @param colors         the colors, or <code>null</code> if there are none
+     * @param jointIds       the joint ids, or <code>null</code> if there are none
+     * @param weights        the joint weights, or <code>null</code> if there are none
+     */
+    public VertexLayout(ByteBuffer buffer, int stride, boolean compact, Attribute positions, float[] positionMatrix,
+                        Attribute normals, Attribute textureCoords, Attribute colors, Attribute jointIds,
+                        Attribute weights) {
+        this.buffer = buffer;
+        this.stride = stride;
+        this.compact = compact;
+        this.positions = positions;
+        this.positionMatrix = positionMatrix;
+        this.normals = normals;
+        this.textureCoords = textureCoords;
+        this.colors = colors;
+        this.jointIds = jointIds;
+        this.weights = weights;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    public Attribute getPositions() {
+        return positions;
+    }
+
+    public float[] getPositionMatrix() {
+        return positionMatrix;
+    }
+
+    public Attribute getNormals() {
+        return normals;
+    }
+
+    public Attribute getTextureCoords() {
+        return textureCoords;
+    }
+
+    public Attribute getColors() {
+        return colors;
+    }
+
+    public Attribute getJointIds() {
+        return jointIds;
+    }
+
+    public Attribute getWeights() {
+        return weights;
+    }
+}
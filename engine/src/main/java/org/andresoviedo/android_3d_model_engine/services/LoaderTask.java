@@ -4,9 +4,14 @@ import android.app.Activity;
 import android.app.ProgressDialog;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
 
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.cache.MeshCache;
+import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
 
+import java.io.File;
 import java.util.List;
 
 /**
@@ -28,6 +33,35 @@ public abstract class LoaderTask extends AsyncTask<Void, Integer, List<Object3DD
 	 * The dialog that will show the progress of the loading
 	 */
 	private final ProgressDialog dialog;
+	/**
+	 * Cache of the loaded models, so we don't parse them again the next time. <code>null</code> to disable it
+	 */
+	private final MeshCache cache;
+	/**
+	 * Whether to reorder the triangles and vertices of the models for the GPU caches (see {@link MeshOptimizer}).
+	 * It's done only once, as the cache stores the optimized models
+	 */
+	private boolean optimize = true;
+	/**
+	 * Whether to store the vertices in less bits for drawing (see {@link VertexQuantizer})
+	 */
+	private boolean quantize = true;
+	/**
+	 * Whether to interleave the vertices for drawing (see {@link VertexInterleaver}). Quantized vertices are always
+	 * interleaved
+	 */
+	private boolean interleave = true;
+	/**
+	 * Whether to keep the float buffers of the interleaved attributes, i.e. to change the geometry of the models
+	 * later. Otherwise, they are released (see {@link VertexInterleaver#releaseAttributes(Object3DData)})
+	 */
+	private boolean keepAttributes = false;
+	/**
+	 * Transform of the chunks published while loading, so all of them are drawn in the same place.
+	 * It's calculated with the model dimensions known when the first chunk is published
+	 */
+	private float[] chunkPosition;
+	private float[] chunkScale;
 
 	/**
 	 * Build a new progress dialog for loading the data model asynchronously
@@ -39,7 +73,9 @@ public abstract class LoaderTask extends AsyncTask<Void, Integer, List<Object3DD
 		// this.dialog = ProgressDialog.show(this.parent, "Please wait ...", "Loading model data...", true);
 		// this.dialog.setTitle(modelId);
 		this.dialog = new ProgressDialog(parent);
-		this.callback = callback; }
+		this.callback = callback;
+		this.cache = parent.getCacheDir() != null ? new MeshCache(new File(parent.getCacheDir(), "meshes")) : null;
+	}
 
 
 	@Override
@@ -56,8 +92,24 @@ public abstract class LoaderTask extends AsyncTask<Void, Integer, List<Object3DD
 	protected List<Object3DData> doInBackground(Void... params) {
 		try {
 		    callback.onStart();
-			List<Object3DData> data = build();
-			build(data);
+			String cacheKey = cache != null ? MeshCache.getKey(getClass().getName(), uri) : null;
+			List<Object3DData> data = cacheKey != null ? cache.load(cacheKey) : null;
+			if (data == null) {
+				data = build();
+				build(data);
+				if (optimize) {
+					optimize(data);
+				}
+				// models with errors (i.e. missing materials) are not cached, so they are fixed the next time.
+				// the file is written in background, so the model is drawn as soon as possible
+				if (cacheKey != null && !hasErrors(data)) {
+					cache.saveInBackground(cacheKey, data);
+				}
+			}
+			partition(data);
+			if (interleave || quantize) {
+				interleave(data, quantize, keepAttributes);
+			}
             callback.onLoadComplete(data);
 			return  data;
 		} catch (Exception ex) {
@@ -66,6 +118,78 @@ public abstract class LoaderTask extends AsyncTask<Void, Integer, List<Object3DD
 		}
 	}
 
+	public void setOptimize(boolean optimize) {
+		this.optimize = optimize;
+	}
+
+	private static void optimize(List<Object3DData> datas) {
+		long startTime = SystemClock.uptimeMillis();
+		for (Object3DData data : datas) {
+			MeshOptimizer.optimize(data);
+		}
+		Log.i("LoaderTask", "Models optimized in " + (SystemClock.uptimeMillis() - startTime) + " ms");
+	}
+
+	public void setInterleave(boolean interleave) {
+		this.interleave = interleave;
+	}
+
+	public void setQuantize(boolean quantize) {
+		this.quantize = quantize;
+	}
+
+	public void setKeepAttributes(boolean keepAttributes) {
+		this.keepAttributes = keepAttributes;
+	}
+
+	private static void interleave(List<Object3DData> datas, boolean compact, boolean keepAttributes) {
+		long startTime = SystemClock.uptimeMillis();
+		for (Object3DData data : datas) {
+			VertexInterleaver.interleave(data, compact);
+			if (!keepAttributes) {
+				VertexInterleaver.releaseAttributes(data);
+			}
+		}
+		Log.i("LoaderTask", "Models interleaved in " + (SystemClock.uptimeMillis() - startTime) + " ms");
+	}
+
+	private static void partition(List<Object3DData> datas) {
+		for (Object3DData data : datas) {
+			MeshPartitioner.partition(data);
+		}
+	}
+
+	private static boolean hasErrors(List<Object3DData> datas) {
+		for (Object3DData data : datas) {
+			if (!data.getErrors().isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Publish a part of the model, so the user can see it while the rest of the model is loading.
+	 * The chunk is centered and scaled like the whole model will be
+	 *
+	 * @param chunk      the part of the model. It won't be modified anymore
+	 * @param dimensions dimensions of the model loaded so far
+	 */
+	protected void publishChunk(Object3DData chunk, WavefrontLoader.ModelDimensions dimensions) {
+		if (chunkScale == null) {
+			float largest = dimensions.getLargest();
+			float scale = largest != 0 ? 5 / largest : 5;
+			WavefrontLoader.Tuple3 center = dimensions.getCenter();
+			chunkPosition = new float[]{-center.getX(), -center.getY(), -center.getZ()};
+			chunkScale = new float[]{scale, scale, scale};
+			// the first chunk is enough to see something
+			publishProgress(6);
+		}
+		chunk.setPosition(chunkPosition.clone());
+		chunk.setScale(chunkScale.clone());
+		callback.onLoadChunk(chunk);
+	}
+
 	protected abstract List<Object3DData> build() throws Exception;
 
 	protected abstract void build(List<Object3DData> data) throws Exception;
@@ -92,6 +216,12 @@ public abstract class LoaderTask extends AsyncTask<Void, Integer, List<Object3DD
 			case 5:
 				// Toast.makeText(parent, modelId + " Build!", Toast.LENGTH_LONG).show();
 				break;
+			case 6:
+				// part of the model is already drawn. let the user see it
+				if (dialog.isShowing()) {
+					dialog.dismiss();
+				}
+				break;
 		}
 	}
 
@@ -110,6 +240,14 @@ public abstract class LoaderTask extends AsyncTask<Void, Integer, List<Object3DD
 
         void onLoadError(Exception ex);
 
+        /**
+         * Called while loading, with parts of the model that can be drawn before the whole model is loaded.
+         * The chunks are replaced by the model passed to {@link #onLoadComplete(List)}
+         *
+         * @param chunk part of the model
+         */
+        void onLoadChunk(Object3DData chunk);
+
         void onLoadComplete(List<Object3DData> data);
     }
 }
\ No newline at end of file
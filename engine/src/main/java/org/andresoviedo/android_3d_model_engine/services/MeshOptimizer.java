@@ -0,0 +1,395 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reorders the triangles and vertices of the models, so they are drawn faster by the GPU:
+ * <ul>
+ * <li>Triangles are reordered so the vertices already transformed (post-transform cache) are reused as much as
+ * possible, using the "Linear-speed vertex cache optimisation" algorithm by Tom Forsyth</li>
+ * <li>Vertices are then reordered in the order they are first used by the triangles, so they are fetched
+ * sequentially from memory</li>
+ * </ul>
+ * The image is the same, only the order of the data changes. Triangles are only reordered inside every submesh.
+ *
+ * @author andresoviedo
+ */
+public final class MeshOptimizer {
+
+    /**
+     * Size of the simulated post-transform cache
+     */
+    public static final int CACHE_SIZE = 32;
+
+    /**
+     * Size of the FIFO cache used to report the statistics. Most GPUs have 16-32 entries
+     */
+    public static final int STATS_CACHE_SIZE = 16;
+
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRI_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+    private static final int MAX_VALENCE = 32;
+
+    // score of the vertex by its position in the cache and by the number of triangles still to be drawn
+    private static final float[] CACHE_SCORES = new float[CACHE_SIZE];
+    private static final float[] VALENCE_SCORES = new float[MAX_VALENCE + 1];
+
+    static {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (i < 3) {
+                // the vertices of the last triangle are scored the same, so there is no preferred direction
+                CACHE_SCORES[i] = LAST_TRI_SCORE;
+            } else {
+                CACHE_SCORES[i] = (float) Math.pow(1 - (i - 3) / (float) (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+            }
+        }
+        for (int i = 1; i <= MAX_VALENCE; i++) {
+            VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+        }
+    }
+
+    private MeshOptimizer() {
+    }
+
+    /**
+     * Vertex cache efficiency of a list of triangles
+     */
+    public static final class Statistics {
+
+        /**
+         * Average cache miss ratio: transformed vertices per triangle. 3 is the worst, 0.5 the best for big meshes
+         */
+        public final float acmr;
+        /**
+         * Average transform to vertex ratio: transformed vertices per vertex. 1 is the best
+         */
+        public final float atvr;
+
+        Statistics(float acmr, float atvr) {
+            this.acmr = acmr;
+            this.atvr = atvr;
+        }
+
+        @Override
+        public String toString() {
+            return "ACMR: " + acmr + ", ATVR: " + atvr;
+        }
+    }
+
+    /**
+     * Optimize the model for drawing. Models drawn using arrays are welded first (see
+     * {@link Object3DBuilder#weldVertexArrays(Object3DData)}), so vertices can be reused at all.
+     * Only models made of triangles are optimized.
+     *
+     * @param obj the model
+     * @return the same model
+     */
+    public static Object3DData optimize(Object3DData obj) {
+        if (obj.getDrawMode() != GLES20.GL_TRIANGLES || obj.getDrawModeList() != null) {
+            return obj;
+        }
+        if (obj.getDrawOrder() == null && obj.isDrawUsingArrays() && !(obj instanceof AnimatedModel)) {
+            Object3DBuilder.weldVertexArrays(obj);
+        }
+        final IntBuffer drawOrder = obj.getDrawOrder();
+        final FloatBuffer positions = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
+                : obj.getVertexBuffer();
+        if (drawOrder == null || positions == null || drawOrder.capacity() < 3) {
+            return obj;
+        }
+        final int vertexCount = positions.capacity() / 3;
+        final int[] indices = new int[drawOrder.capacity()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = drawOrder.get(i);
+            if (indices[i] < 0 || indices[i] >= vertexCount) {
+                Log.w("MeshOptimizer", "Index out of bounds: " + indices[i] + ". Not optimizing '" + obj.getId() + "'");
+                return obj;
+            }
+        }
+
+        // vertex attributes and number of floats per vertex
+        final FloatBuffer[] attributes = getAttributes(obj, positions, vertexCount);
+        final int[] sizes = {3, 3, 2, 4, 3, 3, 3};
+        for (int a = 0; a < attributes.length; a++) {
+            if (attributes[a] != null && attributes[a].capacity() != vertexCount * sizes[a]) {
+                Log.w("MeshOptimizer", "Vertex attribute " + a + " size doesn't match. Not optimizing '"
+                        + obj.getId() + "'");
+                return obj;
+            }
+        }
+
+        final Statistics before = analyze(indices, 0, indices.length, vertexCount, STATS_CACHE_SIZE);
+
+        // triangles are only reordered inside every submesh, so the materials are still right
+        final List<Submesh> submeshes = obj.getSubmeshes();
+        if (submeshes != null) {
+            for (Submesh submesh : submeshes) {
+                optimizeVertexCache(indices, submesh.getStart(), submesh.getCount(), vertexCount);
+            }
+        } else {
+            optimizeVertexCache(indices, 0, indices.length - indices.length % 3, vertexCount);
+        }
+
+        final int[] remap = optimizeVertexFetch(indices, vertexCount);
+        final Statistics after = analyze(indices, 0, indices.length, vertexCount, STATS_CACHE_SIZE);
+
+        final IntBuffer newDrawOrder = createNativeByteBuffer(indices.length * 4).asIntBuffer();
+        newDrawOrder.put(indices).position(0);
+        final FloatBuffer[] remapped = new FloatBuffer[attributes.length];
+        for (int a = 0; a < attributes.length; a++) {
+            remapped[a] = remap(attributes[a], sizes[a], remap);
+        }
+        if (obj.getVertexBuffer() == positions) {
+            obj.setVertexBuffer(remapped[0]);
+        }
+        if (obj.getVertexArrayBuffer() == positions) {
+            obj.setVertexArrayBuffer(remapped[0]);
+        }
+        obj.setVertexNormalsArrayBuffer(remapped[1]);
+        obj.setTextureCoordsArrayBuffer(remapped[2]);
+        obj.setVertexColorsArrayBuffer(remapped[3]);
+        if (obj instanceof AnimatedModel) {
+            ((AnimatedModel) obj).setJointIds(remapped[4]);
+            ((AnimatedModel) obj).setVertexWeights(remapped[5]);
+        }
+        if (remapped[6] != null) {
+            obj.setVertexNormalsBuffer(remapped[6]);
+        }
+        obj.setDrawOrder(newDrawOrder);
+
+        Log.i("MeshOptimizer", "Optimized '" + obj.getId() + "'. Before: " + before + ". After: " + after);
+        return obj;
+    }
+
+    private static FloatBuffer[] getAttributes(Object3DData obj, FloatBuffer positions, int vertexCount) {
+        FloatBuffer[] ret = new FloatBuffer[7];
+        ret[0] = positions;
+        ret[1] = obj.getVertexNormalsArrayBuffer();
+        ret[2] = obj.getTextureCoordsArrayBuffer();
+        ret[3] = obj.getVertexColorsArrayBuffer();
+        if (obj instanceof AnimatedModel) {
+            ret[4] = ((AnimatedModel) obj).getJointIds();
+            ret[5] = ((AnimatedModel) obj).getVertexWeights();
+        }
+        // normals of the vertex buffer, if it's the same as the vertex array (i.e. collada models)
+        FloatBuffer normals = obj.getVertexNormalsBuffer();
+        if (obj.getVertexBuffer() == positions && normals != null && normals.capacity() == vertexCount * 3) {
+            ret[6] = normals;
+        }
+        return ret;
+    }
+
+    /**
+     * Reorder the triangles of the range, so the vertices of the previous triangles are reused as much as possible
+     *
+     * @param indices     the triangles
+     * @param start       first index of the range
+     * @param count       number of indices of the range
+     * @param vertexCount number of vertices
+     */
+    static void optimizeVertexCache(int[] indices, int start, int count, int vertexCount) {
+        final int triangleCount = count / 3;
+        if (triangleCount < 2) {
+            return;
+        }
+
+        // triangles of every vertex (compressed rows)
+        final int[] liveTriangles = new int[vertexCount];
+        for (int i = start; i < start + triangleCount * 3; i++) {
+            liveTriangles[indices[i]]++;
+        }
+        final int[] adjacencyOffsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            adjacencyOffsets[v + 1] = adjacencyOffsets[v] + liveTriangles[v];
+        }
+        final int[] adjacency = new int[triangleCount * 3];
+        final int[] fill = Arrays.copyOf(adjacencyOffsets, vertexCount);
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int v = indices[start + t * 3 + k];
+                adjacency[fill[v]++] = t;
+            }
+        }
+
+        final float[] vertexScores = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexScores[v] = vertexScore(-1, liveTriangles[v]);
+        }
+        final float[] triangleScores = new float[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            int i = start + t * 3;
+            triangleScores[t] = vertexScores[indices[i]] + vertexScores[indices[i + 1]] + vertexScores[indices[i + 2]];
+        }
+
+        final boolean[] emitted = new boolean[triangleCount];
+        final int[] output = new int[triangleCount * 3];
+        // the cache has room for the vertices of the new triangle while it's updated
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int cursor = 0;
+        int best = -1;
+        for (int emittedCount = 0; emittedCount < triangleCount; emittedCount++) {
+            if (best < 0) {
+                // dead end: none of the vertices in the cache has triangles left. Go on in input order
+                while (emitted[cursor]) {
+                    cursor++;
+                }
+                best = cursor;
+            }
+
+            final int triangle = start + best * 3;
+            final int a = indices[triangle], b = indices[triangle + 1], c = indices[triangle + 2];
+            output[emittedCount * 3] = a;
+            output[emittedCount * 3 + 1] = b;
+            output[emittedCount * 3 + 2] = c;
+            emitted[best] = true;
+            liveTriangles[a]--;
+            liveTriangles[b]--;
+            liveTriangles[c]--;
+
+            // the vertices of the triangle go to the front of the cache
+            newCache[0] = a;
+            newCache[1] = b;
+            newCache[2] = c;
+            int newCacheCount = 3;
+            for (int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if (v != a && v != b && v != c) {
+                    newCache[newCacheCount++] = v;
+                }
+            }
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheCount = newCacheCount;
+
+            // update the scores of the vertices in the cache (and the ones that left it) and their triangles
+            best = -1;
+            float bestScore = -1;
+            for (int i = 0; i < cacheCount; i++) {
+                final int v = cache[i];
+                final int position = i < CACHE_SIZE ? i : -1;
+                final float score = vertexScore(position, liveTriangles[v]);
+                final float delta = score - vertexScores[v];
+                vertexScores[v] = score;
+                for (int j = adjacencyOffsets[v]; j < adjacencyOffsets[v + 1]; j++) {
+                    final int t = adjacency[j];
+                    if (emitted[t]) continue;
+                    triangleScores[t] += delta;
+                    if (triangleScores[t] > bestScore) {
+                        bestScore = triangleScores[t];
+                        best = t;
+                    }
+                }
+            }
+            if (cacheCount > CACHE_SIZE) {
+                cacheCount = CACHE_SIZE;
+            }
+        }
+        System.arraycopy(output, 0, indices, start, output.length);
+    }
+
+    private static float vertexScore(int cachePosition, int liveTriangles) {
+        if (liveTriangles == 0) {
+            // no triangles left to draw
+            return -1;
+        }
+        float score = cachePosition >= 0 ? CACHE_SCORES[cachePosition] : 0;
+        return score + VALENCE_SCORES[Math.min(liveTriangles, MAX_VALENCE)];
+    }
+
+    /**
+     * Renumber the vertices in the order they are first used by the triangles. Vertices not used by any triangle go
+     * at the end. The indices are updated.
+     *
+     * @param indices     the triangles
+     * @param vertexCount number of vertices
+     * @return the new index of every vertex
+     */
+    static int[] optimizeVertexFetch(int[] indices, int vertexCount) {
+        final int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] == -1) {
+                remap[v] = next++;
+            }
+            indices[i] = remap[v];
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            if (remap[v] == -1) {
+                remap[v] = next++;
+            }
+        }
+        return remap;
+    }
+
+    private static FloatBuffer remap(FloatBuffer buffer, int size, int[] remap) {
+        if (buffer == null) return null;
+        final FloatBuffer ret = createNativeByteBuffer(buffer.capacity() * 4).asFloatBuffer();
+        for (int v = 0; v < remap.length; v++) {
+            for (int j = 0; j < size; j++) {
+                ret.put(remap[v] * size + j, buffer.get(v * size + j));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Simulate a FIFO post-transform cache
+     *
+     * @param indices     the triangles
+     * @param start       first index
+     * @param count       number of indices
+     * @param vertexCount number of vertices
+     * @param cacheSize   size of the cache
+     * @return the statistics
+     */
+    public static Statistics analyze(int[] indices, int start, int count, int vertexCount, int cacheSize) {
+        if (count < 3) {
+            return new Statistics(0, 0);
+        }
+        // the vertex is in the cache if it was transformed less than cacheSize transforms ago
+        final int[] timestamps = new int[vertexCount];
+        final boolean[] used = new boolean[vertexCount];
+        int transformed = 0;
+        int unique = 0;
+        for (int i = start; i < start + count; i++) {
+            int v = indices[i];
+            if (!used[v]) {
+                used[v] = true;
+                unique++;
+            }
+            if (transformed - timestamps[v] >= cacheSize || timestamps[v] == 0) {
+                // stored +1, so 0 means never transformed
+                transformed++;
+                timestamps[v] = transformed;
+            }
+        }
+        return new Statistics(transformed / (float) (count / 3), transformed / (float) unique);
+    }
+
+    private static ByteBuffer createNativeByteBuffer(int length) {
+        // initialize vertex byte buffer for shape coordinates
+        ByteBuffer bb = ByteBuffer.allocateDirect(length);
+        // use the device hardware's native byte order
+        bb.order(ByteOrder.nativeOrder());
+        return bb;
+    }
+}
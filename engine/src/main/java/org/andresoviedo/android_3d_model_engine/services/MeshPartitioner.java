@@ -0,0 +1,368 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prepares the indexed models to be drawn with 16 bit indices (<code>GL_UNSIGNED_SHORT</code>), which are supported
+ * by all the devices and use half the memory bandwidth of 32 bit indices.
+ *
+ * Models with up to 65536 vertices just get a copy of the indices as shorts. Bigger models are split into partitions
+ * of up to 65536 vertices, which are drawn instead of the model (see {@link Object3DData#getPartitions()}). The
+ * vertices of the model are sorted by partition, so the buffers of every partition are views of the ones of the model
+ * and only the vertices used by several partitions are stored twice. The model keeps its positions and 32 bit
+ * indices, for picking and for building the levels of detail.
+ *
+ * @author andresoviedo
+ */
+public final class MeshPartitioner {
+
+    /**
+     * Maximum number of vertices addressable with 16 bit indices
+     */
+    public static final int MAX_VERTICES = 65536;
+
+    private MeshPartitioner() {
+    }
+
+    /**
+     * Build the 16 bit indices of the model or, if it has too many vertices, split it in partitions.
+     * Models drawn using arrays or with a list of polygons are not changed.
+     *
+     * @param obj the model
+     */
+    public static void partition(Object3DData obj) {
+        if (obj.isDrawUsingArrays() || obj.getDrawOrder() == null || obj.getDrawModeList() != null) {
+            return;
+        }
+        if (obj.getDrawOrderAsShort() != null) {
+            // small enough
+            return;
+        }
+        final int primitiveSize = getPrimitiveSize(obj.getDrawMode());
+        if (primitiveSize == 0) {
+            Log.w("MeshPartitioner", "Can't split '" + obj.getId() + "'. Draw mode: " + obj.getDrawMode());
+            return;
+        }
+        final long startTime = System.currentTimeMillis();
+        final List<Object3DData> partitions = split(obj, primitiveSize);
+        obj.setPartitions(partitions);
+        Log.i("MeshPartitioner", "Model '" + obj.getId() + "' split into " + partitions.size() + " partitions in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    /**
+     * Split a level of detail of a partitioned model like the model. The edges of the model are collapsed along its
+     * triangles, so the triangles of the level still use the vertices of a single partition of the model, and the
+     * partitions of the level share the vertex buffers and the vertex layout of the partitions of the model.
+     *
+     * @param level the level of detail, with the indices of the vertices of the model
+     * @param model the partitioned model
+     * @return <code>false</code> if a primitive uses the vertices of 2 partitions, so the level must be split as any
+     * other model
+     */
+    public static boolean partitionLike(Object3DData level, Object3DData model) {
+        final List<Object3DData> modelPartitions = model.getPartitions();
+        final IntBuffer drawOrder = level.getDrawOrder();
+        final int primitiveSize = getPrimitiveSize(level.getDrawMode());
+        if (modelPartitions == null || modelPartitions.isEmpty() || drawOrder == null || primitiveSize == 0
+                || level.isDrawUsingArrays()) {
+            return false;
+        }
+        // first vertex of every partition of the model
+        final int[] bases = new int[modelPartitions.size() + 1];
+        for (int p = 0; p < modelPartitions.size(); p++) {
+            final Object3DData partition = modelPartitions.get(p);
+            final FloatBuffer positions = partition.getVertexArrayBuffer() != null ? partition.getVertexArrayBuffer()
+                    : partition.getVertexBuffer();
+            bases[p + 1] = bases[p] + positions.capacity() / 3;
+        }
+
+        // the primitives keep their order, so the ones of every partition are together
+        final int count = drawOrder.capacity() - drawOrder.capacity() % primitiveSize;
+        final int[] ends = new int[modelPartitions.size()];
+        int p = 0;
+        for (int i = 0; i < count; i += primitiveSize) {
+            while (p < modelPartitions.size() - 1 && drawOrder.get(i) >= bases[p + 1]) {
+                ends[++p] = i;
+            }
+            for (int k = 0; k < primitiveSize; k++) {
+                final int v = drawOrder.get(i + k);
+                if (v < bases[p] || v >= bases[p + 1]) {
+                    return false;
+                }
+            }
+            ends[p] = i + primitiveSize;
+        }
+        for (p++; p < modelPartitions.size(); p++) {
+            ends[p] = count;
+        }
+
+        // the submesh of every index, so the materials are kept
+        final List<Submesh> submeshes = level.getSubmeshes();
+        final int[] tags = new int[count];
+        if (submeshes != null) {
+            Arrays.fill(tags, -1);
+            for (int s = 0; s < submeshes.size(); s++) {
+                Submesh submesh = submeshes.get(s);
+                Arrays.fill(tags, Math.min(count, submesh.getStart()),
+                        Math.min(count, submesh.getStart() + submesh.getCount()), s);
+            }
+        }
+
+        final List<Object3DData> ret = new ArrayList<>();
+        int start = 0;
+        for (p = 0; p < modelPartitions.size(); p++) {
+            final int end = Math.max(start, ends[p]);
+            if (end > start) {
+                final IntBuffer partitionOrder = createNativeByteBuffer((end - start) * 4).asIntBuffer();
+                for (int i = start; i < end; i++) {
+                    partitionOrder.put(i - start, drawOrder.get(i) - bases[p]);
+                }
+                final Object3DData modelPartition = modelPartitions.get(p);
+                final Object3DData partition = new Object3DData(modelPartition.getVertexArrayBuffer())
+                        .setVertexBuffer(modelPartition.getVertexBuffer())
+                        .setVertexNormalsArrayBuffer(modelPartition.getVertexNormalsArrayBuffer())
+                        .setTextureCoordsArrayBuffer(modelPartition.getTextureCoordsArrayBuffer())
+                        .setVertexColorsArrayBuffer(modelPartition.getVertexColorsArrayBuffer())
+                        .setDrawOrder(partitionOrder)
+                        .setSubmeshes(submeshes != null ? buildSubmeshes(level, tags, start, end) : null)
+                        .setDrawMode(level.getDrawMode())
+                        .setDrawUsingArrays(false)
+                        .setColor(level.getColor())
+                        .setId(level.getId() + "#part" + ret.size());
+                partition.setParent(level);
+                partition.getDrawOrderAsShort();
+                if (modelPartition.getVertexLayout() != null) {
+                    partition.setVertexLayout(modelPartition.getVertexLayout());
+                }
+                ret.add(partition);
+            }
+            start = end;
+        }
+        level.setPartitions(ret);
+        return true;
+    }
+
+    private static int getPrimitiveSize(int drawMode) {
+        switch (drawMode) {
+            case GLES20.GL_TRIANGLES:
+                return 3;
+            case GLES20.GL_LINES:
+                return 2;
+            case GLES20.GL_POINTS:
+                return 1;
+            default:
+                // strips, fans and loops can't be split
+                return 0;
+        }
+    }
+
+    static List<Object3DData> split(Object3DData obj, int primitiveSize) {
+        final IntBuffer drawOrder = obj.getDrawOrder();
+        final int count = drawOrder.capacity() - drawOrder.capacity() % primitiveSize;
+        final FloatBuffer positions = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
+                : obj.getVertexBuffer();
+        final int vertexCount = positions.capacity() / 3;
+
+        // the submesh of every index, so the materials are kept
+        final List<Submesh> submeshes = obj.getSubmeshes();
+        final int[] tags = new int[count];
+        if (submeshes != null) {
+            Arrays.fill(tags, -1);
+            for (int s = 0; s < submeshes.size(); s++) {
+                Submesh submesh = submeshes.get(s);
+                Arrays.fill(tags, Math.min(count, submesh.getStart()),
+                        Math.min(count, submesh.getStart() + submesh.getCount()), s);
+            }
+        }
+
+        // start and end of the indices, first vertex and number of vertices of every partition
+        final List<int[]> ranges = new ArrayList<>();
+        // local index of every vertex in the current partition
+        final int[] local = new int[vertexCount];
+        Arrays.fill(local, -1);
+        // the vertices of the partitions, one partition after the other
+        final int[] vertices = new int[count];
+        final int[] indices = new int[count];
+        int base = 0;
+        int used = 0;
+        int start = 0;
+        for (int i = 0; i < count; i += primitiveSize) {
+            // vertices of the primitive not yet in the partition (repeated vertices are counted twice)
+            int added = 0;
+            for (int k = 0; k < primitiveSize; k++) {
+                if (local[drawOrder.get(i + k)] == -1) {
+                    added++;
+                }
+            }
+            if (used + added > MAX_VERTICES) {
+                ranges.add(new int[]{start, i, base, used});
+                for (int v = base; v < base + used; v++) {
+                    local[vertices[v]] = -1;
+                }
+                base += used;
+                used = 0;
+                start = i;
+            }
+            for (int k = 0; k < primitiveSize; k++) {
+                int v = drawOrder.get(i + k);
+                if (local[v] == -1) {
+                    local[v] = used;
+                    vertices[base + used++] = v;
+                }
+                indices[i + k] = local[v];
+            }
+        }
+        if (count > start) {
+            ranges.add(new int[]{start, count, base, used});
+        }
+
+        final List<Object3DData> ret = new ArrayList<>();
+        if (ranges.isEmpty()) {
+            return ret;
+        }
+        // the model gets the vertices sorted by partition, so the partitions are views of its buffers
+        sortVertices(obj, vertices, base + used);
+        for (int[] range : ranges) {
+            for (int i = range[0]; i < range[1]; i++) {
+                drawOrder.put(i, range[2] + indices[i]);
+            }
+        }
+        // the last incomplete primitive is never drawn
+        for (int i = count; i < drawOrder.capacity(); i++) {
+            drawOrder.put(i, 0);
+        }
+        obj.setDrawOrder(drawOrder);
+        for (int[] range : ranges) {
+            ret.add(buildPartition(obj, range[2], range[3], indices, range[0], range[1], tags, ret.size()));
+        }
+        return ret;
+    }
+
+    /**
+     * Replace the vertex buffers of the model with the vertices in the specified order. Buffers that don't have
+     * attributes for every vertex are removed
+     */
+    private static void sortVertices(Object3DData obj, int[] vertices, int vertexCount) {
+        if (obj.getVertexArrayBuffer() != null) {
+            obj.setVertexArrayBuffer(gather(obj.getVertexArrayBuffer(), 3, vertices, vertexCount));
+        } else {
+            obj.setVertexBuffer(gather(obj.getVertexBuffer(), 3, vertices, vertexCount));
+        }
+        if (obj.getVertexNormalsArrayBuffer() != null) {
+            obj.setVertexNormalsArrayBuffer(gather(obj.getVertexNormalsArrayBuffer(), 3, vertices, vertexCount));
+        } else if (obj.getNormals() != null) {
+            obj.setVertexNormalsBuffer(gather(obj.getNormals(), 3, vertices, vertexCount));
+        }
+        obj.setTextureCoordsArrayBuffer(gather(obj.getTextureCoordsArrayBuffer(), 2, vertices, vertexCount));
+        obj.setVertexColorsArrayBuffer(gather(obj.getVertexColorsArrayBuffer(), 4, vertices, vertexCount));
+        if (obj instanceof AnimatedModel) {
+            final AnimatedModel animated = (AnimatedModel) obj;
+            animated.setJointIds(gather(animated.getJointIds(), 3, vertices, vertexCount));
+            animated.setVertexWeights(gather(animated.getVertexWeights(), 3, vertices, vertexCount));
+        }
+    }
+
+    private static Object3DData buildPartition(Object3DData obj, int base, int vertexCount, int[] indices,
+                                               int start, int end, int[] tags, int number) {
+        final IntBuffer drawOrder = createNativeByteBuffer((end - start) * 4).asIntBuffer();
+        drawOrder.put(indices, start, end - start).position(0);
+
+        final FloatBuffer positions = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
+                : obj.getVertexBuffer();
+        final FloatBuffer normals = obj.getVertexNormalsArrayBuffer() != null ? obj.getVertexNormalsArrayBuffer()
+                : obj.getNormals();
+
+        final Object3DData ret;
+        if (obj instanceof AnimatedModel) {
+            ret = new AnimatedModel(slice(positions, 3, base, vertexCount))
+                    .setJointIds(slice(((AnimatedModel) obj).getJointIds(), 3, base, vertexCount))
+                    .setVertexWeights(slice(((AnimatedModel) obj).getVertexWeights(), 3, base, vertexCount));
+        } else {
+            ret = new Object3DData(slice(positions, 3, base, vertexCount));
+        }
+        ret.setVertexNormalsArrayBuffer(slice(normals, 3, base, vertexCount))
+                .setTextureCoordsArrayBuffer(slice(obj.getTextureCoordsArrayBuffer(), 2, base, vertexCount))
+                .setVertexColorsArrayBuffer(slice(obj.getVertexColorsArrayBuffer(), 4, base, vertexCount))
+                .setDrawOrder(drawOrder)
+                .setSubmeshes(obj.getSubmeshes() != null ? buildSubmeshes(obj, tags, start, end) : null)
+                .setDrawMode(obj.getDrawMode())
+                .setDrawUsingArrays(false)
+                .setColor(obj.getColor())
+                .setId(obj.getId() + "#part" + number);
+        ret.setParent(obj);
+        ret.getDrawOrderAsShort();
+        return ret;
+    }
+
+    /**
+     * @return the ranges of the same submesh, relative to the start of the partition
+     */
+    private static List<Submesh> buildSubmeshes(Object3DData obj, int[] tags, int start, int end) {
+        final List<Submesh> ret = new ArrayList<>();
+        for (int i = start; i < end; ) {
+            int j = i;
+            while (j < end && tags[j] == tags[i]) {
+                j++;
+            }
+            // indices not in any submesh are drawn with the color of the model
+            float[] color = tags[i] != -1 ? obj.getSubmeshes().get(tags[i]).getColor() : null;
+            ret.add(new Submesh(i - start, j - i, color));
+            i = j;
+        }
+        return ret;
+    }
+
+    /**
+     * @return the attributes of the vertices, or <code>null</code> if the model doesn't have them for every vertex
+     */
+    private static FloatBuffer gather(FloatBuffer source, int size, int[] vertices, int vertexCount) {
+        if (source == null) {
+            return null;
+        }
+        final FloatBuffer ret = createNativeByteBuffer(vertexCount * size * 4).asFloatBuffer();
+        for (int v = 0; v < vertexCount; v++) {
+            final int offset = vertices[v] * size;
+            if (offset + size > source.capacity()) {
+                return null;
+            }
+            for (int k = 0; k < size; k++) {
+                ret.put(v * size + k, source.get(offset + k));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the attributes of a range of vertices, sharing the memory of the buffer
+     */
+    private static FloatBuffer slice(FloatBuffer buffer, int size, int base, int vertexCount) {
+        if (buffer == null) {
+            return null;
+        }
+        final FloatBuffer ret = buffer.duplicate();
+        ret.limit((base + vertexCount) * size).position(base * size);
+        return ret.slice();
+    }
+
+    private static ByteBuffer createNativeByteBuffer(int length) {
+        // initialize vertex byte buffer for shape coordinates
+        ByteBuffer bb = ByteBuffer.allocateDirect(length);
+        // use the device hardware's native byte order
+        bb.order(ByteOrder.nativeOrder());
+        return bb;
+    }
+}
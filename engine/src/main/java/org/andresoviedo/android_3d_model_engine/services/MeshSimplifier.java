@@ -0,0 +1,528 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+import org.andresoviedo.android_3d_model_engine.model.VertexLayout;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds simplified versions (levels of detail) of the models, so far away models are drawn with less triangles.
+ *
+ * Edges are collapsed in order of the quadric error metric (Garland and Heckbert). Vertices are only moved to the
+ * position of other vertices, so the levels share the vertex buffers of the model and only the indices are new.
+ * Seams (vertices with the same position but different normal or texture coordinates) are never collapsed, and
+ * borders are only collapsed along the border, so the levels keep the same texture mapping and silhouette.
+ *
+ * @author andresoviedo
+ */
+public final class MeshSimplifier {
+
+    /**
+     * Ratio of triangles of every level of detail
+     */
+    public static final float[] LOD_RATIOS = {0.5f, 0.25f, 0.1f, 0.02f};
+
+    /**
+     * Models with less triangles are drawn fast enough, so they have no levels of detail
+     */
+    public static final int MIN_TRIANGLES = 10000;
+
+    private static final byte INTERIOR = 0;
+    private static final byte BORDER = 1;
+    private static final byte LOCKED = 2;
+
+    // floats per quadric (symmetric 4x4 matrix)
+    private static final int QUADRIC_SIZE = 10;
+    // weight of the planes perpendicular to the borders, so borders are preserved
+    private static final float BORDER_WEIGHT = 10;
+    private static final int MAX_PASSES = 100;
+    // tag of the edges between triangles of different submeshes
+    private static final int MIXED_TAGS = -1;
+
+    private MeshSimplifier() {
+    }
+
+    /**
+     * Build the levels of detail of the model (see {@link #LOD_RATIOS}). Every level is simplified from the previous
+     * one. Levels that couldn't be simplified enough are skipped.
+     *
+     * @param obj the model. It must be made of indexed triangles
+     * @return the levels of detail, from the most detailed to the least. Empty if the model can't be simplified
+     */
+    public static List<Object3DData> buildLevelsOfDetail(Object3DData obj) {
+        final List<Object3DData> ret = new ArrayList<>();
+        final IntBuffer drawOrder = obj.getDrawOrder();
+        final FloatBuffer positions = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
+                : obj.getVertexBuffer();
+        if (obj.getDrawMode() != GLES20.GL_TRIANGLES || obj.getDrawModeList() != null || drawOrder == null
+                || positions == null || obj instanceof AnimatedModel || drawOrder.capacity() / 3 < MIN_TRIANGLES) {
+            return ret;
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final int triangleCount = drawOrder.capacity() / 3;
+        final int[] indices = new int[triangleCount * 3];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = drawOrder.get(i);
+        }
+        final float[] vertices = new float[positions.capacity() - positions.capacity() % 3];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = positions.get(i);
+        }
+
+        // the submesh of every triangle, so the materials are kept
+        final List<Submesh> submeshes = obj.getSubmeshes();
+        final int[] tags = new int[triangleCount];
+        if (submeshes != null) {
+            for (int s = 0; s < submeshes.size(); s++) {
+                Submesh submesh = submeshes.get(s);
+                int end = Math.min(triangleCount, (submesh.getStart() + submesh.getCount()) / 3);
+                for (int t = submesh.getStart() / 3; t < end; t++) {
+                    tags[t] = s;
+                }
+            }
+        }
+
+        int triangles = triangleCount;
+        for (float ratio : LOD_RATIOS) {
+            final int target = (int) (triangleCount * ratio);
+            final int previous = triangles;
+            triangles = simplify(indices, tags, triangles, vertices, target);
+            if (triangles > previous * 0.9f) {
+                // the model can't be simplified any further
+                break;
+            }
+            final Object3DData level = buildLevel(obj, indices, tags, triangles, ret.size() + 1);
+            if (level == null) {
+                continue;
+            }
+            ret.add(level);
+            Log.i("MeshSimplifier", "Level of detail " + ret.size() + " of '" + obj.getId() + "': " + triangles
+                    + " triangles (" + (100 * triangles / triangleCount) + "%)");
+        }
+        Log.i("MeshSimplifier", "Levels of detail built in " + (System.currentTimeMillis() - startTime) + " ms");
+        return ret;
+    }
+
+    /**
+     * @return the level of detail, or <code>null</code> if it can't be drawn with all the attributes of the model
+     */
+    private static Object3DData buildLevel(Object3DData obj, int[] indices, int[] tags, int triangles, int level) {
+        final IntBuffer drawOrder = createNativeByteBuffer(triangles * 3 * 4).asIntBuffer();
+        drawOrder.put(indices, 0, triangles * 3).position(0);
+
+        List<Submesh> submeshes = null;
+        if (obj.getSubmeshes() != null) {
+            submeshes = new ArrayList<>();
+            int start = 0;
+            for (int s = 0; s < obj.getSubmeshes().size(); s++) {
+                int end = start;
+                while (end < triangles && tags[end] == s) {
+                    end++;
+                }
+                if (end > start) {
+                    submeshes.add(new Submesh(start * 3, (end - start) * 3, obj.getSubmeshes().get(s).getColor()));
+                }
+                start = end;
+            }
+        }
+
+        Object3DData ret = new Object3DData(obj.getVertexArrayBuffer())
+                .setVertexBuffer(obj.getVertexBuffer())
+                .setVertexNormalsArrayBuffer(obj.getVertexNormalsArrayBuffer())
+                .setTextureCoordsArrayBuffer(obj.getTextureCoordsArrayBuffer())
+                .setVertexColorsArrayBuffer(obj.getVertexColorsArrayBuffer())
+                .setDrawOrder(drawOrder)
+                .setSubmeshes(submeshes)
+                .setDrawMode(GLES20.GL_TRIANGLES)
+                .setDrawUsingArrays(false)
+                .setColor(obj.getColor())
+                .setId(obj.getId() + "#lod" + level);
+        ret.setTextureData(obj.getTextureData());
+        ret.setTextureFile(obj.getTextureFile());
+        ret.setParent(obj);
+        if (MeshPartitioner.partitionLike(ret, obj)) {
+            // the partitions of the level share the vertices of the ones of the model
+            return ret;
+        }
+        // the vertices are the same, unless the model or the level are split in partitions
+        final boolean sameVertices = obj.getVertexLayout() != null && ret.getDrawOrderAsShort() != null;
+        VertexLayout layout = obj.getVertexLayout();
+        if (layout == null && obj.getPartitions() != null && !obj.getPartitions().isEmpty()) {
+            layout = obj.getPartitions().get(0).getVertexLayout();
+        }
+        if (layout != null && !sameVertices && !VertexInterleaver.hasAttributes(obj, layout)) {
+            // the partitions of the level would be interleaved again without the released attributes
+            Log.w("MeshSimplifier", "Level of detail " + level + " of '" + obj.getId() + "' skipped. "
+                    + "The attributes of the model were released");
+            return null;
+        }
+        MeshPartitioner.partition(ret);
+        if (sameVertices) {
+            ret.setVertexLayout(obj.getVertexLayout());
+        } else if (layout != null) {
+            VertexInterleaver.interleave(ret, layout.isCompact());
+        }
+        return ret;
+    }
+
+    /**
+     * Collapse edges until there are less than the target triangles or no edge can be collapsed. Triangles keep their
+     * order, so the tags of the triangles (i.e. submesh) are still right.
+     *
+     * @param indices   the triangles. Updated with the remaining triangles
+     * @param tags      a tag for every triangle. Updated with the remaining triangles
+     * @param triangles number of triangles
+     * @param vertices  the positions of the vertices
+     * @param target    the number of triangles wanted
+     * @return the number of remaining triangles
+     */
+    static int simplify(int[] indices, int[] tags, int triangles, float[] vertices, int target) {
+        final int vertexCount = vertices.length / 3;
+        final byte[] kinds = new byte[vertexCount];
+        final int[] positionIds = weldPositions(vertices, vertexCount);
+        final float[] quadrics = new float[vertexCount * QUADRIC_SIZE];
+        final int[] offsets = new int[vertexCount + 1];
+        final int[] remap = new int[vertexCount];
+        final boolean[] touched = new boolean[vertexCount];
+
+        for (int pass = 0; pass < MAX_PASSES && triangles > target; pass++) {
+            // triangles of every vertex (compressed rows)
+            Arrays.fill(offsets, 0);
+            for (int i = 0; i < triangles * 3; i++) {
+                offsets[indices[i] + 1]++;
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            final int[] adjacency = new int[triangles * 3];
+            final int[] fill = Arrays.copyOf(offsets, vertexCount);
+            for (int t = 0; t < triangles; t++) {
+                for (int k = 0; k < 3; k++) {
+                    adjacency[fill[indices[t * 3 + k]]++] = t;
+                }
+            }
+
+            // edges used by only one triangle, or between submeshes, are borders
+            final long[] edges = new long[tableSize(triangles * 3)];
+            final int[] edgeCounts = new int[edges.length];
+            final int[] edgeTags = new int[edges.length];
+            Arrays.fill(edges, -1);
+            for (int i = 0; i < triangles * 3; i++) {
+                int a = indices[i], b = indices[i - i % 3 + (i + 1) % 3];
+                int slot = findEdge(edges, edgeKey(a, b));
+                if (edgeCounts[slot]++ == 0) {
+                    edgeTags[slot] = tags[i / 3];
+                } else if (edgeTags[slot] != tags[i / 3]) {
+                    edgeTags[slot] = MIXED_TAGS;
+                }
+            }
+            classify(indices, triangles, positionIds, edges, edgeCounts, edgeTags, kinds);
+            if (pass == 0) {
+                computeQuadrics(indices, triangles, vertices, edges, edgeCounts, edgeTags, quadrics);
+            }
+
+            // candidate collapses (from, to), sorted by error
+            final int[] candidates = new int[triangles * 3 * 2];
+            final long[] order = new long[triangles * 3];
+            int candidateCount = 0;
+            for (int i = 0; i < triangles * 3; i++) {
+                final int a = indices[i], b = indices[i - i % 3 + (i + 1) % 3];
+                final int slot = findEdge(edges, edgeKey(a, b));
+                final boolean border = isBorder(edgeCounts, edgeTags, slot);
+                // edges shared by 2 triangles are added once
+                if (edgeCounts[slot] == 2 && a > b) continue;
+                float best = Float.MAX_VALUE;
+                int from = -1, to = -1;
+                if (canCollapse(kinds, a, b, border)) {
+                    best = collapseError(quadrics, vertices, a, b);
+                    from = a;
+                    to = b;
+                }
+                if (canCollapse(kinds, b, a, border)) {
+                    float error = collapseError(quadrics, vertices, b, a);
+                    if (error < best) {
+                        best = error;
+                        from = b;
+                        to = a;
+                    }
+                }
+                if (from == -1) continue;
+                candidates[candidateCount * 2] = from;
+                candidates[candidateCount * 2 + 1] = to;
+                // positive floats sort like ints
+                order[candidateCount] = ((long) Float.floatToIntBits(Math.max(best, 0)) << 32) | candidateCount;
+                candidateCount++;
+            }
+            Arrays.sort(order, 0, candidateCount);
+
+            for (int v = 0; v < vertexCount; v++) {
+                remap[v] = v;
+            }
+            Arrays.fill(touched, false);
+            int removed = 0;
+            int collapsed = 0;
+            for (int c = 0; c < candidateCount && triangles - removed > target; c++) {
+                final int candidate = (int) order[c];
+                final int from = candidates[candidate * 2], to = candidates[candidate * 2 + 1];
+                if (touched[from] || touched[to] || flips(indices, adjacency, offsets, vertices, from, to)) {
+                    continue;
+                }
+                // the triangles around the vertex change, so they can't be collapsed again in this pass
+                for (int j = offsets[from]; j < offsets[from + 1]; j++) {
+                    final int t = adjacency[j];
+                    boolean removes = false;
+                    for (int k = 0; k < 3; k++) {
+                        touched[indices[t * 3 + k]] = true;
+                        removes |= indices[t * 3 + k] == to;
+                    }
+                    if (removes) removed++;
+                }
+                remap[from] = to;
+                for (int q = 0; q < QUADRIC_SIZE; q++) {
+                    quadrics[to * QUADRIC_SIZE + q] += quadrics[from * QUADRIC_SIZE + q];
+                }
+                collapsed++;
+            }
+            if (collapsed == 0) {
+                break;
+            }
+
+            // remove the triangles that became lines
+            int remaining = 0;
+            for (int t = 0; t < triangles; t++) {
+                final int a = remap[indices[t * 3]], b = remap[indices[t * 3 + 1]], c = remap[indices[t * 3 + 2]];
+                if (a == b || b == c || c == a) continue;
+                indices[remaining * 3] = a;
+                indices[remaining * 3 + 1] = b;
+                indices[remaining * 3 + 2] = c;
+                tags[remaining] = tags[t];
+                remaining++;
+            }
+            triangles = remaining;
+        }
+        return triangles;
+    }
+
+    private static boolean isBorder(int[] edgeCounts, int[] edgeTags, int slot) {
+        return edgeCounts[slot] == 1 || (edgeCounts[slot] == 2 && edgeTags[slot] == MIXED_TAGS);
+    }
+
+    /**
+     * Vertices sharing the position with other vertices (seams), with edges shared by more than 2 triangles or with
+     * more than 2 border edges are locked
+     */
+    private static void classify(int[] indices, int triangles, int[] positionIds, long[] edges, int[] edgeCounts,
+                                 int[] edgeTags, byte[] kinds) {
+        final int vertexCount = kinds.length;
+        final int[] borderEdges = new int[vertexCount];
+        final int[] positionVertices = new int[vertexCount];
+        Arrays.fill(positionVertices, -1);
+        Arrays.fill(kinds, INTERIOR);
+        for (int i = 0; i < triangles * 3; i++) {
+            final int a = indices[i], b = indices[i - i % 3 + (i + 1) % 3];
+            final int slot = findEdge(edges, edgeKey(a, b));
+            if (edgeCounts[slot] > 2) {
+                kinds[a] = LOCKED;
+                kinds[b] = LOCKED;
+            } else if (isBorder(edgeCounts, edgeTags, slot) && (edgeCounts[slot] == 1 || a < b)) {
+                // edges between submeshes are counted once
+                borderEdges[a]++;
+                borderEdges[b]++;
+            }
+            // the first vertex used with the position
+            final int p = positionIds[a];
+            if (positionVertices[p] == -1) {
+                positionVertices[p] = a;
+            } else if (positionVertices[p] != a) {
+                kinds[a] = LOCKED;
+                kinds[positionVertices[p]] = LOCKED;
+            }
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            if (kinds[v] == LOCKED || borderEdges[v] == 0) continue;
+            // vertices in the middle of a border have 2 border edges. Corners and joins are locked
+            kinds[v] = borderEdges[v] == 2 ? BORDER : LOCKED;
+        }
+    }
+
+    private static boolean canCollapse(byte[] kinds, int from, int to, boolean borderEdge) {
+        switch (kinds[from]) {
+            case INTERIOR:
+                return true;
+            case BORDER:
+                return borderEdge && kinds[to] != INTERIOR;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return whether moving the vertex would flip any of the triangles around it
+     */
+    private static boolean flips(int[] indices, int[] adjacency, int[] offsets, float[] vertices, int from, int to) {
+        final float tx = vertices[to * 3], ty = vertices[to * 3 + 1], tz = vertices[to * 3 + 2];
+        for (int j = offsets[from]; j < offsets[from + 1]; j++) {
+            final int t = adjacency[j] * 3;
+            if (indices[t] == to || indices[t + 1] == to || indices[t + 2] == to) {
+                // removed by the collapse
+                continue;
+            }
+            // rotate the triangle so the vertex is the first one
+            final int k = indices[t] == from ? 0 : indices[t + 1] == from ? 1 : 2;
+            final int b = indices[t + (k + 1) % 3] * 3, c = indices[t + (k + 2) % 3] * 3;
+            final int a = from * 3;
+            final float bx = vertices[b], by = vertices[b + 1], bz = vertices[b + 2];
+            final float cx = vertices[c], cy = vertices[c + 1], cz = vertices[c + 2];
+
+            // normal before and after
+            final float e1x = bx - vertices[a], e1y = by - vertices[a + 1], e1z = bz - vertices[a + 2];
+            final float e2x = cx - vertices[a], e2y = cy - vertices[a + 1], e2z = cz - vertices[a + 2];
+            final float n1x = e1y * e2z - e1z * e2y, n1y = e1z * e2x - e1x * e2z, n1z = e1x * e2y - e1y * e2x;
+            final float f1x = bx - tx, f1y = by - ty, f1z = bz - tz;
+            final float f2x = cx - tx, f2y = cy - ty, f2z = cz - tz;
+            final float n2x = f1y * f2z - f1z * f2y, n2y = f1z * f2x - f1x * f2z, n2z = f1x * f2y - f1y * f2x;
+            if (n1x * n2x + n1y * n2y + n1z * n2z <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void computeQuadrics(int[] indices, int triangles, float[] vertices, long[] edges,
+                                        int[] edgeCounts, int[] edgeTags, float[] quadrics) {
+        for (int t = 0; t < triangles; t++) {
+            final int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+            final float e1x = vertices[b] - vertices[a], e1y = vertices[b + 1] - vertices[a + 1],
+                    e1z = vertices[b + 2] - vertices[a + 2];
+            final float e2x = vertices[c] - vertices[a], e2y = vertices[c + 1] - vertices[a + 1],
+                    e2z = vertices[c + 2] - vertices[a + 2];
+            float nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+            final float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length == 0) continue;
+            nx /= length;
+            ny /= length;
+            nz /= length;
+            // the plane of the triangle, weighted by its area
+            final float area = length / 2;
+            final float d = -(nx * vertices[a] + ny * vertices[a + 1] + nz * vertices[a + 2]);
+            for (int k = 0; k < 3; k++) {
+                addPlane(quadrics, indices[t * 3 + k], nx, ny, nz, d, area);
+            }
+
+            // borders: plane along the edge, perpendicular to the triangle
+            for (int k = 0; k < 3; k++) {
+                final int v0 = indices[t * 3 + k], v1 = indices[t * 3 + (k + 1) % 3];
+                if (!isBorder(edgeCounts, edgeTags, findEdge(edges, edgeKey(v0, v1)))) continue;
+                final float ex = vertices[v1 * 3] - vertices[v0 * 3], ey = vertices[v1 * 3 + 1] - vertices[v0 * 3 + 1],
+                        ez = vertices[v1 * 3 + 2] - vertices[v0 * 3 + 2];
+                float px = ey * nz - ez * ny, py = ez * nx - ex * nz, pz = ex * ny - ey * nx;
+                final float edgeLength = (float) Math.sqrt(px * px + py * py + pz * pz);
+                if (edgeLength == 0) continue;
+                px /= edgeLength;
+                py /= edgeLength;
+                pz /= edgeLength;
+                final float pd = -(px * vertices[v0 * 3] + py * vertices[v0 * 3 + 1] + pz * vertices[v0 * 3 + 2]);
+                final float weight = BORDER_WEIGHT * edgeLength * edgeLength;
+                addPlane(quadrics, v0, px, py, pz, pd, weight);
+                addPlane(quadrics, v1, px, py, pz, pd, weight);
+            }
+        }
+    }
+
+    private static void addPlane(float[] quadrics, int vertex, float a, float b, float c, float d, float weight) {
+        final int q = vertex * QUADRIC_SIZE;
+        quadrics[q] += weight * a * a;
+        quadrics[q + 1] += weight * a * b;
+        quadrics[q + 2] += weight * a * c;
+        quadrics[q + 3] += weight * a * d;
+        quadrics[q + 4] += weight * b * b;
+        quadrics[q + 5] += weight * b * c;
+        quadrics[q + 6] += weight * b * d;
+        quadrics[q + 7] += weight * c * c;
+        quadrics[q + 8] += weight * c * d;
+        quadrics[q + 9] += weight * d * d;
+    }
+
+    /**
+     * @return the error of moving the vertex to the position of the other one
+     */
+    private static float collapseError(float[] quadrics, float[] vertices, int from, int to) {
+        final int q0 = from * QUADRIC_SIZE, q1 = to * QUADRIC_SIZE;
+        final float x = vertices[to * 3], y = vertices[to * 3 + 1], z = vertices[to * 3 + 2];
+        float error = 0;
+        for (int i = 0; i < 2; i++) {
+            final int q = i == 0 ? q0 : q1;
+            error += quadrics[q] * x * x + 2 * quadrics[q + 1] * x * y + 2 * quadrics[q + 2] * x * z
+                    + 2 * quadrics[q + 3] * x + quadrics[q + 4] * y * y + 2 * quadrics[q + 5] * y * z
+                    + 2 * quadrics[q + 6] * y + quadrics[q + 7] * z * z + 2 * quadrics[q + 8] * z + quadrics[q + 9];
+        }
+        return error;
+    }
+
+    /**
+     * @return the id of the position of every vertex. Vertices with the same position have the same id
+     */
+    private static int[] weldPositions(float[] vertices, int vertexCount) {
+        final int[] ret = new int[vertexCount];
+        final int size = tableSize(vertexCount);
+        final int[] table = new int[size];
+        Arrays.fill(table, -1);
+        for (int v = 0; v < vertexCount; v++) {
+            int hash = Float.floatToIntBits(vertices[v * 3]);
+            hash = hash * 31 + Float.floatToIntBits(vertices[v * 3 + 1]);
+            hash = hash * 31 + Float.floatToIntBits(vertices[v * 3 + 2]);
+            int slot = (hash ^ (hash >>> 16)) & (size - 1);
+            while (table[slot] != -1 && !(vertices[table[slot] * 3] == vertices[v * 3]
+                    && vertices[table[slot] * 3 + 1] == vertices[v * 3 + 1]
+                    && vertices[table[slot] * 3 + 2] == vertices[v * 3 + 2])) {
+                slot = (slot + 1) & (size - 1);
+            }
+            if (table[slot] == -1) {
+                table[slot] = v;
+            }
+            ret[v] = table[slot];
+        }
+        return ret;
+    }
+
+    private static int tableSize(int count) {
+        return Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+    }
+
+    private static long edgeKey(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    /**
+     * @return the slot of the edge in the open addressing table. It's added if it's not there
+     */
+    private static int findEdge(long[] edges, long key) {
+        final int mask = edges.length - 1;
+        int slot = (int) (key ^ (key >>> 29) ^ (key >>> 32) * 0x9E3779B1) & mask;
+        while (edges[slot] != -1 && edges[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        edges[slot] = key;
+        return slot;
+    }
+
+    private static ByteBuffer createNativeByteBuffer(int length) {
+        // initialize vertex byte buffer for shape coordinates
+        ByteBuffer bb = ByteBuffer.allocateDirect(length);
+        // use the device hardware's native byte order
+        bb.order(ByteOrder.nativeOrder());
+        return bb;
+    }
+}
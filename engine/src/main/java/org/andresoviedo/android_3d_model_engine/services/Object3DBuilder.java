@@ -8,20 +8,17 @@ import android.util.Log;
 
 import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
 import org.andresoviedo.android_3d_model_engine.services.collada.entities.Joint;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.FaceMaterials;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.Faces;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.Material;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.Materials;
-import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader.Tuple3;
-import org.andresoviedo.util.android.ContentUtils;
 import org.andresoviedo.util.math.Math3DUtils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URL;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
@@ -29,10 +26,21 @@ import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class Object3DBuilder {
 
 	private static final int COORDS_PER_VERTEX = 3;
+	/**
+	 * Minimum number of faces for each thread when building the arrays in parallel
+	 */
+	static final int MIN_FACES_PER_THREAD = 64 * 1024;
 	/**
 	 * Default vertices colors
 	 */
@@ -415,13 +423,7 @@ public final class Object3DBuilder {
 
 			InputStream is = new URL(modelUri.toString()).openStream();
 			WavefrontLoader wfl = new WavefrontLoader(modelUri.toString());
-			wfl.analyzeModel(is);
-			is.close();
-
-			wfl.allocateBuffers();
-
-			is = new URL(modelUri.toString()).openStream();
-			wfl.loadModel(is);
+			wfl.loadModelSinglePass(is);
 			is.close();
 
 			Object3DData data3D = new Object3DData(wfl.getVerts(), wfl.getNormals(), wfl.getTexCoords(), wfl.getFaces(),
@@ -443,8 +445,41 @@ public final class Object3DBuilder {
 	}
 
 	public static Object3DData generateArrays(Object3DData obj) throws IOException {
+		return generateArrays(obj, false);
+	}
+
+	/**
+	 * Build the vertex, normals, colors and texture arrays for the faces of the model. Big models (more than
+	 * {@link #MIN_FACES_PER_THREAD} faces per thread) are built in parallel.
+	 *
+	 * @param obj the 3d model
+	 * @param indexed if <code>true</code>, the vertices with the same v/vt/vn are stored only once and the
+	 *                model is drawn using the index buffer. They are welded straight from the face indices.
+	 *                Otherwise every triangle has its own 3 vertices and the model is drawn using arrays
+	 * @return the same 3d model
+	 */
+	public static Object3DData generateArrays(Object3DData obj, boolean indexed) throws IOException {
+		return generateArrays(obj, indexed, Runtime.getRuntime().availableProcessors());
+	}
+
+	static Object3DData generateArrays(Object3DData obj, boolean indexed, int threads) throws IOException {
+		int numFaces = obj.getFaces() != null ? obj.getFaces().getSize() : 0;
+		int numChunks = Math.min(threads, numFaces / MIN_FACES_PER_THREAD);
+		if (numChunks <= 1) {
+			return generateArrays(obj, indexed, null, 1);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(numChunks);
+		try {
+			return generateArrays(obj, indexed, executor, numChunks);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Object3DData generateArrays(Object3DData obj, boolean indexed, ExecutorService executor,
+											   int numChunks) throws IOException {
 
-	    Log.i("Object3DBuilder","Generating arrays for "+obj.getId());
+	    Log.i("Object3DBuilder","Generating arrays for "+obj.getId()+" ("+numChunks+" threads)");
 
 		Faces faces = obj.getFaces(); // model faces
 		FaceMaterials faceMats = obj.getFaceMats();
@@ -455,117 +490,66 @@ public final class Object3DBuilder {
 			return obj;
 		}
 
-		Log.i("Object3DBuilder", "Allocating vertex array buffer... Vertices ("+faces.getVerticesReferencesCount()+")");
-		final FloatBuffer vertexArrayBuffer = createNativeByteBuffer(faces.getVerticesReferencesCount() * 3 * 4).asFloatBuffer();
-		obj.setVertexArrayBuffer(vertexArrayBuffer);
-		obj.setDrawUsingArrays(true);
-
-		Log.i("Object3DBuilder", "Populating vertex array...");
-		final FloatBuffer vertexBuffer = obj.getVerts();
-		final IntBuffer indexBuffer = faces.getIndexBuffer();
-		for (int i = 0; i < faces.getVerticesReferencesCount(); i++) {
-			vertexArrayBuffer.put(i*3,vertexBuffer.get(indexBuffer.get(i) * 3));
-			vertexArrayBuffer.put(i*3+1,vertexBuffer.get(indexBuffer.get(i) * 3 + 1));
-			vertexArrayBuffer.put(i*3+2,vertexBuffer.get(indexBuffer.get(i) * 3 + 2));
+		// indexed models are welded straight from the face indices, so the expanded arrays are never allocated
+		if (!indexed) {
+			generateVertexArrays(obj, faces, executor, numChunks);
 		}
 
-		Log.i("Object3DBuilder", "Allocating vertex normals buffer... Total normals ("+faces.facesNormIdxs.size()+")");
-		// Normals buffer size = Number_of_faces X 3 (vertices_per_face) X 3 (coords_per_normal) X 4 (bytes_per_float)
-		final FloatBuffer vertexNormalsArrayBuffer = createNativeByteBuffer(faces.getSize() * 3 * 3 * 4).asFloatBuffer();;
-		obj.setVertexNormalsArrayBuffer(vertexNormalsArrayBuffer);
 
-		// build file normals
-		final FloatBuffer vertexNormalsBuffer = obj.getNormals();
-		if (vertexNormalsBuffer != null && vertexNormalsBuffer.capacity() > 0) {
-			Log.i("Object3DBuilder", "Populating normals buffer...");
-			for (int n=0; n<faces.facesNormIdxs.size(); n++) {
-				int[] normal = faces.facesNormIdxs.get(n);
-				for (int i = 0; i < normal.length; i++) {
-					vertexNormalsArrayBuffer.put(n*9+i*3,vertexNormalsBuffer.get(normal[i] * 3));
-					vertexNormalsArrayBuffer.put(n*9+i*3+1,vertexNormalsBuffer.get(normal[i] * 3 + 1));
-					vertexNormalsArrayBuffer.put(n*9+i*3+2,vertexNormalsBuffer.get(normal[i] * 3 + 2));
-				}
-			}
-		} else {
-			// calculate normals for all triangles
-			Log.i("Object3DBuilder", "Model without normals. Calculating [" + faces.getIndexBuffer().capacity() / 3 + "] normals...");
-
-			final float[] v0 = new float[3], v1 = new float[3], v2 = new float[3];
-			for (int i = 0; i < faces.getIndexBuffer().capacity(); i += 3) {
-				try {
-					v0[0] = vertexBuffer.get(faces.getIndexBuffer().get(i) * 3);
-					v0[1] = vertexBuffer.get(faces.getIndexBuffer().get(i) * 3 + 1);
-					v0[2] = vertexBuffer.get(faces.getIndexBuffer().get(i) * 3 + 2);
-
-					v1[0] = vertexBuffer.get(faces.getIndexBuffer().get(i + 1) * 3);
-					v1[1] = vertexBuffer.get(faces.getIndexBuffer().get(i + 1) * 3 + 1);
-					v1[2] = vertexBuffer.get(faces.getIndexBuffer().get(i + 1) * 3 + 2);
-
-					v2[0] = vertexBuffer.get(faces.getIndexBuffer().get(i + 2) * 3);
-					v2[1] = vertexBuffer.get(faces.getIndexBuffer().get(i + 2) * 3 + 1);
-					v2[2] = vertexBuffer.get(faces.getIndexBuffer().get(i + 2) * 3 + 2);
-
-					float[] normal = Math3DUtils.calculateNormal(v0, v1, v2);
-
-					vertexNormalsArrayBuffer.put(i*3,normal[0]);
-					vertexNormalsArrayBuffer.put(i*3+1,normal[1]);
-					vertexNormalsArrayBuffer.put(i*3+2,normal[2]);
-					vertexNormalsArrayBuffer.put(i*3+3,normal[0]);
-					vertexNormalsArrayBuffer.put(i*3+4,normal[1]);
-					vertexNormalsArrayBuffer.put(i*3+5,normal[2]);
-					vertexNormalsArrayBuffer.put(i*3+6,normal[0]);
-					vertexNormalsArrayBuffer.put(i*3+7,normal[1]);
-					vertexNormalsArrayBuffer.put(i*3+8,normal[2]);
-				} catch (BufferOverflowException ex) {
-					throw new RuntimeException("Error calculating normal for face ["+i/3+"]");
-				}
-			}
-		}
-
-
-		FloatBuffer colorArrayBuffer = null;
 		if (materials != null) {
+			// usually already read in background while the model was parsed
 			Log.i("Object3DBuilder", "Reading materials...");
-			try(InputStream inputStream = ContentUtils.getInputStream(materials.mfnm)) {
-				BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
-				materials.readMaterials(br);
-				materials.showMaterials();
-				br.close();
+			try {
+				materials.load();
 			} catch (Exception ex){
 			    Log.e("Object3DBuilder","Couldn't load material file "+materials.mfnm+". "+ex.getMessage(), ex);
 			    obj.addError(materials.mfnm+":"+ex.getMessage());
             }
 		}
 
+		// colors only change at material boundaries, so instead of a color per vertex we draw ranges of faces
+		// with the color of their material. Faces are kept in order, so the ranges are the same when indexed
+		List<Submesh> submeshes = null;
 		if (materials != null && !faceMats.isEmpty()) {
 			Log.i("Object3DBuilder", "Processing face materials...");
-			colorArrayBuffer = createNativeByteBuffer(4 * faces.getVerticesReferencesCount() * 4)
-					.asFloatBuffer();
+			submeshes = new ArrayList<>();
 			boolean anyOk = false;
 			float[] currentColor = DEFAULT_COLOR;
-			for (int i = 0; i < faces.getSize(); i++) {
-			    // Is there any usemtl at this point ?
-                final String materialName = faceMats.findMaterial(i);
-                if (materialName != null) {
-                    // Is material defined in material.mtl file ?
-					Material mat = materials.getMaterial(materialName);
-					if (mat != null) {
-						currentColor = mat.getKdColor() != null ? mat.getKdColor() : currentColor;
-						anyOk = anyOk || mat.getKdColor() != null;
-					} else {
-				        Log.w("Object3DBuilder", "Material not defined: "+ materialName);
-                    }
+			int rangeStart = 0;
+			for (int r = 0; r < faceMats.size(); r++) {
+				// face where the usemtl is
+				final int i = faceMats.getStart(r);
+				if (i >= faces.getSize()) {
+					break;
+				}
+				// Is material defined in material.mtl file ?
+				final String materialName = faceMats.getMaterialName(faceMats.getMaterialId(r));
+				Material mat = materials.getMaterial(materialName);
+				if (mat == null) {
+					Log.w("Object3DBuilder", "Material not defined: "+ materialName);
+					continue;
+				}
+				float[] color = mat.getKdColor() != null ? mat.getKdColor() : currentColor;
+				anyOk = anyOk || mat.getKdColor() != null;
+				if (!Arrays.equals(color, currentColor)) {
+					if (i > rangeStart) {
+						submeshes.add(new Submesh(rangeStart * 3, (i - rangeStart) * 3, currentColor));
+					}
+					rangeStart = i;
+					currentColor = color;
 				}
-				colorArrayBuffer.put(currentColor);
-				colorArrayBuffer.put(currentColor);
-				colorArrayBuffer.put(currentColor);
+			}
+			if (faces.getSize() > rangeStart) {
+				submeshes.add(new Submesh(rangeStart * 3, (faces.getSize() - rangeStart) * 3, currentColor));
 			}
 			if (!anyOk) {
 				Log.i("Object3DBuilder", "Using single color.");
-				colorArrayBuffer = null;
+				submeshes = null;
+			} else {
+				Log.i("Object3DBuilder", "Submeshes: " + submeshes.size());
 			}
 		}
-		obj.setVertexColorsArrayBuffer(colorArrayBuffer);
+		obj.setSubmeshes(submeshes);
 
 
 		String texture = null;
@@ -591,14 +575,17 @@ public final class Object3DBuilder {
 
 
 		//if (textureData != null) {
-			ArrayList<Tuple3> texCoords = obj.getTexCoords();
-			if (texCoords != null && texCoords.size() > 0) {
+			FloatBuffer texCoords = obj.getTexCoords();
+			if (indexed) {
+				generateIndexedArrays(obj, faces, texCoords, executor, numChunks);
+			} else if (texCoords != null && texCoords.capacity() > 0) {
 
 				Log.i("Object3DBuilder", "Allocating/populating texture buffer (flipTexCoord:"+obj.isFlipTextCoords()+")...");
-				FloatBuffer textureCoordsBuffer = createNativeByteBuffer(texCoords.size() * 2 * 4).asFloatBuffer();
-				for (Tuple3 texCor : texCoords) {
-					textureCoordsBuffer.put(texCor.getX());
-					textureCoordsBuffer.put(obj.isFlipTextCoords() ? 1 - texCor.getY() : texCor.getY());
+				// tex coords are (u,v,w) but we only use (u,v)
+				FloatBuffer textureCoordsBuffer = createNativeByteBuffer(texCoords.capacity() / 3 * 2 * 4).asFloatBuffer();
+				for (int i = 0; i < texCoords.capacity(); i += 3) {
+					textureCoordsBuffer.put(texCoords.get(i));
+					textureCoordsBuffer.put(obj.isFlipTextCoords() ? 1 - texCoords.get(i + 1) : texCoords.get(i + 1));
 				}
 
 				Log.i("Object3DBuilder", "Populating texture array buffer...");
@@ -607,57 +594,69 @@ public final class Object3DBuilder {
 
 				try {
 
-					boolean anyTextureOk = false;
-					String currentTexture = null;
-
 					Log.i("Object3DBuilder", "Populating texture array buffer...");
-					int counter = 0;
-					for (int i = 0; i < faces.facesTexIdxs.size(); i++) {
-
-						// get current texture
-						if (!faceMats.isEmpty() && faceMats.findMaterial(i) != null) {
-							Material mat = materials.getMaterial(faceMats.findMaterial(i));
+					final IntBuffer texIdxs = faces.facesTexIdxs;
+					final String globalTexture = texture;
+					final byte[] finalTextureData = textureData;
+					final AtomicBoolean anyTextureOk = new AtomicBoolean();
+					forEachRange(executor, numChunks, texIdxs.capacity() / 3, (from, to) -> {
+						String currentTexture = null;
+						// next range of faces with another material. skip the ranges before this chunk
+						int range = 0;
+						for (; materials != null && range < faceMats.size() && faceMats.getStart(range) < from; range++) {
+							Material mat = materials.getMaterial(faceMats.getMaterialName(faceMats.getMaterialId(range)));
 							if (mat != null && mat.getTexture() != null) {
 								currentTexture = mat.getTexture();
 							}
 						}
+						for (int i = from; i < to; i++) {
 
-						// check if texture is ok (Because we only support 1 texture currently)
-						boolean textureOk = false;
-						if (currentTexture != null && currentTexture.equals(texture)) {
-							textureOk = true;
-						}
+							// get current texture
+							if (materials != null && range < faceMats.size() && faceMats.getStart(range) == i) {
+								Material mat = materials.getMaterial(faceMats.getMaterialName(faceMats.getMaterialId(range)));
+								if (mat != null && mat.getTexture() != null) {
+									currentTexture = mat.getTexture();
+								}
+								range++;
+							}
+
+							// check if texture is ok (Because we only support 1 texture currently)
+							boolean textureOk = false;
+							if (currentTexture != null && currentTexture.equals(globalTexture)) {
+								textureOk = true;
+							}
 
-						// populate texture coords if ok (in case we have more than 1 texture and 1 is missing. see face.obj example)
-						int[] text = faces.facesTexIdxs.get(i);
-						for (int j = 0; j < text.length; j++) {
-							if (textureData == null || textureOk) {
-								if (text[j] * 2 >= 0 && text[j] * 2 < textureCoordsBuffer.limit()) {
-									anyTextureOk = true;
-									textureCoordsArraysBuffer.put(counter++, textureCoordsBuffer.get(text[j] * 2));
-									textureCoordsArraysBuffer.put(counter++, textureCoordsBuffer.get(text[j] * 2 + 1));
-								} else{
-									Log.v("Object3DBuilder","Wrong texture for face "+i);
-									textureCoordsArraysBuffer.put(counter++, 0f);
-									textureCoordsArraysBuffer.put(counter++, 0f);
+							// populate texture coords if ok (in case we have more than 1 texture and 1 is missing. see face.obj example)
+							for (int j = 0; j < 3; j++) {
+								int text = texIdxs.get(i * 3 + j);
+								int counter = (i * 3 + j) * 2;
+								if (finalTextureData == null || textureOk) {
+									if (text * 2 >= 0 && text * 2 < textureCoordsBuffer.limit()) {
+										anyTextureOk.set(true);
+										textureCoordsArraysBuffer.put(counter, textureCoordsBuffer.get(text * 2));
+										textureCoordsArraysBuffer.put(counter + 1, textureCoordsBuffer.get(text * 2 + 1));
+									} else{
+										Log.v("Object3DBuilder","Wrong texture for face "+i);
+										textureCoordsArraysBuffer.put(counter, 0f);
+										textureCoordsArraysBuffer.put(counter + 1, 0f);
+									}
+								} else {
+									textureCoordsArraysBuffer.put(counter, 0f);
+									textureCoordsArraysBuffer.put(counter + 1, 0f);
 								}
-							} else {
-								textureCoordsArraysBuffer.put(counter++, 0f);
-								textureCoordsArraysBuffer.put(counter++, 0f);
 							}
 						}
-					}
+					});
 
-					if (!anyTextureOk) {
+					if (!anyTextureOk.get()) {
 						Log.i("Object3DBuilder", "Texture is wrong. Applying global texture");
-						counter = 0;
-						for (int j=0; j<faces.facesTexIdxs.size(); j++) {
-							int[] text = faces.facesTexIdxs.get(j);
-							for (int i = 0; i < text.length; i++) {
-								textureCoordsArraysBuffer.put(counter++, textureCoordsBuffer.get(text[i] * 2));
-								textureCoordsArraysBuffer.put(counter++, textureCoordsBuffer.get(text[i] * 2 + 1));
+						forEachRange(executor, numChunks, texIdxs.capacity(), (from, to) -> {
+							for (int j = from; j < to; j++) {
+								int text = texIdxs.get(j);
+								textureCoordsArraysBuffer.put(j * 2, textureCoordsBuffer.get(text * 2));
+								textureCoordsArraysBuffer.put(j * 2 + 1, textureCoordsBuffer.get(text * 2 + 1));
 							}
-						}
+						});
 					}
 				} catch (Exception ex) {
 					Log.e("Object3DBuilder", "Failure to load texture coordinates", ex);
@@ -669,6 +668,371 @@ public final class Object3DBuilder {
 		return obj;
 	}
 
+	/**
+	 * Build the vertex and normal arrays, with the 3 vertices of every face, so the model is drawn using arrays
+	 */
+	private static void generateVertexArrays(Object3DData obj, Faces faces, ExecutorService executor,
+											 int numChunks) {
+		Log.i("Object3DBuilder", "Allocating vertex array buffer... Vertices ("+faces.getVerticesReferencesCount()+")");
+		final FloatBuffer vertexArrayBuffer = createNativeByteBuffer(faces.getVerticesReferencesCount() * 3 * 4).asFloatBuffer();
+		obj.setVertexArrayBuffer(vertexArrayBuffer);
+		obj.setDrawUsingArrays(true);
+
+		Log.i("Object3DBuilder", "Populating vertex array...");
+		final FloatBuffer vertexBuffer = obj.getVerts();
+		final IntBuffer indexBuffer = faces.getIndexBuffer();
+		forEachRange(executor, numChunks, faces.getVerticesReferencesCount(), (from, to) -> {
+			for (int i = from; i < to; i++) {
+				vertexArrayBuffer.put(i*3,vertexBuffer.get(indexBuffer.get(i) * 3));
+				vertexArrayBuffer.put(i*3+1,vertexBuffer.get(indexBuffer.get(i) * 3 + 1));
+				vertexArrayBuffer.put(i*3+2,vertexBuffer.get(indexBuffer.get(i) * 3 + 2));
+			}
+		});
+
+		Log.i("Object3DBuilder", "Allocating vertex normals buffer... Total normals ("+faces.facesNormIdxs.capacity()/3+")");
+		// Normals buffer size = Number_of_faces X 3 (vertices_per_face) X 3 (coords_per_normal) X 4 (bytes_per_float)
+		final FloatBuffer vertexNormalsArrayBuffer = createNativeByteBuffer(faces.getSize() * 3 * 3 * 4).asFloatBuffer();;
+		obj.setVertexNormalsArrayBuffer(vertexNormalsArrayBuffer);
+
+		// build file normals
+		final FloatBuffer vertexNormalsBuffer = obj.getNormals();
+		if (vertexNormalsBuffer != null && vertexNormalsBuffer.capacity() > 0) {
+			Log.i("Object3DBuilder", "Populating normals buffer...");
+			final IntBuffer normalIdxs = faces.facesNormIdxs;
+			forEachRange(executor, numChunks, normalIdxs.capacity(), (from, to) -> {
+				for (int n = from; n < to; n++) {
+					int normal = normalIdxs.get(n);
+					vertexNormalsArrayBuffer.put(n*3,vertexNormalsBuffer.get(normal * 3));
+					vertexNormalsArrayBuffer.put(n*3+1,vertexNormalsBuffer.get(normal * 3 + 1));
+					vertexNormalsArrayBuffer.put(n*3+2,vertexNormalsBuffer.get(normal * 3 + 2));
+				}
+			});
+		} else {
+			// calculate normals for all triangles
+			Log.i("Object3DBuilder", "Model without normals. Calculating [" + faces.getIndexBuffer().capacity() / 3 + "] normals...");
+
+			forEachRange(executor, numChunks, faces.getIndexBuffer().capacity() / 3, (from, to) -> {
+				final float[] v0 = new float[3], v1 = new float[3], v2 = new float[3];
+				for (int i = from * 3; i < to * 3; i += 3) {
+					try {
+						v0[0] = vertexBuffer.get(faces.getIndexBuffer().get(i) * 3);
+						v0[1] = vertexBuffer.get(faces.getIndexBuffer().get(i) * 3 + 1);
+						v0[2] = vertexBuffer.get(faces.getIndexBuffer().get(i) * 3 + 2);
+
+						v1[0] = vertexBuffer.get(faces.getIndexBuffer().get(i + 1) * 3);
+						v1[1] = vertexBuffer.get(faces.getIndexBuffer().get(i + 1) * 3 + 1);
+						v1[2] = vertexBuffer.get(faces.getIndexBuffer().get(i + 1) * 3 + 2);
+
+						v2[0] = vertexBuffer.get(faces.getIndexBuffer().get(i + 2) * 3);
+						v2[1] = vertexBuffer.get(faces.getIndexBuffer().get(i + 2) * 3 + 1);
+						v2[2] = vertexBuffer.get(faces.getIndexBuffer().get(i + 2) * 3 + 2);
+
+						float[] normal = Math3DUtils.calculateNormal(v0, v1, v2);
+
+						vertexNormalsArrayBuffer.put(i*3,normal[0]);
+						vertexNormalsArrayBuffer.put(i*3+1,normal[1]);
+						vertexNormalsArrayBuffer.put(i*3+2,normal[2]);
+						vertexNormalsArrayBuffer.put(i*3+3,normal[0]);
+						vertexNormalsArrayBuffer.put(i*3+4,normal[1]);
+						vertexNormalsArrayBuffer.put(i*3+5,normal[2]);
+						vertexNormalsArrayBuffer.put(i*3+6,normal[0]);
+						vertexNormalsArrayBuffer.put(i*3+7,normal[1]);
+						vertexNormalsArrayBuffer.put(i*3+8,normal[2]);
+					} catch (BufferOverflowException ex) {
+						throw new RuntimeException("Error calculating normal for face ["+i/3+"]");
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Build the arrays of the unique vertices of the faces, that is, of the different v/vt/vn tuples, and the draw
+	 * order with the unique vertex of every vertex of the faces. The tuples are hashed straight from the face indices,
+	 * so the arrays with the 3 vertices of every face are never allocated. Models without normals get the normal of
+	 * the face, so it's part of the tuple. Faces keep their order, so the submeshes of the model are still valid.
+	 */
+	private static void generateIndexedArrays(Object3DData obj, Faces faces, FloatBuffer texCoords,
+											  ExecutorService executor, int numChunks) {
+		final FloatBuffer vertexBuffer = obj.getVerts();
+		final IntBuffer indexBuffer = faces.getIndexBuffer();
+		final FloatBuffer normalsBuffer = obj.getNormals();
+		final IntBuffer normIdxs = normalsBuffer != null && normalsBuffer.capacity() > 0 ? faces.facesNormIdxs : null;
+		final IntBuffer texIdxs = texCoords != null && texCoords.capacity() > 0 ? faces.facesTexIdxs : null;
+		final int count = faces.getVerticesReferencesCount();
+
+		Log.i("Object3DBuilder", "Welding vertices... Total (" + count + ")");
+
+		// open addressing hash table: welded vertex index or -1 if the slot is empty
+		final int tableSize = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+		final int[] table = new int[tableSize];
+		Arrays.fill(table, -1);
+		// the first face vertex of each welded vertex
+		final int[] weldedVertex = new int[count];
+		// the face normal (x,y,z bits) of each welded vertex, for the models without normals
+		final int[] weldedNormal = normIdxs == null ? new int[count * 3] : null;
+		final IntBuffer drawOrder = createNativeByteBuffer(count * 4).asIntBuffer();
+		int weldedCount = 0;
+		float[] faceNormal = null;
+		for (int i = 0; i < count; i++) {
+			if (normIdxs == null && i % 3 == 0) {
+				faceNormal = getFaceNormal(vertexBuffer, indexBuffer, i / 3);
+			}
+			final int v = indexBuffer.get(i);
+			final int vt = getTexIndex(texIdxs, texCoords, i);
+			final int vn = normIdxs != null ? getNormalIndex(normIdxs, i) : 0;
+			int hash = 31 * (31 * v + vt) + vn;
+			if (faceNormal != null) {
+				hash = 31 * (31 * (31 * hash + Float.floatToRawIntBits(faceNormal[0]))
+						+ Float.floatToRawIntBits(faceNormal[1])) + Float.floatToRawIntBits(faceNormal[2]);
+			}
+			// spread the bits, as we use the lower bits only
+			hash ^= hash >>> 16;
+			hash *= 0x85ebca6b;
+			hash ^= hash >>> 13;
+			int slot = hash & (tableSize - 1);
+			while (table[slot] != -1) {
+				final int w = table[slot];
+				final int other = weldedVertex[w];
+				if (indexBuffer.get(other) == v && getTexIndex(texIdxs, texCoords, other) == vt
+						&& (normIdxs != null ? getNormalIndex(normIdxs, other) == vn
+						: weldedNormal[w * 3] == Float.floatToRawIntBits(faceNormal[0])
+						&& weldedNormal[w * 3 + 1] == Float.floatToRawIntBits(faceNormal[1])
+						&& weldedNormal[w * 3 + 2] == Float.floatToRawIntBits(faceNormal[2]))) {
+					break;
+				}
+				slot = (slot + 1) & (tableSize - 1);
+			}
+			if (table[slot] == -1) {
+				if (weldedNormal != null) {
+					for (int j = 0; j < 3; j++) {
+						weldedNormal[weldedCount * 3 + j] = Float.floatToRawIntBits(faceNormal[j]);
+					}
+				}
+				table[slot] = weldedCount;
+				weldedVertex[weldedCount++] = i;
+			}
+			drawOrder.put(i, table[slot]);
+		}
+
+		// the attributes of the unique vertices
+		final FloatBuffer vertexArrayBuffer = createNativeByteBuffer(weldedCount * 3 * 4).asFloatBuffer();
+		final FloatBuffer normalsArrayBuffer = createNativeByteBuffer(weldedCount * 3 * 4).asFloatBuffer();
+		final FloatBuffer texCoordsArrayBuffer = texIdxs != null ?
+				createNativeByteBuffer(weldedCount * 2 * 4).asFloatBuffer() : null;
+		final boolean flip = obj.isFlipTextCoords();
+		forEachRange(executor, numChunks, weldedCount, (from, to) -> {
+			for (int w = from; w < to; w++) {
+				final int i = weldedVertex[w];
+				final int v = indexBuffer.get(i);
+				for (int j = 0; j < 3; j++) {
+					vertexArrayBuffer.put(w * 3 + j, vertexBuffer.get(v * 3 + j));
+				}
+				if (normIdxs != null) {
+					final int vn = getNormalIndex(normIdxs, i);
+					for (int j = 0; j < 3 && vn >= 0; j++) {
+						normalsArrayBuffer.put(w * 3 + j, normalsBuffer.get(vn * 3 + j));
+					}
+				} else {
+					for (int j = 0; j < 3; j++) {
+						normalsArrayBuffer.put(w * 3 + j, Float.intBitsToFloat(weldedNormal[w * 3 + j]));
+					}
+				}
+				if (texCoordsArrayBuffer != null) {
+					// tex coords are (u,v,w) but we only use (u,v). Wrong ones are (0,0)
+					final int vt = getTexIndex(texIdxs, texCoords, i);
+					if (vt >= 0) {
+						texCoordsArrayBuffer.put(w * 2, texCoords.get(vt * 3));
+						texCoordsArrayBuffer.put(w * 2 + 1, flip ? 1 - texCoords.get(vt * 3 + 1) : texCoords.get(vt * 3 + 1));
+					}
+				}
+			}
+		});
+
+		obj.setVertexArrayBuffer(vertexArrayBuffer);
+		obj.setVertexNormalsArrayBuffer(normalsArrayBuffer);
+		obj.setTextureCoordsArrayBuffer(texCoordsArrayBuffer);
+		obj.setDrawOrder(drawOrder);
+		obj.setDrawUsingArrays(false);
+
+		Log.i("Object3DBuilder", "Welded " + count + " vertices into " + weldedCount);
+	}
+
+	/**
+	 * @return the vt of the face vertex, or -1 if there is none or it's wrong
+	 */
+	private static int getTexIndex(IntBuffer texIdxs, FloatBuffer texCoords, int i) {
+		if (texIdxs == null || i >= texIdxs.capacity()) {
+			return -1;
+		}
+		final int vt = texIdxs.get(i);
+		return vt >= 0 && vt < texCoords.capacity() / 3 ? vt : -1;
+	}
+
+	/**
+	 * @return the vn of the face vertex, or -1 if there is none
+	 */
+	private static int getNormalIndex(IntBuffer normIdxs, int i) {
+		return i < normIdxs.capacity() ? normIdxs.get(i) : -1;
+	}
+
+	private static float[] getFaceNormal(FloatBuffer vertexBuffer, IntBuffer indexBuffer, int face) {
+		final float[][] v = new float[3][3];
+		for (int k = 0; k < 3; k++) {
+			final int vertex = indexBuffer.get(face * 3 + k);
+			for (int j = 0; j < 3; j++) {
+				v[k][j] = vertexBuffer.get(vertex * 3 + j);
+			}
+		}
+		return Math3DUtils.calculateNormal(v[0], v[1], v[2]);
+	}
+
+	/**
+	 * Work over a range of elements (vertices, faces...)
+	 */
+	private interface RangeTask {
+		void run(int from, int to);
+	}
+
+	/**
+	 * Run the task for all the elements. If there is an executor, the elements are split in ranges processed in
+	 * parallel. Every element is written to its own position of the buffers, so the result is the same.
+	 *
+	 * @param executor  the executor or <code>null</code> to run the task in the calling thread
+	 * @param numChunks number of ranges
+	 * @param count     number of elements
+	 * @param task      the task
+	 */
+	private static void forEachRange(ExecutorService executor, int numChunks, int count, RangeTask task) {
+		if (executor == null || numChunks <= 1) {
+			task.run(0, count);
+			return;
+		}
+		final List<Future<?>> tasks = new ArrayList<>(numChunks);
+		for (int i = 0; i < numChunks; i++) {
+			final int from = (int) ((long) count * i / numChunks);
+			final int to = (int) ((long) count * (i + 1) / numChunks);
+			tasks.add(executor.submit(() -> task.run(from, to)));
+		}
+		try {
+			for (Future<?> future : tasks) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * Weld the vertices of the vertex arrays that have the same position, normal, color and texture coordinates
+	 * (that is, the same v/vt/vn), so every unique vertex is stored only once. The arrays are replaced by the welded
+	 * vertices and the draw order is replaced by the indices of the welded vertices, so the model is then drawn using
+	 * <code>glDrawElements</code>. Faces keep their order, so the submeshes of the model are still valid.
+	 *
+	 * @param obj the 3d model, with the vertex arrays built and drawn using arrays
+	 * @return the same 3d model
+	 */
+	public static Object3DData weldVertexArrays(Object3DData obj) {
+		final FloatBuffer vertexArrayBuffer = obj.getVertexArrayBuffer();
+		if (vertexArrayBuffer == null || !obj.isDrawUsingArrays()) {
+			Log.w("Object3DBuilder", "Model is not drawn using arrays. Not welding vertices");
+			return obj;
+		}
+
+		// vertex attributes and number of floats per vertex
+		final FloatBuffer[] attributes = {vertexArrayBuffer, obj.getVertexNormalsArrayBuffer(),
+				obj.getVertexColorsArrayBuffer(), obj.getTextureCoordsArrayBuffer()};
+		final int[] sizes = {COORDS_PER_VERTEX, 3, 4, 2};
+		final int count = vertexArrayBuffer.capacity() / COORDS_PER_VERTEX;
+		for (int a = 1; a < attributes.length; a++) {
+			if (attributes[a] != null && attributes[a].capacity() < count * sizes[a]) {
+				Log.w("Object3DBuilder", "Vertex attribute " + a + " is incomplete. Not welding vertices");
+				return obj;
+			}
+		}
+
+		Log.i("Object3DBuilder", "Welding vertices... Total (" + count + ")");
+
+		// open addressing hash table: welded vertex index or -1 if the slot is empty
+		int tableSize = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+		final int[] table = new int[tableSize];
+		Arrays.fill(table, -1);
+		// the first array vertex of each welded vertex
+		final int[] weldedVertex = new int[count];
+		final IntBuffer drawOrder = createNativeByteBuffer(count * 4).asIntBuffer();
+		int weldedCount = 0;
+		for (int i = 0; i < count; i++) {
+			int slot = hashVertex(attributes, sizes, i) & (tableSize - 1);
+			while (table[slot] != -1 && !equalVertex(attributes, sizes, weldedVertex[table[slot]], i)) {
+				slot = (slot + 1) & (tableSize - 1);
+			}
+			if (table[slot] == -1) {
+				table[slot] = weldedCount;
+				weldedVertex[weldedCount++] = i;
+			}
+			drawOrder.put(i, table[slot]);
+		}
+
+		// copy the attributes of the unique vertices
+		final FloatBuffer[] welded = new FloatBuffer[attributes.length];
+		for (int a = 0; a < attributes.length; a++) {
+			if (attributes[a] == null) continue;
+			final int size = sizes[a];
+			welded[a] = createNativeByteBuffer(weldedCount * size * 4).asFloatBuffer();
+			for (int i = 0; i < weldedCount; i++) {
+				for (int j = 0; j < size; j++) {
+					welded[a].put(i * size + j, attributes[a].get(weldedVertex[i] * size + j));
+				}
+			}
+		}
+
+		obj.setVertexArrayBuffer(welded[0]);
+		obj.setVertexNormalsArrayBuffer(welded[1]);
+		obj.setVertexColorsArrayBuffer(welded[2]);
+		obj.setTextureCoordsArrayBuffer(welded[3]);
+		obj.setDrawOrder(drawOrder);
+		obj.setDrawUsingArrays(false);
+
+		Log.i("Object3DBuilder", "Welded " + count + " vertices into " + weldedCount);
+		return obj;
+	}
+
+	private static int hashVertex(FloatBuffer[] attributes, int[] sizes, int vertex) {
+		int hash = 1;
+		for (int a = 0; a < attributes.length; a++) {
+			if (attributes[a] == null) continue;
+			final int offset = vertex * sizes[a];
+			for (int j = 0; j < sizes[a]; j++) {
+				hash = 31 * hash + Float.floatToRawIntBits(attributes[a].get(offset + j));
+			}
+		}
+		// spread the bits, as we use the lower bits only
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		return hash;
+	}
+
+	private static boolean equalVertex(FloatBuffer[] attributes, int[] sizes, int vertex1, int vertex2) {
+		for (int a = 0; a < attributes.length; a++) {
+			if (attributes[a] == null) continue;
+			final int offset1 = vertex1 * sizes[a];
+			final int offset2 = vertex2 * sizes[a];
+			for (int j = 0; j < sizes[a]; j++) {
+				if (Float.floatToRawIntBits(attributes[a].get(offset1 + j))
+						!= Float.floatToRawIntBits(attributes[a].get(offset2 + j))) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
 	public static Object3DData buildBoundingBox(Object3DData obj) {
 		BoundingBoxBuilder boundingBox = new BoundingBoxBuilder(obj.getBoundingBox(),
 				obj.getColor());
@@ -679,87 +1043,241 @@ public final class Object3DBuilder {
 	}
 
 	/**
-	 * Builds a wireframe of the model by drawing all lines (3) of the triangles. This method uses
-	 * the drawOrder buffer.
+	 * Builds a model of independent triangles, i.e. a chunk of a model that is still being loaded
+	 *
+	 * @param vertexArrayBuffer  the triangles (9 floats per triangle)
+	 * @param normalsArrayBuffer the normals (9 floats per triangle). If null, flat normals are calculated
+	 * @return the 3d model
+	 */
+	public static Object3DData buildTriangles(FloatBuffer vertexArrayBuffer, FloatBuffer normalsArrayBuffer) {
+		int triangles = vertexArrayBuffer.capacity() / 9;
+		if (normalsArrayBuffer == null) {
+			normalsArrayBuffer = createNativeByteBuffer(triangles * 9 * 4).asFloatBuffer();
+			for (int i = 0; i < triangles * 9; i += 9) {
+				float ax = vertexArrayBuffer.get(i + 3) - vertexArrayBuffer.get(i);
+				float ay = vertexArrayBuffer.get(i + 4) - vertexArrayBuffer.get(i + 1);
+				float az = vertexArrayBuffer.get(i + 5) - vertexArrayBuffer.get(i + 2);
+				float bx = vertexArrayBuffer.get(i + 6) - vertexArrayBuffer.get(i);
+				float by = vertexArrayBuffer.get(i + 7) - vertexArrayBuffer.get(i + 1);
+				float bz = vertexArrayBuffer.get(i + 8) - vertexArrayBuffer.get(i + 2);
+				float nx = ay * bz - az * by;
+				float ny = az * bx - ax * bz;
+				float nz = ax * by - ay * bx;
+				float length = Matrix.length(nx, ny, nz);
+				if (length > 0) {
+					nx /= length;
+					ny /= length;
+					nz /= length;
+				}
+				for (int j = 0; j < 9; j += 3) {
+					normalsArrayBuffer.put(i + j, nx).put(i + j + 1, ny).put(i + j + 2, nz);
+				}
+			}
+		}
+		Object3DData ret = new Object3DData(vertexArrayBuffer).setVertexNormalsArrayBuffer(normalsArrayBuffer)
+				.setDrawMode(GLES20.GL_TRIANGLES).setDrawUsingArrays(true);
+		// faces are used for checking whether the model is loaded
+		ret.setFaces(new Faces(triangles));
+		return ret;
+	}
+
+	/**
+	 * Builds a wireframe of the model by drawing the lines of the triangles. Lines shared by several triangles are
+	 * drawn only once. The vertices with the same position are welded first, so lines are also shared when the
+	 * model is drawn using arrays (every triangle has its own vertices) or when the vertices only differ in other
+	 * attributes (normals, texture coordinates). This method uses the drawOrder buffer.
 	 * @param objData the 3d model
 	 * @return the 3d wireframe
 	 */
 	public static Object3DData buildWireframe(Object3DData objData) {
 
-		if (objData.getDrawOrder() != null) {
+		if (objData.getDrawOrder() == null && objData.getVertexArrayBuffer() == null) {
+			return objData;
+		}
 
-			try {
-				Log.i("Object3DBuilder", "Building wireframe from draw buffer... Total index: "+objData
-						.getDrawOrder().capacity());
-				IntBuffer drawBuffer = objData.getDrawOrder();
-				IntBuffer wireframeDrawOrder = createNativeByteBuffer(drawBuffer.capacity() * 2 * 4).asIntBuffer();
-				for (int i = 0; i < drawBuffer.capacity(); i += 3) {
-					int v0 = drawBuffer.get(i);
-					int v1 = drawBuffer.get(i + 1);
-					int v2 = drawBuffer.get(i + 2);
-					if (objData.isDrawUsingArrays()) {
-						v0 = i;
-						v1 = i + 1;
-						v2 = i + 2;
+		try {
+			// the vertices of the triangles are either the draw order or the vertex array
+			final IntBuffer drawBuffer = objData.getDrawOrder();
+			final boolean indexed = drawBuffer != null && !objData.isDrawUsingArrays();
+			final int count = drawBuffer != null ? drawBuffer.capacity() : objData.getVertexArrayBuffer().capacity() / 3;
+			Log.i("Object3DBuilder", "Building wireframe from " + (indexed ? "draw buffer" : "vertex buffer")
+					+ "... Total index: " + count);
+
+			// lines are the same if their ends are in the same position
+			final FloatBuffer positions = objData.getVertexArrayBuffer() != null ? objData.getVertexArrayBuffer()
+					: objData.getVertexBuffer();
+			final int[] weldedVertex = weldPositions(positions, positions.capacity() / COORDS_PER_VERTEX);
+			if (indexed && objData.getPartitions() != null) {
+				weldInPartitions(weldedVertex, objData.getPartitions());
+			}
+
+			// open addressing hash set of the lines (min << 32 | max) or -1 if the slot is empty
+			final int tableSize = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+			final long[] table = new long[tableSize];
+			Arrays.fill(table, -1);
+
+			// lines drawn before every triangle, to know where the submeshes start
+			final List<Submesh> submeshes = objData.getSubmeshes();
+			final int[] linesBefore = submeshes != null ? new int[count / 3 + 1] : null;
+
+			final int[] lines = new int[count / 3 * 3 * 2];
+			int linesCount = 0;
+			final int[] v = new int[3];
+			for (int i = 0; i + 2 < count; i += 3) {
+				if (linesBefore != null) linesBefore[i / 3] = linesCount;
+				for (int j = 0; j < 3; j++) {
+					v[j] = weldedVertex[indexed ? drawBuffer.get(i + j) : i + j];
+				}
+				for (int j = 0; j < 3; j++) {
+					int v0 = Math.min(v[j], v[(j + 1) % 3]);
+					int v1 = Math.max(v[j], v[(j + 1) % 3]);
+					long key = (long) v0 << 32 | v1;
+					int slot = hashLine(key) & (tableSize - 1);
+					while (table[slot] != -1 && table[slot] != key) {
+						slot = (slot + 1) & (tableSize - 1);
+					}
+					if (table[slot] == -1) {
+						table[slot] = key;
+						lines[linesCount * 2] = v0;
+						lines[linesCount * 2 + 1] = v1;
+						linesCount++;
 					}
-					wireframeDrawOrder.put(v0);
-					wireframeDrawOrder.put(v1);
-					wireframeDrawOrder.put(v1);
-					wireframeDrawOrder.put(v2);
-					wireframeDrawOrder.put(v2);
-					wireframeDrawOrder.put(v0);
 				}
-				if (objData instanceof AnimatedModel){
-					AnimatedModel object3DData = new AnimatedModel(objData.getVertexArrayBuffer());
-					object3DData.setVertexBuffer(objData.getVertexBuffer()).setDrawOrder(wireframeDrawOrder)
-							.setVertexNormalsBuffer(objData.getVertexNormalsBuffer())
-							.setVertexNormalsArrayBuffer(objData.getVertexNormalsArrayBuffer()).setColor(objData
-							.getColor())
-							.setVertexColorsArrayBuffer(objData.getVertexColorsArrayBuffer()).setTextureCoordsArrayBuffer(objData.getTextureCoordsArrayBuffer())
-							.setPosition(objData.getPosition()).setRotation(objData.getRotation()).setScale(objData.getScale())
-							.setDrawMode(GLES20.GL_LINES);
-					object3DData.setVertexWeights(((AnimatedModel) objData).getVertexWeights());
-					object3DData.setJointIds(((AnimatedModel) objData).getJointIds());
-					object3DData.setRootJoint(((AnimatedModel) objData).getRootJoint(), ((AnimatedModel) objData)
-							.getJointCount(), ((AnimatedModel) objData).getBoneCount());
-					object3DData.doAnimation(((AnimatedModel) objData).getAnimation());
-					object3DData.setBindShapeMatrix(((AnimatedModel)objData).getBindShapeMatrix());
-					return object3DData;
+			}
+			if (linesBefore != null) linesBefore[count / 3] = linesCount;
+			Log.i("Object3DBuilder", "Wireframe lines: " + linesCount + " (triangles: " + count / 3 + ")");
+
+			IntBuffer wireframeDrawOrder = createNativeByteBuffer(linesCount * 2 * 4).asIntBuffer();
+			wireframeDrawOrder.put(lines, 0, linesCount * 2);
+			wireframeDrawOrder.position(0);
+
+			List<Submesh> wireframeSubmeshes = null;
+			if (submeshes != null) {
+				wireframeSubmeshes = new ArrayList<>(submeshes.size());
+				for (Submesh submesh : submeshes) {
+					int start = linesBefore[Math.min(submesh.getStart() / 3, count / 3)];
+					int end = linesBefore[Math.min((submesh.getStart() + submesh.getCount()) / 3, count / 3)];
+					if (end > start) {
+						wireframeSubmeshes.add(new Submesh(start * 2, (end - start) * 2, submesh.getColor()));
+					}
 				}
-				else {
-					return new Object3DData(objData.getVertexArrayBuffer()).setVertexBuffer(objData.getVertexBuffer())
-							.setDrawOrder(wireframeDrawOrder)
-							.setVertexNormalsBuffer(objData.getVertexNormalsBuffer())
-							.setVertexNormalsArrayBuffer(objData.getVertexNormalsArrayBuffer()).setColor(objData.getColor())
-							.setVertexColorsArrayBuffer(objData.getVertexColorsArrayBuffer()).setTextureCoordsArrayBuffer(objData.getTextureCoordsArrayBuffer())
-							.setPosition(objData.getPosition()).setRotation(objData.getRotation()).setScale(objData.getScale())
-							.setDrawMode(GLES20.GL_LINES);
+			}
+
+			if (objData instanceof AnimatedModel){
+				AnimatedModel object3DData = new AnimatedModel(objData.getVertexArrayBuffer());
+				object3DData.setVertexBuffer(objData.getVertexBuffer()).setDrawOrder(wireframeDrawOrder)
+						.setVertexNormalsBuffer(objData.getVertexNormalsBuffer())
+						.setVertexNormalsArrayBuffer(objData.getVertexNormalsArrayBuffer()).setColor(objData
+						.getColor())
+						.setVertexColorsArrayBuffer(objData.getVertexColorsArrayBuffer()).setSubmeshes(wireframeSubmeshes)
+						.setTextureCoordsArrayBuffer(objData.getTextureCoordsArrayBuffer())
+						.setPosition(objData.getPosition()).setRotation(objData.getRotation()).setScale(objData.getScale())
+						.setDrawMode(GLES20.GL_LINES);
+				object3DData.setVertexWeights(((AnimatedModel) objData).getVertexWeights());
+				object3DData.setJointIds(((AnimatedModel) objData).getJointIds());
+				object3DData.setRootJoint(((AnimatedModel) objData).getRootJoint(), ((AnimatedModel) objData)
+						.getJointCount(), ((AnimatedModel) objData).getBoneCount());
+				object3DData.doAnimation(((AnimatedModel) objData).getAnimation());
+				object3DData.setBindShapeMatrix(((AnimatedModel)objData).getBindShapeMatrix());
+				shareVertexLayout(object3DData, objData);
+				return object3DData;
+			}
+			else {
+				Object3DData object3DData = new Object3DData(objData.getVertexArrayBuffer())
+						.setVertexBuffer(objData.getVertexBuffer())
+						.setDrawOrder(wireframeDrawOrder)
+						.setVertexNormalsBuffer(objData.getVertexNormalsBuffer())
+						.setVertexNormalsArrayBuffer(objData.getVertexNormalsArrayBuffer()).setColor(objData.getColor())
+						.setVertexColorsArrayBuffer(objData.getVertexColorsArrayBuffer()).setSubmeshes(wireframeSubmeshes)
+						.setTextureCoordsArrayBuffer(objData.getTextureCoordsArrayBuffer())
+						.setPosition(objData.getPosition()).setRotation(objData.getRotation()).setScale(objData.getScale())
+						.setDrawMode(GLES20.GL_LINES);
+				shareVertexLayout(object3DData, objData);
+				return object3DData;
+			}
+		} catch (Exception ex) {
+			Log.e("Object3DBuilder", ex.getMessage(), ex);
+		}
+		return objData;
+	}
+
+	/**
+	 * Keep the welded vertices in the partition of the vertex, so the lines of every partition can be drawn with the
+	 * vertices of the partition (see {@link MeshPartitioner#partitionLike(Object3DData, Object3DData)}). The lines
+	 * on the borders of the partitions are drawn once for every partition.
+	 *
+	 * @param weldedVertex for every vertex, the first vertex with the same position. Updated with the first one in the
+	 *                     same partition
+	 * @param partitions   the partitions, which are consecutive ranges of the vertices of the model
+	 */
+	private static void weldInPartitions(int[] weldedVertex, List<Object3DData> partitions) {
+		final int[] first = new int[weldedVertex.length];
+		final int[] firstPartition = new int[weldedVertex.length];
+		Arrays.fill(firstPartition, -1);
+		int base = 0;
+		for (int p = 0; p < partitions.size(); p++) {
+			final Object3DData partition = partitions.get(p);
+			final FloatBuffer positions = partition.getVertexArrayBuffer() != null ? partition.getVertexArrayBuffer()
+					: partition.getVertexBuffer();
+			final int end = Math.min(weldedVertex.length, base + positions.capacity() / COORDS_PER_VERTEX);
+			for (int i = base; i < end; i++) {
+				final int welded = weldedVertex[i];
+				if (welded < base) {
+					if (firstPartition[welded] != p) {
+						firstPartition[welded] = p;
+						first[welded] = i;
+					}
+					weldedVertex[i] = first[welded];
 				}
-			} catch (Exception ex) {
-				Log.e("Object3DBuilder", ex.getMessage(), ex);
 			}
+			base = end;
 		}
-		else if (objData.getVertexArrayBuffer() != null){
-			Log.i("Object3DBuilder", "Building wireframe from vertex buffer...");
-			FloatBuffer vertexBuffer = objData.getVertexArrayBuffer();
-			IntBuffer wireframeDrawOrder = createNativeByteBuffer(vertexBuffer.capacity()/3 * 2 * 4).asIntBuffer();
-			for (int i = 0; i < vertexBuffer.capacity()/3; i += 3) {
-				wireframeDrawOrder.put(i);
-				wireframeDrawOrder.put(i+1);
-				wireframeDrawOrder.put(i+1);
-				wireframeDrawOrder.put(i+2);
-				wireframeDrawOrder.put(i+2);
-				wireframeDrawOrder.put(i);
+	}
+
+	/**
+	 * The lines use the vertices of the model, so they are drawn with its interleaved vertices, as the float
+	 * attributes may have been released
+	 */
+	private static void shareVertexLayout(Object3DData wireframe, Object3DData objData) {
+		wireframe.setTextureData(objData.getTextureData());
+		if (objData.getVertexLayout() != null) {
+			wireframe.setVertexLayout(objData.getVertexLayout());
+		}
+	}
+
+	/**
+	 * Find the vertices with the same position
+	 *
+	 * @param vertices the vertex array
+	 * @param count    number of vertices
+	 * @return for every vertex, the first vertex with the same position
+	 */
+	private static int[] weldPositions(FloatBuffer vertices, int count) {
+		final FloatBuffer[] attributes = {vertices};
+		final int[] sizes = {COORDS_PER_VERTEX};
+		int tableSize = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+		final int[] table = new int[tableSize];
+		Arrays.fill(table, -1);
+		final int[] ret = new int[count];
+		for (int i = 0; i < count; i++) {
+			int slot = hashVertex(attributes, sizes, i) & (tableSize - 1);
+			while (table[slot] != -1 && !equalVertex(attributes, sizes, table[slot], i)) {
+				slot = (slot + 1) & (tableSize - 1);
 			}
-			return new Object3DData(objData.getVertexArrayBuffer()).setVertexBuffer(objData.getVertexBuffer())
-					.setDrawOrder(wireframeDrawOrder)
-					.setVertexNormalsBuffer(objData.getVertexNormalsBuffer())
-					.setVertexNormalsArrayBuffer(objData.getVertexNormalsArrayBuffer()).setColor(objData.getColor())
-					.setVertexColorsArrayBuffer(objData.getVertexColorsArrayBuffer()).setTextureCoordsArrayBuffer(objData.getTextureCoordsArrayBuffer())
-					.setPosition(objData.getPosition()).setRotation(objData.getRotation()).setScale(objData.getScale())
-					.setDrawMode(GLES20.GL_LINES);
+			if (table[slot] == -1) {
+				table[slot] = i;
+			}
+			ret[i] = table[slot];
 		}
-		return objData;
+		return ret;
+	}
+
+	private static int hashLine(long key) {
+		// spread the bits, as we use the lower bits only
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
 	}
 
 	/**
@@ -790,7 +1308,8 @@ public final class Object3DBuilder {
 	}
 
 	/**
-	 * Generate a new object that contains all the line normals for all the faces for the specified object
+	 * Generate a new object that contains all the line normals for all the faces for the specified object. Big models
+	 * (more than {@link #MIN_FACES_PER_THREAD} faces per thread) are built in parallel.
 	 * <p>
 	 * TODO: This only works for objects made of triangles. Make it useful for any kind of polygonal face
 	 *
@@ -798,271 +1317,189 @@ public final class Object3DBuilder {
 	 * @return the model with all the normal lines
 	 */
 	public static Object3DData buildFaceNormals(Object3DData obj) {
+		return buildFaceNormals(obj, Runtime.getRuntime().availableProcessors());
+	}
+
+	static Object3DData buildFaceNormals(Object3DData obj, int threads) {
 		if (obj.getDrawMode() != GLES20.GL_TRIANGLES) {
 			return null;
 		}
 
-		FloatBuffer vertexBuffer = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
+		final FloatBuffer vertexBuffer = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
 				: obj.getVertexBuffer();
 		if (vertexBuffer == null) {
-			Log.v("Builder", "Generating face normals for '" + obj.getId() + "' I found that there is no vertex data");
+			Log.v("Object3DBuilder", "Generating face normals for '" + obj.getId() + "' I found that there is no vertex data");
 			return null;
 		}
 
-		FloatBuffer normalsLines;
-
-		IntBuffer drawBuffer = obj.getDrawOrder();
+		final IntBuffer drawBuffer = obj.getDrawOrder();
+		final FloatBuffer normalsBuffer;
+		final int numFaces;
 		if (drawBuffer != null) {
 			Log.i("Object3DBuilder", "Generating face normal lines for '" + obj.getId() + "' using indices...");
-			int size = /* 2 points */ 2 * 3 * /* 3 points per face */ (drawBuffer.capacity() / 3)
-					* /* bytes per float */4;
-			normalsLines = createNativeByteBuffer(size).asFloatBuffer();
-			drawBuffer.position(0);
-			for (int i = 0; i < drawBuffer.capacity(); i += 3) {
-				int v1 = drawBuffer.get() * COORDS_PER_VERTEX;
-				int v2 = drawBuffer.get() * COORDS_PER_VERTEX;
-				int v3 = drawBuffer.get() * COORDS_PER_VERTEX;
-				float[][] normalLine;
-				if (obj.getVertexNormalsBuffer() != null) {
-					Log.v("Object3DBuilder","Using normal buffer...");
-					float[] normal = new float[]{obj.getVertexNormalsBuffer().get(v1),
-							obj.getVertexNormalsBuffer().get(v1+1),
-							obj.getVertexNormalsBuffer().get(v1+2)};
-					normalLine = Math3DUtils.getNormalLine2(
-							new float[]{vertexBuffer.get(v1), vertexBuffer.get(v1 + 1), vertexBuffer.get(v1 + 2)},
-							new float[]{vertexBuffer.get(v2), vertexBuffer.get(v2 + 1), vertexBuffer.get(v2 + 2)},
-							new float[]{vertexBuffer.get(v3), vertexBuffer.get(v3 + 1), vertexBuffer.get(v3 + 2)},
-							normal);
-				} else {
-					Log.v("Object3DBuilder","Calculating normal...");
-					normalLine = Math3DUtils.getNormalLine(
-							new float[]{vertexBuffer.get(v1), vertexBuffer.get(v1 + 1), vertexBuffer.get(v1 + 2)},
-							new float[]{vertexBuffer.get(v2), vertexBuffer.get(v2 + 1), vertexBuffer.get(v2 + 2)},
-							new float[]{vertexBuffer.get(v3), vertexBuffer.get(v3 + 1), vertexBuffer.get(v3 + 2)});
-				}
-				normalsLines.put(normalLine[0]).put(normalLine[1]);
-			}
+			numFaces = drawBuffer.capacity() / 3;
+			// the normal of the first vertex of the face, if any. Indices are of the arrays if they were built
+			normalsBuffer = obj.getVertexArrayBuffer() != null ? obj.getVertexNormalsArrayBuffer()
+					: obj.getVertexNormalsBuffer();
 		} else {
 			if (vertexBuffer.capacity() % (/* COORDS_PER_VERTEX */3 * /* VERTEX_PER_FACE */ 3) != 0) {
 				// something in the data is wrong
-				Log.v("Builder", "Generating face normals for '" + obj.getId()
+				Log.v("Object3DBuilder", "Generating face normals for '" + obj.getId()
 						+ "' I found that vertices are not multiple of 9 (3*3): " + vertexBuffer.capacity());
 				return null;
 			}
+			Log.i("Object3DBuilder", "Generating face normal lines for '" + obj.getId() + "'...");
+			numFaces = vertexBuffer.capacity() / 9;
+			normalsBuffer = null;
+		}
 
-			Log.v("Object3DBuilder", "Generating face normal lines for '" + obj.getId() + "'...");
-			normalsLines = createNativeByteBuffer(6 * vertexBuffer.capacity() / 9 * 4).asFloatBuffer();
-			vertexBuffer.position(0);
-			for (int i = 0; i < vertexBuffer.capacity() / /* COORDS_PER_VERTEX */ 3 / /* VERTEX_PER_FACE */3; i++) {
-				float[][] normalLine = Math3DUtils.getNormalLine(
-						new float[]{vertexBuffer.get(), vertexBuffer.get(), vertexBuffer.get()},
-						new float[]{vertexBuffer.get(), vertexBuffer.get(), vertexBuffer.get()},
-						new float[]{vertexBuffer.get(), vertexBuffer.get(), vertexBuffer.get()});
-				normalsLines.put(normalLine[0]).put(normalLine[1]);
-
-				// debug
-				@SuppressWarnings("unused")
-				String normal = new StringBuilder().append(normalLine[0][0]).append(",").append(normalLine[0][1])
-						.append(",").append(normalLine[0][2]).append("-").append(normalLine[1][0]).append(",")
-						.append(normalLine[1][1]).append(",").append(normalLine[1][2]).toString();
-				// Log.v("Builder", "fNormal[" + i + "]:(" + normal + ")");
+		// 2 points per face
+		final FloatBuffer normalsLines = createNativeByteBuffer(numFaces * 6 * 4).asFloatBuffer();
+
+		FloatBuffer jointIds = null;
+		FloatBuffer vertexWeights = null;
+		FloatBuffer newJointIds = null;
+		FloatBuffer newVertexWeights = null;
+		if (obj instanceof AnimatedModel) {
+			jointIds = ((AnimatedModel) obj).getJointIds();
+			vertexWeights = ((AnimatedModel) obj).getVertexWeights();
+			if (drawBuffer != null) {
+				// the joints of the 2 points are the ones of the first 2 vertices of the face
+				newJointIds = createNativeByteBuffer(numFaces * 6 * 4).asFloatBuffer();
+				newVertexWeights = createNativeByteBuffer(numFaces * 6 * 4).asFloatBuffer();
 			}
 		}
 
-		if (obj instanceof AnimatedModel) {
-		    Log.i("Object3DBuilder","New face-normals animated model");
-
-            FloatBuffer jointIds = ((AnimatedModel) obj).getJointIds();
-            FloatBuffer vertexWeights = ((AnimatedModel) obj).getVertexWeights();
-
-            if (drawBuffer != null) {
-
-                int newIdxCapacity = (drawBuffer.capacity() / 3) * 2 * 3;
-                Log.v("Object3DBuilder","face-normals. original index capacity: "+jointIds.capacity()
-                        +" new capacity: " +newIdxCapacity);
-
-                // build new joint info
-                final FloatBuffer newJointIds = createNativeByteBuffer(newIdxCapacity * 4).asFloatBuffer();
-                newJointIds.position(0);
-                final FloatBuffer newVertexWeights = createNativeByteBuffer(newIdxCapacity * 4).asFloatBuffer();
-                newVertexWeights.position(0);
-                drawBuffer.position(0);
-                for (int i = 0; i < drawBuffer.capacity(); i += 3 /* MAX_WEIGHTS x 2 vertex */) {
-
-                    int offsetI1 = drawBuffer.get() * 3;
-                    int offsetI2 = drawBuffer.get() * 3;
-                    int offsetI3 = drawBuffer.get() * 3;
-
-                    newJointIds.put(jointIds.get(offsetI1));
-                    newJointIds.put(jointIds.get(offsetI1+1));
-                    newJointIds.put(jointIds.get(offsetI1+2));
-                    newVertexWeights.put(vertexWeights.get(offsetI1));
-                    newVertexWeights.put(vertexWeights.get(offsetI1 + 1));
-                    newVertexWeights.put(vertexWeights.get(offsetI1 + 2));
-
-                    newJointIds.put(jointIds.get(offsetI2));
-                    newJointIds.put(jointIds.get(offsetI2 + 1));
-                    newJointIds.put(jointIds.get(offsetI2 + 2));
-                    newVertexWeights.put(vertexWeights.get(offsetI2));
-                    newVertexWeights.put(vertexWeights.get(offsetI2 + 1));
-                    newVertexWeights.put(vertexWeights.get(offsetI2 + 2));
-                }
-                jointIds = newJointIds;
-                vertexWeights = newVertexWeights;
-            }
+		final FloatBuffer srcJointIds = jointIds;
+		final FloatBuffer srcVertexWeights = vertexWeights;
+		final FloatBuffer dstJointIds = newJointIds;
+		final FloatBuffer dstVertexWeights = newVertexWeights;
+		final RangeTask task = (from, to) -> {
+			buildFaceNormals(vertexBuffer, drawBuffer, normalsBuffer, normalsLines, from, to);
+			if (dstJointIds != null) {
+				copyLineJoints(drawBuffer, srcJointIds, srcVertexWeights, dstJointIds, dstVertexWeights, from, to);
+			}
+		};
 
-			AnimatedModel faceNormalsModel = new AnimatedModel(normalsLines);
-			faceNormalsModel.setDrawMode(GLES20.GL_LINES).setColor(obj.getColor());
-			faceNormalsModel.setPosition(obj.getPosition());
-			faceNormalsModel.setScale(obj.getScale());
-
-			faceNormalsModel.doAnimation(((AnimatedModel) obj).getAnimation());
-			faceNormalsModel.setRootJoint(((AnimatedModel) obj).getRootJoint(),
-                    ((AnimatedModel) obj).getJointCount(),
-                    ((AnimatedModel) obj).getBoneCount());
-            faceNormalsModel.setJointIds(jointIds);
-            faceNormalsModel.setVertexWeights(vertexWeights);
-			faceNormalsModel.setBindShapeMatrix(obj.getBindShapeMatrix());
-            Log.i("Object3DBuilder","New [animated] face normal lines object created");
-			return faceNormalsModel;
+		final int numChunks = Math.min(threads, numFaces / MIN_FACES_PER_THREAD);
+		if (numChunks <= 1) {
+			forEachRange(null, 1, numFaces, task);
 		} else {
-            Object3DData faceNormalsModel = new Object3DData(normalsLines);
-            faceNormalsModel.setDrawMode(GLES20.GL_LINES).setColor(obj.getColor());
-            faceNormalsModel.setPosition(obj.getPosition());
-            faceNormalsModel.setScale(obj.getScale());
-		    Log.i("Object3DBuilder","New face normal lines object created");
-            return faceNormalsModel;
+			ExecutorService executor = Executors.newFixedThreadPool(numChunks);
+			try {
+				forEachRange(executor, numChunks, numFaces, task);
+			} finally {
+				executor.shutdownNow();
+			}
 		}
-	}
 
-    /**
-     * Generate a new object that contains all the line normals for all the faces for the specified object
-     * <p>
-     * TODO: This only works for objects made of triangles. Make it useful for any kind of polygonal face
-     *
-     * @param obj the object to which we calculate the normals.
-     * @return the model with all the normal lines
-     */
-    public static Object3DData buildFaceNormals2(Object3DData obj) {
-        if (obj.getDrawMode() != GLES20.GL_TRIANGLES) {
-            return null;
-        }
-
-        FloatBuffer vertexBuffer = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
-                : obj.getVertexBuffer();
-        if (vertexBuffer == null) {
-            Log.v("Object3DBuilder", "Generating face normals for '" + obj.getId() + "' I found that there is no vertex data");
-            return null;
-        }
-
-        FloatBuffer normalsLines;
-        IntBuffer drawBuffer = obj.getDrawOrder();
-        if (drawBuffer != null) {
-            Log.v("Object3DBuilder", "Generating face normals for '" + obj.getId() + "' using indices...");
-            int size = /* 2 points */ 2 * 3 * /* 3 points per face */ (drawBuffer.capacity() / 3)
-                    * /* bytes per float */4;
-            normalsLines = createNativeByteBuffer(size).asFloatBuffer();
-            drawBuffer.position(0);
-            for (int i = 0; i < drawBuffer.capacity(); i += 3) {
-                int v1 = drawBuffer.get() * COORDS_PER_VERTEX;
-                int v2 = drawBuffer.get() * COORDS_PER_VERTEX;
-                int v3 = drawBuffer.get() * COORDS_PER_VERTEX;
-                float[][] normalLine = Math3DUtils.getNormalLine(
-                        new float[]{vertexBuffer.get(v1), vertexBuffer.get(v1 + 1), vertexBuffer.get(v1 + 2)},
-                        new float[]{vertexBuffer.get(v2), vertexBuffer.get(v2 + 1), vertexBuffer.get(v2 + 2)},
-                        new float[]{vertexBuffer.get(v3), vertexBuffer.get(v3 + 1), vertexBuffer.get(v3 + 2)});
-                normalsLines.put(normalLine[0]).put(normalLine[1]);
-            }
-        } else {
-            if (vertexBuffer.capacity() % (/* COORDS_PER_VERTEX */3 * /* VERTEX_PER_FACE */ 3) != 0) {
-                // something in the data is wrong
-                Log.v("Builder", "Generating face normals for '" + obj.getId()
-                        + "' I found that vertices are not multiple of 9 (3*3): " + vertexBuffer.capacity());
-                return null;
-            }
+		final Object3DData faceNormalsModel;
+		if (obj instanceof AnimatedModel) {
+			AnimatedModel animatedModel = new AnimatedModel(normalsLines);
+			animatedModel.doAnimation(((AnimatedModel) obj).getAnimation());
+			animatedModel.setRootJoint(((AnimatedModel) obj).getRootJoint(),
+					((AnimatedModel) obj).getJointCount(),
+					((AnimatedModel) obj).getBoneCount());
+			animatedModel.setJointIds(dstJointIds != null ? dstJointIds : jointIds);
+			animatedModel.setVertexWeights(dstVertexWeights != null ? dstVertexWeights : vertexWeights);
+			animatedModel.setBindShapeMatrix(obj.getBindShapeMatrix());
+			faceNormalsModel = animatedModel;
+		} else {
+			faceNormalsModel = new Object3DData(normalsLines);
+		}
+		faceNormalsModel.setDrawMode(GLES20.GL_LINES).setColor(obj.getColor());
+		faceNormalsModel.setPosition(obj.getPosition());
+		faceNormalsModel.setScale(obj.getScale());
+		Log.i("Object3DBuilder", "New face normal lines object created. Faces: " + numFaces);
+		return faceNormalsModel;
+	}
 
-            Log.v("Object3DBuilder", "Generating face normals for '" + obj.getId() + "'...");
-            normalsLines = createNativeByteBuffer(6 * vertexBuffer.capacity() / 9 * 4).asFloatBuffer();
-            vertexBuffer.position(0);
-            for (int i = 0; i < vertexBuffer.capacity() / /* COORDS_PER_VERTEX */ 3 / /* VERTEX_PER_FACE */3; i++) {
-                float[][] normalLine = Math3DUtils.getNormalLine(
-                        new float[]{vertexBuffer.get(), vertexBuffer.get(), vertexBuffer.get()},
-                        new float[]{vertexBuffer.get(), vertexBuffer.get(), vertexBuffer.get()},
-                        new float[]{vertexBuffer.get(), vertexBuffer.get(), vertexBuffer.get()});
-                normalsLines.put(normalLine[0]).put(normalLine[1]);
-
-                // debug
-                @SuppressWarnings("unused")
-                String normal = new StringBuilder().append(normalLine[0][0]).append(",").append(normalLine[0][1])
-                        .append(",").append(normalLine[0][2]).append("-").append(normalLine[1][0]).append(",")
-                        .append(normalLine[1][1]).append(",").append(normalLine[1][2]).toString();
-                // Log.v("Builder", "fNormal[" + i + "]:(" + normal + ")");
-            }
-        }
+	/**
+	 * Write the normal lines of the faces in the range. The line starts at the center of the face and its length is
+	 * the mean length of the edges (the same as {@link Math3DUtils#getNormalLine(float[], float[], float[])}).
+	 * Only absolute get/put are used, so ranges can be built in parallel.
+	 *
+	 * @param vertexBuffer  the positions
+	 * @param drawBuffer    the indices of the faces or <code>null</code> if every face has its own 3 vertices
+	 * @param normalsBuffer the normals to draw instead of the calculated ones or <code>null</code>
+	 * @param normalsLines  the output, 6 floats per face
+	 * @param from          first face
+	 * @param to            last face (exclusive)
+	 */
+	private static void buildFaceNormals(FloatBuffer vertexBuffer, IntBuffer drawBuffer, FloatBuffer normalsBuffer,
+										 FloatBuffer normalsLines, int from, int to) {
+		for (int i = from; i < to; i++) {
+			final int v0, v1, v2;
+			if (drawBuffer != null) {
+				v0 = drawBuffer.get(i * 3) * COORDS_PER_VERTEX;
+				v1 = drawBuffer.get(i * 3 + 1) * COORDS_PER_VERTEX;
+				v2 = drawBuffer.get(i * 3 + 2) * COORDS_PER_VERTEX;
+			} else {
+				v0 = i * 9;
+				v1 = v0 + 3;
+				v2 = v0 + 6;
+			}
+			final float x0 = vertexBuffer.get(v0), y0 = vertexBuffer.get(v0 + 1), z0 = vertexBuffer.get(v0 + 2);
+			final float x1 = vertexBuffer.get(v1), y1 = vertexBuffer.get(v1 + 1), z1 = vertexBuffer.get(v1 + 2);
+			final float x2 = vertexBuffer.get(v2), y2 = vertexBuffer.get(v2 + 1), z2 = vertexBuffer.get(v2 + 2);
+
+			// edges
+			final float ax = x1 - x0, ay = y1 - y0, az = z1 - z0;
+			final float bx = x2 - x0, by = y2 - y0, bz = z2 - z0;
+			final float cx = x2 - x1, cy = y2 - y1, cz = z2 - z1;
+
+			float nx, ny, nz;
+			if (normalsBuffer != null) {
+				nx = normalsBuffer.get(v0);
+				ny = normalsBuffer.get(v0 + 1);
+				nz = normalsBuffer.get(v0 + 2);
+			} else {
+				// cross product of v1-v0 x v2-v0
+				nx = ay * bz - az * by;
+				ny = az * bx - ax * bz;
+				nz = ax * by - ay * bx;
+				final float modul = Math3DUtils.length(nx, ny, nz);
+				nx = nx / modul;
+				ny = ny / modul;
+				nz = nz / modul;
+			}
 
-        if (obj instanceof AnimatedModel) {
-            Log.i("Object3DBuilder","New face-normals animated model");
-
-            FloatBuffer jointIds = ((AnimatedModel) obj).getJointIds();
-            FloatBuffer vertexWeights = ((AnimatedModel) obj).getVertexWeights();
-
-            if (drawBuffer != null) {
-
-                int newIdxCapacity = (drawBuffer.capacity() / 3) * 2 * 3;
-                Log.v("Object3DBuilder","face-normals. original index capacity: "+jointIds.capacity()
-                        +" new capacity: " +newIdxCapacity);
-
-                // build new joint info
-                final FloatBuffer newJointIds = createNativeByteBuffer(newIdxCapacity * 4).asFloatBuffer();
-                newJointIds.position(0);
-                final FloatBuffer newVertexWeights = createNativeByteBuffer(newIdxCapacity * 4).asFloatBuffer();
-                newVertexWeights.position(0);
-                drawBuffer.position(0);
-                for (int i = 0; i < drawBuffer.capacity(); i += 3 /* MAX_WEIGHTS x 2 vertex */) {
-
-                    int offsetI1 = drawBuffer.get() * 3;
-                    int offsetI2 = drawBuffer.get() * 3;
-                    int offsetI3 = drawBuffer.get() * 3;
-
-                    newJointIds.put(jointIds.get(offsetI1));
-                    newJointIds.put(jointIds.get(offsetI1+1));
-                    newJointIds.put(jointIds.get(offsetI1+2));
-                    newVertexWeights.put(vertexWeights.get(offsetI1));
-                    newVertexWeights.put(vertexWeights.get(offsetI1 + 1));
-                    newVertexWeights.put(vertexWeights.get(offsetI1 + 2));
-
-                    newJointIds.put(jointIds.get(offsetI2));
-                    newJointIds.put(jointIds.get(offsetI2 + 1));
-                    newJointIds.put(jointIds.get(offsetI2 + 2));
-                    newVertexWeights.put(vertexWeights.get(offsetI2));
-                    newVertexWeights.put(vertexWeights.get(offsetI2 + 1));
-                    newVertexWeights.put(vertexWeights.get(offsetI2 + 2));
-                }
-                jointIds = newJointIds;
-                vertexWeights = newVertexWeights;
-            }
+			// scale normal proportional to triangle perimeter
+			final float scaleFactor = (Math3DUtils.length(ax, ay, az) + Math3DUtils.length(bx, by, bz)
+					+ Math3DUtils.length(cx, cy, cz)) / 3;
+
+			final float centerX = (x0 + x1 + x2) / 3;
+			final float centerY = (y0 + y1 + y2) / 3;
+			final float centerZ = (z0 + z1 + z2) / 3;
+
+			final int offset = i * 6;
+			normalsLines.put(offset, centerX);
+			normalsLines.put(offset + 1, centerY);
+			normalsLines.put(offset + 2, centerZ);
+			normalsLines.put(offset + 3, centerX + nx * scaleFactor);
+			normalsLines.put(offset + 4, centerY + ny * scaleFactor);
+			normalsLines.put(offset + 5, centerZ + nz * scaleFactor);
+		}
+	}
 
-            AnimatedModel faceNormalsModel = new AnimatedModel(normalsLines);
-            faceNormalsModel.setDrawMode(GLES20.GL_LINES).setColor(obj.getColor());
-            faceNormalsModel.setPosition(obj.getPosition());
-            faceNormalsModel.setScale(obj.getScale());
-
-            faceNormalsModel.doAnimation(((AnimatedModel) obj).getAnimation());
-            faceNormalsModel.setRootJoint(((AnimatedModel) obj).getRootJoint(),
-                    ((AnimatedModel) obj).getJointCount(),
-                    ((AnimatedModel) obj).getBoneCount());
-            faceNormalsModel.setJointIds(jointIds);
-            faceNormalsModel.setVertexWeights(vertexWeights);
-            faceNormalsModel.setBindShapeMatrix(obj.getBindShapeMatrix());
-            return faceNormalsModel;
-        } else {
-            Object3DData faceNormalsModel = new Object3DData(normalsLines);
-            faceNormalsModel.setDrawMode(GLES20.GL_LINES).setColor(obj.getColor());
-            faceNormalsModel.setPosition(obj.getPosition());
-            faceNormalsModel.setScale(obj.getScale());
-            return faceNormalsModel;
-        }
-    }
+	/**
+	 * Copy the joints and weights of the first 2 vertices of the faces in the range to the 2 points of their normal
+	 * lines
+	 */
+	private static void copyLineJoints(IntBuffer drawBuffer, FloatBuffer jointIds, FloatBuffer vertexWeights,
+									   FloatBuffer newJointIds, FloatBuffer newVertexWeights, int from, int to) {
+		for (int i = from; i < to; i++) {
+			final int offset1 = drawBuffer.get(i * 3) * 3;
+			final int offset2 = drawBuffer.get(i * 3 + 1) * 3;
+			final int offset = i * 6;
+			for (int j = 0; j < 3; j++) {
+				newJointIds.put(offset + j, jointIds.get(offset1 + j));
+				newVertexWeights.put(offset + j, vertexWeights.get(offset1 + j));
+				newJointIds.put(offset + 3 + j, jointIds.get(offset2 + j));
+				newVertexWeights.put(offset + 3 + j, vertexWeights.get(offset2 + j));
+			}
+		}
+	}
 
 	public static AnimatedModel buildSkeleton(AnimatedModel animatedModel){
         float[] identity = new float[16];
@@ -0,0 +1,248 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.VertexLayout;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * Builds the interleaved vertex layout of the models (see {@link VertexLayout}). The compact layout stores the
+ * attributes in the formats of {@link VertexQuantizer}. Otherwise, the attributes are stored as floats. Every
+ * attribute is padded to 4 bytes, so they are aligned.
+ *
+ * Once the layout is built, the separate float buffers of its attributes can be released (see
+ * {@link #releaseAttributes(Object3DData)}), so the vertices are not kept twice in memory. The positions are always
+ * kept, as they are used for picking, collisions and the derived geometry.
+ *
+ * @author andresoviedo
+ */
+public final class VertexInterleaver {
+
+    private static final int FLOAT = 0;
+    private static final int SNORM16 = 1;
+    private static final int UNORM16 = 2;
+    private static final int SNORM8 = 3;
+    private static final int UNORM8 = 4;
+    private static final int UBYTE = 5;
+
+    private VertexInterleaver() {
+    }
+
+    /**
+     * Build the interleaved vertex layout of the model (or of its partitions)
+     *
+     * @param obj     the model
+     * @param compact whether to store the attributes in less bits
+     */
+    public static void interleave(Object3DData obj, boolean compact) {
+        if (obj.getPartitions() != null) {
+            for (Object3DData partition : obj.getPartitions()) {
+                interleave(partition, compact);
+            }
+            return;
+        }
+        final FloatBuffer positions = obj.getVertexArrayBuffer() != null ? obj.getVertexArrayBuffer()
+                : obj.getVertexBuffer();
+        if (positions == null || positions.capacity() < 3) {
+            return;
+        }
+        final int vertexCount = positions.capacity() / 3;
+        final boolean animated = obj instanceof AnimatedModel;
+
+        // the attributes of every vertex, and their format
+        final FloatBuffer normals = getSource(obj.getVertexNormalsArrayBuffer() != null
+                ? obj.getVertexNormalsArrayBuffer() : obj.getNormals(), 3, vertexCount);
+        final FloatBuffer textureCoords = getSource(obj.getTextureCoordsArrayBuffer(), 2, vertexCount);
+        final FloatBuffer colors = getSource(obj.getVertexColorsArrayBuffer(), 4, vertexCount);
+        final FloatBuffer jointIds = animated ? getSource(((AnimatedModel) obj).getJointIds(), 3, vertexCount) : null;
+        final FloatBuffer weights = animated ? getSource(((AnimatedModel) obj).getVertexWeights(), 3, vertexCount)
+                : null;
+
+        // animated models are transformed by the joints in model space, so the positions are kept
+        final int positionFormat = compact && !animated ? SNORM16 : FLOAT;
+        final int normalFormat = compact ? SNORM8 : FLOAT;
+        final int textureCoordFormat = compact && VertexQuantizer.isInRange(textureCoords, 0, 1) ? UNORM16 : FLOAT;
+        final int colorFormat = compact ? UNORM8 : FLOAT;
+        final int jointIdFormat = compact && VertexQuantizer.isInRange(jointIds, 0, 0xFF) ? UBYTE : FLOAT;
+        final int weightFormat = compact ? UNORM8 : FLOAT;
+
+        int stride = 0;
+        final VertexLayout.Attribute positionAttribute = createAttribute(3, positionFormat, stride);
+        stride += getBytes(3, positionFormat);
+        final VertexLayout.Attribute normalAttribute = normals != null ? createAttribute(3, normalFormat, stride)
+                : null;
+        stride += normals != null ? getBytes(3, normalFormat) : 0;
+        final VertexLayout.Attribute textureCoordAttribute = textureCoords != null
+                ? createAttribute(2, textureCoordFormat, stride) : null;
+        stride += textureCoords != null ? getBytes(2, textureCoordFormat) : 0;
+        final VertexLayout.Attribute colorAttribute = colors != null ? createAttribute(4, colorFormat, stride) : null;
+        stride += colors != null ? getBytes(4, colorFormat) : 0;
+        final VertexLayout.Attribute jointIdAttribute = jointIds != null ? createAttribute(3, jointIdFormat, stride)
+                : null;
+        stride += jointIds != null ? getBytes(3, jointIdFormat) : 0;
+        final VertexLayout.Attribute weightAttribute = weights != null ? createAttribute(3, weightFormat, stride)
+                : null;
+        stride += weights != null ? getBytes(3, weightFormat) : 0;
+
+        final ByteBuffer buffer = createNativeByteBuffer(vertexCount * stride);
+        float[] positionMatrix = null;
+        if (positionFormat == SNORM16) {
+            positionMatrix = VertexQuantizer.getPositionMatrix(positions, vertexCount);
+            VertexQuantizer.writePositions(buffer, stride, positionAttribute.getOffset(), positions, vertexCount,
+                    positionMatrix);
+        } else {
+            write(buffer, stride, positionAttribute.getOffset(), positions, 3, FLOAT, vertexCount);
+        }
+        if (normals != null) {
+            if (normalFormat == SNORM8) {
+                VertexQuantizer.writeNormals(buffer, stride, normalAttribute.getOffset(), normals, vertexCount);
+            } else {
+                write(buffer, stride, normalAttribute.getOffset(), normals, 3, FLOAT, vertexCount);
+            }
+        }
+        if (textureCoords != null) {
+            write(buffer, stride, textureCoordAttribute.getOffset(), textureCoords, 2, textureCoordFormat,
+                    vertexCount);
+        }
+        if (colors != null) {
+            write(buffer, stride, colorAttribute.getOffset(), colors, 4, colorFormat, vertexCount);
+        }
+        if (jointIds != null) {
+            write(buffer, stride, jointIdAttribute.getOffset(), jointIds, 3, jointIdFormat, vertexCount);
+        }
+        if (weights != null) {
+            if (weightFormat == UNORM8) {
+                VertexQuantizer.writeWeights(buffer, stride, weightAttribute.getOffset(), weights, vertexCount);
+            } else {
+                write(buffer, stride, weightAttribute.getOffset(), weights, 3, FLOAT, vertexCount);
+            }
+        }
+
+        obj.setVertexLayout(new VertexLayout(buffer, stride, compact, positionAttribute, positionMatrix,
+                normalAttribute, textureCoordAttribute, colorAttribute, jointIdAttribute, weightAttribute));
+    }
+
+    /**
+     * Release the float buffers of the attributes stored in the vertex layout of the model (or of its partitions).
+     * The positions are kept, and so are the joints of the animated models, as their derived geometry (i.e. the
+     * wireframe) is animated too. The geometry of the model can't be interleaved again after this.
+     *
+     * @param obj the model, after {@link #interleave(Object3DData, boolean)}
+     */
+    public static void releaseAttributes(Object3DData obj) {
+        final List<Object3DData> partitions = obj.getPartitions();
+        if (partitions != null) {
+            // the partitions are views of the buffers of the model, so they are released if all the partitions can
+            boolean normals = !partitions.isEmpty(), textureCoords = normals, colors = normals;
+            for (Object3DData partition : partitions) {
+                final VertexLayout layout = partition.getVertexLayout();
+                normals &= layout != null && layout.getNormals() != null;
+                textureCoords &= layout != null && layout.getTextureCoords() != null;
+                colors &= layout != null && layout.getColors() != null;
+                releaseAttributes(partition);
+            }
+            release(obj, normals, textureCoords, colors);
+            return;
+        }
+        final VertexLayout layout = obj.getVertexLayout();
+        if (layout == null) {
+            return;
+        }
+        release(obj, layout.getNormals() != null, layout.getTextureCoords() != null, layout.getColors() != null);
+        // the geometry is the same, so the layout is still valid
+        obj.setVertexLayout(layout);
+    }
+
+    /**
+     * @return <code>false</code> if some attribute of the layout was released from the model, so the model can't be
+     * interleaved again with the same attributes
+     */
+    static boolean hasAttributes(Object3DData obj, VertexLayout layout) {
+        return (layout.getNormals() == null || obj.getVertexNormalsArrayBuffer() != null || obj.getNormals() != null)
+                && (layout.getTextureCoords() == null || obj.getTextureCoordsArrayBuffer() != null)
+                && (layout.getColors() == null || obj.getVertexColorsArrayBuffer() != null);
+    }
+
+    private static void release(Object3DData obj, boolean normals, boolean textureCoords, boolean colors) {
+        if (normals && obj.getVertexNormalsArrayBuffer() != null) {
+            obj.setVertexNormalsArrayBuffer(null);
+        } else if (normals && obj.getNormals() != null) {
+            obj.setVertexNormalsBuffer(null);
+        }
+        if (textureCoords && obj.getTextureCoordsArrayBuffer() != null) {
+            obj.setTextureCoordsArrayBuffer(null);
+        }
+        if (colors && obj.getVertexColorsArrayBuffer() != null) {
+            obj.setVertexColorsArrayBuffer(null);
+        }
+    }
+
+    /**
+     * @return the attribute buffer, or <code>null</code> if the model doesn't have it for every vertex
+     */
+    private static FloatBuffer getSource(FloatBuffer buffer, int size, int vertexCount) {
+        return buffer != null && buffer.capacity() >= vertexCount * size ? buffer : null;
+    }
+
+    private static VertexLayout.Attribute createAttribute(int size, int format, int offset) {
+        switch (format) {
+            case SNORM16:
+                return new VertexLayout.Attribute(size, GLES20.GL_SHORT, true, offset);
+            case UNORM16:
+                return new VertexLayout.Attribute(size, GLES20.GL_UNSIGNED_SHORT, true, offset);
+            case SNORM8:
+                return new VertexLayout.Attribute(size, GLES20.GL_BYTE, true, offset);
+            case UNORM8:
+                return new VertexLayout.Attribute(size, GLES20.GL_UNSIGNED_BYTE, true, offset);
+            case UBYTE:
+                return new VertexLayout.Attribute(size, GLES20.GL_UNSIGNED_BYTE, false, offset);
+            default:
+                return new VertexLayout.Attribute(size, GLES20.GL_FLOAT, false, offset);
+        }
+    }
+
+    /**
+     * @return the bytes of the attribute, aligned to 4 bytes
+     */
+    private static int getBytes(int size, int format) {
+        final int componentBytes = format == FLOAT ? 4 : format == SNORM16 || format == UNORM16 ? 2 : 1;
+        return (size * componentBytes + 3) & ~3;
+    }
+
+    private static void write(ByteBuffer buffer, int stride, int offset, FloatBuffer source, int size, int format,
+                              int vertexCount) {
+        for (int v = 0; v < vertexCount; v++) {
+            final int position = v * stride + offset;
+            for (int k = 0; k < size; k++) {
+                final float value = source.get(v * size + k);
+                switch (format) {
+                    case UNORM16:
+                        buffer.putShort(position + k * 2, VertexQuantizer.toUnorm16(value));
+                        break;
+                    case UNORM8:
+                        buffer.put(position + k, VertexQuantizer.toUnorm8(value));
+                        break;
+                    case UBYTE:
+                        buffer.put(position + k, (byte) value);
+                        break;
+                    default:
+                        buffer.putFloat(position + k * 4, value);
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer createNativeByteBuffer(int length) {
+        // initialize vertex byte buffer for shape coordinates
+        ByteBuffer bb = ByteBuffer.allocateDirect(length);
+        // use the device hardware's native byte order
+        bb.order(ByteOrder.nativeOrder());
+        return bb;
+    }
+}
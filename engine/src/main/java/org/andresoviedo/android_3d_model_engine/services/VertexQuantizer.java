@@ -0,0 +1,146 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.VertexLayout;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Stores the vertex attributes of the models in less bits (see {@link VertexLayout#isCompact()}):
+ * <ul>
+ * <li>positions: 3 x snorm16, relative to the bounding box (uniformly scaled, so normals aren't distorted)</li>
+ * <li>normals: 3 x snorm8</li>
+ * <li>texture coordinates: 2 x unorm16, if they are in the [0,1] range</li>
+ * <li>colors: 4 x unorm8</li>
+ * <li>joint ids: 3 x ubyte, and weights: 3 x unorm8</li>
+ * </ul>
+ * The compact attributes are interleaved in a single buffer by {@link VertexInterleaver}, which can also interleave
+ * them as floats.
+ *
+ * @author andresoviedo
+ */
+public final class VertexQuantizer {
+
+    private VertexQuantizer() {
+    }
+
+    /**
+     * Build the compact vertex format of the model (or of its partitions)
+     *
+     * @param obj the model
+     */
+    public static void quantize(Object3DData obj) {
+        VertexInterleaver.interleave(obj, true);
+    }
+
+    /**
+     * @return <code>true</code> if all the values are in the range, i.e. texture coordinates that can be stored as
+     * unorm16 because the texture is not repeated
+     */
+    static boolean isInRange(FloatBuffer buffer, float min, float max) {
+        if (buffer == null) {
+            return false;
+        }
+        for (int i = 0; i < buffer.capacity(); i++) {
+            final float value = buffer.get(i);
+            if (value < min || value > max) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the transformation from [-1,1] to the bounding box of the positions
+     */
+    static float[] getPositionMatrix(FloatBuffer positions, int vertexCount) {
+        final float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        final float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int v = 0; v < vertexCount; v++) {
+            for (int k = 0; k < 3; k++) {
+                final float value = positions.get(v * 3 + k);
+                min[k] = Math.min(min[k], value);
+                max[k] = Math.max(max[k], value);
+            }
+        }
+        float scale = 0;
+        for (int k = 0; k < 3; k++) {
+            scale = Math.max(scale, (max[k] - min[k]) / 2);
+        }
+        if (scale == 0) {
+            scale = 1;
+        }
+        final float[] ret = new float[16];
+        ret[0] = scale;
+        ret[5] = scale;
+        ret[10] = scale;
+        ret[12] = (min[0] + max[0]) / 2;
+        ret[13] = (min[1] + max[1]) / 2;
+        ret[14] = (min[2] + max[2]) / 2;
+        ret[15] = 1;
+        return ret;
+    }
+
+    static void writePositions(ByteBuffer buffer, int stride, int offset, FloatBuffer positions, int vertexCount,
+                               float[] matrix) {
+        for (int v = 0; v < vertexCount; v++) {
+            for (int k = 0; k < 3; k++) {
+                final float value = (positions.get(v * 3 + k) - matrix[12 + k]) / matrix[0];
+                buffer.putShort(v * stride + offset + k * 2, toSnorm16(value));
+            }
+        }
+    }
+
+    static void writeNormals(ByteBuffer buffer, int stride, int offset, FloatBuffer normals, int vertexCount) {
+        for (int v = 0; v < vertexCount; v++) {
+            final float x = normals.get(v * 3), y = normals.get(v * 3 + 1), z = normals.get(v * 3 + 2);
+            float length = (float) Math.sqrt(x * x + y * y + z * z);
+            if (length == 0) {
+                length = 1;
+            }
+            buffer.put(v * stride + offset, toSnorm8(x / length));
+            buffer.put(v * stride + offset + 1, toSnorm8(y / length));
+            buffer.put(v * stride + offset + 2, toSnorm8(z / length));
+        }
+    }
+
+    static void writeWeights(ByteBuffer buffer, int stride, int offset, FloatBuffer weights, int vertexCount) {
+        final int[] values = new int[3];
+        for (int v = 0; v < vertexCount; v++) {
+            float sum = 0;
+            int quantizedSum = 0;
+            int biggest = 0;
+            for (int k = 0; k < 3; k++) {
+                final float weight = weights.get(v * 3 + k);
+                sum += weight;
+                values[k] = toUnorm8(weight) & 0xFF;
+                quantizedSum += values[k];
+                if (values[k] > values[biggest]) {
+                    biggest = k;
+                }
+            }
+            // the rounding error goes to the biggest weight, so the weights still add up the same
+            values[biggest] = Math.max(0, Math.min(0xFF, values[biggest] + Math.round(sum * 0xFF) - quantizedSum));
+            for (int k = 0; k < 3; k++) {
+                buffer.put(v * stride + offset + k, (byte) values[k]);
+            }
+        }
+    }
+
+    static short toSnorm16(float value) {
+        return (short) Math.round(Math.max(-1, Math.min(1, value)) * Short.MAX_VALUE);
+    }
+
+    static short toUnorm16(float value) {
+        return (short) Math.round(Math.max(0, Math.min(1, value)) * 0xFFFF);
+    }
+
+    static byte toSnorm8(float value) {
+        return (byte) Math.round(Math.max(-1, Math.min(1, value)) * Byte.MAX_VALUE);
+    }
+
+    static byte toUnorm8(float value) {
+        return (byte) Math.round(Math.max(0, Math.min(1, value)) * 0xFF);
+    }
+}
@@ -0,0 +1,600 @@
+package org.andresoviedo.android_3d_model_engine.services.cache;
+
+import org.andresoviedo.android_3d_model_engine.animation.Animation;
+import org.andresoviedo.android_3d_model_engine.animation.JointTransform;
+import org.andresoviedo.android_3d_model_engine.animation.KeyFrame;
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+import org.andresoviedo.android_3d_model_engine.services.collada.entities.Joint;
+import org.andresoviedo.android_3d_model_engine.services.collada.entities.JointData;
+import org.andresoviedo.android_3d_model_engine.services.collada.entities.SkeletonData;
+import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
+import org.andresoviedo.util.math.Quaternion;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary format of the final (ready to draw) models, so they can be loaded again without parsing the original file.
+ *
+ * Everything is written as 4 byte words in the device native order, so the buffers of the models can be used
+ * straight from the mapped file. The file has a header (magic, version, key), the skeletons and animations (shared by
+ * all the models of the file) and then the models.
+ *
+ * @author andresoviedo
+ */
+public final class BinaryMesh {
+
+    /**
+     * "A3DM". Read in the wrong byte order this won't match, so files written by other devices are discarded
+     */
+    private static final int MAGIC = 0x4D443341;
+    /**
+     * Increase this whenever the format or the data generated by the loaders changes
+     */
+    static final int VERSION = 3;
+
+    private static final int TYPE_OBJECT = 0;
+    private static final int TYPE_ANIMATED = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private BinaryMesh() {
+    }
+
+    /**
+     * Write the models
+     *
+     * @param channel where to write
+     * @param key     the key of the models, checked again when reading
+     * @param datas   the models
+     * @throws IOException if there is a problem writing
+     */
+    public static void write(FileChannel channel, String key, List<Object3DData> datas) throws IOException {
+        snapshot(key, datas).write(channel);
+    }
+
+    /**
+     * Capture the models, so they can be written later (i.e. in background) while they are still being prepared for
+     * drawing. Only the indices are copied, as they are rewritten in place when the models are partitioned. The other
+     * buffers are written as they are, so they can be replaced or released in the meantime, but not modified
+     *
+     * @param key   the key of the models, checked again when reading
+     * @param datas the models
+     * @return the models to write
+     */
+    public static Snapshot snapshot(String key, List<Object3DData> datas) {
+        Writer out = new Writer();
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putString(key);
+
+        // skeletons and animations are usually shared by all the models of the file
+        Map<Joint, Integer> skeletons = new IdentityHashMap<>();
+        Map<Animation, Integer> animations = new IdentityHashMap<>();
+        for (Object3DData data : datas) {
+            if (data instanceof AnimatedModel) {
+                AnimatedModel model = (AnimatedModel) data;
+                if (model.getRootJoint() != null && !skeletons.containsKey(model.getRootJoint())) {
+                    skeletons.put(model.getRootJoint(), skeletons.size());
+                }
+                if (model.getAnimation() != null && !animations.containsKey(model.getAnimation())) {
+                    animations.put(model.getAnimation(), animations.size());
+                }
+            }
+        }
+        out.putInt(skeletons.size());
+        for (Joint rootJoint : sortByIndex(skeletons)) {
+            writeJoint(out, rootJoint.getData());
+        }
+        out.putInt(animations.size());
+        for (Animation animation : sortByIndex(animations)) {
+            writeAnimation(out, animation);
+        }
+
+        out.putInt(datas.size());
+        for (Object3DData data : datas) {
+            out.putInt(data instanceof AnimatedModel ? TYPE_ANIMATED : TYPE_OBJECT);
+            out.putString(data.getId());
+            out.putInt(data.isDrawUsingArrays() ? 1 : 0);
+            out.putInt(data.isFlipTextCoords() ? 1 : 0);
+            out.putInt(data.getDrawMode());
+            out.putFloats(data.getColor());
+            out.putFloats(data.getPosition());
+            out.putFloats(data.getRotation());
+            out.putFloats(data.getScale());
+            out.putFloats(data.getBindShapeMatrix());
+            WavefrontLoader.ModelDimensions dimensions = data.getDimensions();
+            out.putFloats(dimensions == null ? null : new float[]{dimensions.leftPt, dimensions.rightPt,
+                    dimensions.topPt, dimensions.bottomPt, dimensions.farPt, dimensions.nearPt});
+            out.putInt(data.getFaces() != null ? data.getFaces().getSize() : -1);
+            out.putString(data.getTextureFile());
+
+            out.putBuffer(data.getVertexBuffer());
+            out.putBuffer(data.getVertexNormalsBuffer());
+            out.putBuffer(data.getVertexArrayBuffer());
+            out.putBuffer(data.getVertexColorsArrayBuffer());
+            out.putBuffer(data.getVertexNormalsArrayBuffer());
+            out.putBuffer(data.getTextureCoordsArrayBuffer());
+            out.putBuffer(data.getDrawOrder());
+            List<int[]> drawModeList = data.getDrawModeList();
+            out.putInt(drawModeList != null ? drawModeList.size() : -1);
+            if (drawModeList != null) {
+                for (int[] drawMode : drawModeList) {
+                    out.putInts(drawMode);
+                }
+            }
+            List<Submesh> submeshes = data.getSubmeshes();
+            out.putInt(submeshes != null ? submeshes.size() : -1);
+            if (submeshes != null) {
+                for (Submesh submesh : submeshes) {
+                    out.putInt(submesh.getStart());
+                    out.putInt(submesh.getCount());
+                    out.putFloats(submesh.getColor());
+                }
+            }
+
+            if (data instanceof AnimatedModel) {
+                AnimatedModel model = (AnimatedModel) data;
+                out.putInt(model.getRootJoint() != null ? skeletons.get(model.getRootJoint()) : -1);
+                out.putInt(model.getJointCount());
+                out.putInt(model.getBoneCount());
+                out.putInt(model.getAnimation() != null ? animations.get(model.getAnimation()) : -1);
+                out.putBuffer(model.getJointIds());
+                out.putBuffer(model.getVertexWeights());
+            }
+        }
+        return new Snapshot(out);
+    }
+
+    /**
+     * Read the models. The buffers of the models are views of the specified buffer (no data is copied)
+     *
+     * @param buffer the data (i.e. the mapped file)
+     * @param key    the expected key
+     * @return the models or <code>null</code> if the data was written with another version, byte order or key
+     */
+    public static List<Object3DData> read(ByteBuffer buffer, String key) {
+        Reader in = new Reader(buffer);
+        if (in.getInt() != MAGIC || in.getInt() != VERSION || !key.equals(in.getString())) {
+            return null;
+        }
+
+        JointData[] skeletons = new JointData[in.getInt()];
+        for (int i = 0; i < skeletons.length; i++) {
+            skeletons[i] = readJoint(in);
+        }
+        Animation[] animations = new Animation[in.getInt()];
+        for (int i = 0; i < animations.length; i++) {
+            animations[i] = readAnimation(in);
+        }
+        // models sharing the skeleton share the joints too, as the Animator updates them only once
+        Joint[] rootJoints = new Joint[skeletons.length];
+
+        int count = in.getInt();
+        List<Object3DData> datas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int type = in.getInt();
+            String id = in.getString();
+            boolean drawUsingArrays = in.getInt() != 0;
+            boolean flipTextCoords = in.getInt() != 0;
+            int drawMode = in.getInt();
+            float[] color = in.getFloats();
+            float[] position = in.getFloats();
+            float[] rotation = in.getFloats();
+            float[] scale = in.getFloats();
+            float[] bindShapeMatrix = in.getFloats();
+            float[] dimensions = in.getFloats();
+            int faces = in.getInt();
+            String textureFile = in.getString();
+
+            FloatBuffer vertexBuffer = in.getFloatBuffer();
+            FloatBuffer vertexNormalsBuffer = in.getFloatBuffer();
+            FloatBuffer vertexArrayBuffer = in.getFloatBuffer();
+            Object3DData data = type == TYPE_ANIMATED ? new AnimatedModel(vertexArrayBuffer)
+                    : new Object3DData(vertexArrayBuffer);
+            data.setVertexBuffer(vertexBuffer);
+            data.setVertexNormalsBuffer(vertexNormalsBuffer);
+            data.setVertexColorsArrayBuffer(in.getFloatBuffer());
+            data.setVertexNormalsArrayBuffer(in.getFloatBuffer());
+            data.setTextureCoordsArrayBuffer(in.getFloatBuffer());
+            // faces are only used for counting triangles now. set them before the draw order as they override it
+            if (faces >= 0) {
+                data.setFaces(new WavefrontLoader.Faces(faces));
+            }
+            data.setDrawOrder(in.getIntBuffer());
+            int drawModes = in.getInt();
+            if (drawModes >= 0) {
+                List<int[]> drawModeList = new ArrayList<>(drawModes);
+                for (int j = 0; j < drawModes; j++) {
+                    drawModeList.add(in.getInts());
+                }
+                data.setDrawModeList(drawModeList);
+            }
+            int submeshCount = in.getInt();
+            if (submeshCount >= 0) {
+                List<Submesh> submeshes = new ArrayList<>(submeshCount);
+                for (int j = 0; j < submeshCount; j++) {
+                    submeshes.add(new Submesh(in.getInt(), in.getInt(), in.getFloats()));
+                }
+                data.setSubmeshes(submeshes);
+            }
+
+            data.setId(id);
+            data.setDrawUsingArrays(drawUsingArrays);
+            data.setFlipTextCoords(flipTextCoords);
+            data.setDrawMode(drawMode);
+            data.setColor(color);
+            data.setTextureFile(textureFile);
+            if (dimensions != null) {
+                WavefrontLoader.ModelDimensions modelDimensions = new WavefrontLoader.ModelDimensions();
+                modelDimensions.leftPt = dimensions[0];
+                modelDimensions.rightPt = dimensions[1];
+                modelDimensions.topPt = dimensions[2];
+                modelDimensions.bottomPt = dimensions[3];
+                modelDimensions.farPt = dimensions[4];
+                modelDimensions.nearPt = dimensions[5];
+                data.setDimensions(modelDimensions);
+            }
+
+            if (type == TYPE_ANIMATED) {
+                AnimatedModel model = (AnimatedModel) data;
+                int skeleton = in.getInt();
+                int jointCount = in.getInt();
+                int boneCount = in.getInt();
+                int animation = in.getInt();
+                if (skeleton >= 0) {
+                    if (rootJoints[skeleton] == null) {
+                        rootJoints[skeleton] = new SkeletonData(jointCount, boneCount, skeletons[skeleton]).buildJoints();
+                    }
+                    model.setRootJoint(rootJoints[skeleton], jointCount, boneCount);
+                }
+                model.doAnimation(animation >= 0 ? animations[animation] : null);
+                model.setJointIds(in.getFloatBuffer());
+                model.setVertexWeights(in.getFloatBuffer());
+            }
+
+            // transformation last, so the model matrix is updated with all of it
+            data.setPosition(position);
+            data.setRotation(rotation);
+            data.setScale(scale);
+            data.setBindShapeMatrix(bindShapeMatrix);
+            datas.add(data);
+        }
+        return datas;
+    }
+
+    private static void writeJoint(Writer out, JointData joint) {
+        out.putInt(joint.index);
+        out.putString(joint.getId());
+        out.putString(joint.getName());
+        out.putString(joint.getInstanceGeometry());
+        Map<String, String> materials = joint.getMaterials();
+        out.putInt(materials != null ? materials.size() : -1);
+        if (materials != null) {
+            for (Map.Entry<String, String> material : materials.entrySet()) {
+                out.putString(material.getKey());
+                out.putString(material.getValue());
+            }
+        }
+        out.putFloats(joint.getBindLocalTransform());
+        out.putFloats(joint.getBindTransform());
+        out.putFloats(joint.getInverseBindTransform());
+        out.putInt(joint.children.size());
+        for (JointData child : joint.children) {
+            writeJoint(out, child);
+        }
+    }
+
+    private static JointData readJoint(Reader in) {
+        int index = in.getInt();
+        String id = in.getString();
+        String name = in.getString();
+        String geometryId = in.getString();
+        int materialCount = in.getInt();
+        Map<String, String> materials = null;
+        if (materialCount >= 0) {
+            materials = new HashMap<>();
+            for (int i = 0; i < materialCount; i++) {
+                materials.put(in.getString(), in.getString());
+            }
+        }
+        JointData joint = new JointData(index, id, name, geometryId, materials, in.getFloats(), in.getFloats(),
+                in.getFloats());
+        int children = in.getInt();
+        for (int i = 0; i < children; i++) {
+            joint.addChild(readJoint(in));
+        }
+        return joint;
+    }
+
+    private static void writeAnimation(Writer out, Animation animation) {
+        out.putFloat(animation.getLength());
+        KeyFrame[] keyFrames = animation.getKeyFrames();
+        out.putInt(keyFrames.length);
+        for (KeyFrame keyFrame : keyFrames) {
+            out.putFloat(keyFrame.getTimeStamp());
+            out.putInt(keyFrame.getJointKeyFrames().size());
+            for (Map.Entry<String, JointTransform> entry : keyFrame.getJointKeyFrames().entrySet()) {
+                out.putString(entry.getKey());
+                JointTransform transform = entry.getValue();
+                out.putFloats(transform.getMatrix());
+                if (transform.getMatrix() == null) {
+                    Quaternion rotation = transform.getRotation();
+                    out.putFloats(transform.getPosition());
+                    out.putFloats(new float[]{rotation.getX(), rotation.getY(), rotation.getZ(), rotation.getW()});
+                }
+            }
+        }
+    }
+
+    private static Animation readAnimation(Reader in) {
+        float length = in.getFloat();
+        KeyFrame[] keyFrames = new KeyFrame[in.getInt()];
+        for (int i = 0; i < keyFrames.length; i++) {
+            float timeStamp = in.getFloat();
+            int count = in.getInt();
+            Map<String, JointTransform> pose = new HashMap<>();
+            for (int j = 0; j < count; j++) {
+                String jointId = in.getString();
+                float[] matrix = in.getFloats();
+                if (matrix != null) {
+                    pose.put(jointId, new JointTransform(matrix));
+                } else {
+                    float[] position = in.getFloats();
+                    float[] rotation = in.getFloats();
+                    pose.put(jointId, new JointTransform(position,
+                            new Quaternion(rotation[0], rotation[1], rotation[2], rotation[3])));
+                }
+            }
+            keyFrames[i] = new KeyFrame(timeStamp, pose);
+        }
+        return new Animation(length, keyFrames);
+    }
+
+    private static <T> List<T> sortByIndex(Map<T, Integer> indices) {
+        List<T> ret = new ArrayList<>(indices.size());
+        for (int i = 0; i < indices.size(); i++) {
+            ret.add(null);
+        }
+        for (Map.Entry<T, Integer> entry : indices.entrySet()) {
+            ret.set(entry.getValue(), entry.getKey());
+        }
+        return ret;
+    }
+
+    /**
+     * Models captured by {@link #snapshot(String, List)}, ready to be written
+     */
+    public static final class Snapshot {
+
+        private final Writer out;
+
+        private Snapshot(Writer out) {
+            this.out = out;
+        }
+
+        /**
+         * @param channel where to write
+         * @throws IOException if there is a problem writing
+         */
+        public void write(FileChannel channel) throws IOException {
+            out.write(channel);
+        }
+    }
+
+    /**
+     * Recorder of 4 byte words. Arrays and strings are prefixed with their length (-1 if null).
+     * The words are kept in small chunks, and the float buffers are kept as they are, until they are written
+     */
+    private static final class Writer {
+
+        private final List<Buffer> parts = new ArrayList<>();
+        private ByteBuffer words = newWords();
+
+        private static ByteBuffer newWords() {
+            return ByteBuffer.allocate(4 * 1024).order(ByteOrder.nativeOrder());
+        }
+
+        private void putInt(int value) {
+            ensureRemaining(4);
+            words.putInt(value);
+        }
+
+        private void putFloat(float value) {
+            ensureRemaining(4);
+            words.putFloat(value);
+        }
+
+        private void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            putInt(bytes.length);
+            // pad to keep the next words aligned
+            int length = (bytes.length + 3) & ~3;
+            for (int i = 0; i < length; i++) {
+                ensureRemaining(1);
+                words.put(i < bytes.length ? bytes[i] : 0);
+            }
+        }
+
+        private void putFloats(float[] values) {
+            // copied, as the arrays of the models (i.e. the position) can change before they are written
+            if (values == null) {
+                putInt(-1);
+                return;
+            }
+            putInt(values.length);
+            for (float value : values) {
+                putFloat(value);
+            }
+        }
+
+        private void putInts(int[] values) {
+            if (values == null) {
+                putInt(-1);
+                return;
+            }
+            putInt(values.length);
+            for (int value : values) {
+                putInt(value);
+            }
+        }
+
+        private void putBuffer(FloatBuffer values) {
+            if (values == null) {
+                putInt(-1);
+                return;
+            }
+            // the engine uses the capacity as the element count
+            FloatBuffer src = values.duplicate();
+            src.clear();
+            putInt(src.capacity());
+            endWords();
+            parts.add(src);
+        }
+
+        private void putBuffer(IntBuffer values) {
+            if (values == null) {
+                putInt(-1);
+                return;
+            }
+            IntBuffer src = values.duplicate();
+            src.clear();
+            putInt(src.capacity());
+            endWords();
+            ByteBuffer copy = ByteBuffer.allocateDirect(src.capacity() * 4).order(ByteOrder.nativeOrder());
+            copy.asIntBuffer().put(src);
+            parts.add(copy);
+        }
+
+        private void ensureRemaining(int bytes) {
+            if (words.remaining() < bytes) {
+                endWords();
+            }
+        }
+
+        private void endWords() {
+            if (words.position() > 0) {
+                words.flip();
+                parts.add(words);
+                words = newWords();
+            }
+        }
+
+        private void write(FileChannel channel) throws IOException {
+            endWords();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.nativeOrder());
+            for (Buffer part : parts) {
+                if (part instanceof ByteBuffer) {
+                    write(channel, ((ByteBuffer) part).duplicate());
+                    continue;
+                }
+                FloatBuffer src = ((FloatBuffer) part).duplicate();
+                while (src.hasRemaining()) {
+                    int count = Math.min(src.remaining(), buffer.capacity() / 4);
+                    src.limit(src.position() + count);
+                    buffer.clear();
+                    buffer.asFloatBuffer().put(src);
+                    buffer.limit(count * 4);
+                    src.limit(src.capacity());
+                    write(channel, buffer);
+                }
+            }
+        }
+
+        private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reader of the {@link Writer} words. Buffers are returned as views of the data
+     */
+    private static final class Reader {
+
+        private final ByteBuffer buffer;
+
+        private Reader(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate().order(ByteOrder.nativeOrder());
+        }
+
+        private int getInt() {
+            return buffer.getInt();
+        }
+
+        private float getFloat() {
+            return buffer.getFloat();
+        }
+
+        private String getString() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            buffer.position(buffer.position() + (((length + 3) & ~3) - length));
+            return new String(bytes, UTF_8);
+        }
+
+        private float[] getFloats() {
+            FloatBuffer values = getFloatBuffer();
+            if (values == null) {
+                return null;
+            }
+            float[] ret = new float[values.capacity()];
+            values.get(ret);
+            return ret;
+        }
+
+        private int[] getInts() {
+            IntBuffer values = getIntBuffer();
+            if (values == null) {
+                return null;
+            }
+            int[] ret = new int[values.capacity()];
+            values.get(ret);
+            return ret;
+        }
+
+        private FloatBuffer getFloatBuffer() {
+            ByteBuffer data = slice();
+            return data != null ? data.asFloatBuffer() : null;
+        }
+
+        private IntBuffer getIntBuffer() {
+            ByteBuffer data = slice();
+            return data != null ? data.asIntBuffer() : null;
+        }
+
+        private ByteBuffer slice() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            ByteBuffer data = buffer.duplicate();
+            data.limit(data.position() + length * 4);
+            buffer.position(buffer.position() + length * 4);
+            // slices are big endian by default
+            return data.slice().order(ByteOrder.nativeOrder());
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package org.andresoviedo.android_3d_model_engine.services.cache;
+
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.MeshPartitioner;
+import org.andresoviedo.android_3d_model_engine.services.Object3DBuilder;
+
+import java.nio.Buffer;
+import java.nio.ShortBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * In memory cache of the geometry derived from the models (wireframes, normals, bounding boxes and skeletons).
+ * Entries are keyed by the model (identity) and the kind of geometry, and they keep the version of the model they were
+ * built from (see {@link Object3DData#getVersion()}), so they are rebuilt only when the model changes.
+ *
+ * Entries are built in background, so the GL thread never waits for them. Until the entry is built, the previous
+ * version (if any) is returned. The size of the buffers of the entries is limited, and the least recently used
+ * entries are evicted first.
+ *
+ * @author andresoviedo
+ */
+public final class DerivedGeometryCache {
+
+    /**
+     * Kind of derived geometry
+     */
+    public enum Kind {
+        WIREFRAME, FACE_NORMALS, BOUNDING_BOX, SKELETON
+    }
+
+    /**
+     * Default maximum size of the buffers of the cached entries
+     */
+    public static final long MAX_BYTES = 64 * 1024 * 1024;
+
+    private final long maxBytes;
+    private final Executor executor;
+
+    // built entries (the latest version of every model and kind), in least recently used order
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // version of the entries being built
+    private final Map<Key, Integer> pending = new HashMap<>();
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public DerivedGeometryCache() {
+        this(MAX_BYTES);
+    }
+
+    public DerivedGeometryCache(long maxBytes) {
+        this(maxBytes, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DerivedGeometryCache");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param maxBytes maximum size of the buffers of the cached entries
+     * @param executor the executor where the entries are built
+     */
+    public DerivedGeometryCache(long maxBytes, Executor executor) {
+        this.maxBytes = maxBytes;
+        this.executor = executor;
+    }
+
+    /**
+     * Get the derived geometry of the model. If it's not cached, it's built in background.
+     *
+     * @param source the model
+     * @param kind   the kind of geometry
+     * @return the geometry, the geometry of a previous version of the model if the current one is still being built
+     * or <code>null</code> if there is none (or the model has no such geometry, i.e. normals of lines)
+     */
+    public synchronized Object3DData get(final Object3DData source, final Kind kind) {
+        final Key key = new Key(source, kind);
+        final int version = source.getVersion();
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.version == version) {
+            hits++;
+            return entry.data;
+        }
+        misses++;
+        final Integer building = pending.get(key);
+        if (building == null || building != version) {
+            pending.put(key, version);
+            executor.execute(() -> build(key, version));
+        }
+        // previous version while the new one is being built
+        return entry != null ? entry.data : null;
+    }
+
+    /**
+     * Remove all the entries of the model, i.e. when it's removed from the scene
+     *
+     * @param source the model
+     */
+    public synchronized void remove(Object3DData source) {
+        for (Kind kind : Kind.values()) {
+            final Key key = new Key(source, kind);
+            final Entry cached = entries.remove(key);
+            if (cached != null) {
+                bytes -= cached.bytes;
+            }
+            // entries being built are discarded
+            pending.remove(key);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        pending.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DerivedGeometryCache{entries=" + entries.size() + ", bytes=" + bytes + "/" + maxBytes
+                + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "}";
+    }
+
+    private void build(Key key, int version) {
+        Object3DData data = null;
+        try {
+            data = build(key.source, key.kind);
+            // the wireframe of a model without triangles is the model itself. The lines of a partitioned model are
+            // drawn with the vertices of its partitions
+            if (data != null && data != key.source
+                    && !(key.kind == Kind.WIREFRAME && MeshPartitioner.partitionLike(data, key.source))) {
+                MeshPartitioner.partition(data);
+            }
+        } catch (RuntimeException e) {
+            Log.e("DerivedGeometryCache", "Error building " + key.kind + " of '" + key.source.getId() + "'", e);
+        }
+        long size = sizeOf(data, key.source);
+        synchronized (this) {
+            final Integer building = pending.get(key);
+            if (building == null) {
+                // removed while it was being built
+                return;
+            }
+            if (building == version) {
+                pending.remove(key);
+            }
+            // previous versions are no longer needed. If a newer one is being built, this one is drawn meanwhile
+            final Entry previous = entries.get(key);
+            if (previous != null && previous.version > version) {
+                // built in another thread after a newer version
+                return;
+            }
+            if (previous != null) {
+                entries.remove(key);
+                bytes -= previous.bytes;
+            }
+            entries.put(key, new Entry(data, version, size));
+            bytes += size;
+            evict();
+        }
+    }
+
+    /**
+     * Evict the least recently used entries until the cache is smaller than the maximum size. The last entry is kept
+     * even if it's bigger
+     */
+    private void evict() {
+        for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+             bytes > maxBytes && entries.size() > 1 && it.hasNext(); ) {
+            Map.Entry<Key, Entry> cached = it.next();
+            Log.i("DerivedGeometryCache", "Evicting " + cached.getKey().kind + " of '" + cached.getKey().source.getId()
+                    + "' (" + cached.getValue().bytes + " bytes)");
+            bytes -= cached.getValue().bytes;
+            evictions++;
+            it.remove();
+        }
+    }
+
+    private static Object3DData build(Object3DData source, Kind kind) {
+        switch (kind) {
+            case WIREFRAME:
+                return Object3DBuilder.buildWireframe(source);
+            case FACE_NORMALS:
+                return Object3DBuilder.buildFaceNormals(source);
+            case BOUNDING_BOX:
+                return Object3DBuilder.buildBoundingBox(source);
+            case SKELETON:
+                return source instanceof AnimatedModel ? Object3DBuilder.buildSkeleton((AnimatedModel) source) : null;
+            default:
+                throw new IllegalArgumentException("Unknown kind " + kind);
+        }
+    }
+
+    /**
+     * @param data   the derived geometry
+     * @param source the model it was built from. The buffers shared with it (i.e. the vertices of the wireframe) are
+     *               not counted, as they are not freed when the entry is evicted
+     * @return the size of the buffers allocated for the derived geometry
+     */
+    static long sizeOf(Object3DData data, Object3DData source) {
+        final Set<Buffer> shared = Collections.newSetFromMap(new IdentityHashMap<Buffer, Boolean>());
+        // the short draw order is built when it's first read, so the source one is not touched
+        addBuffers(source, shared, false);
+        final Set<Buffer> owned = Collections.newSetFromMap(new IdentityHashMap<Buffer, Boolean>());
+        addBuffers(data, owned, true);
+        long ret = 0;
+        for (Buffer buffer : owned) {
+            if (!shared.contains(buffer)) {
+                ret += sizeOf(buffer);
+            }
+        }
+        return ret;
+    }
+
+    private static void addBuffers(Object3DData data, Set<Buffer> buffers, boolean shortDrawOrder) {
+        if (data == null) return;
+        buffers.add(data.getVertexBuffer());
+        buffers.add(data.getVertexNormalsBuffer());
+        buffers.add(data.getVertexArrayBuffer());
+        buffers.add(data.getVertexNormalsArrayBuffer());
+        buffers.add(data.getTextureCoordsArrayBuffer());
+        buffers.add(data.getVertexColorsArrayBuffer());
+        buffers.add(data.getDrawOrder());
+        if (shortDrawOrder) {
+            buffers.add(data.getDrawOrderAsShort());
+        }
+        if (data instanceof AnimatedModel) {
+            buffers.add(((AnimatedModel) data).getJointIds());
+            buffers.add(((AnimatedModel) data).getVertexWeights());
+        }
+        if (data.getPartitions() != null) {
+            // the vertices of the partitions are views of the ones of the model
+            for (Object3DData partition : data.getPartitions()) {
+                buffers.add(partition.getDrawOrder());
+                if (shortDrawOrder) {
+                    buffers.add(partition.getDrawOrderAsShort());
+                }
+            }
+        }
+    }
+
+    private static long sizeOf(Buffer buffer) {
+        if (buffer == null) return 0;
+        // floats and ints are 4 bytes
+        return buffer.capacity() * (buffer instanceof ShortBuffer ? 2L : 4L);
+    }
+
+    private static final class Key {
+
+        private final Object3DData source;
+        private final Kind kind;
+
+        private Key(Object3DData source, Kind kind) {
+            this.source = source;
+            this.kind = kind;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return source == other.source && kind == other.kind;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(source) * 31 + kind.ordinal();
+        }
+    }
+
+    private static final class Entry {
+
+        private final Object3DData data;
+        private final int version;
+        private final long bytes;
+
+        private Entry(Object3DData data, int version, long bytes) {
+            this.data = data;
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
+}
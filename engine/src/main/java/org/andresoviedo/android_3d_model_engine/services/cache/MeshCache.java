@@ -0,0 +1,243 @@
+package org.andresoviedo.android_3d_model_engine.services.cache;
+
+import android.net.Uri;
+import android.util.Log;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.util.android.ContentUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * On disk cache of the loaded models (see {@link BinaryMesh}), so opening the same model again doesn't need parsing.
+ * Models are keyed by their uri plus the size and modification time of the file. If the modification time is not
+ * available (assets, content providers) a checksum of the first {@link #CHECKSUM_BYTES} is used instead, so opening a
+ * big model doesn't read it all. Remote models are not cached.
+ *
+ * Cached files are memory mapped, so the buffers of the models are read from the page cache only when drawn.
+ *
+ * Note that files referenced by the model (i.e. materials) are not part of the key.
+ *
+ * @author andresoviedo
+ */
+public final class MeshCache {
+
+    private static final String EXTENSION = ".mesh";
+
+    /**
+     * Default maximum size of the cache directory
+     */
+    public static final long MAX_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * Bytes of the content checked when the modification time is not available
+     */
+    static final int CHECKSUM_BYTES = 64 * 1024;
+
+    /**
+     * Files are written in a single thread shared by all the caches, so loading several models doesn't write
+     * concurrently
+     */
+    private static final Executor WRITER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MeshCache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File dir;
+    private final long maxSize;
+    private final Executor executor;
+
+    public MeshCache(File dir) {
+        this(dir, MAX_SIZE);
+    }
+
+    public MeshCache(File dir, long maxSize) {
+        this(dir, maxSize, WRITER);
+    }
+
+    /**
+     * @param dir      the directory of the cache files
+     * @param maxSize  maximum size of the cache directory
+     * @param executor the executor where the files are written by {@link #saveInBackground(String, List)}
+     */
+    public MeshCache(File dir, long maxSize, Executor executor) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        this.executor = executor;
+    }
+
+    /**
+     * Build the key of the model. The loader is part of the key as each one generates different data
+     *
+     * @param loader the name of the loader
+     * @param uri    the model
+     * @return the key or <code>null</code> if the model can't be cached
+     */
+    public static String getKey(String loader, Uri uri) {
+        String scheme = uri.getScheme();
+        if ("file".equals(scheme)) {
+            File file = new File(uri.getPath());
+            if (!file.isFile()) return null;
+            return loader + "|" + uri + "|" + file.length() + "|" + file.lastModified();
+        }
+        if ("assets".equals(scheme) || "content".equals(scheme)) {
+            long length = ContentUtils.getLength(uri);
+            if (length < 0) return null;
+            try (InputStream stream = ContentUtils.getInputStream(uri)) {
+                return loader + "|" + uri + "|" + length + "|" + checksum(stream, CHECKSUM_BYTES);
+            } catch (IOException | RuntimeException e) {
+                Log.e("MeshCache", "Error reading " + uri + ". Not caching it", e);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Load the models from the cache
+     *
+     * @param key the key of the models
+     * @return the models or <code>null</code> if they are not cached (or the cached file is not valid)
+     */
+    public List<Object3DData> load(String key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        // private (copy on write) mappings need a writable channel, but the file is never modified
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // private mapping, so the buffers can still be modified (not written to the file)
+            // the mapping is still valid after closing the channel
+            FileChannel channel = raf.getChannel();
+            ByteBuffer data = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+            List<Object3DData> ret = BinaryMesh.read(data, key);
+            if (ret == null) {
+                Log.i("MeshCache", "Discarding outdated cache file " + file);
+                file.delete();
+                return null;
+            }
+            // most recently used files are the last evicted
+            file.setLastModified(System.currentTimeMillis());
+            Log.i("MeshCache", "Loaded " + ret.size() + " objects from cache (" + channel.size() + " bytes)");
+            return ret;
+        } catch (IOException | RuntimeException e) {
+            Log.e("MeshCache", "Error reading cache file " + file + ". Deleting it", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Save the models to the cache
+     *
+     * @param key   the key of the models
+     * @param datas the models
+     */
+    public void save(String key, List<Object3DData> datas) {
+        save(key, BinaryMesh.snapshot(key, datas), datas.size());
+    }
+
+    /**
+     * Save the models to the cache in background, so the caller doesn't wait for the file to be written.
+     * The models are captured now (see {@link BinaryMesh#snapshot(String, List)}), so they can be prepared for drawing
+     * right after this returns, as long as their buffers are replaced instead of modified
+     *
+     * @param key   the key of the models
+     * @param datas the models
+     */
+    public void saveInBackground(String key, List<Object3DData> datas) {
+        final BinaryMesh.Snapshot snapshot = BinaryMesh.snapshot(key, datas);
+        final int count = datas.size();
+        executor.execute(() -> save(key, snapshot, count));
+    }
+
+    private void save(String key, BinaryMesh.Snapshot snapshot, int count) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e("MeshCache", "Couldn't create cache directory " + dir);
+            return;
+        }
+        File file = getFile(key);
+        // write to a temp file first, so other loads never see a half written file
+        File temp = new File(dir, file.getName() + ".tmp");
+        try {
+            try (FileOutputStream stream = new FileOutputStream(temp)) {
+                snapshot.write(stream.getChannel());
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Couldn't rename " + temp + " to " + file);
+            }
+            Log.i("MeshCache", "Saved " + count + " objects to cache (" + file.length() + " bytes)");
+        } catch (IOException | RuntimeException e) {
+            Log.e("MeshCache", "Error writing cache file " + file, e);
+            temp.delete();
+        }
+        evict();
+    }
+
+    /**
+     * Delete the least recently used files until the cache is smaller than the maximum size
+     */
+    private void evict() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxSize) return;
+        Arrays.sort(files, (File o1, File o2) -> {
+            long diff = o1.lastModified() - o2.lastModified();
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        });
+        for (int i = 0; i < files.length && size > maxSize; i++) {
+            size -= files[i].length();
+            Log.i("MeshCache", "Evicting " + files[i]);
+            files[i].delete();
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(dir, hash(key) + EXTENSION);
+    }
+
+    private static long checksum(InputStream stream, int maxBytes) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[Math.min(maxBytes, 8 * 1024)];
+        int total = 0;
+        int length;
+        while (total < maxBytes && (length = stream.read(chunk, 0, Math.min(chunk.length, maxBytes - total))) != -1) {
+            crc.update(chunk, 0, length);
+            total += length;
+        }
+        return crc.getValue();
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(Charset.forName("UTF-8")));
+            StringBuilder ret = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                ret.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return ret.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every platform has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
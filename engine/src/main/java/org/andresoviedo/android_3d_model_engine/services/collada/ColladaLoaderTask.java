@@ -7,15 +7,23 @@ import org.andresoviedo.android_3d_model_engine.model.Object3DData;
 import org.andresoviedo.android_3d_model_engine.services.LoaderTask;
 import org.andresoviedo.android_3d_model_engine.services.collada.entities.AnimatedModelData;
 import org.andresoviedo.android_3d_model_engine.services.collada.loader.ColladaLoader;
+import org.andresoviedo.util.android.ContentUtils;
+import org.andresoviedo.util.io.ByteBufferInputStream;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public class ColladaLoaderTask extends LoaderTask {
 
     AnimatedModelData modelData;
 
+    /**
+     * model data, if it could be mapped in memory. It is read twice (model and animation)
+     */
+    private ByteBuffer data;
+
     public ColladaLoaderTask(Activity parent, Uri uri, Callback callback) {
         super(parent, uri, callback);
     }
@@ -23,8 +31,10 @@ public class ColladaLoaderTask extends LoaderTask {
     @SuppressWarnings("unchecked")
     @Override
     protected List<Object3DData> build() throws IOException {
-        // Parse DAE
-        Object[] ret = ColladaLoader.buildAnimatedModel(new URL(uri.toString()));
+        // Parse DAE. local files and uncompressed assets are read straight from memory
+        data = ContentUtils.getByteBuffer(uri);
+        Object[] ret = data != null ? ColladaLoader.buildAnimatedModel(new ByteBufferInputStream(data.duplicate()))
+                : ColladaLoader.buildAnimatedModel(new URL(uri.toString()));
         List<Object3DData> datas = (List<Object3DData>) ret[1];
         modelData = (AnimatedModelData) ret[0];
         return datas;
@@ -32,7 +42,11 @@ public class ColladaLoaderTask extends LoaderTask {
 
     @Override
     protected void build(List<Object3DData> datas) throws Exception {
-        ColladaLoader.populateAnimatedModel(new URL(uri.toString()), datas, modelData);
+        if (data != null) {
+            ColladaLoader.populateAnimatedModel(new ByteBufferInputStream(data.duplicate()), datas, modelData);
+        } else {
+            ColladaLoader.populateAnimatedModel(new URL(uri.toString()), datas, modelData);
+        }
         if (datas.size() == 1) {
             datas.get(0).centerAndScale(5, new float[]{0, 0, 0});
         } else {
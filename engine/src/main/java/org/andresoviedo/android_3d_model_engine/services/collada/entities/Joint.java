@@ -63,6 +63,10 @@ public class Joint {
         Matrix.setIdentityM(animatedTransform,0);
     }
 
+    public JointData getData() {
+        return data;
+    }
+
     public int getIndex() {
         return data.index;
     }
@@ -52,6 +52,14 @@ public class JointData {
 		return name;
 	}
 
+	public String getInstanceGeometry() {
+		return instance_geometry;
+	}
+
+	public Map<String, String> getMaterials() {
+		return materials;
+	}
+
 	public void setIndex(int index) {
 		this.index = index;
 	}
@@ -47,8 +47,14 @@ public class ColladaLoader {
 
 	public static Object[] buildAnimatedModel(URL url) throws IOException {
 		Log.i("ColladaLoader","Loading model... "+url.toString());
+		return buildAnimatedModel(url.openStream());
+	}
+
+	/**
+	 * @param is the model data. The stream is closed after reading it
+	 */
+	public static Object[] buildAnimatedModel(InputStream is) throws IOException {
 		List<Object3DData> ret = new ArrayList<>();
-		InputStream is = url.openStream();
 		AnimatedModelData modelData = loadColladaModel(is,3);
 		is.close();
 		List<MeshData> meshDataList = modelData.getMeshData();
@@ -106,10 +112,23 @@ public class ColladaLoader {
 	}
 
 	public static void populateAnimatedModel(URL url, List<Object3DData> datas, AnimatedModelData modelData){
+		InputStream animationIS = null;
+		try {
+			animationIS = url.openStream();
+		} catch (IOException e) {
+			Log.e("ColladaLoader","Error opening animation", e);
+		}
+		populateAnimatedModel(animationIS, datas, modelData);
+	}
+
+	/**
+	 * @param animationStream the model data, to read the animation. The stream is closed after reading it
+	 */
+	public static void populateAnimatedModel(InputStream animationStream, List<Object3DData> datas, AnimatedModelData modelData){
 
         Log.i("ColladaLoader", "Loading animation...");
         Animation animation = null;
-        try (InputStream animationIS = url.openStream()) {
+        try (InputStream animationIS = animationStream) {
             animation = loadAnimation(animationIS);
 			Log.i("ColladaLoader", "Loaded animation: "+animation);
         } catch (Exception e) {
@@ -13,6 +13,7 @@ package org.andresoviedo.android_3d_model_engine.services.stl;
 
 // External imports
 
+import org.andresoviedo.util.io.ByteBufferInputStream;
 import org.andresoviedo.util.io.ProgressMonitorInputStream;
 
 import java.io.BufferedReader;
@@ -21,6 +22,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.StringTokenizer;
 
@@ -341,6 +343,36 @@ class STLASCIIParser extends STLParser
         return true;
     }
 
+    /**
+     * @throws IllegalArgumentException The file was structurally incorrect
+     */
+    public boolean parse(ByteBuffer data)
+        throws IOException
+    {
+        // both passes read the same memory, so there is no need to open the
+        // source twice
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new ByteBufferInputStream(data.duplicate())));
+        boolean isAscii = false;
+
+        try
+        {
+            isAscii = parse(reader);
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        if(!isAscii)
+            return false;
+
+        itsReader = new BufferedReader(new InputStreamReader(
+            new ByteBufferInputStream(data.duplicate())));
+
+        return true;
+    }
+
     /**
      * @throws IllegalArgumentException The file was structurally incorrect
      */
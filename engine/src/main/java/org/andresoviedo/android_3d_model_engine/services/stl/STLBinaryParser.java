@@ -16,10 +16,13 @@ package org.andresoviedo.android_3d_model_engine.services.stl;
 import org.andresoviedo.util.io.ProgressMonitorInputStream;
 
 import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 
 // Local imports
@@ -46,6 +49,9 @@ class STLBinaryParser extends STLParser
     /** The stream that is being read from */
     private BufferedInputStream itsStream;
 
+    /** The data that is being read from, if the file is in memory */
+    private ByteBuffer itsData;
+
     /** Common buffer for reading */
     private  byte[] itsReadBuffer;
 
@@ -80,6 +86,13 @@ class STLBinaryParser extends STLParser
         }
     }
 
+    public boolean parse(ByteBuffer data)
+        throws IllegalArgumentException, IOException
+    {
+        itsData = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        return parse(itsData.remaining());
+    }
+
     public boolean parse(URL url)
         throws IllegalArgumentException, IOException
     {
@@ -144,13 +157,23 @@ class STLBinaryParser extends STLParser
         try
         {
             // skip header until number of facets info
-            for(int i = 0; i < COMMENT_SIZE; i ++)
-                itsStream.read();
+            if(itsData != null)
+            {
+                if(itsData.remaining() < HEADER_SIZE)
+                    throw new EOFException("Unexpected end of file");
+                itsData.position(itsData.position() + COMMENT_SIZE);
+            }
+            else
+            {
+                for(int i = 0; i < COMMENT_SIZE; i ++)
+                    itsStream.read();
+            }
 
             // binary file contains only on object
             itsNumOfObjects = 1;
             itsNumOfFacets =
-                new int[]{ LittleEndianConverter.read4ByteBlock(itsStream) };
+                new int[]{ itsData != null ? itsData.getInt() :
+                    LittleEndianConverter.read4ByteBlock(itsStream) };
             itsNames = new String[1];
             // if length of file is known, check if it matches with the content
             // binary file contains only on object
@@ -196,11 +219,22 @@ class STLBinaryParser extends STLParser
     public boolean getNextFacet(double[] normal, double[][] vertices)
         throws IOException
     {
-        LittleEndianConverter.read(itsReadBuffer,
-                                   itsDataBuffer,
-                                   0,
-                                   12,
-                                   itsStream);
+        if(itsData != null)
+        {
+            // read the floats straight from memory
+            if(itsData.remaining() < RECORD_SIZE)
+                throw new EOFException("Unexpected end of file");
+            for(int i = 0; i < 12; i ++)
+                itsDataBuffer[i] = itsData.getInt();
+        }
+        else
+        {
+            LittleEndianConverter.read(itsReadBuffer,
+                                       itsDataBuffer,
+                                       0,
+                                       12,
+                                       itsStream);
+        }
 
         boolean nan_found = false;;
 
@@ -230,8 +264,15 @@ class STLBinaryParser extends STLParser
         }
 
         // skip last 2 padding bytes
-        itsStream.read();
-        itsStream.read();
+        if(itsData != null)
+        {
+            itsData.position(itsData.position() + 2);
+        }
+        else
+        {
+            itsStream.read();
+            itsStream.read();
+        }
         return true;
     }
 }
\ No newline at end of file
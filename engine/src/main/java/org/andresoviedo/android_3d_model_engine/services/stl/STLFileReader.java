@@ -16,6 +16,7 @@ package org.andresoviedo.android_3d_model_engine.services.stl;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 // Local imports
@@ -77,6 +78,30 @@ public class STLFileReader
         this(new URL(fileName), strict);
     }
 
+    /**
+     * Creates a <code>STLFileReader</code> object to read a STL file from
+     * memory (i.e. a memory mapped file). The data may be in ASCII or binary
+     * format.
+     * @param data Contents of the STL file.
+     * @throws IllegalArgumentException The file was structurally incorrect
+     */
+    public STLFileReader(ByteBuffer data)
+        throws IllegalArgumentException, IOException
+    {
+        final STLASCIIParser asciiParser = new STLASCIIParser();
+
+        if(asciiParser.parse(data))
+        {
+            itsParser = asciiParser;
+        }
+        else
+        {
+            final STLBinaryParser binParser = new STLBinaryParser();
+            binParser.parse(data);
+            itsParser = binParser;
+        }
+    }
+
     /**
      * Creates a <code>STLFileReader</code> object to read a STL file from an
      * URL. The data may be in ASCII or binary format.
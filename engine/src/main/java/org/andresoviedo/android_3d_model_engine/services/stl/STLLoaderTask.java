@@ -7,7 +7,9 @@ import android.util.Log;
 
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
 import org.andresoviedo.android_3d_model_engine.services.LoaderTask;
+import org.andresoviedo.android_3d_model_engine.services.Object3DBuilder;
 import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
+import org.andresoviedo.util.android.ContentUtils;
 
 import java.io.IOException;
 import java.net.URL;
@@ -24,6 +26,11 @@ import java.util.List;
  */
 public final class STLLoaderTask extends LoaderTask {
 
+    /**
+     * Draw the facets while they are read, every STREAMING_CHUNK_FACES facets
+     */
+    private static final int STREAMING_CHUNK_FACES = 20000;
+
     private STLFileReader stlFileReader;
 
     public STLLoaderTask(Activity parent, Uri uri, Callback callback) {
@@ -32,8 +39,9 @@ public final class STLLoaderTask extends LoaderTask {
 
     @Override
     protected List<Object3DData> build() throws IOException {
-        // Parse STL
-        this.stlFileReader = new STLFileReader(new URL(uri.toString()));
+        // Parse STL. local files and uncompressed assets are read straight from memory
+        ByteBuffer data = ContentUtils.getByteBuffer(uri);
+        this.stlFileReader = data != null ? new STLFileReader(data) : new STLFileReader(new URL(uri.toString()));
         int totalFaces = stlFileReader.getNumOfFacets()[0];
         Log.i("STLLoaderTask", "Num of objects: " + stlFileReader.getNumOfObjects());
         Log.i("STLLoaderTask", "Found '" + totalFaces + "' facets");
@@ -75,6 +83,7 @@ public final class STLLoaderTask extends LoaderTask {
             WavefrontLoader.ModelDimensions modelDimensions = data.getDimensions();
 
             int totalFaces = stlFileReader.getNumOfFacets()[0];
+            int chunkStart = 0;
             boolean first = true;
             while (stlFileReader.getNextFacet(normal, vertices) && counter++ < totalFaces) {
                 normalsBuffer.put(normalCounter++, (float) normal[0]);
@@ -105,6 +114,14 @@ public final class STLLoaderTask extends LoaderTask {
                 modelDimensions.update((float) vertices[0][0], (float) vertices[0][1], (float) vertices[0][2]);
                 modelDimensions.update((float) vertices[1][0], (float) vertices[1][1], (float) vertices[1][2]);
                 modelDimensions.update((float) vertices[2][0], (float) vertices[2][1], (float) vertices[2][2]);
+
+                if (counter - chunkStart >= STREAMING_CHUNK_FACES) {
+                    Object3DData chunk = Object3DBuilder.buildTriangles(copy(vertexBuffer, chunkStart * 9, counter * 9),
+                            copy(normalsBuffer, chunkStart * 9, counter * 9));
+                    chunk.setId(data.getId() + "#" + chunkStart);
+                    publishChunk(chunk, modelDimensions);
+                    chunkStart = counter;
+                }
             }
 
             Log.i("STLLoaderTask", "Building 3D object...");
@@ -122,6 +139,14 @@ public final class STLLoaderTask extends LoaderTask {
         }
     }
 
+    private static FloatBuffer copy(FloatBuffer src, int start, int end) {
+        FloatBuffer data = src.duplicate();
+        data.limit(end).position(start);
+        FloatBuffer ret = createNativeByteBuffer((end - start) * 4).asFloatBuffer();
+        ret.put(data).position(0);
+        return ret;
+    }
+
     private static ByteBuffer createNativeByteBuffer(int length) {
         // initialize vertex byte buffer for shape coordinates
         ByteBuffer bb = ByteBuffer.allocateDirect(length);
@@ -15,6 +15,7 @@ package org.andresoviedo.android_3d_model_engine.services.stl;
 
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 // Local imports
@@ -113,6 +114,16 @@ abstract class STLParser
     abstract boolean parse(URL url)
         throws IOException;
 
+    /**
+     * Parses the data (i.e. a memory mapped file) to obtain the number of
+     * objects, object names and number of facets per object.
+     * @param data The file contents. The buffer position is not modified.
+     * @return <code>true</code> if file is in ASCII format, <code>false</code>
+     *      otherwise. Use the appropriate subclass for reading.
+     */
+    abstract boolean parse(ByteBuffer data)
+        throws IOException;
+
     /**
      * Parses the file to obtain the number of objects, object names and number
      * of facets per object. A progress monitor will show the progress during
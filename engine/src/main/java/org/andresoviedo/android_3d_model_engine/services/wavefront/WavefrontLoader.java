@@ -36,31 +36,49 @@ import android.util.Log;
 import androidx.annotation.Nullable;
 
 import org.andresoviedo.util.android.ContentUtils;
+import org.andresoviedo.util.io.ByteLineReader;
+import org.andresoviedo.util.nio.GrowableFloatBuffer;
+import org.andresoviedo.util.nio.GrowableIntBuffer;
 
 import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class WavefrontLoader {
 
 	private static final float DUMMY_Z_TC = -5.0f;
+	// initial number of elements for the growable buffers (single-pass loading)
+	private static final int INITIAL_CAPACITY = 3 * 1024;
+	// minimum number of bytes for each thread when parsing in parallel
+	private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+	// reads the MTL files while the models are parsed
+	private static final ExecutorService PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "WavefrontLoader-prefetch");
+		thread.setDaemon(true);
+		return thread;
+	});
 	static final boolean INDEXES_START_AT_1 = true;
 	private boolean hasTCs3D = false;
 
-	private ArrayList<Tuple3> texCoords;
 	// whether the model uses 3D or 2D tex coords
 	// whether tex coords should be flipped around the y-axis
 
@@ -84,8 +102,24 @@ public class WavefrontLoader {
 	// buffers
 	private FloatBuffer vertsBuffer;
 	private FloatBuffer normalsBuffer;
-	// TODO: build texture data directly into this buffer
+	// tex coords (u,v,w). w is DUMMY_Z_TC if the model has 2D tex coords
 	private FloatBuffer textureCoordsBuffer;
+	// parse lines with String methods (slower). it is kept as a reference for testing the byte parser
+	boolean legacyParser = false;
+
+	// buffers being filled while parsing. these grow if we didn't analyze the model first
+	private GrowableFloatBuffer vertsData;
+	private GrowableFloatBuffer normalsData;
+	private GrowableFloatBuffer texCoordsData;
+
+	// start reading the MTL file in background as soon as it's referenced. Not for the chunks parsed in worker
+	// threads, as the file can only be opened from the loader thread (see ContentUtils)
+	boolean prefetchMaterials = true;
+
+	// notified every chunkSize faces while parsing (streaming mode)
+	private ChunkListener chunkListener;
+	private int chunkSize;
+	private int chunkStart;
 
 	// flags
 	private static final int triangleMode = GLES20.GL_TRIANGLE_FAN;
@@ -94,9 +128,6 @@ public class WavefrontLoader {
 		modelNm = nm;
 		maxSize = 1.0F;
 
-		texCoords = new ArrayList<Tuple3>();
-
-
 		faceMats = new FaceMaterials();
 		modelDims = new ModelDimensions();
 	} // end of initModelData()
@@ -109,8 +140,11 @@ public class WavefrontLoader {
 		return normalsBuffer;
 	}
 
-	public ArrayList<Tuple3> getTexCoords() {
-		return texCoords;
+	/**
+	 * @return the tex coords, 3 floats (u,v,w) per coordinate
+	 */
+	public FloatBuffer getTexCoords() {
+		return textureCoordsBuffer;
 	}
 
 	public Faces getFaces() {
@@ -129,29 +163,81 @@ public class WavefrontLoader {
 		return modelDims;
 	}
 
+	/**
+	 * Get notified of the faces while they are parsed, so they can be drawn before the whole model is loaded.
+	 * It only works with the sequential byte parser (not when parsing in parallel)
+	 *
+	 * @param listener      the listener, called in the parsing thread
+	 * @param facesPerChunk number of faces of each chunk
+	 */
+	public void setChunkListener(ChunkListener listener, int facesPerChunk) {
+		this.chunkListener = listener;
+		this.chunkSize = facesPerChunk;
+	}
+
+	/**
+	 * Copy the vertices of the specified faces (3 vertices per face). This can be called while the model is being
+	 * parsed in a single pass, i.e. from the {@link ChunkListener}
+	 *
+	 * @param fromFace first face (inclusive)
+	 * @param toFace   last face (exclusive)
+	 * @return a new buffer with 9 floats per face
+	 */
+	public FloatBuffer copyFaceVertices(int fromFace, int toFace) {
+		FloatBuffer ret = createNativeByteBuffer((toFace - fromFace) * 9 * 4).asFloatBuffer();
+		int numVertices = vertsData.size() / 3;
+		for (int i = fromFace * 3; i < toFace * 3; i++) {
+			int idx = faces.vertIdxs.get(i);
+			if (idx < 0 || idx >= numVertices) {
+				// not defined yet. the whole model will be fine anyway
+				idx = 0;
+			}
+			ret.put(vertsData.get(idx * 3)).put(vertsData.get(idx * 3 + 1)).put(vertsData.get(idx * 3 + 2));
+		}
+		ret.position(0);
+		return ret;
+	}
+
+	/**
+	 * Find the material library of the model. Only the header is read, that is, until the first face or material
+	 * is used, as the library must be declared before its materials are used.
+	 *
+	 * @param uri the model
+	 * @return the MTL file or <code>null</code> if the model has no materials
+	 */
 	@Nullable
 	public static String getMaterialLib(Uri uri){
-		return getParameter(uri, "mtllib ");
+		ByteBuffer data = ContentUtils.getByteBuffer(uri);
+		if (data != null) {
+			return findMaterialLib(data);
+		}
+		try (InputStream stream = ContentUtils.getInputStream(uri)) {
+			return findMaterialLib(new ByteLineReader(stream));
+		} catch (IOException e) {
+			Log.e("WavefrontLoader", "Problem reading file '" + uri + "': " + e.getMessage(), e);
+			throw new RuntimeException(e);
+		}
 	}
 
 	@Nullable
-	public static String getTextureFile(Uri uri){
-		return getParameter(uri, "map_Kd ");
+	private static String findMaterialLib(ByteBuffer data) {
+		try {
+			return findMaterialLib(new ByteLineReader(data.duplicate()));
+		} catch (IOException e) {
+			// not possible reading from memory
+			throw new RuntimeException(e);
+		}
 	}
 
 	@Nullable
-	private static String getParameter(Uri uri, String parameter) {
-		try (BufferedReader br = new BufferedReader(new InputStreamReader(ContentUtils.getInputStream(uri)))) {
-			String line;
-			while ((line = br.readLine()) != null) {
-				line = line.trim();
-				if (line.startsWith(parameter)) {
-					return line.substring(parameter.length());
-				}
+	private static String findMaterialLib(ByteLineReader line) throws IOException {
+		while (line.nextLine()) {
+			if (line.startsWith("mtllib ")) {
+				return line.substring(7);
+			}
+			if (line.startsWith("f ") || line.startsWith("usemtl ")) {
+				return null;
 			}
-		} catch (IOException e) {
-			Log.e("WavefrontLoader", "Problem reading file '" + uri + "': " + e.getMessage(), e);
-			throw new RuntimeException(e);
 		}
 		return null;
 	}
@@ -162,16 +248,12 @@ public class WavefrontLoader {
 	 */
 	public void analyzeModel(InputStream is) {
 		int lineNum = 0;
-		String line;
 
-
-		BufferedReader br = null;
 		try {
-			br = new BufferedReader(new InputStreamReader(is));
+			ByteLineReader line = new ByteLineReader(is);
 
-			while ((line = br.readLine()) != null) {
+			while (line.nextLine()) {
 				lineNum++;
-				line = line.trim();
 				if (line.length() > 0) {
 
 					if (line.startsWith("v ")) { // vertex
@@ -181,12 +263,7 @@ public class WavefrontLoader {
 					} else if (line.startsWith("vn")) {// normal
 						numNormals++;
 					} else if (line.startsWith("f ")) { // face
-						final int faceSize;
-						if (line.contains("  ")) {
-							faceSize = line.split(" +").length - 1;
-						} else {
-							faceSize = line.split(" ").length - 1;
-						}
+						final int faceSize = line.countTokens() - 1;
 						numFaces += (faceSize - 2);
 						// (faceSize-2)x3 = converting polygon to triangles
 						numVertsReferences += (faceSize - 2) * 3;
@@ -194,7 +271,7 @@ public class WavefrontLoader {
 						numTriangles += (faceSize == 3)? 1 : 0;
 					} else if (line.startsWith("mtllib ")) // build material
 					{
-						materials = new Materials(line.substring(7));
+						setMaterialLib(line.substring(7));
 					} else if (line.startsWith("usemtl ")) {// use material
 					} else if (line.charAt(0) == 'g') { // group name
 						// not implemented
@@ -205,7 +282,7 @@ public class WavefrontLoader {
 					else if (line.charAt(0) == 'o') // object group
 						continue;
 					else
-						System.out.println("Ignoring line " + lineNum + " : " + line);
+						System.out.println("Ignoring line " + lineNum + " : " + line.line());
 				}
 			}
 		} catch (IOException e) {
@@ -213,12 +290,10 @@ public class WavefrontLoader {
 			Log.e("WavefrontLoader", e.getMessage(), e);
 			throw new RuntimeException(e);
 		} finally {
-			if (br != null) {
-				try {
-					br.close();
-				} catch (IOException e) {
-					Log.e("WavefrontLoader", e.getMessage(), e);
-				}
+			try {
+				is.close();
+			} catch (IOException e) {
+				Log.e("WavefrontLoader", e.getMessage(), e);
 			}
 		}
 
@@ -230,37 +305,219 @@ public class WavefrontLoader {
 
 	/**
 	 * Allocate buffers for pushing the model data
-	 * TODO: use textureCoordsBuffer
 	 */
 	public void allocateBuffers() {
 		// size = 3 (x,y,z) * 4 (bytes per float)
-		vertsBuffer = createNativeByteBuffer(numVerts*3*4).asFloatBuffer();
+		vertsData = new GrowableFloatBuffer(numVerts*3);
+		vertsBuffer = vertsData.buffer();
 		if (numNormals > 0) {
-			normalsBuffer = createNativeByteBuffer(numNormals * 3 * 4).asFloatBuffer();
+			normalsData = new GrowableFloatBuffer(numNormals * 3);
+			normalsBuffer = normalsData.buffer();
 		}
-		textureCoordsBuffer = createNativeByteBuffer(numTextures*3*4).asFloatBuffer();
+		texCoordsData = new GrowableFloatBuffer(numTextures * 3);
+		textureCoordsBuffer = texCoordsData.buffer();
 		if (numFaces > 0) {
-			IntBuffer buffer = createNativeByteBuffer(numFaces * 3 * 4).asIntBuffer();
-			faces = new Faces(numFaces, buffer, vertsBuffer, normalsBuffer, texCoords);
+			faces = new Faces(numFaces, new GrowableIntBuffer(numFaces * 3), vertsData, normalsData, texCoordsData);
+		}
+	}
+
+	/**
+	 * Parse the model reading the data source only once. Buffers grow while the data is parsed, and they are
+	 * trimmed at the end, so there is no need to call {@link #analyzeModel(InputStream)} and
+	 * {@link #allocateBuffers()} before.
+	 *
+	 * @param is data source
+	 */
+	public void loadModelSinglePass(InputStream is) {
+		allocateGrowableBuffers();
+		loadModel(is);
+		trimBuffers();
+	}
+
+	/**
+	 * Parse the model in parallel. The data is split in newline-aligned chunks, each chunk is parsed in a worker
+	 * thread into its own buffers, and then all chunks are merged. Small models (less than {@link #MIN_CHUNK_SIZE}
+	 * per chunk) are parsed in the calling thread.
+	 *
+	 * @param data the whole model file, i.e. memory mapped
+	 */
+	public void loadModelParallel(ByteBuffer data) {
+		loadModelParallel(data, Math.min(Runtime.getRuntime().availableProcessors(), data.remaining() / MIN_CHUNK_SIZE));
+	}
+
+	void loadModelParallel(ByteBuffer data, int numChunks) {
+		if (numChunks <= 1) {
+			allocateGrowableBuffers();
+			readModel(new ByteLineReader(data.duplicate()));
+			trimBuffers();
+			return;
+		}
+
+		// chunks can't read the materials in background, so look for them here while the chunks are parsed
+		String materialLib = findMaterialLib(data);
+		if (materialLib != null) {
+			setMaterialLib(materialLib);
+		}
+
+		// split data in newline-aligned ranges
+		final int start = data.position();
+		final int end = data.limit();
+		final int[] bounds = new int[numChunks + 1];
+		bounds[0] = start;
+		bounds[numChunks] = end;
+		for (int i = 1; i < numChunks; i++) {
+			int pos = Math.max(bounds[i - 1], start + (int) ((long) (end - start) * i / numChunks));
+			while (pos < end && data.get(pos) != '\n') pos++;
+			bounds[i] = pos < end ? pos + 1 : end;
+		}
+
+		// parse chunks
+		final WavefrontLoader[] chunks = new WavefrontLoader[numChunks];
+		final List<Future<?>> tasks = new ArrayList<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(numChunks);
+		try {
+			for (int i = 0; i < numChunks; i++) {
+				final WavefrontLoader chunk = new WavefrontLoader(modelNm);
+				chunk.allocateGrowableBuffers();
+				chunk.faces.trackRelativeIndices();
+				chunk.prefetchMaterials = false;
+				chunks[i] = chunk;
+
+				final ByteBuffer chunkData = data.duplicate();
+				chunkData.limit(bounds[i + 1]);
+				chunkData.position(bounds[i]);
+				tasks.add(executor.submit(() -> chunk.readModel(new ByteLineReader(chunkData))));
+			}
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		mergeChunks(chunks);
+		trimBuffers();
+	}
+
+	/**
+	 * Join the data of all the chunks. Positive indices are absolute, so only the negative (relative) indices
+	 * and the faces referenced by the materials need to be moved.
+	 */
+	private void mergeChunks(WavefrontLoader[] chunks) {
+		int totalVerts = 0, totalNormals = 0, totalTexCoords = 0, totalIndices = 0;
+		for (WavefrontLoader chunk : chunks) {
+			totalVerts += chunk.vertsData.size();
+			totalNormals += chunk.normalsData.size();
+			totalTexCoords += chunk.texCoordsData.size();
+			totalIndices += chunk.faces.vertIdxs.size();
+		}
+		vertsData = new GrowableFloatBuffer(totalVerts);
+		normalsData = new GrowableFloatBuffer(totalNormals);
+		texCoordsData = new GrowableFloatBuffer(totalTexCoords);
+		faces = new Faces(0, new GrowableIntBuffer(totalIndices), vertsData, normalsData, texCoordsData);
+
+		boolean isFirstCoord = true;
+		boolean isFirstTC = true;
+		for (WavefrontLoader chunk : chunks) {
+			// the chunk indices are relative to the data loaded so far
+			faceMats.addAll(chunk.faceMats, faces.facesLoadCounter);
+			faces.addAll(chunk.faces, vertsData.size() / 3, texCoordsData.size() / 3, normalsData.size() / 3);
+
+			vertsData.put(chunk.vertsData);
+			normalsData.put(chunk.normalsData);
+			texCoordsData.put(chunk.texCoordsData);
+
+			if (chunk.vertsData.size() > 0) {
+				ModelDimensions dims = chunk.modelDims;
+				if (isFirstCoord) {
+					modelDims.set(dims.leftPt, dims.bottomPt, dims.farPt);
+					isFirstCoord = false;
+				} else {
+					modelDims.update(dims.leftPt, dims.bottomPt, dims.farPt);
+				}
+				modelDims.update(dims.rightPt, dims.topPt, dims.nearPt);
+			}
+			if (isFirstTC && chunk.texCoordsData.size() > 0) {
+				hasTCs3D = chunk.hasTCs3D;
+				isFirstTC = false;
+			}
+			if (materials == null) {
+				materials = chunk.materials;
+			}
+		}
+		numFaces = faces.facesLoadCounter;
+	}
+
+	private void setMaterialLib(String mtlFnm) {
+		materials = new Materials(mtlFnm);
+		if (prefetchMaterials) {
+			materials.prefetch();
 		}
 	}
 
+	private void allocateGrowableBuffers() {
+		vertsData = new GrowableFloatBuffer(INITIAL_CAPACITY);
+		normalsData = new GrowableFloatBuffer(INITIAL_CAPACITY);
+		texCoordsData = new GrowableFloatBuffer(INITIAL_CAPACITY);
+		faces = new Faces(0, new GrowableIntBuffer(INITIAL_CAPACITY), vertsData, normalsData, texCoordsData);
+	}
+
+	private void trimBuffers() {
+		// release unused memory
+		vertsBuffer = vertsData.trim();
+		numVerts = vertsData.size() / 3;
+		numNormals = normalsData.size() / 3;
+		normalsBuffer = numNormals > 0? normalsData.trim() : null;
+		numTextures = texCoordsData.size() / 3;
+		textureCoordsBuffer = texCoordsData.trim();
+		faces.trim();
+		numFaces = faces.getSize();
+		numVertsReferences = faces.getVerticesReferencesCount();
+		if (numFaces == 0) {
+			faces = null;
+		}
+
+		Log.i("WavefrontLoader","Number of vertices:"+numVerts);
+		Log.i("WavefrontLoader","Number of faces:"+numFaces);
+	}
+
 	public void loadModel(InputStream is) {
 		// String fnm = MODEL_DIR + modelNm + ".obj";
-		BufferedReader br = null;
-		try {
-			br = new BufferedReader(new InputStreamReader(is));
-			readModel(br);
-		} finally{
-			if (br != null){
+		if (legacyParser) {
+			BufferedReader br = null;
+			try {
+				br = new BufferedReader(new InputStreamReader(is));
+				readModel(br);
+			} finally {
+				if (br != null) {
+					try {
+						br.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		} else {
+			try {
+				readModel(new ByteLineReader(is));
+			} finally {
 				try {
-					br.close();
+					is.close();
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
 			}
 		}
-
+		if (faces != null) {
+			// the number of tex coords and normals indices is not known in advance
+			faces.trim();
+		}
 	}
 
 	private static ByteBuffer createNativeByteBuffer(int length) {
@@ -271,6 +528,68 @@ public class WavefrontLoader {
 		return bb;
 	}
 
+	private void readModel(ByteLineReader line)
+	// parse the OBJ file line-by-line, without creating objects for each line
+	{
+		boolean isLoaded = true; // hope things will go okay
+
+		int lineNum = 0;
+		boolean isFirstCoord = true;
+		boolean isFirstTC = true;
+		numFaces = 0;
+
+		try {
+			while (line.nextLine()) {
+				lineNum++;
+				if (line.length() > 0) {
+
+					if (line.startsWith("v ")) { // vertex
+						isLoaded = addVert(vertsData, line, isFirstCoord, modelDims) && isLoaded;
+						if (isFirstCoord)
+							isFirstCoord = false;
+					} else if (line.startsWith("vt")) { // tex coord
+						isLoaded = addTexCoord(line, isFirstTC) && isLoaded;
+						if (isFirstTC)
+							isFirstTC = false;
+					} else if (line.startsWith("vn")) // normal
+						isLoaded = addVert(normalsData, line, isFirstCoord, null) && isLoaded;
+					else if (line.startsWith("f ")) { // face
+						isLoaded = faces.addFace(line) && isLoaded;
+						numFaces = faces.facesLoadCounter;
+						if (chunkListener != null && numFaces - chunkStart >= chunkSize) {
+							chunkListener.onChunkLoaded(this, chunkStart, numFaces);
+							chunkStart = numFaces;
+						}
+					} else if (line.startsWith("mtllib ")) // build material
+					{
+						// already built if the model was analyzed first
+						if (materials == null) {
+							setMaterialLib(line.substring(7));
+						}
+					} else if (line.startsWith("usemtl ")) // use material
+						faceMats.addUse(numFaces, line.substring(7));
+					else if (line.charAt(0) == 'g') { // group name
+						// not implemented
+					} else if (line.charAt(0) == 's') { // smoothing group
+						// not implemented
+					} else if (line.charAt(0) == '#') // comment line
+						continue;
+					else if (line.charAt(0) == 'o') // object group
+						continue;
+					else
+						System.out.println("Ignoring line " + lineNum + " : " + line.line());
+				}
+			}
+		} catch (IOException e) {
+			Log.e("WavefrontLoader",e.getMessage(),e);
+			throw new RuntimeException(e);
+		}
+
+		if (!isLoaded) {
+			Log.e("WavefrontLoader","Error loading model");
+		}
+	} // end of readModel()
+
 	private void readModel(BufferedReader br)
 	// parse the OBJ file line-by-line
 	{
@@ -281,8 +600,6 @@ public class WavefrontLoader {
 		boolean isFirstCoord = true;
 		boolean isFirstTC = true;
 		numFaces = 0;
-		int vertNumber = 0;
-		int normalNumber = 0;
 
 
 		try {
@@ -292,7 +609,7 @@ public class WavefrontLoader {
 				if (line.length() > 0) {
 
 					if (line.startsWith("v ")) { // vertex
-						isLoaded = addVert(vertsBuffer, vertNumber++ * 3, line, isFirstCoord, modelDims) && isLoaded;
+						isLoaded = addVert(vertsData, line, isFirstCoord, modelDims) && isLoaded;
 						if (isFirstCoord)
 							isFirstCoord = false;
 					} else if (line.startsWith("vt")) { // tex coord
@@ -300,15 +617,16 @@ public class WavefrontLoader {
 						if (isFirstTC)
 							isFirstTC = false;
 					} else if (line.startsWith("vn")) // normal
-						isLoaded = addVert(normalsBuffer, normalNumber++ * 3,line, isFirstCoord, null) && isLoaded;
+						isLoaded = addVert(normalsData, line, isFirstCoord, null) && isLoaded;
 					else if (line.startsWith("f ")) { // face
 						isLoaded = faces.addFace(line) && isLoaded;
 						numFaces = faces.facesLoadCounter;
 					} else if (line.startsWith("mtllib ")) // build material
 					{
-						// materials = new Materials(new File(modelFile.getParent(),
-						// line.substring(7)).getAbsolutePath());
-						// materials = new Materials(line.substring(7));
+						// already built if the model was analyzed first
+						if (materials == null) {
+							setMaterialLib(line.substring(7));
+						}
 					} else if (line.startsWith("usemtl ")) // use material
 						faceMats.addUse(numFaces, line.substring(7));
 					else if (line.charAt(0) == 'g') { // group name
@@ -334,18 +652,80 @@ public class WavefrontLoader {
 		}
 	} // end of readModel()
 
+	/**
+	 * Parse the vertex "v x y z" (or normal "vn x y z") and add it to the buffer. If the vertex cannot be parsed,
+	 * then a default (0,0,0) vertex is added instead.
+	 *
+	 * @param buffer the buffer where the vertex is to be added
+	 * @param line the line reader positioned at the vertex line
+	 * @param isFirstCoord if this is the first vertex to be parsed
+	 * @param dimensions the model dimesions so they are updated
+	 * @return <code>true</code> if the vertex could be parsed, <code>false</code> otherwise
+	 */
+	private boolean addVert(GrowableFloatBuffer buffer, ByteLineReader line, boolean isFirstCoord, ModelDimensions dimensions) {
+		float x=0,y=0,z=0;
+		try{
+			line.skipToken(); // skip "v" or "vn"
+			x = line.nextFloat();
+			y = line.nextFloat();
+			z = line.nextFloat();
+
+			if (dimensions != null) {
+				if (isFirstCoord)
+					modelDims.set(x, y, z);
+				else
+					modelDims.update(x, y, z);
+			}
+
+			return true;
+
+		}catch(NumberFormatException ex){
+			Log.e("WavefrontLoader",ex.getMessage());
+		} finally{
+			// try to build even with errors
+			buffer.put(x, y, z);
+		}
+
+		return false;
+	} // end of addVert()
+
+	/**
+	 * Add the texture coordinate "vt u v [w]". Whether there is a 3rd coordinate is decided by the first line.
+	 */
+	private boolean addTexCoord(ByteLineReader line, boolean isFirstTC) {
+		if (isFirstTC) {
+			hasTCs3D = line.countTokens() == 4;
+			System.out.println("Using 3D tex coords: " + hasTCs3D);
+		}
+
+		try {
+			line.skipToken(); // skip "vt" OBJ word
+			float x = line.nextFloat();
+			float y = line.nextFloat();
+
+			float z = DUMMY_Z_TC;
+			if (hasTCs3D)
+				z = line.nextFloat();
+			texCoordsData.put(x, y, z);
+			return true;
+		} catch (NumberFormatException e) {
+			System.out.println(e.getMessage());
+		}
+
+		return false;
+	} // end of addTexCoord()
+
 	/**
 	 * Parse the vertex and add it to the buffer. If the vertex cannot be parsed,
 	 * then a default (0,0,0) vertex is added instead.
 	 *
 	 * @param buffer the buffer where the vertex is to be added
-	 * @param offset the offset of the buffer
 	 * @param line the vertex to parse
 	 * @param isFirstCoord if this is the first vertex to be parsed
 	 * @param dimensions the model dimesions so they are updated (TODO move this out of this method)
 	 * @return <code>true</code> if the vertex could be parsed, <code>false</code> otherwise
 	 */
-	private boolean addVert(FloatBuffer buffer, int offset, String line, boolean isFirstCoord, ModelDimensions dimensions)
+	private boolean addVert(GrowableFloatBuffer buffer, String line, boolean isFirstCoord, ModelDimensions dimensions)
 	/*
 	 * Add vertex from line "v x y z" to vert ArrayList, and update the model dimension's info.
 	 */
@@ -376,7 +756,7 @@ public class WavefrontLoader {
 			Log.e("WavefrontLoader",ex.getMessage());
 		} finally{
 			// try to build even with errors
-			buffer.put(offset, x).put(offset+1, y).put(offset+2, z);
+			buffer.put(x, y, z);
 		}
 
 		return false;
@@ -384,7 +764,7 @@ public class WavefrontLoader {
 
 	private boolean addTexCoord(String line, boolean isFirstTC)
 	/*
-	 * Add the texture coordinate from the line "vt u v w" to the texCoords ArrayList. There may only be two tex coords
+	 * Add the texture coordinate from the line "vt u v w" to the tex coords buffer. There may only be two tex coords
 	 * on the line, which is determined by looking at the first tex coord line.
 	 */
 	{
@@ -395,7 +775,7 @@ public class WavefrontLoader {
 
 		Tuple3 texCoord = readTCTuple(line);
 		if (texCoord != null) {
-			texCoords.add(texCoord);
+			texCoordsData.put(texCoord.getX(), texCoord.getY(), texCoord.getZ());
 			return true;
 		}
 
@@ -450,6 +830,18 @@ public class WavefrontLoader {
 		// faces
 	} // end of reportOnModel()
 
+	/**
+	 * Listener of the faces being parsed
+	 */
+	public interface ChunkListener {
+		/**
+		 * @param loader   the loader
+		 * @param fromFace first face of the chunk (inclusive)
+		 * @param toFace   last face of the chunk (exclusive)
+		 */
+		void onChunkLoaded(WavefrontLoader loader, int fromFace, int toFace);
+	}
+
 	public static class Tuple3 {
 		private float x, y, z;
 
@@ -614,6 +1006,9 @@ public class WavefrontLoader {
 		// private File file;
 		public String mfnm;
 
+		// the MTL file being read in background
+		private Future<?> prefetch;
+
 		private Materials(String mtlFnm) {
 			// TODO: this map is now linked because we want to get only the first texture
 			// when multiple textures are supported, change this to be a simple HashMap
@@ -623,6 +1018,65 @@ public class WavefrontLoader {
 			// file = new File(mtlFnm);
 		}
 
+		/**
+		 * Start reading the MTL file in background, so the materials are ready when the model is built. The file is
+		 * opened in the calling thread, as opening it may need the activity of the thread (see ContentUtils)
+		 */
+		public void prefetch() {
+			if (prefetch != null) {
+				return;
+			}
+			final InputStream is;
+			try {
+				is = ContentUtils.getInputStream(mfnm);
+			} catch (IOException | RuntimeException e) {
+				// load() will try again and report the error
+				Log.w("WavefrontLoader", "Couldn't prefetch material file " + mfnm + ". " + e.getMessage());
+				return;
+			}
+			if (is == null) {
+				return;
+			}
+			Log.i("WavefrontLoader", "Prefetching material file " + mfnm + "...");
+			prefetch = PREFETCH_EXECUTOR.submit(() -> {
+				readMaterials(is);
+				return null;
+			});
+		}
+
+		/**
+		 * Read the MTL file, or wait until it's read if it was prefetched
+		 *
+		 * @throws IOException if there is a problem reading the file
+		 */
+		public void load() throws IOException {
+			if (prefetch == null) {
+				try (InputStream is = ContentUtils.getInputStream(mfnm)) {
+					if (is == null) {
+						throw new FileNotFoundException(mfnm);
+					}
+					readMaterials(is);
+				}
+				return;
+			}
+			try {
+				prefetch.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted reading " + mfnm);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+				throw new IOException(e.getCause());
+			}
+		}
+
+		private void readMaterials(InputStream is) throws IOException {
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
+				readMaterials(br);
+				showMaterials();
+			}
+		}
+
 		public void readMaterials(BufferedReader br)
 		/*
 		 * Parse the MTL file line-by-line, building Material objects which are collected in the materials ArrayList.
@@ -860,28 +1314,40 @@ public class WavefrontLoader {
 	public static class Faces {
 		private static final float DUMMY_Z_TC = -5.0f;
 
-		public final int totalFaces;
+		public int totalFaces;
 		/**
 		 * indices for verticesused by each face
 		 */
 		public IntBuffer facesVertIdxs;
 		/**
-		 * indices for tex coords used by each face
+		 * indices for tex coords used by each face (3 per face). Only the faces that have tex coords are included
 		 */
-		public ArrayList<int[]> facesTexIdxs;
+		public IntBuffer facesTexIdxs;
 		/**
-		 * indices for normals used by each face
+		 * indices for normals used by each face (3 per face). Only the faces that have normals are included
 		 */
-		public ArrayList<int[]> facesNormIdxs;
-
-        private FloatBuffer vertex;
-		private FloatBuffer normals;
-		private ArrayList<Tuple3> texCoords;
+		public IntBuffer facesNormIdxs;
+
+		private GrowableIntBuffer vertIdxs;
+		private GrowableIntBuffer texIdxs;
+		private GrowableIntBuffer normIdxs;
+		private GrowableFloatBuffer vertex;
+		private GrowableFloatBuffer normals;
+		private GrowableFloatBuffer texCoords;
+		// tex coords and normal indices of the face being parsed
+		private final int[] vt = new int[3];
+		private final int[] vn = new int[3];
 
 		// Total number of vertices references. That is, each face references 3 or more vectors. This is the sum for all
 		// faces
 		private int facesLoadCounter;
-		private int faceVertexLoadCounter = 0;
+		// position of the negative (relative) indices. only tracked when the model is parsed in chunks,
+		// so they can be moved when merging all chunks
+		private GrowableIntBuffer relativeVertIdxs;
+		private GrowableIntBuffer relativeTexIdxs;
+		private GrowableIntBuffer relativeNormIdxs;
+		// start and end position of each v/vt/vn token in the line being parsed
+		private int[] tokenBounds = new int[32];
 		private int verticesReferencesCount;
 
 		// for reporting
@@ -892,17 +1358,74 @@ public class WavefrontLoader {
 			this.facesLoadCounter = numFaces;
 		}
 
-		Faces(int totalFaces, IntBuffer buffer, FloatBuffer vs, FloatBuffer ns, ArrayList<Tuple3> ts) {
+		Faces(int totalFaces, GrowableIntBuffer buffer, GrowableFloatBuffer vs, GrowableFloatBuffer ns, GrowableFloatBuffer ts) {
 			this.totalFaces = totalFaces;
 			vertex = vs;
 			normals = ns;
 			texCoords = ts;
 
-			facesVertIdxs = buffer;
-			facesTexIdxs = new ArrayList<int[]>();
-			facesNormIdxs = new ArrayList<int[]>();
+			vertIdxs = buffer;
+			facesVertIdxs = buffer.buffer();
+			texIdxs = new GrowableIntBuffer(buffer.buffer().capacity());
+			normIdxs = new GrowableIntBuffer(buffer.buffer().capacity());
 		} // end of Faces()
 
+		private void trackRelativeIndices() {
+			relativeVertIdxs = new GrowableIntBuffer(0);
+			relativeTexIdxs = new GrowableIntBuffer(0);
+			relativeNormIdxs = new GrowableIntBuffer(0);
+		}
+
+		/**
+		 * Append the faces parsed in another chunk
+		 *
+		 * @param other        the faces of the chunk
+		 * @param vertexOffset number of vertices before the chunk
+		 * @param texOffset    number of texture coordinates before the chunk
+		 * @param normalOffset number of normals before the chunk
+		 */
+		private void addAll(Faces other, int vertexOffset, int texOffset, int normalOffset) {
+			addAll(vertIdxs, other.vertIdxs, other.relativeVertIdxs, vertexOffset);
+			addAll(texIdxs, other.texIdxs, other.relativeTexIdxs, texOffset);
+			addAll(normIdxs, other.normIdxs, other.relativeNormIdxs, normalOffset);
+
+			facesLoadCounter += other.facesLoadCounter;
+			verticesReferencesCount += other.verticesReferencesCount;
+		}
+
+		private static void addAll(GrowableIntBuffer dst, GrowableIntBuffer src, GrowableIntBuffer relative, int offset) {
+			final int start = dst.size();
+			dst.put(src);
+			for (int i = 0; i < relative.size(); i++) {
+				int pos = start + relative.get(i);
+				dst.set(pos, dst.get(pos) + offset);
+			}
+		}
+
+		/**
+		 * Called when the faces were loaded without knowing its number in advance
+		 */
+		void trim() {
+			facesVertIdxs = vertIdxs.trim();
+			facesTexIdxs = texIdxs.trim();
+			facesNormIdxs = normIdxs.trim();
+			totalFaces = facesLoadCounter;
+		}
+
+		/**
+		 * Save the tex coords and normals indices of the face that was just parsed
+		 */
+		private void endFace(boolean hasVt, boolean hasVn) {
+			if (hasVt) texIdxs.put(vt[0], vt[1], vt[2]);
+			if (hasVn) normIdxs.put(vn[0], vn[1], vn[2]);
+			resetFace();
+		}
+
+		private void resetFace() {
+			vt[0] = vt[1] = vt[2] = 0;
+			vn[0] = vn[1] = vn[2] = 0;
+		}
+
 		public int getSize(){
 			return totalFaces;
 		}
@@ -931,10 +1454,10 @@ public class WavefrontLoader {
 				}
 
 				int numTokens = tokens.length; // number of v/vt/vn tokens
-				// create arrays to hold the v, vt, vn indicies
-
-				int vt[] = null;
-				int vn[] = null;
+				// the vt, vn indices are saved in the vt and vn arrays
+				boolean hasVt = false;
+				boolean hasVn = false;
+				resetFace();
 
 
 				for (int i = 0, faceIndex = 0; i < numTokens; i++, faceIndex++) {
@@ -946,11 +1469,9 @@ public class WavefrontLoader {
 
 						facesLoadCounter++;
 						verticesReferencesCount += 3;
-						if (vt != null)  facesTexIdxs.add(vt);
-						if (vn != null) facesNormIdxs.add(vn);
-
-						vt = null;
-						vn = null;
+						endFace(hasVt, hasVn);
+						hasVt = false;
+						hasVn = false;
 
 						i -= 2;
 					}
@@ -978,7 +1499,7 @@ public class WavefrontLoader {
 
 					int vertIdx = Integer.parseInt(faceTokens[0]);
 					if (numSeps > 1){
-						if (vt == null)	vt = new int[3];
+						hasVt = true;
 						try{
 							vt[faceIndex] = Integer.parseInt(faceTokens[1]);
 						}catch(NumberFormatException ex){
@@ -986,7 +1507,7 @@ public class WavefrontLoader {
 						}
 					}
 					if (numSeps > 2){
-						if (vn == null)	vn = new int[3];
+						hasVn = true;
 						try{
 							vn[faceIndex] = Integer.parseInt(faceTokens[2]);
 						}catch(NumberFormatException ex){
@@ -996,21 +1517,21 @@ public class WavefrontLoader {
 					// add 0's if the vt or vn index values are missing;
 					// 0 is a good choice since real indices start at 1
 
+					// negative indices are relative to the elements read so far
                     if (vertIdx < 0){
-					    vertIdx = this.vertex.capacity()/3+vertIdx;
-                        if (vt != null)	vt[faceIndex] = texCoords.size() + vt[faceIndex];
-                        if (vn != null) vn[faceIndex] = normals.capacity()/3 + vn[faceIndex];
+					    vertIdx = this.vertex.size()/3+vertIdx;
+                        if (hasVt) vt[faceIndex] = texCoords.size()/3 + vt[faceIndex];
+                        if (hasVn) vn[faceIndex] = normals.size()/3 + vn[faceIndex];
                     }
 					else if (WavefrontLoader.INDEXES_START_AT_1) {
 						vertIdx--;
-						if (vt != null)	vt[faceIndex] = vt[faceIndex] - 1;
-						if (vn != null) vn[faceIndex] = vn[faceIndex] - 1;
+						if (hasVt) vt[faceIndex] = vt[faceIndex] - 1;
+						if (hasVn) vn[faceIndex] = vn[faceIndex] - 1;
 					}
 					// store the indices for this face
-					facesVertIdxs.put(faceVertexLoadCounter++,vertIdx);
+					vertIdxs.put(vertIdx);
 				}
-				if (vt != null)  facesTexIdxs.add(vt);
-				if (vn != null) facesNormIdxs.add(vn);
+				endFace(hasVt, hasVn);
 
 				facesLoadCounter++;
 				verticesReferencesCount += 3;
@@ -1023,6 +1544,123 @@ public class WavefrontLoader {
 		}
 
 
+		/**
+		 * Same as {@link #addFace(String)} but parsing the bytes of the line, so no objects are created.
+		 */
+		boolean addFace(ByteLineReader line) {
+			try {
+				line.seek(2); // skip the "f "
+
+				int numTokens = 0; // number of v/vt/vn tokens
+				while (line.nextToken(tokenBounds, numTokens * 2)) {
+					numTokens++;
+					if (tokenBounds.length < numTokens * 2 + 2) {
+						tokenBounds = Arrays.copyOf(tokenBounds, tokenBounds.length * 2);
+					}
+				}
+
+				// the vt, vn indices are saved in the vt and vn arrays
+				boolean hasVt = false;
+				boolean hasVn = false;
+				resetFace();
+
+				for (int i = 0, faceIndex = 0; i < numTokens; i++, faceIndex++) {
+
+					// convert to triangles all polygons
+					if (faceIndex > 2){
+						// Converting polygon to triangle
+						faceIndex = 0;
+
+						facesLoadCounter++;
+						verticesReferencesCount += 3;
+						endFace(hasVt, hasVn);
+						hasVt = false;
+						hasVn = false;
+
+						i -= 2;
+					}
+
+					// convert to triangles all polygons
+					int token;
+					if (WavefrontLoader.triangleMode == GLES20.GL_TRIANGLE_FAN && faceIndex == 0) {
+						// In FAN mode all faces shares the initial vertex
+						token = 0;
+					} else {
+						// GL.GL_TRIANGLES | GL.GL_TRIANGLE_STRIP
+						token = i;
+					}
+					final int start = tokenBounds[token * 2];
+					final int end = tokenBounds[token * 2 + 1];
+
+					// find the '/' separators. numSeps is the number of fields, not counting the
+					// empty ones at the end (as String.split() does)
+					int sep1 = end, sep2 = end, sep3 = end;
+					int numSeps = 0;
+					for (int pos = start, field = 1, fieldStart = start; pos <= end; pos++) {
+						if (pos < end && line.charAtToken(pos) != '/') continue;
+						if (pos > fieldStart) numSeps = field;
+						if (pos < end) {
+							if (field == 1) sep1 = pos;
+							else if (field == 2) sep2 = pos;
+							else if (field == 3) sep3 = pos;
+						}
+						field++;
+						fieldStart = pos + 1;
+					}
+
+					int vertIdx = line.parseInt(start, sep1);
+					if (numSeps > 1){
+						hasVt = true;
+						vt[faceIndex] = parseIndex(line, sep1 + 1, sep2);
+					}
+					if (numSeps > 2){
+						hasVn = true;
+						vn[faceIndex] = parseIndex(line, sep2 + 1, sep3);
+					}
+					// add 0's if the vt or vn index values are missing;
+					// 0 is a good choice since real indices start at 1
+
+					// negative indices are relative to the elements read so far
+					if (vertIdx < 0){
+						vertIdx = this.vertex.size()/3+vertIdx;
+						if (hasVt) vt[faceIndex] = texCoords.size()/3 + vt[faceIndex];
+						if (hasVn) vn[faceIndex] = normals.size()/3 + vn[faceIndex];
+						if (relativeVertIdxs != null) {
+							relativeVertIdxs.put(vertIdxs.size());
+							if (hasVt) relativeTexIdxs.put(texIdxs.size() + faceIndex);
+							if (hasVn) relativeNormIdxs.put(normIdxs.size() + faceIndex);
+						}
+					}
+					else if (WavefrontLoader.INDEXES_START_AT_1) {
+						vertIdx--;
+						if (hasVt) vt[faceIndex] = vt[faceIndex] - 1;
+						if (hasVn) vn[faceIndex] = vn[faceIndex] - 1;
+					}
+					// store the indices for this face
+					vertIdxs.put(vertIdx);
+				}
+				endFace(hasVt, hasVn);
+
+				facesLoadCounter++;
+				verticesReferencesCount += 3;
+
+			} catch (NumberFormatException e) {
+				Log.e("WavefrontLoader",e.getMessage(),e);
+				return false;
+			}
+			return true;
+		}
+
+		private static int parseIndex(ByteLineReader line, int start, int end) {
+			// empty index (i.e. "v//vn")
+			if (start >= end) return 0;
+			try{
+				return line.parseInt(start, end);
+			}catch(NumberFormatException ex){
+				return 0;
+			}
+		}
+
 		public int getVerticesReferencesCount() {
 			// we have only triangles
 			return getSize()*3;
@@ -1033,36 +1671,101 @@ public class WavefrontLoader {
 	} // end of Faces class
 
 	public static class FaceMaterials {
-		// the face index (integer) where a material is first used
-		private HashMap<Integer, String> faceMats;
+		// ranges of faces using the same material, sorted by the face index where the material is first used
+		private int[] rangeStarts = new int[16];
+		private int[] rangeMaterials = new int[16];
+		private int size;
 
-		// for reporting
-		private HashMap<String, Integer> matCount;
+		// the material names used by faces, so ranges only keep their index
+		private final List<String> materialNames = new ArrayList<>();
+		private final HashMap<String, Integer> materialIds = new HashMap<>();
 
-		// how many times a material (string) is used
+		// how many times a material is used (for reporting)
+		private int[] matCount = new int[16];
 
 		private FaceMaterials() {
-			faceMats = new HashMap<>();
-			matCount = new HashMap<>();
 		} // end of FaceMaterials()
 
 		private void addUse(int faceIdx, String matName) {
 			// store the face index and the material it uses
 			Log.d("WavefrontLoader","Using " + matName + " on "+faceIdx);
-			if (faceMats.containsKey(faceIdx)) // face index already present
-				Log.d("WavefrontLoader","Face index " + faceIdx + " changed to use material " + matName);
-			faceMats.put(faceIdx, matName);
+			int materialId = getMaterialId(matName);
+			addRange(faceIdx, materialId);
 
 			// store how many times matName has been used by faces
-			if (matCount.containsKey(matName)) {
-				int i = (Integer) matCount.get(matName) + 1;
-				matCount.put(matName, i);
-			} else
-				matCount.put(matName, 1);
+			matCount[materialId]++;
 		} // end of addUse()
 
+		private void addRange(int faceIdx, int materialId) {
+			if (size > 0 && rangeStarts[size - 1] == faceIdx) {
+				// face index already present
+				Log.d("WavefrontLoader","Face index " + faceIdx + " changed to use material " + materialNames.get(materialId));
+				rangeMaterials[size - 1] = materialId;
+				return;
+			}
+			if (size == rangeStarts.length) {
+				rangeStarts = Arrays.copyOf(rangeStarts, size * 2);
+				rangeMaterials = Arrays.copyOf(rangeMaterials, size * 2);
+			}
+			rangeStarts[size] = faceIdx;
+			rangeMaterials[size] = materialId;
+			size++;
+		}
+
+		private int getMaterialId(String matName) {
+			Integer id = materialIds.get(matName);
+			if (id == null) {
+				id = materialNames.size();
+				materialIds.put(matName, id);
+				materialNames.add(matName);
+				if (id == matCount.length) {
+					matCount = Arrays.copyOf(matCount, id * 2);
+				}
+			}
+			return id;
+		}
+
+		/**
+		 * @return number of ranges of faces using the same material
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @param range the range
+		 * @return the first face of the range. The range ends where the next one starts
+		 */
+		public int getStart(int range) {
+			return rangeStarts[range];
+		}
+
+		/**
+		 * @param range the range
+		 * @return the material used by the faces of the range (see {@link #getMaterialName(int)})
+		 */
+		public int getMaterialId(int range) {
+			return rangeMaterials[range];
+		}
+
+		public String getMaterialName(int materialId) {
+			return materialNames.get(materialId);
+		}
+
+		/**
+		 * @return the number of different materials used
+		 */
+		public int getMaterialCount() {
+			return materialNames.size();
+		}
+
+		/**
+		 * @param faceIdx the face index
+		 * @return the material if it starts being used at this face, <code>null</code> otherwise
+		 */
 		public String findMaterial(int faceIdx) {
-			return (String) faceMats.get(faceIdx);
+			int range = Arrays.binarySearch(rangeStarts, 0, size, faceIdx);
+			return range >= 0 ? materialNames.get(rangeMaterials[range]) : null;
 		}
 
 		public void showUsedMaterials()
@@ -1070,26 +1773,35 @@ public class WavefrontLoader {
 		 * List all the materials used by faces, and the number of faces that have used them.
 		 */
 		{
-			System.out.println("No. of materials used: " + faceMats.size());
-
-			// build an iterator of material names
-			Set<String> keys = matCount.keySet();
-			Iterator<String> iter = keys.iterator();
+			System.out.println("No. of materials used: " + size);
 
-			// cycle through the hashmap showing the count for each material
-			String matName;
-			int count;
-			while (iter.hasNext()) {
-				matName = iter.next();
-				count = (Integer) matCount.get(matName);
-
-				System.out.print(matName + ": " + count);
+			// cycle through the materials showing the count for each one
+			for (int i = 0; i < materialNames.size(); i++) {
+				System.out.print(materialNames.get(i) + ": " + matCount[i]);
 				System.out.println();
 			}
 		} // end of showUsedMaterials()
 
+		/**
+		 * Add the materials used in another chunk
+		 *
+		 * @param other      the materials used in the chunk
+		 * @param faceOffset number of faces before the chunk
+		 */
+		private void addAll(FaceMaterials other, int faceOffset) {
+			// material ids of the chunk
+			int[] ids = new int[other.materialNames.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = getMaterialId(other.materialNames.get(i));
+				matCount[ids[i]] += other.matCount[i];
+			}
+			for (int i = 0; i < other.size; i++) {
+				addRange(faceOffset + other.rangeStarts[i], ids[other.rangeMaterials[i]]);
+			}
+		}
+
 		public boolean isEmpty() {
-			return faceMats.isEmpty() || this.matCount.isEmpty();
+			return size == 0;
 		}
 
 	} // end of FaceMaterials class
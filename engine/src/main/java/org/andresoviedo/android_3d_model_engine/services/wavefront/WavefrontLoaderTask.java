@@ -3,6 +3,7 @@ package org.andresoviedo.android_3d_model_engine.services.wavefront;
 import android.app.Activity;
 import android.net.Uri;
 import android.opengl.GLES20;
+import android.os.SystemClock;
 import android.util.Log;
 
 import org.andresoviedo.android_3d_model_engine.model.Object3DData;
@@ -12,6 +13,7 @@ import org.andresoviedo.util.android.ContentUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 
@@ -23,23 +25,92 @@ import java.util.List;
 
 public class WavefrontLoaderTask extends LoaderTask {
 
+    /**
+     * Whether to parse the model reading the file only once. If there is no memory for growing the buffers,
+     * we fall back to the 2-pass mode (count elements first, then allocate and load)
+     */
+    private boolean singlePass = true;
+
+    /**
+     * Whether to store every unique vertex only once and draw the model using indices, instead of
+     * storing 3 vertices for every triangle
+     */
+    private boolean indexed = true;
+
+    /**
+     * Whether to draw the faces while they are parsed, every {@link #STREAMING_CHUNK_FACES} faces. The file is then
+     * parsed in a single thread, so loading the whole model takes longer, but the user sees it much sooner.
+     * Off by default, so the file is parsed in parallel. Worth it for big files only
+     */
+    private boolean streaming = false;
+
+    private static final int STREAMING_CHUNK_FACES = 20000;
+
     public WavefrontLoaderTask(final Activity parent, final Uri uri, final Callback callback) {
         super(parent, uri, callback);
     }
 
+    public void setSinglePass(boolean singlePass) {
+        this.singlePass = singlePass;
+    }
+
+    public void setIndexed(boolean indexed) {
+        this.indexed = indexed;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
     @Override
     protected List<Object3DData> build() throws IOException {
-        InputStream params0 = ContentUtils.getInputStream(uri);
+        long startTime = SystemClock.uptimeMillis();
         WavefrontLoader wfl = new WavefrontLoader("");
 
-        // allocate memory
-        publishProgress(0);
-        wfl.analyzeModel(params0);
-        params0.close();
+        // parse model reading the file only once
+        if (singlePass) {
+            publishProgress(2);
+            try {
+                if (streaming) {
+                    wfl.setChunkListener((WavefrontLoader loader, int fromFace, int toFace) -> {
+                        Object3DData chunk = Object3DBuilder.buildTriangles(
+                                loader.copyFaceVertices(fromFace, toFace), null);
+                        chunk.setId(uri.getPath() + "#" + fromFace);
+                        publishChunk(chunk, loader.getDimensions());
+                    }, STREAMING_CHUNK_FACES);
+                }
+                // local files and uncompressed assets are mapped in memory and parsed in parallel
+                // (in a single thread when streaming, so the chunks are published in order)
+                ByteBuffer data = ContentUtils.getByteBuffer(uri);
+                if (data != null && streaming) {
+                    wfl.loadModelParallel(data, 1);
+                } else if (data != null) {
+                    wfl.loadModelParallel(data);
+                } else {
+                    try (InputStream stream = ContentUtils.getInputStream(uri)) {
+                        wfl.loadModelSinglePass(stream);
+                    }
+                }
+            } catch (OutOfMemoryError e) {
+                // growing buffers needs extra memory. try again allocating the exact size
+                Log.e("WavefrontLoaderTask", "Not enough memory for single-pass loading. Falling back to 2 passes", e);
+                wfl = new WavefrontLoader("");
+                singlePass = false;
+            }
+        }
+
+        if (!singlePass) {
+            InputStream params0 = ContentUtils.getInputStream(uri);
+
+            // allocate memory
+            publishProgress(0);
+            wfl.analyzeModel(params0);
+            params0.close();
 
-        // Allocate memory
-        publishProgress(1);
-        wfl.allocateBuffers();
+            // Allocate memory
+            publishProgress(1);
+            wfl.allocateBuffers();
+        }
         wfl.reportOnModel();
 
         // create the 3D object
@@ -51,19 +122,25 @@ public class WavefrontLoaderTask extends LoaderTask {
         data3D.setDrawMode(GLES20.GL_TRIANGLES);
         data3D.setDimensions(data3D.getLoader().getDimensions());
 
+        Log.i("WavefrontLoaderTask", "Model " + (singlePass ? "loaded" : "analyzed") + " in "
+                + (SystemClock.uptimeMillis() - startTime) + " ms");
         return Collections.singletonList(data3D);
     }
 
     @Override
     protected void build(List<Object3DData> datas) throws Exception {
-        InputStream stream = ContentUtils.getInputStream(uri);
         try {
             Object3DData data = datas.get(0);
 
-            // parse model
-            publishProgress(2);
-            data.getLoader().loadModel(stream);
-            stream.close();
+            // parse model (2nd pass)
+            if (!singlePass) {
+                long startTime = SystemClock.uptimeMillis();
+                publishProgress(2);
+                InputStream stream = ContentUtils.getInputStream(uri);
+                data.getLoader().loadModel(stream);
+                stream.close();
+                Log.i("WavefrontLoaderTask", "Model loaded in " + (SystemClock.uptimeMillis() - startTime) + " ms");
+            }
 
             // scale object
             publishProgress(3);
@@ -75,7 +152,7 @@ public class WavefrontLoaderTask extends LoaderTask {
 
             // build 3D object buffers
             publishProgress(4);
-            Object3DBuilder.generateArrays(data);
+            Object3DBuilder.generateArrays(data, indexed);
             publishProgress(5);
 
         } catch (Exception e) {
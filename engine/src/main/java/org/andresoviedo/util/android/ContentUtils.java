@@ -7,17 +7,24 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -117,6 +124,98 @@ public class ContentUtils {
         return getCurrentActivity().getContentResolver().openInputStream(uri);
     }
 
+    /**
+     * Map the content in memory, so parsers can read the bytes straight from the page cache without copying
+     * them through java heap buffers. This is only possible for local files and for assets that are stored
+     * uncompressed in the apk.
+     *
+     * @param uri the content
+     * @return the read-only mapped content, or <code>null</code> if it can't be mapped (use a stream then)
+     */
+    @Nullable
+    public static ByteBuffer getByteBuffer(Uri uri) {
+        try {
+            if ("file".equals(uri.getScheme())) {
+                try (FileInputStream stream = new FileInputStream(uri.getPath())) {
+                    return map(stream, 0, stream.getChannel().size());
+                }
+            }
+            // the descriptors are closed explicitly: they are Closeable only since API 16 (parcel) and 19 (asset)
+            if ("assets".equals(uri.getScheme())) {
+                // compressed assets throw FileNotFoundException
+                AssetFileDescriptor fd = getCurrentActivity().getAssets().openFd(uri.getPath().substring(1));
+                try (FileInputStream stream = fd.createInputStream()) {
+                    return map(stream, fd.getStartOffset(), fd.getLength());
+                } finally {
+                    fd.close();
+                }
+            }
+            if ("content".equals(uri.getScheme())) {
+                // only works if the provider gives us a regular file (not a pipe)
+                ParcelFileDescriptor fd = getCurrentActivity().getContentResolver().openFileDescriptor(uri, "r");
+                if (fd == null) {
+                    return null;
+                }
+                try (FileInputStream stream = new FileInputStream(fd.getFileDescriptor())) {
+                    return map(stream, 0, fd.getStatSize());
+                } finally {
+                    fd.close();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.i("ContentUtils", "Content can't be mapped. Using stream. " + uri + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Get the size of the content without reading it
+     *
+     * @param uri the content
+     * @return the size in bytes, or <code>-1</code> if it's unknown (i.e. compressed assets or remote content)
+     */
+    public static long getLength(Uri uri) {
+        try {
+            if ("file".equals(uri.getScheme())) {
+                File file = new File(uri.getPath());
+                return file.isFile() ? file.length() : -1;
+            }
+            if ("assets".equals(uri.getScheme())) {
+                // compressed assets throw FileNotFoundException
+                AssetFileDescriptor fd = getCurrentActivity().getAssets().openFd(uri.getPath().substring(1));
+                try {
+                    return fd.getLength();
+                } finally {
+                    fd.close();
+                }
+            }
+            if ("content".equals(uri.getScheme())) {
+                ParcelFileDescriptor fd = getCurrentActivity().getContentResolver().openFileDescriptor(uri, "r");
+                if (fd == null) {
+                    return -1;
+                }
+                try {
+                    return fd.getStatSize();
+                } finally {
+                    fd.close();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.i("ContentUtils", "Unknown content length. " + uri + ": " + e.getMessage());
+        }
+        return -1;
+    }
+
+    private static ByteBuffer map(FileInputStream stream, long offset, long length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Unknown or unsupported length: " + length);
+        }
+        // the mapping is still valid after closing the channel
+        ByteBuffer buffer = stream.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+        Log.i("ContentUtils", "Mapped " + length + " bytes");
+        return buffer;
+    }
+
 
     public static Intent createGetContentIntent(String mimeType) {
         // check here to KITKAT or new version
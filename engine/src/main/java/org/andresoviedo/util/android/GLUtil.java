@@ -3,9 +3,10 @@ package org.andresoviedo.util.android;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
 import android.util.Log;
 
+import org.andresoviedo.android_3d_model_engine.drawer.GLBackend;
+
 import java.io.InputStream;
 
 public final class GLUtil {
@@ -19,6 +20,8 @@ public final class GLUtil {
 	/**
 	 * Helper function to compile and link a program.
 	 * 
+	 * @param gl
+	 *            the backend running the calls
 	 * @param vertexShaderHandle
 	 *            An OpenGL handle to an already-compiled vertex shader.
 	 * @param fragmentShaderHandle
@@ -27,36 +30,35 @@ public final class GLUtil {
 	 *            Attributes that need to be bound to the program.
 	 * @return An OpenGL handle to the program.
 	 */
-	public static int createAndLinkProgram(final int vertexShaderHandle, final int fragmentShaderHandle,
-			final String[] attributes) {
-		int programHandle = GLES20.glCreateProgram();
+	public static int createAndLinkProgram(final GLBackend gl, final int vertexShaderHandle,
+			final int fragmentShaderHandle, final String[] attributes) {
+		int programHandle = gl.createProgram();
 
 		if (programHandle != 0) {
 			// Bind the vertex shader to the program.
-			GLES20.glAttachShader(programHandle, vertexShaderHandle);
+			gl.attachShader(programHandle, vertexShaderHandle);
 
 			// Bind the fragment shader to the program.
-			GLES20.glAttachShader(programHandle, fragmentShaderHandle);
+			gl.attachShader(programHandle, fragmentShaderHandle);
 
 			// Bind attributes
 			if (attributes != null) {
 				final int size = attributes.length;
 				for (int i = 0; i < size; i++) {
-					GLES20.glBindAttribLocation(programHandle, i, attributes[i]);
+					gl.bindAttribLocation(programHandle, i, attributes[i]);
 				}
 			}
 
 			// Link the two shaders together into a program.
-			GLES20.glLinkProgram(programHandle);
+			gl.linkProgram(programHandle);
 
 			// Get the link status.
-			final int[] linkStatus = new int[1];
-			GLES20.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS, linkStatus, 0);
+			final int linkStatus = gl.getProgrami(programHandle, GLES20.GL_LINK_STATUS);
 
 			// If the link failed, delete the program.
-			if (linkStatus[0] == 0) {
-				Log.e(TAG, "Error compiling program: " + GLES20.glGetProgramInfoLog(programHandle));
-				GLES20.glDeleteProgram(programHandle);
+			if (linkStatus == 0) {
+				Log.e(TAG, "Error compiling program: " + gl.getProgramInfoLog(programHandle));
+				gl.deleteProgram(programHandle);
 				programHandle = 0;
 			}
 		}
@@ -75,45 +77,44 @@ public final class GLUtil {
 	 * <strong>Note:</strong> When developing shaders, use the checkGlError() method to debug shader coding errors.
 	 * </p>
 	 * 
+	 * @param gl
+	 *            - The backend running the calls.
 	 * @param type
 	 *            - Vertex or fragment shader type.
 	 * @param shaderCode
 	 *            - String containing the shader code.
 	 * @return - Returns an id for the shader.
 	 */
-	public static int loadShader(int type, String shaderCode) {
+	public static int loadShader(GLBackend gl, int type, String shaderCode) {
 
 		// create a vertex shader type (GLES20.GL_VERTEX_SHADER)
 		// or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-		int shader = GLES20.glCreateShader(type);
+		int shader = gl.createShader(type);
 
 		// add the source code to the shader and compile it
-		GLES20.glShaderSource(shader, shaderCode);
-		GLES20.glCompileShader(shader);
-
-		int[] compiled = new int[1];
-		GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
-		Log.i("GLUtil", "Shader compilation info: " + GLES20.glGetShaderInfoLog(shader));
-		if (compiled[0] == 0) {
-			Log.e("GLUtil", "Shader error: " + GLES20.glGetShaderInfoLog(shader) + "\n" + shaderCode);
-			GLES20.glDeleteShader(shader);
+		gl.shaderSource(shader, shaderCode);
+		gl.compileShader(shader);
+
+		int compiled = gl.getShaderi(shader, GLES20.GL_COMPILE_STATUS);
+		Log.i("GLUtil", "Shader compilation info: " + gl.getShaderInfoLog(shader));
+		if (compiled == 0) {
+			Log.e("GLUtil", "Shader error: " + gl.getShaderInfoLog(shader) + "\n" + shaderCode);
+			gl.deleteShader(shader);
 		}
 
 		return shader;
 	}
 
-	public static int loadTexture(final InputStream is) {
+	public static int loadTexture(final GLBackend gl, final InputStream is) {
 		Log.v("GLUtil", "Loading texture from stream...");
 
-		final int[] textureHandle = new int[1];
-
-		GLES20.glGenTextures(1, textureHandle, 0);
-		GLUtil.checkGlError("glGenTextures");
-		if (textureHandle[0] == 0) {
+		final int textureHandle = gl.genTexture();
+		GLUtil.checkGlError(gl, "glGenTextures");
+		if (textureHandle == 0) {
 			throw new RuntimeException("Error loading texture.");
 		}
 
-		Log.v("GLUtil", "Handler: " + textureHandle[0]);
+		Log.v("GLUtil", "Handler: " + textureHandle);
 
 		final BitmapFactory.Options options = new BitmapFactory.Options();
 		// By default, Android applies pre-scaling to bitmaps depending on the resolution of your device and which
@@ -128,35 +129,37 @@ public final class GLUtil {
 		}
 
 		// Bind to the texture in OpenGL
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
-		GLUtil.checkGlError("glBindTexture");
-		GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-		GLUtil.checkGlError("texImage2D");
+		gl.bindTexture(GLES20.GL_TEXTURE_2D, textureHandle);
+		GLUtil.checkGlError(gl, "glBindTexture");
+		gl.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap);
+		GLUtil.checkGlError(gl, "texImage2D");
 		bitmap.recycle();
-		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+		gl.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+		gl.texParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
 
 		Log.v("GLUtil", "Loaded texture ok");
-		return textureHandle[0];
+		return textureHandle;
 	}
 
 	/**
 	 * Utility method for debugging OpenGL calls. Provide the name of the call just after making it:
 	 * 
 	 * <pre>
-	 * mColorHandle = GLES20.glGetUniformLocation(mProgram, &quot;vColor&quot;);
-	 * MyGLRenderer.checkGlError(&quot;glGetUniformLocation&quot;);
+	 * mColorHandle = gl.getUniformLocation(mProgram, &quot;vColor&quot;);
+	 * GLUtil.checkGlError(gl, &quot;glGetUniformLocation&quot;);
 	 * </pre>
 	 * 
 	 * If the operation is not successful, the check throws an error.
 	 * 
+	 * @param gl
+	 *            - The backend running the calls.
 	 * @param glOperation
 	 *            - Name of the OpenGL call to check.
 	 */
-	public static boolean checkGlError(String glOperation) {
+	public static boolean checkGlError(GLBackend gl, String glOperation) {
 		int glError;
 		boolean error = false;
-		while ((glError = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
+		while ((glError = gl.getError()) != GLES20.GL_NO_ERROR) {
 			Log.e(TAG, glOperation + ": glError " + glError);
 			error = true;
 			// throw new RuntimeException(glOperation + ": glError " + error);
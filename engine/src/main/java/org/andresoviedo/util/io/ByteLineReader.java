@@ -0,0 +1,403 @@
+package org.andresoviedo.util.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reads ASCII text files line by line over a reusable byte window, and parses the tokens of the current line
+ * without creating any objects (no Strings, no arrays). This is intended for big text models (i.e. wavefront obj)
+ * where {@link java.io.BufferedReader#readLine()}, {@link String#split(String)} and {@link Float#parseFloat(String)}
+ * create millions of short-lived objects.
+ * <p>
+ * Lines end with '\n' or '\r' and leading and trailing whitespace is removed, like {@link String#trim()} does.
+ * Tokens are separated by spaces or tabs.
+ *
+ * @author andresoviedo
+ */
+public final class ByteLineReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int DEFAULT_WINDOW_SIZE = 64 * 1024;
+
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13,
+            1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // 10^15 < 2^53, so up to 15 digits are represented exactly in a double
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private final InputStream is;
+    private final ByteBuffer source;
+
+    private byte[] buf;
+    // number of valid bytes in the window
+    private int limit;
+    // position where the next line starts
+    private int next;
+    private boolean eof;
+
+    // current line
+    private int lineStart;
+    private int lineEnd;
+    // cursor within the current line
+    private int pos;
+
+    public ByteLineReader(InputStream is) {
+        this(is, null, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param source the bytes from position to limit are read. The buffer position is moved as it is read.
+     */
+    public ByteLineReader(ByteBuffer source) {
+        this(null, source, DEFAULT_WINDOW_SIZE);
+    }
+
+    private ByteLineReader(InputStream is, ByteBuffer source, int windowSize) {
+        this.is = is;
+        this.source = source;
+        this.buf = new byte[windowSize];
+    }
+
+    /**
+     * Move to the next line. Empty lines are not skipped.
+     *
+     * @return <code>false</code> if there are no more lines
+     */
+    public boolean nextLine() throws IOException {
+        int i = next;
+        while (true) {
+            while (i < limit && buf[i] != '\n' && buf[i] != '\r') i++;
+            if (i < limit || eof) break;
+            // line not complete: compact window and read more
+            i -= next;
+            fill();
+        }
+        if (next >= limit && eof) {
+            return false;
+        }
+
+        int start = next, end = i;
+        next = i < limit ? i + 1 : i;
+
+        // trim
+        while (start < end && (buf[start] & 0xff) <= ' ') start++;
+        while (end > start && (buf[end - 1] & 0xff) <= ' ') end--;
+        lineStart = start;
+        lineEnd = end;
+        pos = start;
+        return true;
+    }
+
+    private void fill() throws IOException {
+        // move the current line at the beginning of the window
+        int remaining = limit - next;
+        if (next > 0) {
+            System.arraycopy(buf, next, buf, 0, remaining);
+        } else if (remaining == buf.length) {
+            // line longer than the window
+            byte[] newBuf = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, newBuf, 0, remaining);
+            buf = newBuf;
+        }
+        next = 0;
+        limit = remaining;
+
+        int read;
+        if (source != null) {
+            read = Math.min(source.remaining(), buf.length - limit);
+            source.get(buf, limit, read);
+            if (read == 0) read = -1;
+        } else {
+            read = is.read(buf, limit, buf.length - limit);
+        }
+        if (read == -1) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * @return the length of the current (trimmed) line
+     */
+    public int length() {
+        return lineEnd - lineStart;
+    }
+
+    /**
+     * @param index position relative to the start of the line
+     * @return the ascii char at the specified position
+     */
+    public char charAt(int index) {
+        return (char) (buf[lineStart + index] & 0xff);
+    }
+
+    /**
+     * @param prefix ascii text
+     * @return <code>true</code> if the current line starts with the specified text
+     */
+    public boolean startsWith(String prefix) {
+        int length = prefix.length();
+        if (length > lineEnd - lineStart) return false;
+        for (int i = 0; i < length; i++) {
+            if (buf[lineStart + i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Move the cursor to the specified position of the current line
+     *
+     * @param index position relative to the start of the line
+     */
+    public void seek(int index) {
+        pos = Math.min(lineStart + index, lineEnd);
+    }
+
+    /**
+     * Skip the spaces and tabs at the cursor
+     *
+     * @return <code>true</code> if there are more tokens in the line
+     */
+    public boolean hasMoreTokens() {
+        while (pos < lineEnd && isSeparator(buf[pos])) pos++;
+        return pos < lineEnd;
+    }
+
+    /**
+     * Skip the current token
+     */
+    public void skipToken() {
+        hasMoreTokens();
+        while (pos < lineEnd && !isSeparator(buf[pos])) pos++;
+    }
+
+    /**
+     * @return number of tokens from the cursor to the end of the line. The cursor is not moved.
+     */
+    public int countTokens() {
+        int count = 0;
+        boolean inToken = false;
+        for (int i = pos; i < lineEnd; i++) {
+            boolean separator = isSeparator(buf[i]);
+            if (!separator && !inToken) count++;
+            inToken = !separator;
+        }
+        return count;
+    }
+
+    /**
+     * Parse the next token as a float. The result is the same as {@link Float#parseFloat(String)}.
+     *
+     * @return the float value
+     * @throws NumberFormatException if there are no more tokens or the token is not a number
+     */
+    public float nextFloat() {
+        hasMoreTokens();
+        int start = pos;
+        while (pos < lineEnd && !isSeparator(buf[pos])) pos++;
+        return parseFloat(buf, start, pos);
+    }
+
+    /**
+     * Parse the next token as an int. The result is the same as {@link Integer#parseInt(String)}.
+     *
+     * @return the int value
+     * @throws NumberFormatException if there are no more tokens or the token is not a number
+     */
+    public int nextInt() {
+        hasMoreTokens();
+        int start = pos;
+        while (pos < lineEnd && !isSeparator(buf[pos])) pos++;
+        return parseInt(buf, start, pos);
+    }
+
+    /**
+     * Get the position of the next token, so it can be parsed later with {@link #parseInt(int, int)}.
+     * The cursor is moved to the end of the token.
+     *
+     * @param bounds array where the token start and end positions are saved
+     * @param offset position in the array
+     * @return <code>false</code> if there are no more tokens
+     */
+    public boolean nextToken(int[] bounds, int offset) {
+        if (!hasMoreTokens()) return false;
+        bounds[offset] = pos;
+        while (pos < lineEnd && !isSeparator(buf[pos])) pos++;
+        bounds[offset + 1] = pos;
+        return true;
+    }
+
+    /**
+     * @return the ascii char at the specified (absolute) position, as returned by {@link #nextToken(int[], int)}
+     */
+    public char charAtToken(int position) {
+        return (char) (buf[position] & 0xff);
+    }
+
+    /**
+     * Parse the specified token (absolute positions), as returned by {@link #nextToken(int[], int)}
+     */
+    public int parseInt(int start, int end) {
+        return parseInt(buf, start, end);
+    }
+
+    /**
+     * @param index position relative to the start of the line
+     * @return the text from the specified position to the end of the line
+     */
+    public String substring(int index) {
+        return new String(buf, lineStart + index, lineEnd - lineStart - index, UTF_8);
+    }
+
+    /**
+     * @return the current (trimmed) line
+     */
+    public String line() {
+        return substring(0);
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Parse a decimal integer
+     *
+     * @throws NumberFormatException if the text is empty, is not a number or it overflows
+     */
+    public static int parseInt(byte[] data, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            throw newNumberFormatException(data, start, end);
+        }
+        // accumulate negatively so we can parse Integer.MIN_VALUE
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw newNumberFormatException(data, start, end);
+            }
+            result = result * 10 - digit;
+            if (result < Integer.MIN_VALUE) {
+                throw newNumberFormatException(data, start, end);
+            }
+        }
+        if (!negative && result == Integer.MIN_VALUE) {
+            throw newNumberFormatException(data, start, end);
+        }
+        return (int) (negative ? result : -result);
+    }
+
+    /**
+     * Parse a decimal float like "-1.5", "0.000001" or "1.0e-5". If the number can't be computed exactly in the fast
+     * path (too many digits, big exponents, nan, infinity, etc.) then {@link Float#parseFloat(String)} is used,
+     * so the result is always the same (correctly rounded) value.
+     *
+     * @throws NumberFormatException if the text is not a number
+     */
+    public static float parseFloat(byte[] data, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        boolean exact = true;
+
+        // integer part
+        for (; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) break;
+            anyDigit = true;
+            if (mantissa == 0 && digit == 0) continue;
+            if (digits < MAX_EXACT_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                digits++;
+            } else {
+                exact = false;
+                break;
+            }
+        }
+        // fraction part
+        if (exact && i < end && data[i] == '.') {
+            for (i++; i < end; i++) {
+                int digit = data[i] - '0';
+                if (digit < 0 || digit > 9) break;
+                anyDigit = true;
+                exponent--;
+                if (mantissa == 0 && digit == 0) continue;
+                if (digits < MAX_EXACT_DIGITS) {
+                    mantissa = mantissa * 10 + digit;
+                    digits++;
+                } else {
+                    exact = false;
+                    break;
+                }
+            }
+        }
+        // exponent part
+        if (exact && anyDigit && i < end && (data[i] == 'e' || data[i] == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < end && (data[i] == '-' || data[i] == '+')) {
+                negativeExp = data[i] == '-';
+                i++;
+            }
+            int exp = 0;
+            boolean anyExpDigit = false;
+            for (; i < end; i++) {
+                int digit = data[i] - '0';
+                if (digit < 0 || digit > 9) break;
+                anyExpDigit = true;
+                if (exp < 1000) exp = exp * 10 + digit;
+            }
+            exact = anyExpDigit;
+            exponent += negativeExp ? -exp : exp;
+        }
+
+        if (exact && anyDigit && i == end) {
+            if (mantissa == 0) {
+                return negative ? -0.0f : 0.0f;
+            }
+            if (exponent >= -22 && exponent <= 22) {
+                // both operands are exact, so the result is the correctly rounded double
+                double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+                float result = (float) value;
+                // rounding twice (decimal -> double -> float) is only wrong if the double is
+                // exactly in the middle of 2 floats. Those cases (and subnormals) go the slow path
+                if (result != 0 && !Float.isInfinite(result) && Math.abs(result) >= Float.MIN_NORMAL
+                        && !isHalfway(value, result)) {
+                    return negative ? -result : result;
+                }
+            }
+        }
+
+        // slow path
+        return Float.parseFloat(new String(data, start, end - start, UTF_8));
+    }
+
+    private static boolean isHalfway(double value, float rounded) {
+        double diff = value - rounded;
+        if (diff == 0) return false;
+        double other = Math.nextAfter(rounded, value);
+        return other - value == diff;
+    }
+
+    private static NumberFormatException newNumberFormatException(byte[] data, int start, int end) {
+        return new NumberFormatException("For input string: \"" + new String(data, start, end - start, UTF_8) + "\"");
+    }
+}
@@ -40,6 +40,22 @@ public class Quaternion {
 		this.w = w;
 	}
 
+	public float getX() {
+		return x;
+	}
+
+	public float getY() {
+		return y;
+	}
+
+	public float getZ() {
+		return z;
+	}
+
+	public float getW() {
+		return w;
+	}
+
 	/**
 	 * Normalizes the quaternion.
 	 */
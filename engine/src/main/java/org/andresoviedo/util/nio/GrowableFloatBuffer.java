@@ -0,0 +1,116 @@
+package org.andresoviedo.util.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Direct (native order) float buffer that grows while we append to it, so data can be parsed in a single pass
+ * without knowing its size in advance. Call {@link #trim()} when done to get a buffer whose capacity is the
+ * number of elements written, as the rest of the engine uses the capacity as the element count.
+ *
+ * @author andresoviedo
+ */
+public final class GrowableFloatBuffer {
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / 4 - 8;
+
+    private FloatBuffer buffer;
+    private int size;
+
+    public GrowableFloatBuffer(int initialCapacity) {
+        this.buffer = createNativeByteBuffer(initialCapacity * 4).asFloatBuffer();
+    }
+
+    public GrowableFloatBuffer put(float value) {
+        ensureCapacity(size + 1);
+        buffer.put(size++, value);
+        return this;
+    }
+
+    public GrowableFloatBuffer put(float x, float y, float z) {
+        ensureCapacity(size + 3);
+        buffer.put(size, x).put(size + 1, y).put(size + 2, z);
+        size += 3;
+        return this;
+    }
+
+    /**
+     * Append all the data written into the other buffer
+     */
+    public GrowableFloatBuffer put(GrowableFloatBuffer src) {
+        ensureCapacity(size + src.size);
+        FloatBuffer data = src.buffer.duplicate();
+        data.clear();
+        data.limit(src.size);
+        FloatBuffer dst = buffer.duplicate();
+        dst.position(size);
+        dst.put(data);
+        size += src.size;
+        return this;
+    }
+
+    public void set(int index, float value) {
+        if (index >= size) throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        buffer.put(index, value);
+    }
+
+    public float get(int index) {
+        return buffer.get(index);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the current backing buffer. It may be replaced if the buffer needs to grow
+     */
+    public FloatBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Release the unused capacity. If the waste is small we just return a view over the written data,
+     * otherwise the data is copied to a buffer of the exact size.
+     *
+     * @return a direct buffer with capacity equal to {@link #size()}
+     */
+    public FloatBuffer trim() {
+        if (buffer.capacity() != size) {
+            buffer.clear();
+            buffer.limit(size);
+            if (buffer.capacity() - size <= buffer.capacity() / 8) {
+                buffer = buffer.slice();
+            } else {
+                FloatBuffer trimmed = createNativeByteBuffer(size * 4).asFloatBuffer();
+                trimmed.put(buffer);
+                buffer = trimmed;
+            }
+        }
+        buffer.position(0);
+        return buffer;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= buffer.capacity()) return;
+        if (minCapacity > MAX_CAPACITY) {
+            throw new OutOfMemoryError("Buffer too big: " + minCapacity);
+        }
+        // grow by 1.5x to keep the peak memory (old + new buffer) low on huge models
+        int newCapacity = (int) Math.min(MAX_CAPACITY, Math.max(minCapacity, buffer.capacity() + (buffer.capacity() >> 1)));
+        FloatBuffer newBuffer = createNativeByteBuffer(newCapacity * 4).asFloatBuffer();
+        buffer.clear();
+        buffer.limit(size);
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+    private static ByteBuffer createNativeByteBuffer(int length) {
+        // initialize vertex byte buffer for shape coordinates
+        ByteBuffer bb = ByteBuffer.allocateDirect(length);
+        // use the device hardware's native byte order
+        bb.order(ByteOrder.nativeOrder());
+        return bb;
+    }
+}
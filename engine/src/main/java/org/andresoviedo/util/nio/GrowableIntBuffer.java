@@ -0,0 +1,116 @@
+package org.andresoviedo.util.nio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Direct (native order) int buffer that grows while we append to it, so data can be parsed in a single pass
+ * without knowing its size in advance. Call {@link #trim()} when done to get a buffer whose capacity is the
+ * number of elements written, as the rest of the engine uses the capacity as the element count.
+ *
+ * @author andresoviedo
+ */
+public final class GrowableIntBuffer {
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / 4 - 8;
+
+    private IntBuffer buffer;
+    private int size;
+
+    public GrowableIntBuffer(int initialCapacity) {
+        this.buffer = createNativeByteBuffer(initialCapacity * 4).asIntBuffer();
+    }
+
+    public GrowableIntBuffer put(int value) {
+        ensureCapacity(size + 1);
+        buffer.put(size++, value);
+        return this;
+    }
+
+    public GrowableIntBuffer put(int x, int y, int z) {
+        ensureCapacity(size + 3);
+        buffer.put(size, x).put(size + 1, y).put(size + 2, z);
+        size += 3;
+        return this;
+    }
+
+    /**
+     * Append all the data written into the other buffer
+     */
+    public GrowableIntBuffer put(GrowableIntBuffer src) {
+        ensureCapacity(size + src.size);
+        IntBuffer data = src.buffer.duplicate();
+        data.clear();
+        data.limit(src.size);
+        IntBuffer dst = buffer.duplicate();
+        dst.position(size);
+        dst.put(data);
+        size += src.size;
+        return this;
+    }
+
+    public void set(int index, int value) {
+        if (index >= size) throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        buffer.put(index, value);
+    }
+
+    public int get(int index) {
+        return buffer.get(index);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the current backing buffer. It may be replaced if the buffer needs to grow
+     */
+    public IntBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Release the unused capacity. If the waste is small we just return a view over the written data,
+     * otherwise the data is copied to a buffer of the exact size.
+     *
+     * @return a direct buffer with capacity equal to {@link #size()}
+     */
+    public IntBuffer trim() {
+        if (buffer.capacity() != size) {
+            buffer.clear();
+            buffer.limit(size);
+            if (buffer.capacity() - size <= buffer.capacity() / 8) {
+                buffer = buffer.slice();
+            } else {
+                IntBuffer trimmed = createNativeByteBuffer(size * 4).asIntBuffer();
+                trimmed.put(buffer);
+                buffer = trimmed;
+            }
+        }
+        buffer.position(0);
+        return buffer;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= buffer.capacity()) return;
+        if (minCapacity > MAX_CAPACITY) {
+            throw new OutOfMemoryError("Buffer too big: " + minCapacity);
+        }
+        // grow by 1.5x to keep the peak memory (old + new buffer) low on huge models
+        int newCapacity = (int) Math.min(MAX_CAPACITY, Math.max(minCapacity, buffer.capacity() + (buffer.capacity() >> 1)));
+        IntBuffer newBuffer = createNativeByteBuffer(newCapacity * 4).asIntBuffer();
+        buffer.clear();
+        buffer.limit(size);
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+    private static ByteBuffer createNativeByteBuffer(int length) {
+        // initialize vertex byte buffer for shape coordinates
+        ByteBuffer bb = ByteBuffer.allocateDirect(length);
+        // use the device hardware's native byte order
+        bb.order(ByteOrder.nativeOrder());
+        return bb;
+    }
+}
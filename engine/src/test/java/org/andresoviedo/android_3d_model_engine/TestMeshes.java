@@ -0,0 +1,105 @@
+package org.andresoviedo.android_3d_model_engine;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Buffers and models shared by the unit tests
+ */
+public final class TestMeshes {
+
+    public static final String MODEL = "../app/src/main/assets/models/Rigged Hand.obj";
+
+    private TestMeshes() {
+    }
+
+    public static FloatBuffer floats(float... values) {
+        FloatBuffer ret = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        ret.put(values).position(0);
+        return ret;
+    }
+
+    public static IntBuffer ints(int... values) {
+        IntBuffer ret = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        ret.put(values).position(0);
+        return ret;
+    }
+
+    /**
+     * @return the test model, centered and scaled, before its arrays are generated
+     */
+    public static Object3DData load() throws IOException {
+        WavefrontLoader wfl = new WavefrontLoader("");
+        wfl.loadModelSinglePass(new FileInputStream(MODEL));
+        Object3DData data = new Object3DData(wfl.getVerts(), wfl.getNormals(), wfl.getTexCoords(), wfl.getFaces(),
+                wfl.getFaceMats(), wfl.getMaterials());
+        data.setDimensions(wfl.getDimensions());
+        data.centerScale();
+        data.setDrawMode(GLES20.GL_TRIANGLES);
+        return data;
+    }
+
+    /**
+     * @return a square made of 2 indexed triangles, facing +z
+     */
+    public static Object3DData quad() {
+        return new Object3DData(floats(0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0))
+                .setVertexNormalsArrayBuffer(floats(0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1))
+                .setDrawOrder(ints(0, 1, 2, 0, 2, 3))
+                .setDrawMode(GLES20.GL_TRIANGLES)
+                .setDrawUsingArrays(false)
+                .setId("quad");
+    }
+
+    /**
+     * @return a flat grid of size x size vertices on the z=0 plane, 1 unit apart. The normals point to +z, and their
+     * length is the index of the vertex, so the vertices can be tracked when they are reordered
+     */
+    public static Object3DData grid(int size) {
+        float[] vertices = new float[size * size * 3];
+        float[] normals = new float[size * size * 3];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int v = (y * size + x) * 3;
+                vertices[v] = x;
+                vertices[v + 1] = y;
+                normals[v + 2] = y * size + x;
+            }
+        }
+        return new Object3DData(floats(vertices))
+                .setVertexNormalsArrayBuffer(floats(normals))
+                .setDrawOrder(ints(gridIndices(size)))
+                .setDrawMode(GLES20.GL_TRIANGLES)
+                .setDrawUsingArrays(false)
+                .setId("grid");
+    }
+
+    /**
+     * @return the 2 triangles of every cell of a grid of size x size vertices, row by row
+     */
+    public static int[] gridIndices(int size) {
+        int[] ret = new int[(size - 1) * (size - 1) * 6];
+        int i = 0;
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                int v = y * size + x;
+                ret[i++] = v;
+                ret[i++] = v + 1;
+                ret[i++] = v + size;
+                ret[i++] = v + 1;
+                ret[i++] = v + size + 1;
+                ret[i++] = v + size;
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,120 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.TestMeshes;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.VertexInterleaver;
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BufferObjectManagerTest {
+
+    @Test
+    public void testUploadOnce() {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        BufferObjectManager manager = new BufferObjectManager(gl);
+        Object3DData obj = quad();
+        int vertexBytes = obj.getVertexLayout().getBuffer().capacity();
+
+        for (int frame = 0; frame < 10; frame++) {
+            manager.prepare(obj);
+        }
+        assertEquals(2, gl.getCount("genBuffer"));
+        assertEquals(2, gl.getCount("bufferData"));
+        assertEquals(Collections.singletonList("bufferData(" + GLES20.GL_ELEMENT_ARRAY_BUFFER + ", 12, "
+                + GLES20.GL_STATIC_DRAW + ")"), filter(gl.getCalls(), "bufferData(" + GLES20.GL_ELEMENT_ARRAY_BUFFER));
+        assertEquals(vertexBytes + 12, manager.getResidentBytes());
+        assertTrue(manager.getName(obj.getVertexLayout().getBuffer()) != 0);
+        assertTrue(manager.getName(obj.getDrawOrderAsShort()) != 0);
+
+        // models without a vertex layout are drawn from the client side buffers
+        Object3DData other = quad();
+        other.setVertexLayout(null);
+        manager.prepare(other);
+        assertEquals(2, manager.getBufferCount());
+    }
+
+    @Test
+    public void testChanged() {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        BufferObjectManager manager = new BufferObjectManager(gl);
+        Object3DData obj = quad();
+        manager.prepare(obj);
+        Buffer oldVertices = obj.getVertexLayout().getBuffer();
+
+        // the vertices are interleaved again, the indices are uploaded again to the same buffer
+        obj.getVertexArrayBuffer().put(0, 5f);
+        obj.setChanged(true);
+        manager.prepare(obj);
+        manager.prepare(obj);
+        assertEquals(4, manager.getUploadCount());
+        assertEquals(3, gl.getCount("genBuffer"));
+        assertEquals(1, gl.getCount("deleteBuffer"));
+        assertEquals(0, manager.getName(oldVertices));
+        assertEquals(2, manager.getBufferCount());
+        assertEquals(obj.getVertexLayout().getBuffer().capacity() + 12, manager.getResidentBytes());
+    }
+
+    @Test
+    public void testSharedAndReleased() {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        BufferObjectManager manager = new BufferObjectManager(gl);
+        Object3DData obj = quad();
+        // a level of detail with the same vertices
+        Object3DData level = quad();
+        level.setVertexLayout(obj.getVertexLayout());
+        level.setParent(obj);
+        obj.setLevelsOfDetail(Collections.singletonList(level));
+        manager.prepare(obj);
+        manager.prepare(level);
+        assertEquals(3, manager.getBufferCount());
+
+        // nothing is deleted until the GL thread says so
+        manager.release(obj);
+        assertEquals(0, gl.getCount("deleteBuffer"));
+        manager.deleteReleased();
+        assertEquals(3, gl.getCount("deleteBuffer"));
+        assertEquals(0, manager.getBufferCount());
+        assertEquals(0, manager.getResidentBytes());
+    }
+
+    @Test
+    public void testContextLost() {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        BufferObjectManager manager = new BufferObjectManager(gl);
+        Object3DData obj = quad();
+        manager.prepare(obj);
+        manager.reset();
+        assertEquals(0, manager.getResidentBytes());
+        assertEquals(0, gl.getCount("deleteBuffer"));
+
+        // uploaded again into the new context
+        manager.prepare(obj);
+        assertEquals(4, gl.getCount("bufferData"));
+        assertEquals(2, manager.getBufferCount());
+    }
+
+    private static List<String> filter(List<String> calls, String prefix) {
+        List<String> ret = new ArrayList<>();
+        for (String call : calls) {
+            if (call.startsWith(prefix)) {
+                ret.add(call);
+            }
+        }
+        return ret;
+    }
+
+    private static Object3DData quad() {
+        Object3DData ret = TestMeshes.quad();
+        VertexInterleaver.interleave(ret, true);
+        return ret;
+    }
+}
@@ -0,0 +1,46 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.VertexInterleaver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.quad;
+import static org.andresoviedo.android_3d_model_engine.drawer.DrawerImplTest.CAMERA;
+import static org.andresoviedo.android_3d_model_engine.drawer.DrawerImplTest.LIGHT;
+import static org.andresoviedo.android_3d_model_engine.drawer.DrawerImplTest.MATRIX;
+
+/**
+ * Time spent by {@link DrawerImpl} to submit the draws, without the GL driver. It's not run with the unit tests: run
+ * the main method to print it
+ */
+public final class DrawerBenchmark {
+
+    public static void main(String[] args) {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        gl.setCapturing(false);
+        GLStateCache cache = new GLStateCache(gl);
+        cache.reset();
+        DrawerImpl drawer = DrawerImplTest.newDrawer(cache);
+        List<Object3DData> objs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Object3DData obj = quad();
+            VertexInterleaver.interleave(obj, true);
+            objs.add(obj);
+        }
+
+        final int frames = 1000;
+        long startTime = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            gl.reset();
+            cache.resetSavedCount();
+            for (int i = 0; i < objs.size(); i++) {
+                drawer.draw(objs.get(i), MATRIX, MATRIX, -1, LIGHT, CAMERA);
+            }
+        }
+        long time = System.nanoTime() - startTime;
+        System.out.println("Submission time per frame: " + time / frames / 1000 + " us. Calls per frame: "
+                + gl.getTotalCount() + ". Saved: " + cache.getSavedCount() + ". Draw calls: " + gl.getDrawCount());
+    }
+}
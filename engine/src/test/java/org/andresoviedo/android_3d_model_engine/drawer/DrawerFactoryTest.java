@@ -0,0 +1,61 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3D;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.VertexInterleaver;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.quad;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DrawerFactoryTest {
+
+    private static final String VERTEX_SHADER = "uniform mat4 u_MVPMatrix;\n" +
+            "attribute vec4 a_Position;\n" +
+            "void main(){\n" +
+            "  gl_Position = u_MVPMatrix * a_Position;\n" +
+            "}";
+    private static final String FRAGMENT_SHADER = "precision mediump float;\n" +
+            "uniform vec4 vColor;\n" +
+            "void main(){\n" +
+            "  gl_FragColor = vColor;\n" +
+            "}";
+
+    @Test
+    public void testSharedDrawers() {
+        DrawerFactory factory = newFactory();
+        // points, bounding boxes and normals are drawn without a model
+        Object3D drawer = factory.getDrawer(null, true, true, true, true);
+        assertNotNull(drawer);
+        assertSame(drawer, factory.getPointDrawer());
+        assertSame(drawer, factory.getBoundingBoxDrawer());
+        assertSame(drawer, factory.getFaceNormalsDrawer());
+    }
+
+    @Test
+    public void testReleasedAttributes() {
+        DrawerFactory factory = newFactory();
+        Object3DData obj = quad();
+        VertexInterleaver.interleave(obj, true);
+        VertexInterleaver.releaseAttributes(obj);
+        // the normals are only in the interleaved vertices
+        assertTrue(obj.getVertexNormalsArrayBuffer() == null);
+        assertSame(factory.getDrawer(obj, false, true, false, false),
+                factory.getDrawer(obj, false, true, false, false));
+        assertTrue(factory.getDrawer(obj, false, true, false, false) != factory.getPointDrawer());
+    }
+
+    private static DrawerFactory newFactory() {
+        Map<String, String> shaders = new HashMap<>();
+        for (String shader : new String[]{"shader_", "shader_light_"}) {
+            shaders.put(shader + "vert", VERTEX_SHADER);
+            shaders.put(shader + "frag", FRAGMENT_SHADER);
+        }
+        return new DrawerFactory(new RecordingGLBackend(), shaders);
+    }
+}
@@ -0,0 +1,122 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+import org.andresoviedo.android_3d_model_engine.services.VertexInterleaver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.quad;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DrawerImplTest {
+
+    private static final String VERTEX_SHADER = "uniform mat4 u_MVPMatrix;\n" +
+            "uniform mat4 u_MVMatrix;\n" +
+            "uniform vec3 u_LightPos;\n" +
+            "attribute vec4 a_Position;\n" +
+            "attribute vec3 a_Normal;\n" +
+            "void main(){\n" +
+            "  gl_Position = u_MVPMatrix * a_Position;\n" +
+            "}";
+    private static final String FRAGMENT_SHADER = "precision mediump float;\n" +
+            "uniform vec4 vColor;\n" +
+            "void main(){\n" +
+            "  gl_FragColor = vColor;\n" +
+            "}";
+
+    static final float[] MATRIX = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+    static final float[] LIGHT = {0, 0, 0, 1};
+    static final float[] CAMERA = {0, 0, 0};
+
+    @Test
+    public void testBufferObjects() {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        DrawerImpl drawer = newDrawer(gl);
+        Object3DData obj = quad();
+        VertexInterleaver.interleave(obj, true);
+
+        gl.reset();
+        drawer.draw(obj, MATRIX, MATRIX, -1, LIGHT, CAMERA);
+        drawer.draw(obj, MATRIX, MATRIX, -1, LIGHT, CAMERA);
+        // uploaded once, drawn from the buffer objects
+        assertEquals(2, gl.getCount("bufferData"));
+        assertEquals(2, gl.getDrawCount());
+        assertTrue(gl.getCalls().contains("drawElements(" + GLES20.GL_TRIANGLES + ", 6, "
+                + GLES20.GL_UNSIGNED_SHORT + ", 0)"));
+        assertFalse(gl.getCalls().contains("drawElements(" + GLES20.GL_TRIANGLES + ", 6, "
+                + GLES20.GL_UNSIGNED_SHORT + ")"));
+        // bound before drawing and unbound after
+        List<String> calls = gl.getCalls();
+        assertTrue(calls.lastIndexOf("bindBuffer(" + GLES20.GL_ELEMENT_ARRAY_BUFFER + ", 0)")
+                > calls.lastIndexOf("drawElements(" + GLES20.GL_TRIANGLES + ", 6, " + GLES20.GL_UNSIGNED_SHORT + ", 0)"));
+    }
+
+    @Test
+    public void testStateCache() {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        GLStateCache cache = new GLStateCache(gl);
+        cache.reset();
+        DrawerImpl drawer = newDrawer(cache);
+        Object3DData obj1 = quad();
+        Object3DData obj2 = quad();
+
+        gl.reset();
+        for (int frame = 0; frame < 2; frame++) {
+            drawer.draw(obj1, MATRIX, MATRIX, -1, LIGHT, CAMERA);
+            drawer.draw(obj2, MATRIX, MATRIX, -1, LIGHT, CAMERA);
+        }
+        // the locations are resolved when the program is linked
+        assertEquals(0, gl.getCount("getUniformLocation"));
+        assertEquals(0, gl.getCount("getAttribLocation"));
+        // the program is used and the attributes enabled once
+        assertEquals(1, gl.getCount("useProgram"));
+        assertEquals(2, gl.getCount("enableVertexAttribArray"));
+        assertEquals(0, gl.getCount("disableVertexAttribArray"));
+        assertEquals(4, gl.getDrawCount());
+        assertTrue(cache.getSavedCount() > 0);
+    }
+
+    @Test
+    public void testClientSideBuffers() {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        DrawerImpl drawer = newDrawer(gl);
+        Object3DData obj = quad();
+
+        gl.reset();
+        drawer.draw(obj, MATRIX, MATRIX, -1, LIGHT, CAMERA);
+        assertEquals(0, gl.getCount("bindBuffer"));
+        assertEquals(1, gl.getDrawCount());
+        assertTrue(gl.getCalls().contains("drawElements(" + GLES20.GL_TRIANGLES + ", 6, "
+                + GLES20.GL_UNSIGNED_SHORT + ")"));
+    }
+
+    @Test
+    public void testSubmeshes() {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        DrawerImpl drawer = newDrawer(gl);
+        Object3DData obj = quad();
+        List<Submesh> submeshes = new ArrayList<>();
+        submeshes.add(new Submesh(0, 3, new float[]{1, 0, 0, 1}));
+        submeshes.add(new Submesh(3, 3, new float[]{0, 1, 0, 1}));
+        obj.setSubmeshes(submeshes);
+        VertexInterleaver.interleave(obj, true);
+
+        gl.reset();
+        drawer.draw(obj, MATRIX, MATRIX, -1, LIGHT, CAMERA);
+        assertEquals(2, gl.getDrawCount());
+        assertTrue(gl.getCalls().contains("drawElements(" + GLES20.GL_TRIANGLES + ", 3, "
+                + GLES20.GL_UNSIGNED_SHORT + ", 6)"));
+    }
+
+    static DrawerImpl newDrawer(GLBackend gl) {
+        return DrawerImpl.getInstance("shader_light_", VERTEX_SHADER, FRAGMENT_SHADER, gl,
+                new BufferObjectManager(gl));
+    }
+}
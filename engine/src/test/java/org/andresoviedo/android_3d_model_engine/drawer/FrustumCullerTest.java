@@ -0,0 +1,163 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.BoundingBox;
+import org.andresoviedo.android_3d_model_engine.model.Frustum;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.floats;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.ints;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FrustumCullerTest {
+
+    private static final String VERTEX_SHADER = "uniform mat4 u_MVPMatrix;\n" +
+            "attribute vec4 a_Position;\n" +
+            "void main(){\n" +
+            "  gl_Position = u_MVPMatrix * a_Position;\n" +
+            "}";
+    private static final String FRAGMENT_SHADER = "precision mediump float;\n" +
+            "uniform vec4 vColor;\n" +
+            "void main(){\n" +
+            "  gl_FragColor = vColor;\n" +
+            "}";
+
+    /**
+     * Perspective projection (column-major) with near 1, far 100 and 90 degrees of view, looking to -z
+     */
+    private static final float[] PROJECTION = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -101f / 99, -1, 0, 0, -200f / 99, 0};
+    private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+    private static final float[] CAMERA = {0, 0, 0};
+
+    @Test
+    public void testFrustum() {
+        Frustum frustum = new Frustum().set(PROJECTION);
+        assertTrue(frustum.intersects(-1, -1, -11, 1, 1, -9));
+        // behind the camera, too far, out of the right side
+        assertFalse(frustum.intersects(-1, -1, 9, 1, 1, 11));
+        assertFalse(frustum.intersects(-1, -1, -111, 1, 1, -109));
+        assertFalse(frustum.intersects(49, -1, -11, 51, 1, -9));
+        // crossing the right side
+        assertTrue(frustum.intersects(9, -1, -11, 11, 1, -9));
+
+        assertTrue(frustum.intersects(0, 0, -10, 1));
+        assertFalse(frustum.intersects(0, 0, 10, 1));
+        // crossing the near plane
+        assertTrue(frustum.intersects(0, 0, -0.5f, 1));
+
+        // the model is moved in front of the camera
+        float[] modelMatrix = IDENTITY.clone();
+        modelMatrix[14] = -10;
+        assertTrue(new Frustum().set(frustum, modelMatrix).intersects(-1, -1, -1, 1, 1, 1));
+        modelMatrix[14] = 10;
+        assertFalse(new Frustum().set(frustum, modelMatrix).intersects(-1, -1, -1, 1, 1, 1));
+    }
+
+    @Test
+    public void testObjects() {
+        FrustumCuller culler = new FrustumCuller();
+        culler.setViewProjection(PROJECTION);
+        assertTrue(culler.isVisible(triangles(0, -10)));
+        assertFalse(culler.isVisible(triangles(0, 10)));
+        assertEquals(1, culler.getCulledObjects());
+        assertEquals(2, culler.getCulledPrimitives());
+
+        // the bones move the vertices out of the bounds
+        AnimatedModel animated = new AnimatedModel(triangles(0, 10).getVertexArrayBuffer());
+        assertTrue(culler.isVisible(animated));
+
+        culler.setEnabled(false);
+        assertTrue(culler.isVisible(triangles(0, 10)));
+
+        culler.resetCounters();
+        assertEquals(0, culler.getCulledPrimitives());
+    }
+
+    @Test
+    public void testRotated() {
+        FrustumCuller culler = new FrustumCuller();
+        culler.setViewProjection(PROJECTION);
+
+        // behind the camera, but turned around the y axis so it's in front
+        Object3DData obj = triangles(0, 10);
+        float[] modelMatrix = obj.getModelMatrix();
+        modelMatrix[0] = -1;
+        modelMatrix[10] = -1;
+        assertTrue(culler.isVisible(obj));
+        assertEquals(0, culler.getCulledObjects());
+
+        // all the corners are turned, so the box is not inverted
+        BoundingBox box = obj.getBoundingBox();
+        assertEquals(-1, box.getxMin(), 0);
+        assertEquals(0, box.getxMax(), 0);
+        assertEquals(-10, box.getzMin(), 0);
+        assertEquals(-10, box.getzMax(), 0);
+        assertSame(box, obj.getBoundingBox());
+
+        // moved back behind the camera
+        modelMatrix[14] = 20;
+        assertFalse(culler.isVisible(obj));
+        assertEquals(10, obj.getBoundingBox().getzMin(), 0);
+
+        // the geometry changed
+        obj.setVertexArrayBuffer(triangles(0, 5).getVertexArrayBuffer());
+        assertEquals(15, obj.getBoundingBox().getzMin(), 0);
+    }
+
+    @Test
+    public void testParts() {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        FrustumCuller culler = new FrustumCuller();
+        culler.setViewProjection(PROJECTION);
+        DrawerImpl drawer = DrawerImpl.getInstance("shader_", VERTEX_SHADER, FRAGMENT_SHADER, gl,
+                new BufferObjectManager(gl), culler);
+
+        // the second triangle is out of the right side
+        Object3DData obj = triangles(100, -10);
+        List<Submesh> submeshes = new ArrayList<>();
+        submeshes.add(new Submesh(0, 3, new float[]{1, 0, 0, 1}));
+        submeshes.add(new Submesh(3, 3, new float[]{0, 1, 0, 1}));
+        obj.setSubmeshes(submeshes);
+
+        gl.reset();
+        drawer.draw(obj, PROJECTION, IDENTITY, -1, null, CAMERA);
+        assertEquals(1, gl.getDrawCount());
+        assertTrue(gl.getCalls().contains("drawElements(" + GLES20.GL_TRIANGLES + ", 3, "
+                + GLES20.GL_UNSIGNED_SHORT + ")"));
+        assertEquals(1, culler.getCulledParts());
+        assertEquals(1, culler.getCulledPrimitives());
+        assertEquals(1, culler.getDrawnPrimitives());
+
+        // the whole model is behind the camera, so nothing is sent
+        Object3DData behind = triangles(0, 10);
+        gl.reset();
+        drawer.draw(behind, PROJECTION, IDENTITY, -1, null, CAMERA);
+        assertEquals(0, gl.getTotalCount());
+        assertEquals(2, culler.getCulledParts());
+        assertEquals(3, culler.getCulledPrimitives());
+    }
+
+    /**
+     * Two triangles, the first one at the center and the second one moved along x
+     */
+    private static Object3DData triangles(float x, float z) {
+        Object3DData ret = new Object3DData(floats(0, 0, z, 1, 0, z, 0, 1, z, x, 0, z, x + 1, 0, z, x, 1, z))
+                .setDrawOrder(ints(0, 1, 2, 3, 4, 5))
+                .setDrawMode(GLES20.GL_TRIANGLES)
+                .setDrawUsingArrays(false)
+                .setId("triangles");
+        // android.opengl.Matrix does nothing in the unit tests
+        System.arraycopy(IDENTITY, 0, ret.getModelMatrix(), 0, 16);
+        return ret;
+    }
+}
@@ -0,0 +1,160 @@
+package org.andresoviedo.android_3d_model_engine.drawer;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3D;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.floats;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RenderQueueTest {
+
+    private static final String VERTEX_SHADER = "uniform mat4 u_MVPMatrix;\n" +
+            "attribute vec4 a_Position;\n" +
+            "void main(){\n" +
+            "  gl_Position = u_MVPMatrix * a_Position;\n" +
+            "}";
+    private static final String FRAGMENT_SHADER = "precision mediump float;\n" +
+            "uniform vec4 vColor;\n" +
+            "void main(){\n" +
+            "  gl_FragColor = vColor;\n" +
+            "}";
+
+    private static final float[] MATRIX = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+    private static final float[] CAMERA = {0, 0, 0};
+
+    @Test
+    public void testSort() {
+        Random random = new Random(1);
+        RenderQueue queue = new RenderQueue();
+        for (int size : new int[]{1, 2, 100, 5000}) {
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                // the draw index is in the lowest bits
+                keys[i] = (random.nextLong() & ~0xFFFFL) | i;
+            }
+            long[] expected = keys.clone();
+            // unsigned order
+            for (int i = 0; i < size; i++) {
+                expected[i] ^= Long.MIN_VALUE;
+            }
+            Arrays.sort(expected);
+            for (int i = 0; i < size; i++) {
+                expected[i] ^= Long.MIN_VALUE;
+            }
+            queue.sort(keys, size);
+            assertTrue(Arrays.equals(expected, keys));
+        }
+    }
+
+    @Test
+    public void testOpaque() {
+        RecordingGLBackend gl = new RecordingGLBackend();
+        GLStateCache cache = new GLStateCache(gl);
+        cache.reset();
+        DrawerImpl drawer1 = newDrawer(cache);
+        DrawerImpl drawer2 = newDrawer(cache);
+        RenderQueue queue = new RenderQueue();
+
+        // added in the worst order: every draw changes the program or the texture
+        queue.begin(100, false);
+        for (int i = 0; i < 8; i++) {
+            Object3DData obj = point(-i);
+            queue.add(i % 2 == 0 ? drawer1 : drawer2, obj, GLES20.GL_POINTS, 1, 10 + (i / 2) % 2, null, null,
+                    RenderQueue.getDepth(obj, MATRIX));
+        }
+        gl.reset();
+        queue.submit(MATRIX, MATRIX, CAMERA);
+        assertEquals(8, gl.getDrawCount());
+        assertEquals(2, queue.getProgramSwitches());
+        assertEquals(4, queue.getTextureSwitches());
+        assertEquals(2, gl.getCount("useProgram"));
+    }
+
+    @Test
+    public void testDepth() {
+        OrderDrawer drawer = new OrderDrawer();
+        Object3DData far = point(-50);
+        Object3DData middle = point(-20);
+        Object3DData near = point(-5);
+        RenderQueue queue = new RenderQueue();
+
+        // opaque: front to back
+        queue.begin(100, false);
+        queue.add(drawer, middle, GLES20.GL_POINTS, 1, -1, null, null, RenderQueue.getDepth(middle, MATRIX));
+        queue.add(drawer, far, GLES20.GL_POINTS, 1, -1, null, null, RenderQueue.getDepth(far, MATRIX));
+        queue.add(drawer, near, GLES20.GL_POINTS, 1, -1, null, null, RenderQueue.getDepth(near, MATRIX));
+        queue.submit(MATRIX, MATRIX, CAMERA);
+        assertEquals(Arrays.asList(near, middle, far), drawer.drawn);
+
+        // blended: back to front
+        drawer.drawn.clear();
+        queue.begin(100, true);
+        queue.add(drawer, middle, GLES20.GL_POINTS, 1, -1, null, null, RenderQueue.getDepth(middle, MATRIX));
+        queue.add(drawer, far, GLES20.GL_POINTS, 1, -1, null, null, RenderQueue.getDepth(far, MATRIX));
+        queue.add(drawer, near, GLES20.GL_POINTS, 1, -1, null, null, RenderQueue.getDepth(near, MATRIX));
+        queue.submit(MATRIX, MATRIX, CAMERA);
+        assertEquals(Arrays.asList(far, middle, near), drawer.drawn);
+    }
+
+    @Test
+    public void testBlended() {
+        GLBackend gl = new NoOpGLBackend();
+        DrawerImpl drawer1 = newDrawer(gl);
+        DrawerImpl drawer2 = newDrawer(gl);
+        Object3DData far = point(-50);
+        Object3DData near = point(-5);
+        RenderQueue queue = new RenderQueue();
+
+        // back to front, even if the program changes more times
+        queue.begin(100, true);
+        queue.add(drawer1, far, GLES20.GL_POINTS, 1, -1, null, null, RenderQueue.getDepth(far, MATRIX));
+        queue.add(drawer2, near, GLES20.GL_POINTS, 1, -1, null, null, RenderQueue.getDepth(near, MATRIX));
+        queue.add(drawer1, near, GLES20.GL_POINTS, 1, -1, null, null, RenderQueue.getDepth(near, MATRIX));
+        queue.submit(MATRIX, MATRIX, CAMERA);
+        assertEquals(2, queue.getProgramSwitches());
+        assertEquals(3, queue.size());
+    }
+
+    /**
+     * Records the objects in the order they are drawn
+     */
+    private static class OrderDrawer implements Object3D {
+
+        private final List<Object3DData> drawn = new ArrayList<>();
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int textureId,
+                         float[] lightPosInWorldSpace, float[] cameraPos) {
+            drawn.add(obj);
+        }
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int textureId,
+                         float[] lightPosInWorldSpace, float[] colorMask, float[] cameraPos) {
+            drawn.add(obj);
+        }
+
+        @Override
+        public void draw(Object3DData obj, float[] pMatrix, float[] vMatrix, int drawType, int drawSize,
+                         int textureId, float[] lightPosInWorldSpace, float[] colorMask, float[] cameraPos) {
+            drawn.add(obj);
+        }
+    }
+
+    private static DrawerImpl newDrawer(GLBackend gl) {
+        return DrawerImpl.getInstance("shader_", VERTEX_SHADER, FRAGMENT_SHADER, gl, new BufferObjectManager(gl));
+    }
+
+    private static Object3DData point(float z) {
+        return new Object3DData(floats(0, 0, z)).setDrawMode(GLES20.GL_POINTS).setId("point");
+    }
+}
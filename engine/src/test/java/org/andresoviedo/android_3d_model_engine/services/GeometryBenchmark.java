@@ -0,0 +1,103 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.cache.MeshCache;
+import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
+import org.andresoviedo.util.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.MODEL;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.gridIndices;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.load;
+
+/**
+ * Times of the geometry built when the models are loaded. It's not run with the unit tests: run the main method to
+ * print them
+ */
+public final class GeometryBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        arraysTime();
+        vertexCacheTime();
+        meshCacheTime();
+    }
+
+    private static void arraysTime() throws IOException {
+        // 1M+ faces
+        ByteArrayOutputStream bigModel = new ByteArrayOutputStream();
+        byte[] data = IOUtils.read(new File(MODEL));
+        for (int i = 0; i < 500; i++) {
+            bigModel.write(data);
+            bigModel.write('\n');
+        }
+        WavefrontLoader wfl = new WavefrontLoader("");
+        wfl.loadModelParallel(ByteBuffer.wrap(bigModel.toByteArray()));
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            Object3DData obj = new Object3DData(wfl.getVerts(), wfl.getNormals(), wfl.getTexCoords(),
+                    wfl.getFaces(), wfl.getFaceMats(), wfl.getMaterials());
+            obj.setDrawMode(GLES20.GL_TRIANGLES);
+            long time = System.nanoTime();
+            Object3DBuilder.generateArrays(obj, false, threads);
+            System.out.println("Arrays of " + wfl.getFaces().getSize() + " faces (" + threads + " threads): "
+                    + (System.nanoTime() - time) / 1000000 + " ms");
+            time = System.nanoTime();
+            Object3DBuilder.buildFaceNormals(obj, threads);
+            System.out.println("Face normals (" + threads + " threads): " + (System.nanoTime() - time) / 1000000
+                    + " ms");
+        }
+    }
+
+    private static void vertexCacheTime() {
+        // 256x256 grid with the triangles shuffled
+        int size = 256;
+        int[] indices = gridIndices(size);
+        Random random = new Random(0);
+        for (int t = indices.length / 3 - 1; t > 0; t--) {
+            int other = random.nextInt(t + 1);
+            for (int k = 0; k < 3; k++) {
+                int index = indices[t * 3 + k];
+                indices[t * 3 + k] = indices[other * 3 + k];
+                indices[other * 3 + k] = index;
+            }
+        }
+        int vertexCount = size * size;
+        MeshOptimizer.Statistics before = MeshOptimizer.analyze(indices, 0, indices.length, vertexCount, 16);
+        long time = System.nanoTime();
+        MeshOptimizer.optimizeVertexCache(indices, 0, indices.length, vertexCount);
+        System.out.println("Vertex cache optimization of " + indices.length / 3 + " triangles: "
+                + (System.nanoTime() - time) / 1000000 + " ms");
+        MeshOptimizer.Statistics after = MeshOptimizer.analyze(indices, 0, indices.length, vertexCount, 16);
+        System.out.println("Grid. Before: " + before + ". After: " + after);
+    }
+
+    private static void meshCacheTime() throws IOException {
+        Object3DData obj = Object3DBuilder.generateArrays(load(), true);
+        File dir = File.createTempFile("meshcache", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Couldn't create " + dir);
+        }
+        MeshCache cache = new MeshCache(dir);
+        long time = System.nanoTime();
+        cache.save("key", Collections.singletonList(obj));
+        long saveTime = System.nanoTime() - time;
+        time = System.nanoTime();
+        List<Object3DData> datas = cache.load("key");
+        long loadTime = System.nanoTime() - time;
+        System.out.println("Cache save: " + saveTime / 1000 + " us, load: " + loadTime / 1000 + " us ("
+                + datas.size() + " model)");
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+}
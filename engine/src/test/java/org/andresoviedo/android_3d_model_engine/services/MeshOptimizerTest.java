@@ -0,0 +1,106 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.load;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MeshOptimizerTest {
+
+    @Test
+    public void testGrid() {
+        // 256x256 grid with the triangles shuffled
+        int size = 256;
+        List<int[]> triangles = new ArrayList<>();
+        for (int y = 0; y < size - 1; y++) {
+            for (int x = 0; x < size - 1; x++) {
+                int v = y * size + x;
+                triangles.add(new int[]{v, v + 1, v + size});
+                triangles.add(new int[]{v + 1, v + size + 1, v + size});
+            }
+        }
+        Collections.shuffle(triangles, new Random(0));
+        int[] indices = new int[triangles.size() * 3];
+        for (int i = 0; i < triangles.size(); i++) {
+            System.arraycopy(triangles.get(i), 0, indices, i * 3, 3);
+        }
+        int vertexCount = size * size;
+
+        MeshOptimizer.Statistics before = MeshOptimizer.analyze(indices, 0, indices.length, vertexCount, 16);
+        MeshOptimizer.optimizeVertexCache(indices, 0, indices.length, vertexCount);
+        MeshOptimizer.Statistics after = MeshOptimizer.analyze(indices, 0, indices.length, vertexCount, 16);
+        assertTrue(before.acmr > 2.5f);
+        assertTrue(after.acmr < 0.8f);
+        assertTrue(after.atvr < 1.6f);
+    }
+
+    @Test
+    public void testModel() throws IOException {
+        Object3DData data = Object3DBuilder.generateArrays(load(), true);
+        List<String> expected = triangles(data);
+        int version = data.getVersion();
+
+        MeshOptimizer.optimize(data);
+        assertTrue(data.getVersion() > version);
+
+        // the same triangles, in other order
+        List<String> actual = triangles(data);
+        assertTrue(!expected.equals(actual));
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+
+        // vertices are in the order they are first used
+        IntBuffer drawOrder = data.getDrawOrder();
+        int next = 0;
+        for (int i = 0; i < drawOrder.capacity(); i++) {
+            assertTrue(drawOrder.get(i) <= next);
+            if (drawOrder.get(i) == next) next++;
+        }
+    }
+
+    @Test
+    public void testArrays() {
+        // models drawn using arrays (i.e. STL) are welded first
+        float[] vertices = {0, 0, 0, 1, 0, 0, 0, 1, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0};
+        FloatBuffer buffer = FloatBuffer.wrap(vertices);
+        Object3DData data = new Object3DData(buffer).setDrawUsingArrays(true).setDrawMode(GLES20.GL_TRIANGLES);
+        MeshOptimizer.optimize(data);
+        assertTrue(!data.isDrawUsingArrays());
+        assertEquals(4 * 3, data.getVertexArrayBuffer().capacity());
+        assertEquals(6, data.getDrawOrder().capacity());
+    }
+
+    /**
+     * @return the triangles as strings of the positions and normals of their vertices
+     */
+    private static List<String> triangles(Object3DData data) {
+        IntBuffer drawOrder = data.getDrawOrder();
+        FloatBuffer positions = data.getVertexArrayBuffer();
+        FloatBuffer normals = data.getVertexNormalsArrayBuffer();
+        List<String> ret = new ArrayList<>();
+        for (int i = 0; i < drawOrder.capacity(); i += 3) {
+            StringBuilder triangle = new StringBuilder();
+            for (int k = 0; k < 3; k++) {
+                int v = drawOrder.get(i + k);
+                triangle.append(positions.get(v * 3)).append(',').append(positions.get(v * 3 + 1)).append(',')
+                        .append(positions.get(v * 3 + 2)).append('/').append(normals.get(v * 3)).append(',')
+                        .append(normals.get(v * 3 + 1)).append(',').append(normals.get(v * 3 + 2)).append(' ');
+            }
+            ret.add(triangle.toString());
+        }
+        return ret;
+    }
+}
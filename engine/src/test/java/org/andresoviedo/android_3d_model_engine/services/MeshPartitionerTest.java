@@ -0,0 +1,147 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.grid;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.ints;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MeshPartitionerTest {
+
+    @Test
+    public void testSmallModel() {
+        Object3DData obj = grid(100);
+        MeshPartitioner.partition(obj);
+        assertNull(obj.getPartitions());
+        ShortBuffer indices = obj.getDrawOrderAsShort();
+        assertNotNull(indices);
+        assertEquals(obj.getDrawOrder().capacity(), indices.capacity());
+        for (int i = 0; i < indices.capacity(); i++) {
+            assertEquals(obj.getDrawOrder().get(i), indices.get(i) & 0xFFFF);
+        }
+    }
+
+    @Test
+    public void testBigModel() {
+        // 300x300 vertices, with 2 submeshes
+        Object3DData obj = grid(300);
+        int count = obj.getDrawOrder().capacity();
+        List<Submesh> submeshes = new ArrayList<>();
+        submeshes.add(new Submesh(0, count / 6 * 3, new float[]{1, 0, 0, 1}));
+        submeshes.add(new Submesh(count / 6 * 3, count - count / 6 * 3, new float[]{0, 1, 0, 1}));
+        obj.setSubmeshes(submeshes);
+        assertNull(obj.getDrawOrderAsShort());
+        float[] originalPositions = new float[obj.getVertexArrayBuffer().capacity()];
+        obj.getVertexArrayBuffer().get(originalPositions).position(0);
+        int[] originalOrder = new int[count];
+        obj.getDrawOrder().get(originalOrder).position(0);
+
+        MeshPartitioner.partition(obj);
+        List<Object3DData> partitions = obj.getPartitions();
+        assertNotNull(partitions);
+        assertEquals(2, partitions.size());
+
+        // the same triangles, in the same order
+        FloatBuffer positions = obj.getVertexArrayBuffer();
+        int i = 0;
+        List<float[]> colors = new ArrayList<>();
+        for (Object3DData partition : partitions) {
+            assertSame(obj, partition.getParent());
+            assertSame(obj.getModelMatrix(), partition.getModelMatrix());
+            assertTrue(partition.getVertexArrayBuffer().capacity() / 3 <= MeshPartitioner.MAX_VERTICES);
+            ShortBuffer indices = partition.getDrawOrderAsShort();
+            assertNotNull(indices);
+            for (int k = 0; k < indices.capacity(); k++, i++) {
+                int v = indices.get(k) & 0xFFFF;
+                int original = obj.getDrawOrder().get(i);
+                for (int c = 0; c < 3; c++) {
+                    assertEquals(positions.get(original * 3 + c), partition.getVertexArrayBuffer().get(v * 3 + c), 0);
+                    assertEquals(originalPositions[originalOrder[i] * 3 + c],
+                            partition.getVertexArrayBuffer().get(v * 3 + c), 0);
+                }
+                assertEquals(obj.getVertexNormalsArrayBuffer().get(original * 3 + 2),
+                        partition.getVertexNormalsArrayBuffer().get(v * 3 + 2), 0);
+            }
+            int start = 0;
+            for (Submesh submesh : partition.getSubmeshes()) {
+                assertEquals(start, submesh.getStart());
+                start += submesh.getCount();
+                colors.add(submesh.getColor());
+            }
+            assertEquals(indices.capacity(), start);
+        }
+        assertEquals(count, i);
+        // the submesh split by the partitions is drawn in 2 parts
+        assertEquals(3, colors.size());
+        assertSame(submeshes.get(0).getColor(), colors.get(0));
+        assertSame(submeshes.get(1).getColor(), colors.get(2));
+
+        // the partitions are views of the vertices of the model
+        int first = partitions.get(0).getVertexArrayBuffer().capacity();
+        assertEquals(positions.capacity(), first + partitions.get(1).getVertexArrayBuffer().capacity());
+        partitions.get(1).getVertexArrayBuffer().put(0, -1);
+        assertEquals(-1, positions.get(first), 0);
+    }
+
+    @Test
+    public void testPartitionLike() {
+        Object3DData obj = grid(300);
+        MeshPartitioner.partition(obj);
+        VertexInterleaver.interleave(obj, true);
+        VertexInterleaver.releaseAttributes(obj);
+        assertNull(obj.getVertexNormalsArrayBuffer());
+
+        // a level of detail with every other triangle of the model
+        IntBuffer drawOrder = obj.getDrawOrder();
+        IntBuffer levelOrder = ints(new int[drawOrder.capacity() / 6 * 3]);
+        for (int t = 0; t < drawOrder.capacity() / 6; t++) {
+            for (int k = 0; k < 3; k++) {
+                levelOrder.put(t * 3 + k, drawOrder.get(t * 6 + k));
+            }
+        }
+        Object3DData level = new Object3DData(obj.getVertexArrayBuffer())
+                .setDrawOrder(levelOrder)
+                .setDrawMode(GLES20.GL_TRIANGLES)
+                .setDrawUsingArrays(false)
+                .setId("grid#lod1");
+        assertTrue(MeshPartitioner.partitionLike(level, obj));
+
+        // the same triangles, drawn with the vertices of the partitions of the model
+        List<Object3DData> partitions = level.getPartitions();
+        assertEquals(2, partitions.size());
+        int i = 0;
+        for (int p = 0; p < partitions.size(); p++) {
+            Object3DData partition = partitions.get(p);
+            Object3DData modelPartition = obj.getPartitions().get(p);
+            assertSame(modelPartition.getVertexLayout(), partition.getVertexLayout());
+            ShortBuffer indices = partition.getDrawOrderAsShort();
+            for (int k = 0; k < indices.capacity(); k++, i++) {
+                int v = indices.get(k) & 0xFFFF;
+                for (int c = 0; c < 3; c++) {
+                    assertEquals(obj.getVertexArrayBuffer().get(levelOrder.get(i) * 3 + c),
+                            partition.getVertexArrayBuffer().get(v * 3 + c), 0);
+                }
+            }
+        }
+        assertEquals(levelOrder.capacity(), i);
+
+        // a triangle with vertices of 2 partitions
+        levelOrder.put(0, obj.getVertexArrayBuffer().capacity() / 3 - 1);
+        assertFalse(MeshPartitioner.partitionLike(level.setDrawOrder(levelOrder), obj));
+    }
+}
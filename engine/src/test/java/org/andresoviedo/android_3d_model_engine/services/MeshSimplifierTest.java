@@ -0,0 +1,123 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.floats;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.gridIndices;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.ints;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MeshSimplifierTest {
+
+    @Test
+    public void testSimplify() {
+        // 101x101 grid on a sphere, with 2 submeshes (top and bottom half)
+        int size = 101;
+        float[] vertices = sphere(size);
+        int[] indices = gridIndices(size);
+        int triangles = indices.length / 3;
+        int[] tags = new int[triangles];
+        Arrays.fill(tags, triangles / 2, triangles, 1);
+
+        int remaining = MeshSimplifier.simplify(indices, tags, triangles, vertices, triangles / 4);
+        assertTrue(remaining <= triangles / 4);
+        assertTrue(remaining > triangles / 10);
+
+        // valid and not degenerated triangles, in submesh order
+        Set<Integer> used = new HashSet<>();
+        for (int t = 0; t < remaining; t++) {
+            int a = indices[t * 3], b = indices[t * 3 + 1], c = indices[t * 3 + 2];
+            assertTrue(a != b && b != c && c != a);
+            assertTrue(a < size * size && b < size * size && c < size * size);
+            assertTrue(t == 0 || tags[t] >= tags[t - 1]);
+            used.add(a);
+            used.add(b);
+            used.add(c);
+        }
+        // the corners are kept
+        assertTrue(used.contains(0));
+        assertTrue(used.contains(size - 1));
+        assertTrue(used.contains(size * (size - 1)));
+        assertTrue(used.contains(size * size - 1));
+    }
+
+    @Test
+    public void testLevelsOfDetail() {
+        int size = 101;
+        Object3DData obj = new Object3DData(floats(sphere(size)))
+                .setDrawOrder(ints(gridIndices(size)))
+                .setDrawMode(GLES20.GL_TRIANGLES)
+                .setDrawUsingArrays(false)
+                .setId("grid");
+        int triangles = obj.getDrawOrder().capacity() / 3;
+        List<Submesh> submeshes = new ArrayList<>();
+        submeshes.add(new Submesh(0, triangles / 2 * 3, null));
+        submeshes.add(new Submesh(triangles / 2 * 3, triangles * 3 - triangles / 2 * 3, null));
+        obj.setSubmeshes(submeshes);
+
+        List<Object3DData> levels = MeshSimplifier.buildLevelsOfDetail(obj);
+        assertTrue(levels.size() >= 3);
+        int previous = triangles;
+        for (Object3DData level : levels) {
+            int count = level.getDrawOrder().capacity() / 3;
+            assertTrue(count < previous);
+            assertSame(obj.getVertexArrayBuffer(), level.getVertexArrayBuffer());
+            assertEquals(2, level.getSubmeshes().size());
+            previous = count;
+        }
+        obj.setLevelsOfDetail(levels);
+
+        // 90 degrees of field of view
+        float[] projectionMatrix = new float[16];
+        projectionMatrix[0] = 1;
+        projectionMatrix[5] = 1;
+        // close objects are drawn at full resolution, far away objects with the least detailed level
+        assertSame(obj, obj.getLevelOfDetail(view(2), projectionMatrix));
+        assertSame(levels.get(levels.size() - 1), obj.getLevelOfDetail(view(500), projectionMatrix));
+        Object3DData middle = obj.getLevelOfDetail(view(12), projectionMatrix);
+        assertTrue(middle != obj && middle != levels.get(levels.size() - 1));
+
+        // small models aren't simplified
+        assertTrue(MeshSimplifier.buildLevelsOfDetail(new Object3DData(floats(sphere(10)))
+                .setDrawOrder(ints(gridIndices(10))).setDrawMode(GLES20.GL_TRIANGLES)).isEmpty());
+    }
+
+    /**
+     * @return the view matrix of a camera looking at the origin from the distance
+     */
+    private static float[] view(float distance) {
+        float[] ret = new float[16];
+        ret[0] = ret[5] = ret[10] = ret[15] = 1;
+        ret[14] = -distance;
+        return ret;
+    }
+
+    /**
+     * @return the vertices of a grid wrapped on a sphere of radius 1
+     */
+    private static float[] sphere(int size) {
+        float[] ret = new float[size * size * 3];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double lat = Math.PI * (0.1 + 0.8 * y / (size - 1)), lon = Math.PI * x / (size - 1);
+                int v = (y * size + x) * 3;
+                ret[v] = (float) (Math.sin(lat) * Math.cos(lon));
+                ret[v + 1] = (float) Math.cos(lat);
+                ret[v + 2] = (float) (Math.sin(lat) * Math.sin(lon));
+            }
+        }
+        return ret;
+    }
+}
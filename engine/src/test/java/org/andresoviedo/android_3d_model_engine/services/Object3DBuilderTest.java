@@ -0,0 +1,230 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+import org.andresoviedo.android_3d_model_engine.services.wavefront.WavefrontLoader;
+import org.andresoviedo.util.io.IOUtils;
+import org.andresoviedo.util.math.Math3DUtils;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.MODEL;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.load;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Object3DBuilderTest {
+
+    @Test
+    public void testIndexedEqualsArrays() throws IOException {
+        Object3DData arrays = Object3DBuilder.generateArrays(load(), false);
+        Object3DData indexed = Object3DBuilder.generateArrays(load(), true);
+
+        assertTrue(arrays.isDrawUsingArrays());
+        assertFalse(indexed.isDrawUsingArrays());
+        IntBuffer drawOrder = indexed.getDrawOrder();
+        assertNotNull(drawOrder);
+        assertEquals(arrays.getVertexArrayBuffer().capacity() / 3, drawOrder.capacity());
+
+        // drawing the welded vertices using the indices must give the same vertices
+        assertExpandedEquals(arrays.getVertexArrayBuffer(), indexed.getVertexArrayBuffer(), drawOrder, 3);
+        assertExpandedEquals(arrays.getVertexNormalsArrayBuffer(), indexed.getVertexNormalsArrayBuffer(), drawOrder, 3);
+        assertExpandedEquals(arrays.getTextureCoordsArrayBuffer(), indexed.getTextureCoordsArrayBuffer(), drawOrder, 2);
+
+        // wireframe is built from the indices. Lines shared by triangles are drawn once
+        Object3DData wireframe = Object3DBuilder.buildWireframe(indexed);
+        assertEquals(drawOrder.get(0), wireframe.getDrawOrder().get(0));
+        assertTrue(wireframe.getDrawOrder().capacity() < drawOrder.capacity() * 2 * 2 / 3);
+        // de-indexed vertices are welded by position, so there are no lines repeated because of other attributes
+        Object3DData arraysWireframe = Object3DBuilder.buildWireframe(arrays);
+        assertTrue(arraysWireframe.getDrawOrder().capacity() <= wireframe.getDrawOrder().capacity());
+
+        long arraysBytes = bytes(arrays.getVertexArrayBuffer()) + bytes(arrays.getVertexNormalsArrayBuffer())
+                + bytes(arrays.getTextureCoordsArrayBuffer()) + bytes(arrays.getVertexColorsArrayBuffer());
+        long indexedBytes = bytes(indexed.getVertexArrayBuffer()) + bytes(indexed.getVertexNormalsArrayBuffer())
+                + bytes(indexed.getTextureCoordsArrayBuffer()) + bytes(indexed.getVertexColorsArrayBuffer())
+                + drawOrder.capacity() * 4L;
+        // the vertices shared by several faces are stored once
+        assertTrue(indexed.getVertexArrayBuffer().capacity() / 3 < drawOrder.capacity());
+        assertTrue(indexedBytes < arraysBytes);
+    }
+
+    @Test
+    public void testParallelEqualsSequential() throws IOException {
+        // 1M+ faces
+        ByteArrayOutputStream bigModel = new ByteArrayOutputStream();
+        byte[] data = IOUtils.read(new File(MODEL));
+        for (int i = 0; i < 500; i++) {
+            bigModel.write(data);
+            bigModel.write('\n');
+        }
+        WavefrontLoader wfl = new WavefrontLoader("");
+        wfl.loadModelParallel(ByteBuffer.wrap(bigModel.toByteArray()));
+        bigModel = null;
+        assertTrue(wfl.getFaces().getSize() > 1000000);
+
+        Object3DData expected = generateArrays(wfl, 1);
+        Object3DData expectedNormals = Object3DBuilder.buildFaceNormals(expected, 1);
+        int cores = Runtime.getRuntime().availableProcessors();
+        // more threads than cores still checks the ranges are split right
+        for (int threads = 2; threads <= Math.max(4, cores); threads *= 2) {
+            Object3DData actual = generateArrays(wfl, threads);
+            assertBufferEquals(expected.getVertexArrayBuffer(), actual.getVertexArrayBuffer());
+            assertBufferEquals(expected.getVertexNormalsArrayBuffer(), actual.getVertexNormalsArrayBuffer());
+            assertBufferEquals(expected.getTextureCoordsArrayBuffer(), actual.getTextureCoordsArrayBuffer());
+            assertBufferEquals(expectedNormals.getVertexArrayBuffer(),
+                    Object3DBuilder.buildFaceNormals(actual, threads).getVertexArrayBuffer());
+        }
+    }
+
+    @Test
+    public void testFaceNormals() throws IOException {
+        Object3DData arrays = Object3DBuilder.generateArrays(load(), false);
+        Object3DData indexed = Object3DBuilder.generateArrays(load(), true);
+
+        // same lines as the ones calculated face by face
+        FloatBuffer vertices = arrays.getVertexArrayBuffer();
+        FloatBuffer lines = Object3DBuilder.buildFaceNormals(arrays).getVertexArrayBuffer();
+        assertEquals(vertices.capacity() / 9 * 6, lines.capacity());
+        for (int i = 0; i < vertices.capacity() / 9; i++) {
+            float[][] expected = Math3DUtils.getNormalLine(vertex(vertices, i * 3), vertex(vertices, i * 3 + 1),
+                    vertex(vertices, i * 3 + 2));
+            for (int j = 0; j < 3; j++) {
+                assertEquals(Float.floatToRawIntBits(expected[0][j]), Float.floatToRawIntBits(lines.get(i * 6 + j)));
+                assertEquals(Float.floatToRawIntBits(expected[1][j]), Float.floatToRawIntBits(lines.get(i * 6 + 3 + j)));
+            }
+        }
+
+        // indexed models draw the normal of the first vertex of the face
+        IntBuffer drawOrder = indexed.getDrawOrder();
+        FloatBuffer normals = indexed.getVertexNormalsArrayBuffer();
+        lines = Object3DBuilder.buildFaceNormals(indexed).getVertexArrayBuffer();
+        vertices = indexed.getVertexArrayBuffer();
+        assertEquals(drawOrder.capacity() / 3 * 6, lines.capacity());
+        for (int i = 0; i < drawOrder.capacity() / 3; i++) {
+            float[][] expected = Math3DUtils.getNormalLine2(vertex(vertices, drawOrder.get(i * 3)),
+                    vertex(vertices, drawOrder.get(i * 3 + 1)), vertex(vertices, drawOrder.get(i * 3 + 2)),
+                    vertex(normals, drawOrder.get(i * 3)));
+            for (int j = 0; j < 3; j++) {
+                assertEquals(Float.floatToRawIntBits(expected[0][j]), Float.floatToRawIntBits(lines.get(i * 6 + j)));
+                assertEquals(Float.floatToRawIntBits(expected[1][j]), Float.floatToRawIntBits(lines.get(i * 6 + 3 + j)));
+            }
+        }
+    }
+
+    @Test
+    public void testIndexedEqualsArraysWithoutNormals() throws IOException {
+        Object3DData arrays = Object3DBuilder.generateArrays(load().setVertexNormalsBuffer(null), false);
+        Object3DData indexed = Object3DBuilder.generateArrays(load().setVertexNormalsBuffer(null), true);
+
+        // vertices are welded only if they have the same face normal
+        IntBuffer drawOrder = indexed.getDrawOrder();
+        assertExpandedEquals(arrays.getVertexArrayBuffer(), indexed.getVertexArrayBuffer(), drawOrder, 3);
+        assertExpandedEquals(arrays.getVertexNormalsArrayBuffer(), indexed.getVertexNormalsArrayBuffer(), drawOrder, 3);
+
+        // the 2 triangles of a square have the same normal, so the shared vertices are welded
+        WavefrontLoader wfl = new WavefrontLoader("");
+        wfl.loadModelSinglePass(new ByteArrayInputStream(
+                "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\nf 1 2 3\nf 1 3 4\n".getBytes("UTF-8")));
+        Object3DData square = Object3DBuilder.generateArrays(new Object3DData(wfl.getVerts(), wfl.getNormals(),
+                wfl.getTexCoords(), wfl.getFaces(), wfl.getFaceMats(), wfl.getMaterials()), true);
+        assertEquals(4 * 3, square.getVertexArrayBuffer().capacity());
+        assertArrayEquals(new float[]{0, 0, 1}, vertex(square.getVertexNormalsArrayBuffer(), 3), 0);
+    }
+
+    private static float[] vertex(FloatBuffer buffer, int index) {
+        return new float[]{buffer.get(index * 3), buffer.get(index * 3 + 1), buffer.get(index * 3 + 2)};
+    }
+
+    private static Object3DData generateArrays(WavefrontLoader wfl, int threads) throws IOException {
+        Object3DData data = new Object3DData(wfl.getVerts(), wfl.getNormals(), wfl.getTexCoords(), wfl.getFaces(),
+                wfl.getFaceMats(), wfl.getMaterials());
+        data.setDrawMode(GLES20.GL_TRIANGLES);
+        Object3DBuilder.generateArrays(data, false, threads);
+        return data;
+    }
+
+    @Test
+    public void testSubmeshes() throws IOException {
+        String obj = "mtllib test.mtl\n"
+                + "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n"
+                + "f 1 2 3\n"
+                + "usemtl red\n"
+                + "f 1 2 3\nf 1 3 4\n"
+                + "usemtl red2\n"
+                + "f 2 3 4\n"
+                + "usemtl green\n"
+                + "f 1 2 4\n"
+                + "usemtl missing\n"
+                + "f 1 3 4\n";
+        String mtl = "newmtl red\nKd 1 0 0\nnewmtl red2\nKd 1 0 0\nnewmtl green\nKd 0 1 0\n";
+
+        for (boolean indexed : new boolean[]{false, true}) {
+            WavefrontLoader wfl = new WavefrontLoader("");
+            wfl.loadModelSinglePass(new ByteArrayInputStream(obj.getBytes()));
+            wfl.getMaterials().readMaterials(new BufferedReader(new StringReader(mtl)));
+            Object3DData data = new Object3DData(wfl.getVerts(), wfl.getNormals(), wfl.getTexCoords(),
+                    wfl.getFaces(), wfl.getFaceMats(), wfl.getMaterials());
+            Object3DBuilder.generateArrays(data, indexed);
+
+            // no colors per vertex but a range per material. Same colors are merged
+            assertNull(data.getVertexColorsArrayBuffer());
+            List<Submesh> submeshes = data.getSubmeshes();
+            assertEquals(3, submeshes.size());
+            assertSubmesh(0, 3, new float[]{1, 1, 1}, submeshes.get(0));
+            assertSubmesh(3, 9, new float[]{1, 0, 0}, submeshes.get(1));
+            assertSubmesh(12, 6, new float[]{0, 1, 0}, submeshes.get(2));
+
+            // lines already drawn by previous faces are not repeated, so green faces have no lines
+            Object3DData wireframe = Object3DBuilder.buildWireframe(data);
+            assertEquals(6 * 2, wireframe.getDrawOrder().capacity());
+            assertEquals(2, wireframe.getSubmeshes().size());
+            assertSubmesh(0, 6, new float[]{1, 1, 1}, wireframe.getSubmeshes().get(0));
+            assertSubmesh(6, 6, new float[]{1, 0, 0}, wireframe.getSubmeshes().get(1));
+        }
+    }
+
+    private static void assertSubmesh(int start, int count, float[] color, Submesh actual) {
+        assertEquals(start, actual.getStart());
+        assertEquals(count, actual.getCount());
+        assertArrayEquals(color, Arrays.copyOf(actual.getColor(), 3), 0);
+    }
+
+    private static void assertExpandedEquals(FloatBuffer expected, FloatBuffer actual, IntBuffer drawOrder, int size) {
+        assertEquals(expected.capacity(), drawOrder.capacity() * size);
+        for (int i = 0; i < drawOrder.capacity(); i++) {
+            for (int j = 0; j < size; j++) {
+                assertEquals(Float.floatToRawIntBits(expected.get(i * size + j)),
+                        Float.floatToRawIntBits(actual.get(drawOrder.get(i) * size + j)));
+            }
+        }
+    }
+
+    private static void assertBufferEquals(FloatBuffer expected, FloatBuffer actual) {
+        assertEquals(expected.capacity(), actual.capacity());
+        for (int i = 0; i < expected.capacity(); i++) {
+            assertEquals(Float.floatToRawIntBits(expected.get(i)), Float.floatToRawIntBits(actual.get(i)));
+        }
+    }
+
+    private static long bytes(FloatBuffer buffer) {
+        return buffer != null ? buffer.capacity() * 4L : 0;
+    }
+}
@@ -0,0 +1,167 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.VertexLayout;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.floats;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.load;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class VertexInterleaverTest {
+
+    @Test
+    public void testModel() throws IOException {
+        Object3DData data = Object3DBuilder.generateArrays(load(), true);
+        VertexInterleaver.interleave(data, true);
+        VertexLayout layout = data.getVertexLayout();
+        assertNotNull(layout);
+        assertTrue(layout.isCompact());
+        ByteBuffer buffer = layout.getBuffer();
+        int stride = layout.getStride();
+        int normalOffset = layout.getNormals().getOffset();
+        assertEquals(GLES20.GL_BYTE, layout.getNormals().getType());
+
+        // positions are decoded with the position matrix
+        FloatBuffer positions = data.getVertexArrayBuffer();
+        int vertexCount = positions.capacity() / 3;
+        float[] matrix = layout.getPositionMatrix();
+        float maxError = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            for (int k = 0; k < 3; k++) {
+                float decoded = buffer.getShort(v * stride + k * 2) / 32767f * matrix[0] + matrix[12 + k];
+                maxError = Math.max(maxError, Math.abs(decoded - positions.get(v * 3 + k)));
+            }
+        }
+        assertTrue(maxError <= matrix[0] / 32767f);
+
+        // normals point to the same direction
+        FloatBuffer normals = data.getVertexNormalsArrayBuffer();
+        for (int v = 0; v < vertexCount; v++) {
+            float x = normals.get(v * 3), y = normals.get(v * 3 + 1), z = normals.get(v * 3 + 2);
+            int n = v * stride + normalOffset;
+            float cx = buffer.get(n), cy = buffer.get(n + 1), cz = buffer.get(n + 2);
+            float cos = (x * cx + y * cy + z * cz)
+                    / (float) Math.sqrt((x * x + y * y + z * z) * (cx * cx + cy * cy + cz * cz));
+            assertTrue(cos > 0.999f);
+        }
+
+        int floatBytes = (positions.capacity() + normals.capacity() + data.getTextureCoordsArrayBuffer().capacity())
+                * 4;
+        assertTrue(buffer.capacity() * 1.5f <= floatBytes);
+
+        // geometry changed
+        data.setChanged(true);
+        assertNull(data.getVertexLayout());
+    }
+
+    @Test
+    public void testFloats() throws IOException {
+        Object3DData data = Object3DBuilder.generateArrays(load(), true);
+        VertexInterleaver.interleave(data, false);
+        VertexLayout layout = data.getVertexLayout();
+        assertNull(layout.getPositionMatrix());
+        // positions, normals and texture coordinates
+        assertEquals(32, layout.getStride());
+        assertEquals(12, layout.getNormals().getOffset());
+        ByteBuffer buffer = layout.getBuffer();
+        for (int v = 0; v < data.getVertexArrayBuffer().capacity() / 3; v++) {
+            for (int k = 0; k < 3; k++) {
+                assertEquals(data.getVertexArrayBuffer().get(v * 3 + k), buffer.getFloat(v * 32 + k * 4), 0);
+                assertEquals(data.getVertexNormalsArrayBuffer().get(v * 3 + k), buffer.getFloat(v * 32 + 12 + k * 4),
+                        0);
+            }
+        }
+    }
+
+    @Test
+    public void testAnimatedModel() {
+        AnimatedModel model = new AnimatedModel(floats(new float[]{0, 0, 0, 1, 0, 0, 0, 2, 0}));
+        model.setJointIds(floats(new float[]{0, 1, 2, 3, 4, 5, 59, 0, 0}));
+        model.setVertexWeights(floats(new float[]{0.3333f, 0.3333f, 0.3333f, 0.5f, 0.25f, 0.25f, 1, 0, 0}));
+        model.setVertexColorsArrayBuffer(floats(new float[]{1, 0.5f, 0, 1, 0, 0, 0, 1, 2, -1, 0, 1}));
+        model.setTextureCoordsArrayBuffer(floats(new float[]{0, 0, 1, 1, 0, 2}));
+
+        VertexInterleaver.interleave(model, true);
+        VertexLayout layout = model.getVertexLayout();
+        // joints transform the positions in model space
+        assertEquals(GLES20.GL_FLOAT, layout.getPositions().getType());
+        assertNull(layout.getPositionMatrix());
+        // repeated textures
+        assertEquals(GLES20.GL_FLOAT, layout.getTextureCoords().getType());
+        // positions (12), texture coordinates (8), colors, joint ids and weights (4)
+        int stride = layout.getStride();
+        assertEquals(32, stride);
+        ByteBuffer buffer = layout.getBuffer();
+
+        int jointIds = layout.getJointIds().getOffset();
+        assertEquals(59, buffer.get(2 * stride + jointIds) & 0xFF);
+        assertEquals(5, buffer.get(stride + jointIds + 2) & 0xFF);
+
+        // weights still add up to 1
+        for (int v = 0; v < 3; v++) {
+            int sum = 0;
+            for (int k = 0; k < 3; k++) {
+                sum += buffer.get(v * stride + layout.getWeights().getOffset() + k) & 0xFF;
+            }
+            assertEquals(255, sum);
+        }
+
+        int colors = layout.getColors().getOffset();
+        assertEquals(128, buffer.get(colors + 1) & 0xFF);
+        assertEquals(255, buffer.get(2 * stride + colors) & 0xFF);
+        assertEquals(0, buffer.get(2 * stride + colors + 1) & 0xFF);
+    }
+
+    @Test
+    public void testTextureCoords() {
+        Object3DData model = new Object3DData(floats(new float[]{0, 0, 0, 1, 0, 0, 0, 1, 0}));
+        model.setTextureCoordsArrayBuffer(floats(new float[]{0, 0, 1, 1, 0.25f, 0.75f}));
+
+        // texture coordinates in the [0,1] range are stored as unorm16
+        VertexInterleaver.interleave(model, true);
+        VertexLayout layout = model.getVertexLayout();
+        VertexLayout.Attribute textureCoords = layout.getTextureCoords();
+        assertEquals(GLES20.GL_UNSIGNED_SHORT, textureCoords.getType());
+        assertTrue(textureCoords.isNormalized());
+        // positions (8) and texture coordinates (4)
+        assertEquals(12, layout.getStride());
+        ByteBuffer buffer = layout.getBuffer();
+        assertEquals(0xFFFF, buffer.getShort(layout.getStride() + textureCoords.getOffset()) & 0xFFFF);
+        assertEquals(0x4000, buffer.getShort(2 * layout.getStride() + textureCoords.getOffset()) & 0xFFFF);
+        assertEquals(0xBFFF, buffer.getShort(2 * layout.getStride() + textureCoords.getOffset() + 2) & 0xFFFF);
+    }
+
+    @Test
+    public void testReleaseAttributes() throws IOException {
+        Object3DData data = Object3DBuilder.generateArrays(load(), true);
+        FloatBuffer positions = data.getVertexArrayBuffer();
+        VertexInterleaver.interleave(data, true);
+        VertexLayout layout = data.getVertexLayout();
+        assertTrue(VertexInterleaver.hasAttributes(data, layout));
+        VertexInterleaver.releaseAttributes(data);
+        assertFalse(VertexInterleaver.hasAttributes(data, layout));
+
+        // the layout is still drawn, and the positions are kept for picking
+        assertSame(layout, data.getVertexLayout());
+        assertSame(positions, data.getVertexArrayBuffer());
+        assertNull(data.getVertexNormalsArrayBuffer());
+        assertNull(data.getTextureCoordsArrayBuffer());
+
+        // the wireframe uses the same vertices
+        Object3DData wireframe = Object3DBuilder.buildWireframe(data);
+        assertSame(layout, wireframe.getVertexLayout());
+    }
+}
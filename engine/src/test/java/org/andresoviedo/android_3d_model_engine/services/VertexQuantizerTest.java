@@ -0,0 +1,123 @@
+package org.andresoviedo.android_3d_model_engine.services;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.VertexLayout;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.floats;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.load;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VertexQuantizerTest {
+
+    @Test
+    public void testModel() throws IOException {
+        Object3DData data = Object3DBuilder.generateArrays(load(), true);
+
+        VertexQuantizer.quantize(data);
+        VertexLayout compact = data.getVertexLayout();
+        assertNotNull(compact);
+        assertTrue(compact.isCompact());
+        ByteBuffer buffer = compact.getBuffer();
+        int stride = compact.getStride();
+
+        // positions are decoded with the position matrix
+        FloatBuffer positions = data.getVertexArrayBuffer();
+        int vertexCount = positions.capacity() / 3;
+        float[] matrix = compact.getPositionMatrix();
+        float maxError = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            for (int k = 0; k < 3; k++) {
+                float decoded = buffer.getShort(v * stride + k * 2) / 32767f * matrix[0] + matrix[12 + k];
+                maxError = Math.max(maxError, Math.abs(decoded - positions.get(v * 3 + k)));
+            }
+        }
+        assertTrue(maxError <= matrix[0] / 32767f);
+
+        // normals point to the same direction
+        FloatBuffer normals = data.getVertexNormalsArrayBuffer();
+        int normalOffset = compact.getNormals().getOffset();
+        for (int v = 0; v < vertexCount; v++) {
+            float x = normals.get(v * 3), y = normals.get(v * 3 + 1), z = normals.get(v * 3 + 2);
+            int n = v * stride + normalOffset;
+            float cx = buffer.get(n), cy = buffer.get(n + 1), cz = buffer.get(n + 2);
+            float cos = (x * cx + y * cy + z * cz)
+                    / (float) Math.sqrt((x * x + y * y + z * z) * (cx * cx + cy * cy + cz * cz));
+            assertTrue(cos > 0.999f);
+        }
+
+        // positions (8 bytes) and normals (4 bytes) use half the bytes
+        assertEquals(8, normalOffset);
+        assertEquals(GLES20.GL_BYTE, compact.getNormals().getType());
+        int floatBytes = (positions.capacity() + normals.capacity()) * 4;
+        assertEquals(floatBytes / 2, vertexCount * (normalOffset + 4));
+
+        // geometry changed
+        data.setChanged(true);
+        assertNull(data.getVertexLayout());
+    }
+
+    @Test
+    public void testAnimatedModel() {
+        AnimatedModel model = new AnimatedModel(floats(new float[]{0, 0, 0, 1, 0, 0, 0, 2, 0}));
+        model.setJointIds(floats(new float[]{0, 1, 2, 3, 4, 5, 59, 0, 0}));
+        model.setVertexWeights(floats(new float[]{0.3333f, 0.3333f, 0.3333f, 0.5f, 0.25f, 0.25f, 1, 0, 0}));
+        model.setVertexColorsArrayBuffer(floats(new float[]{1, 0.5f, 0, 1, 0, 0, 0, 1, 2, -1, 0, 1}));
+        model.setTextureCoordsArrayBuffer(floats(new float[]{0, 0, 1, 1, 0, 2}));
+
+        VertexQuantizer.quantize(model);
+        VertexLayout compact = model.getVertexLayout();
+        // joints transform the positions in model space
+        assertEquals(GLES20.GL_FLOAT, compact.getPositions().getType());
+        // repeated textures
+        assertEquals(GLES20.GL_FLOAT, compact.getTextureCoords().getType());
+
+        ByteBuffer buffer = compact.getBuffer();
+        int stride = compact.getStride();
+        int jointIds = compact.getJointIds().getOffset();
+        assertEquals(GLES20.GL_UNSIGNED_BYTE, compact.getJointIds().getType());
+        assertEquals(59, buffer.get(2 * stride + jointIds) & 0xFF);
+        assertEquals(5, buffer.get(stride + jointIds + 2) & 0xFF);
+
+        // weights still add up to 1
+        int weights = compact.getWeights().getOffset();
+        for (int v = 0; v < 3; v++) {
+            int sum = 0;
+            for (int k = 0; k < 3; k++) {
+                sum += buffer.get(v * stride + weights + k) & 0xFF;
+            }
+            assertEquals(255, sum);
+        }
+
+        int colors = compact.getColors().getOffset();
+        assertEquals(128, buffer.get(colors + 1) & 0xFF);
+        assertEquals(255, buffer.get(2 * stride + colors) & 0xFF);
+        assertEquals(0, buffer.get(2 * stride + colors + 1) & 0xFF);
+    }
+
+    @Test
+    public void testRanges() {
+        // values out of the range are clamped
+        assertEquals(Short.MAX_VALUE, VertexQuantizer.toSnorm16(2));
+        assertEquals(-Short.MAX_VALUE, VertexQuantizer.toSnorm16(-2));
+        assertEquals(Byte.MAX_VALUE, VertexQuantizer.toSnorm8(1));
+        assertEquals(0, VertexQuantizer.toUnorm8(-1));
+        assertEquals(0xFFFF, VertexQuantizer.toUnorm16(1) & 0xFFFF);
+        assertEquals(0x8000, VertexQuantizer.toUnorm16(0.5f) & 0xFFFF);
+
+        // repeated textures can't be stored as unorm16
+        assertTrue(VertexQuantizer.isInRange(floats(new float[]{0, 0.5f, 1}), 0, 1));
+        assertTrue(!VertexQuantizer.isInRange(floats(new float[]{0, 1.5f}), 0, 1));
+        assertTrue(!VertexQuantizer.isInRange(null, 0, 1));
+    }
+}
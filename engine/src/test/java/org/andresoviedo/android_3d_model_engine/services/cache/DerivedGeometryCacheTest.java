@@ -0,0 +1,170 @@
+package org.andresoviedo.android_3d_model_engine.services.cache;
+
+import android.opengl.GLES20;
+
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.services.MeshPartitioner;
+import org.andresoviedo.android_3d_model_engine.services.VertexInterleaver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.floats;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.grid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DerivedGeometryCacheTest {
+
+    @Test
+    public void testVersions() {
+        QueueExecutor executor = new QueueExecutor();
+        DerivedGeometryCache cache = new DerivedGeometryCache(DerivedGeometryCache.MAX_BYTES, executor);
+        Object3DData model = triangles(2);
+
+        // built in background
+        assertNull(cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS));
+        assertNull(cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS));
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        Object3DData normals = cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS);
+        assertNotNull(normals);
+        assertEquals(2 * 6, normals.getVertexArrayBuffer().capacity());
+        assertSame(normals, cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2 * 6 * 4, cache.getBytes());
+
+        // the old version is drawn until the new one is built
+        model.setVertexArrayBuffer(floats(new float[3 * 9]));
+        assertSame(normals, cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS));
+        executor.runAll();
+        Object3DData newNormals = cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS);
+        assertNotSame(normals, newNormals);
+        assertEquals(3 * 6, newNormals.getVertexArrayBuffer().capacity());
+        assertEquals(1, cache.getSize());
+        assertEquals(3 * 6 * 4, cache.getBytes());
+
+        // models without such geometry are cached too
+        Object3DData points = triangles(1).setDrawMode(GLES20.GL_POINTS);
+        cache.get(points, DerivedGeometryCache.Kind.FACE_NORMALS);
+        executor.runAll();
+        assertNull(cache.get(points, DerivedGeometryCache.Kind.FACE_NORMALS));
+        assertEquals(0, executor.tasks.size());
+
+        // removed while being built
+        model.setChanged(true);
+        cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS);
+        cache.remove(model);
+        executor.runAll();
+        assertEquals(1, cache.getSize());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testChangedWhileBuilding() {
+        QueueExecutor executor = new QueueExecutor();
+        DerivedGeometryCache cache = new DerivedGeometryCache(DerivedGeometryCache.MAX_BYTES, executor);
+        Object3DData model = triangles(2);
+        assertNull(cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS));
+        model.setVertexArrayBuffer(floats(new float[3 * 9]));
+        assertNull(cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS));
+        assertEquals(2, executor.tasks.size());
+
+        // the old version is kept until the new one is built
+        executor.tasks.remove(0).run();
+        Object3DData normals = cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS);
+        assertNotNull(normals);
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        Object3DData newNormals = cache.get(model, DerivedGeometryCache.Kind.FACE_NORMALS);
+        assertEquals(3 * 6, newNormals.getVertexArrayBuffer().capacity());
+        assertEquals(1, cache.getSize());
+        assertEquals(3 * 6 * 4, cache.getBytes());
+    }
+
+    @Test
+    public void testEviction() {
+        QueueExecutor executor = new QueueExecutor();
+        // room for 2 models of 10 triangles
+        DerivedGeometryCache cache = new DerivedGeometryCache(2 * 10 * 6 * 4, executor);
+        List<Object3DData> models = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            models.add(triangles(10));
+            cache.get(models.get(i), DerivedGeometryCache.Kind.FACE_NORMALS);
+            executor.runAll();
+            if (i == 1) {
+                // most recently used
+                cache.get(models.get(0), DerivedGeometryCache.Kind.FACE_NORMALS);
+            }
+        }
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.getSize());
+        assertNotNull(cache.get(models.get(0), DerivedGeometryCache.Kind.FACE_NORMALS));
+        assertNull(cache.get(models.get(1), DerivedGeometryCache.Kind.FACE_NORMALS));
+        assertNotNull(cache.get(models.get(2), DerivedGeometryCache.Kind.FACE_NORMALS));
+    }
+
+    @Test
+    public void testSharedBuffers() {
+        QueueExecutor executor = new QueueExecutor();
+        DerivedGeometryCache cache = new DerivedGeometryCache(DerivedGeometryCache.MAX_BYTES, executor);
+        Object3DData model = triangles(10);
+        cache.get(model, DerivedGeometryCache.Kind.WIREFRAME);
+        executor.runAll();
+        Object3DData wireframe = cache.get(model, DerivedGeometryCache.Kind.WIREFRAME);
+        assertSame(model.getVertexArrayBuffer(), wireframe.getVertexArrayBuffer());
+        // the triangles are in the same place, so there are 3 lines. only the draw order is counted
+        assertEquals(3 * 2 * 4 + 3 * 2 * 2, cache.getBytes());
+    }
+
+    @Test
+    public void testPartitionedWireframe() {
+        QueueExecutor executor = new QueueExecutor();
+        DerivedGeometryCache cache = new DerivedGeometryCache(DerivedGeometryCache.MAX_BYTES, executor);
+        Object3DData model = grid(300);
+        MeshPartitioner.partition(model);
+        VertexInterleaver.interleave(model, true);
+        VertexInterleaver.releaseAttributes(model);
+
+        cache.get(model, DerivedGeometryCache.Kind.WIREFRAME);
+        executor.runAll();
+        Object3DData wireframe = cache.get(model, DerivedGeometryCache.Kind.WIREFRAME);
+        // the lines are drawn with the interleaved vertices of the partitions of the model
+        assertEquals(model.getPartitions().size(), wireframe.getPartitions().size());
+        for (int p = 0; p < model.getPartitions().size(); p++) {
+            assertSame(model.getPartitions().get(p).getVertexLayout(),
+                    wireframe.getPartitions().get(p).getVertexLayout());
+        }
+    }
+
+    private static Object3DData triangles(int count) {
+        float[] vertices = new float[count * 9];
+        for (int i = 0; i < count; i++) {
+            vertices[i * 9 + 3] = 1;
+            vertices[i * 9 + 7] = 1;
+        }
+        return new Object3DData(floats(vertices)).setDrawMode(GLES20.GL_TRIANGLES);
+    }
+
+    private static final class QueueExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.andresoviedo.android_3d_model_engine.services.cache;
+
+import org.andresoviedo.android_3d_model_engine.animation.Animation;
+import org.andresoviedo.android_3d_model_engine.animation.JointTransform;
+import org.andresoviedo.android_3d_model_engine.animation.KeyFrame;
+import org.andresoviedo.android_3d_model_engine.model.AnimatedModel;
+import org.andresoviedo.android_3d_model_engine.model.Object3DData;
+import org.andresoviedo.android_3d_model_engine.model.Submesh;
+import org.andresoviedo.android_3d_model_engine.services.MeshPartitioner;
+import org.andresoviedo.android_3d_model_engine.services.Object3DBuilder;
+import org.andresoviedo.android_3d_model_engine.services.VertexInterleaver;
+import org.andresoviedo.android_3d_model_engine.services.collada.entities.Joint;
+import org.andresoviedo.android_3d_model_engine.services.collada.entities.JointData;
+import org.andresoviedo.android_3d_model_engine.services.collada.entities.SkeletonData;
+import org.andresoviedo.util.math.Quaternion;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.floats;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.grid;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.ints;
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.load;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MeshCacheTest {
+
+    @Test
+    public void testWavefrontModel() throws IOException {
+        Object3DData expected = load();
+        expected.setId("hand");
+        Object3DBuilder.generateArrays(expected, true);
+
+        File dir = createTempDir();
+        MeshCache cache = new MeshCache(dir);
+        assertNull(cache.load("key"));
+
+        cache.save("key", Collections.singletonList(expected));
+        List<Object3DData> datas = cache.load("key");
+
+        assertNotNull(datas);
+        assertEquals(1, datas.size());
+        Object3DData actual = datas.get(0);
+        assertFalse(actual instanceof AnimatedModel);
+        assertEquals("hand", actual.getId());
+        assertEquals(expected.isDrawUsingArrays(), actual.isDrawUsingArrays());
+        assertEquals(expected.getDrawMode(), actual.getDrawMode());
+        assertEquals(expected.getFaces().getSize(), actual.getFaces().getSize());
+        assertEquals(expected.getTextureFile(), actual.getTextureFile());
+        assertArrayEquals(expected.getScale(), actual.getScale(), 0);
+        assertArrayEquals(expected.getPosition(), actual.getPosition(), 0);
+        assertArrayEquals(expected.getModelMatrix(), actual.getModelMatrix(), 0);
+        assertEquals(expected.getDimensions().toString(), actual.getDimensions().toString());
+        assertBufferEquals(expected.getVertexBuffer(), actual.getVertexBuffer());
+        assertBufferEquals(expected.getVertexArrayBuffer(), actual.getVertexArrayBuffer());
+        assertBufferEquals(expected.getVertexNormalsArrayBuffer(), actual.getVertexNormalsArrayBuffer());
+        assertBufferEquals(expected.getTextureCoordsArrayBuffer(), actual.getTextureCoordsArrayBuffer());
+        assertBufferEquals(expected.getVertexColorsArrayBuffer(), actual.getVertexColorsArrayBuffer());
+        assertBufferEquals(expected.getDrawOrder(), actual.getDrawOrder());
+        assertTrue(actual.getVertexArrayBuffer().isDirect());
+
+        // other keys (i.e. the model file changed) are misses
+        assertNull(cache.load("other key"));
+        delete(dir);
+    }
+
+    @Test
+    public void testAnimatedModel() throws IOException {
+        Map<String, String> materials = new HashMap<>();
+        materials.put("material", "material-id");
+        JointData root = new JointData(0, "root", "Root", null, materials, identity(), identity(), identity());
+        root.addChild(new JointData(1, "child", "Child", "geometry", materials, translation(1), translation(1),
+                translation(-1)));
+        Joint rootJoint = new SkeletonData(2, 2, root).buildJoints();
+
+        Map<String, JointTransform> pose0 = new HashMap<>();
+        pose0.put("root", new JointTransform(identity()));
+        pose0.put("child", new JointTransform(new float[]{1, 2, 3}, new Quaternion(0, 0, 0.7071f, 0.7071f)));
+        Map<String, JointTransform> pose1 = new HashMap<>();
+        pose1.put("child", new JointTransform(translation(2)));
+        Animation animation = new Animation(2, new KeyFrame[]{new KeyFrame(0, pose0), new KeyFrame(2, pose1)});
+
+        AnimatedModel[] expected = new AnimatedModel[2];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = new AnimatedModel(floats(0, 0, 0, 1, 0, 0, 0, 1, i));
+            expected[i].setVertexNormalsArrayBuffer(floats(0, 0, 1, 0, 0, 1, 0, 0, 1));
+            expected[i].setDrawOrder(ints(0, 1, 2));
+            expected[i].setId("mesh" + i);
+            expected[i].setRootJoint(rootJoint, 2, 2);
+            expected[i].doAnimation(animation);
+            expected[i].setJointIds(floats(0, 0, 0, 1, 1, 1, 0, 1, 0));
+            expected[i].setVertexWeights(floats(1, 0, 0, 0.5f, 0.5f, 0, 1, 0, 0));
+            expected[i].setDrawModeList(Arrays.asList(new int[]{4, 0, 3}));
+            expected[i].setSubmeshes(Arrays.asList(new Submesh(0, 3, new float[]{1, 0, 0, 1}), new Submesh(3, 0, null)));
+            expected[i].setBindShapeMatrix(translation(i));
+            expected[i].setScale(new float[]{2, 2, 2});
+        }
+
+        File dir = createTempDir();
+        MeshCache cache = new MeshCache(dir);
+        cache.save("animated", Arrays.<Object3DData>asList(expected));
+        List<Object3DData> datas = cache.load("animated");
+        assertNotNull(datas);
+        assertEquals(2, datas.size());
+
+        for (int i = 0; i < expected.length; i++) {
+            AnimatedModel actual = (AnimatedModel) datas.get(i);
+            assertEquals("mesh" + i, actual.getId());
+            assertBufferEquals(expected[i].getVertexArrayBuffer(), actual.getVertexArrayBuffer());
+            assertBufferEquals(expected[i].getDrawOrder(), actual.getDrawOrder());
+            assertBufferEquals(expected[i].getJointIds(), actual.getJointIds());
+            assertBufferEquals(expected[i].getVertexWeights(), actual.getVertexWeights());
+            assertArrayEquals(expected[i].getDrawModeList().get(0), actual.getDrawModeList().get(0));
+            assertEquals(2, actual.getSubmeshes().size());
+            assertEquals(3, actual.getSubmeshes().get(0).getCount());
+            assertArrayEquals(new float[]{1, 0, 0, 1}, actual.getSubmeshes().get(0).getColor(), 0);
+            assertEquals(3, actual.getSubmeshes().get(1).getStart());
+            assertNull(actual.getSubmeshes().get(1).getColor());
+            assertArrayEquals(expected[i].getModelMatrix(), actual.getModelMatrix(), 0);
+            assertEquals(2, actual.getJointCount());
+            assertEquals(2, actual.getBoneCount());
+        }
+
+        // skeleton and animation are still shared by the models
+        AnimatedModel actual = (AnimatedModel) datas.get(0);
+        assertSame(actual.getRootJoint(), ((AnimatedModel) datas.get(1)).getRootJoint());
+        assertSame(actual.getAnimation(), ((AnimatedModel) datas.get(1)).getAnimation());
+
+        Joint child = actual.getRootJoint().getChildren().get(0);
+        assertEquals(1, child.getIndex());
+        assertEquals("child", child.getName());
+        assertEquals("geometry", child.getData().getInstanceGeometry());
+        assertEquals("material-id", child.getData().getMaterial("material"));
+        assertArrayEquals(translation(-1), child.getInverseBindTransform(), 0);
+        assertNotNull(actual.getRootJoint().find("geometry"));
+
+        assertEquals(2, actual.getAnimation().getLength(), 0);
+        KeyFrame[] keyFrames = actual.getAnimation().getKeyFrames();
+        assertEquals(2, keyFrames.length);
+        assertEquals(2, keyFrames[1].getTimeStamp(), 0);
+        JointTransform transform = keyFrames[0].getJointKeyFrames().get("child");
+        assertNull(transform.getMatrix());
+        assertArrayEquals(new float[]{1, 2, 3}, transform.getPosition(), 0);
+        assertEquals(0.7071f, transform.getRotation().getW(), 0);
+        assertArrayEquals(translation(2), keyFrames[1].getJointKeyFrames().get("child").getMatrix(), 0);
+        delete(dir);
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        File dir = createTempDir();
+        MeshCache cache = new MeshCache(dir, 1536);
+        Object3DData small = new Object3DData(floats(new float[100]));
+        Object3DData big = new Object3DData(floats(new float[300]));
+        cache.save("small", Collections.singletonList(small));
+        assertEquals(1, dir.listFiles().length);
+        // files are evicted in least recently used order
+        File first = dir.listFiles()[0];
+        assertTrue(first.setLastModified(first.lastModified() - 10000));
+        cache.save("big", Collections.singletonList(big));
+        assertNull(cache.load("small"));
+        assertNotNull(cache.load("big"));
+        delete(dir);
+    }
+
+    @Test
+    public void testSaveInBackground() throws IOException {
+        Object3DData model = grid(300);
+        float[] vertices = copy(model.getVertexArrayBuffer());
+        float[] normals = copy(model.getVertexNormalsArrayBuffer());
+        int[] drawOrder = copy(model.getDrawOrder());
+
+        File dir = createTempDir();
+        List<Runnable> tasks = new ArrayList<>();
+        MeshCache cache = new MeshCache(dir, MeshCache.MAX_SIZE, tasks::add);
+        cache.saveInBackground("grid", Collections.singletonList(model));
+        assertEquals(1, tasks.size());
+        assertNull(cache.load("grid"));
+
+        // the model is prepared for drawing before the file is written
+        MeshPartitioner.partition(model);
+        assertNotNull(model.getPartitions());
+        VertexInterleaver.interleave(model, true);
+        VertexInterleaver.releaseAttributes(model);
+        model.getPosition()[0] = 1;
+        tasks.get(0).run();
+
+        List<Object3DData> datas = cache.load("grid");
+        assertNotNull(datas);
+        Object3DData actual = datas.get(0);
+        assertArrayEquals(vertices, copy(actual.getVertexArrayBuffer()), 0);
+        assertArrayEquals(normals, copy(actual.getVertexNormalsArrayBuffer()), 0);
+        assertArrayEquals(drawOrder, copy(actual.getDrawOrder()));
+        assertArrayEquals(new float[]{0, 0, 0}, actual.getPosition(), 0);
+        delete(dir);
+    }
+
+    private static float[] copy(FloatBuffer buffer) {
+        float[] ret = new float[buffer.capacity()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = buffer.get(i);
+        }
+        return ret;
+    }
+
+    private static int[] copy(IntBuffer buffer) {
+        int[] ret = new int[buffer.capacity()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = buffer.get(i);
+        }
+        return ret;
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("meshes", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdirs());
+        return dir;
+    }
+
+    private static void delete(File dir) {
+        for (File file : dir.listFiles()) {
+            assertTrue(file.delete());
+        }
+        assertTrue(dir.delete());
+    }
+
+    private static float[] identity() {
+        return translation(0);
+    }
+
+    private static float[] translation(float x) {
+        return new float[]{1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, x, 0, 0, 1};
+    }
+
+    private static void assertBufferEquals(FloatBuffer expected, FloatBuffer actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.capacity(), actual.capacity());
+        for (int i = 0; i < expected.capacity(); i++) {
+            assertEquals(Float.floatToIntBits(expected.get(i)), Float.floatToIntBits(actual.get(i)));
+        }
+    }
+
+    private static void assertBufferEquals(IntBuffer expected, IntBuffer actual) {
+        assertEquals(expected.capacity(), actual.capacity());
+        for (int i = 0; i < expected.capacity(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.andresoviedo.android_3d_model_engine.services.wavefront;
+
+import org.andresoviedo.util.io.IOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.andresoviedo.android_3d_model_engine.TestMeshes.MODEL;
+
+/**
+ * Times of the parsers of {@link WavefrontLoader}. It's not run with the unit tests: run the main method to print them
+ */
+public final class WavefrontLoaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        parseTime();
+        loadTime();
+        heapPerTriangle();
+    }
+
+    private static void parseTime() throws IOException {
+        byte[] data = IOUtils.read(new File(MODEL));
+        for (int i = 0; i < 10; i++) {
+            WavefrontLoaderTest.parse(data, true);
+            WavefrontLoaderTest.parse(data, false);
+        }
+        long time = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            WavefrontLoaderTest.parse(data, true);
+        }
+        System.out.println("String parser: " + (System.nanoTime() - time) / 50 / 1000 + " us");
+        time = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            WavefrontLoaderTest.parse(data, false);
+        }
+        System.out.println("Byte parser: " + (System.nanoTime() - time) / 50 / 1000 + " us");
+
+        // bigger model, so it can be split in several chunks
+        ByteArrayOutputStream bigModel = new ByteArrayOutputStream();
+        for (int i = 0; i < 50; i++) {
+            bigModel.write(data);
+            bigModel.write('\n');
+        }
+        ByteBuffer bigData = ByteBuffer.allocateDirect(bigModel.size());
+        bigData.put(bigModel.toByteArray()).flip();
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int chunks = 1; chunks <= cores; chunks *= 2) {
+            for (int i = 0; i < 3; i++) {
+                new WavefrontLoader("").loadModelParallel(bigData.duplicate(), chunks);
+            }
+            time = System.nanoTime();
+            for (int i = 0; i < 5; i++) {
+                new WavefrontLoader("").loadModelParallel(bigData.duplicate(), chunks);
+            }
+            System.out.println("Byte parser (" + chunks + " threads): " + (System.nanoTime() - time) / 5 / 1000 + " us");
+        }
+    }
+
+    private static void loadTime() throws IOException {
+        // warm up
+        for (int i = 0; i < 5; i++) {
+            WavefrontLoaderTest.loadTwoPasses();
+            WavefrontLoaderTest.loadSinglePass();
+        }
+        long time = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            WavefrontLoaderTest.loadTwoPasses();
+        }
+        System.out.println("2 passes: " + (System.nanoTime() - time) / 20 / 1000 + " us");
+        time = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            WavefrontLoaderTest.loadSinglePass();
+        }
+        System.out.println("1 pass: " + (System.nanoTime() - time) / 20 / 1000 + " us");
+    }
+
+    private static void heapPerTriangle() throws IOException {
+        ByteArrayOutputStream bigModel = new ByteArrayOutputStream();
+        byte[] data = IOUtils.read(new File(MODEL));
+        for (int i = 0; i < 20; i++) {
+            bigModel.write(data);
+            bigModel.write('\n');
+        }
+        byte[] bigData = bigModel.toByteArray();
+        WavefrontLoaderTest.parse(bigData, false);
+
+        long before = usedHeap();
+        WavefrontLoader wfl = WavefrontLoaderTest.parse(bigData, false);
+        long after = usedHeap();
+        System.out.println("Heap per triangle: " + (after - before) / wfl.getFaces().getSize() + " bytes ("
+                + wfl.getFaces().getSize() + " triangles)");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
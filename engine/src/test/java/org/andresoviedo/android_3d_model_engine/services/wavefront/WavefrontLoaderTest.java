@@ -0,0 +1,193 @@
+package org.andresoviedo.android_3d_model_engine.services.wavefront;
+
+import org.andresoviedo.android_3d_model_engine.TestMeshes;
+import org.andresoviedo.util.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class WavefrontLoaderTest {
+
+    private static final File MODEL = new File(TestMeshes.MODEL);
+
+    @Test
+    public void testSinglePassEqualsTwoPasses() throws IOException {
+        WavefrontLoader expected = loadTwoPasses();
+        WavefrontLoader actual = loadSinglePass();
+
+        assertBufferEquals(expected.getVerts(), actual.getVerts());
+        assertBufferEquals(expected.getNormals(), actual.getNormals());
+        assertBufferEquals(expected.getTexCoords(), actual.getTexCoords());
+        assertEquals(expected.getFaces().getSize(), actual.getFaces().getSize());
+        assertBufferEquals(expected.getFaces().getIndexBuffer(), actual.getFaces().getIndexBuffer());
+        assertBufferEquals(expected.getFaces().facesTexIdxs, actual.getFaces().facesTexIdxs);
+        assertBufferEquals(expected.getFaces().facesNormIdxs, actual.getFaces().facesNormIdxs);
+        assertNotNull(actual.getMaterials());
+        assertEquals(expected.getMaterials().mfnm, actual.getMaterials().mfnm);
+    }
+
+    @Test
+    public void testByteParserEqualsStringParser() throws IOException {
+        WavefrontLoader expected = new WavefrontLoader("");
+        expected.legacyParser = true;
+        expected.loadModelSinglePass(new FileInputStream(MODEL));
+        WavefrontLoader actual = loadSinglePass();
+
+        assertBufferEquals(expected.getVerts(), actual.getVerts());
+        assertBufferEquals(expected.getNormals(), actual.getNormals());
+        assertBufferEquals(expected.getFaces().getIndexBuffer(), actual.getFaces().getIndexBuffer());
+        assertBufferEquals(expected.getTexCoords(), actual.getTexCoords());
+        assertBufferEquals(expected.getFaces().facesTexIdxs, actual.getFaces().facesTexIdxs);
+        assertBufferEquals(expected.getFaces().facesNormIdxs, actual.getFaces().facesNormIdxs);
+        assertEquals(expected.getFaceMats().findMaterial(0), actual.getFaceMats().findMaterial(0));
+        assertEquals(expected.getMaterials().mfnm, actual.getMaterials().mfnm);
+    }
+
+    @Test
+    public void testParallelEqualsSinglePass() throws IOException {
+        byte[] data = IOUtils.read(MODEL);
+        assertLoaderEquals(parse(data, false), parseParallel(data, 7));
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        try (FileInputStream stream = new FileInputStream(MODEL)) {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            WavefrontLoader actual = new WavefrontLoader("");
+            actual.loadModelParallel(mapped, 3);
+            assertLoaderEquals(loadSinglePass(), actual);
+        }
+    }
+
+    @Test
+    public void testParallelRelativeIndices() {
+        String obj = "mtllib test.mtl\n"
+                + "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n"
+                + "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\n"
+                + "vn 0 0 1\nvn 0 0 -1\n"
+                + "usemtl red\n"
+                + "f -4/-4/-2 -3/-3/-2 -2/-2/-2 -1/-1/-2\n"
+                + "f 1/1/1 2/2/1 3/3/1\n"
+                + "v 2 0 0\nv 2 1 0\nvt 0.5 0.5\nvn 1 0 0\n"
+                + "usemtl green\n"
+                + "f -2//-1 -1//-1 -4//-1\n"
+                + "f 2/1 5/2 -1/-1\n"
+                + "usemtl red\n"
+                + "f -6/1/1 -5/2/2 -4/3/3 -3/-1/-1 -2/2/2 -1/1/1\n";
+        byte[] data = obj.getBytes();
+        WavefrontLoader expected = parse(data, false);
+        // materials are ranges of faces. Names are stored once
+        WavefrontLoader.FaceMaterials faceMats = expected.getFaceMats();
+        assertEquals(3, faceMats.size());
+        assertEquals(2, faceMats.getMaterialCount());
+        assertEquals(0, faceMats.getStart(0));
+        assertEquals(3, faceMats.getStart(1));
+        assertEquals(5, faceMats.getStart(2));
+        assertEquals("green", faceMats.getMaterialName(faceMats.getMaterialId(1)));
+        assertEquals(faceMats.getMaterialId(0), faceMats.getMaterialId(2));
+        for (int chunks = 2; chunks < 12; chunks++) {
+            WavefrontLoader actual = parseParallel(data, chunks);
+            assertLoaderEquals(expected, actual);
+            for (int i = 0; i < expected.getFaces().getSize(); i++) {
+                assertEquals(expected.getFaceMats().findMaterial(i), actual.getFaceMats().findMaterial(i));
+            }
+            assertEquals(faceMats.size(), actual.getFaceMats().size());
+            assertEquals(faceMats.getMaterialCount(), actual.getFaceMats().getMaterialCount());
+            assertEquals(expected.getDimensions().toString(), actual.getDimensions().toString());
+        }
+    }
+
+    @Test
+    public void testChunkListener() throws IOException {
+        final List<int[]> chunks = new ArrayList<>();
+        final List<FloatBuffer> chunkVertices = new ArrayList<>();
+        WavefrontLoader actual = new WavefrontLoader("");
+        actual.setChunkListener((WavefrontLoader loader, int fromFace, int toFace) -> {
+            chunks.add(new int[]{fromFace, toFace});
+            chunkVertices.add(loader.copyFaceVertices(fromFace, toFace));
+        }, 500);
+        actual.loadModelSinglePass(new FileInputStream(MODEL));
+
+        int faces = actual.getFaces().getSize();
+        assertEquals(faces / 500, chunks.size());
+        FloatBuffer verts = actual.getVerts();
+        IntBuffer indices = actual.getFaces().getIndexBuffer();
+        for (int i = 0; i < chunks.size(); i++) {
+            // chunks are consecutive and have the vertices of the faces loaded so far
+            assertEquals(i * 500, chunks.get(i)[0]);
+            assertEquals((i + 1) * 500, chunks.get(i)[1]);
+            FloatBuffer vertices = chunkVertices.get(i);
+            assertEquals(500 * 9, vertices.capacity());
+            for (int j = 0; j < 500 * 3; j++) {
+                int idx = indices.get(i * 500 * 3 + j);
+                for (int k = 0; k < 3; k++) {
+                    assertEquals(verts.get(idx * 3 + k), vertices.get(j * 3 + k), 0);
+                }
+            }
+        }
+    }
+
+    static WavefrontLoader loadTwoPasses() throws IOException {
+        WavefrontLoader wfl = new WavefrontLoader("");
+        wfl.analyzeModel(new FileInputStream(MODEL));
+        wfl.allocateBuffers();
+        wfl.loadModel(new FileInputStream(MODEL));
+        return wfl;
+    }
+
+    static WavefrontLoader parse(byte[] data, boolean legacyParser) {
+        WavefrontLoader wfl = new WavefrontLoader("");
+        wfl.legacyParser = legacyParser;
+        wfl.loadModelSinglePass(new ByteArrayInputStream(data));
+        return wfl;
+    }
+
+    private static WavefrontLoader parseParallel(byte[] data, int chunks) {
+        WavefrontLoader wfl = new WavefrontLoader("");
+        wfl.loadModelParallel(ByteBuffer.wrap(data), chunks);
+        return wfl;
+    }
+
+    private static void assertLoaderEquals(WavefrontLoader expected, WavefrontLoader actual) {
+        assertBufferEquals(expected.getVerts(), actual.getVerts());
+        assertBufferEquals(expected.getNormals(), actual.getNormals());
+        assertBufferEquals(expected.getFaces().getIndexBuffer(), actual.getFaces().getIndexBuffer());
+        assertBufferEquals(expected.getTexCoords(), actual.getTexCoords());
+        assertBufferEquals(expected.getFaces().facesTexIdxs, actual.getFaces().facesTexIdxs);
+        assertBufferEquals(expected.getFaces().facesNormIdxs, actual.getFaces().facesNormIdxs);
+        assertEquals(expected.getMaterials().mfnm, actual.getMaterials().mfnm);
+    }
+
+    static WavefrontLoader loadSinglePass() throws IOException {
+        WavefrontLoader wfl = new WavefrontLoader("");
+        wfl.loadModelSinglePass(new FileInputStream(MODEL));
+        return wfl;
+    }
+
+    private static void assertBufferEquals(FloatBuffer expected, FloatBuffer actual) {
+        assertEquals(expected.capacity(), actual.capacity());
+        for (int i = 0; i < expected.capacity(); i++) {
+            assertEquals(Float.floatToIntBits(expected.get(i)), Float.floatToIntBits(actual.get(i)));
+        }
+    }
+
+    private static void assertBufferEquals(IntBuffer expected, IntBuffer actual) {
+        assertEquals(expected.capacity(), actual.capacity());
+        for (int i = 0; i < expected.capacity(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.andresoviedo.util.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ByteLineReaderTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    @Test
+    public void testLines() throws IOException {
+        ByteLineReader sut = new ByteLineReader(new ByteArrayInputStream(
+                "v 1 2 3\r\n  vt\t0.5  0.25 \n\nf 1/1 2/2 3/3".getBytes(ASCII)));
+        assertTrue(sut.nextLine());
+        assertEquals("v 1 2 3", sut.line());
+        assertTrue(sut.nextLine());
+        assertEquals(0, sut.length());
+        assertTrue(sut.nextLine());
+        assertEquals("vt\t0.5  0.25", sut.line());
+        assertEquals(3, sut.countTokens());
+        sut.skipToken();
+        assertEquals(0.5f, sut.nextFloat(), 0);
+        assertEquals(0.25f, sut.nextFloat(), 0);
+        assertFalse(sut.hasMoreTokens());
+        assertTrue(sut.nextLine());
+        assertEquals(0, sut.length());
+        assertTrue(sut.nextLine());
+        assertTrue(sut.startsWith("f "));
+        assertFalse(sut.nextLine());
+    }
+
+    @Test
+    public void testParseFloatIsExact() {
+        Random random = new Random(1234);
+        String[] samples = {"0", "-0", "-0.0", "1", "1.", ".5", "0.827754", "-1.448953", "1e-5", "1.5E+3",
+                "123456789012345678", "0.000000000000000000000000000000000000000000001", "3.4028235e38", "1e39",
+                "NaN", "-Infinity", "1f", "0x1p3", "9007199254740993", "1.00000017881393432617187499"};
+        for (String sample : samples) {
+            assertParse(sample);
+        }
+        for (int i = 0; i < 1000000; i++) {
+            switch (i % 4) {
+                case 0:
+                    assertParse(Float.toString(Float.intBitsToFloat(random.nextInt())));
+                    break;
+                case 1:
+                    assertParse(String.format("%.6f", (random.nextDouble() - 0.5) * 1000));
+                    break;
+                case 2:
+                    assertParse(Double.toString(random.nextDouble()));
+                    break;
+                default:
+                    assertParse(String.format("%.9e", random.nextGaussian()));
+            }
+        }
+    }
+
+    @Test
+    public void testParseInt() {
+        String[] samples = {"0", "-1", "+7", "2147483647", "-2147483648"};
+        for (String sample : samples) {
+            byte[] data = sample.getBytes(ASCII);
+            assertEquals(Integer.parseInt(sample), ByteLineReader.parseInt(data, 0, data.length));
+        }
+        String[] invalid = {"", "-", "2147483648", "1a", "1.0"};
+        for (String sample : invalid) {
+            byte[] data = sample.getBytes(ASCII);
+            try {
+                ByteLineReader.parseInt(data, 0, data.length);
+                throw new AssertionError("Expected NumberFormatException for '" + sample + "'");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    private static void assertParse(String text) {
+        byte[] data = text.getBytes(ASCII);
+        float expected = Float.parseFloat(text);
+        float actual = ByteLineReader.parseFloat(data, 0, data.length);
+        assertEquals(text, Float.floatToIntBits(expected), Float.floatToIntBits(actual));
+    }
+}